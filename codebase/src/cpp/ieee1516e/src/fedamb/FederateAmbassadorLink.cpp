@@ -54,6 +54,70 @@ JavaRTI* getRTI( int id )
 	return theRTI;
 }
 
+/*
+ * Record types and time types used in the buffers passed to deliverCallbacks().
+ * These must match the values in CallbackBuffer.java.
+ */
+#define CALLBACK_REFLECT  1
+#define CALLBACK_RECEIVE  2
+#define TIME_NONE         0
+#define TIME_FLOAT        1
+#define TIME_INTEGER      2
+
+/*
+ * Read an int or long out of a callback buffer and move the position along past it. The
+ * values are in native byte order but aren't aligned, so we copy them out.
+ */
+static jint readInt( const char *&position )
+{
+	jint value;
+	::memcpy( &value, position, sizeof(jint) );
+	position += sizeof(jint);
+	return value;
+}
+
+static jlong readLong( const char *&position )
+{
+	jlong value;
+	::memcpy( &value, position, sizeof(jlong) );
+	position += sizeof(jlong);
+	return value;
+}
+
+/*
+ * Read the handle/value pairs at the current position of a callback buffer, moving the
+ * position along past them. The values are copied straight out of the buffer into the map.
+ */
+static AttributeHandleValueMap readAttributes( const char *&position )
+{
+	AttributeHandleValueMap attributes;
+	jint count = readInt( position );
+	for( jint i = 0; i < count; i++ )
+	{
+		AttributeHandle handle = JniUtils::toAttributeHandle( readInt(position) );
+		jint length = readInt( position );
+		attributes[handle].setData( position, length );
+		position += length;
+	}
+
+	return attributes;
+}
+
+static ParameterHandleValueMap readParameters( const char *&position )
+{
+	ParameterHandleValueMap parameters;
+	jint count = readInt( position );
+	for( jint i = 0; i < count; i++ )
+	{
+		ParameterHandle handle = JniUtils::toParameterHandle( readInt(position) );
+		jint length = readInt( position );
+		parameters[handle].setData( position, length );
+		position += length;
+	}
+
+	return parameters;
+}
+
 //------------------------------------------------------------------------------------------
 //                                 IMPLEMENTATION METHODS
 //------------------------------------------------------------------------------------------
@@ -1123,6 +1187,178 @@ JNIEXPORT void JNICALL Java_org_portico_impl_cpp1516e_FederateAmbassadorLink_rec
 	                                     supplemental );
 }
 
+/*
+ * Class:     org_portico_impl_cpp1516e_FederateAmbassadorLink
+ * Method:    deliverCallbacks
+ * Signature: (ILjava/nio/ByteBuffer;I)V
+ *
+ * Reflections and interactions are handed over in batches. The Java side writes them into a
+ * direct buffer (see CallbackBuffer.java for the layout), and we read them straight out of
+ * its memory here and pass each one to the federate ambassador in order.
+ */
+JNIEXPORT void JNICALL Java_org_portico_impl_cpp1516e_FederateAmbassadorLink_deliverCallbacks
+	( JNIEnv *jnienv,
+	  jobject jfedamb,
+	  jint fedid,
+	  jobject jbuffer,
+	  jint length )
+{
+	JavaRTI *javarti = getRTI( fedid );
+	if( javarti == NULL )
+		return;
+
+	const char *start = (const char*)jnienv->GetDirectBufferAddress( jbuffer );
+	if( start == NULL )
+	{
+		javarti->logger->error( "Callback buffer is not a direct buffer, dropping callbacks" );
+		return;
+	}
+
+	const char *position = start;
+	while( position < start+length )
+	{
+		// header
+		const char *record = position;
+		jint type = readInt( position );
+		jint recordLength = readInt( position );
+		jint handle = readInt( position );
+		jint sentOrdering = readInt( position );
+		jint transport = readInt( position );
+		jint timeType = readInt( position );
+		jlong timeBits = readLong( position );
+		jint receivedOrdering = readInt( position );
+		jint retractionHandle = readInt( position );
+		jint producingFederate = readInt( position );
+
+		// sent regions
+		RegionHandleSet regions;
+		jint regionCount = readInt( position );
+		for( jint i = 0; i < regionCount; i++ )
+			regions.insert( JniUtils::toRegionHandle(readInt(position)) );
+
+		// tag, -1 if there wasn't one
+		VariableLengthData tag;
+		jint tagLength = readInt( position );
+		if( tagLength > 0 )
+		{
+			tag.setData( position, tagLength );
+			position += tagLength;
+		}
+
+		// time, if there is one
+		double doubleTime = 0.0;
+		::memcpy( &doubleTime, &timeBits, sizeof(double) );
+		HLAfloat64Time floatTime( doubleTime );
+		HLAinteger64Time integerTime( timeBits );
+		const LogicalTime &time = (timeType == TIME_FLOAT) ? (const LogicalTime&)floatTime :
+		                                                     (const LogicalTime&)integerTime;
+
+		if( type == CALLBACK_REFLECT )
+		{
+			AttributeHandleValueMap attributes = readAttributes( position );
+			SupplementalReflectInfo supplemental;
+			if( producingFederate != -1 )
+			{
+				supplemental.hasProducingFederate = true;
+				supplemental.producingFederate = JniUtils::toFederateHandle( producingFederate );
+			}
+			if( regionCount > 0 )
+			{
+				supplemental.hasSentRegions = true;
+				supplemental.sentRegions = regions;
+			}
+
+			if( timeType == TIME_NONE )
+			{
+				javarti->fedamb->reflectAttributeValues( JniUtils::toObjectHandle(handle),
+				                                         attributes,
+				                                         tag,
+				                                         JniUtils::toOrder(sentOrdering),
+				                                         JniUtils::toTransport(transport),
+				                                         supplemental );
+			}
+			else if( retractionHandle == -1 )
+			{
+				javarti->fedamb->reflectAttributeValues( JniUtils::toObjectHandle(handle),
+				                                         attributes,
+				                                         tag,
+				                                         JniUtils::toOrder(sentOrdering),
+				                                         JniUtils::toTransport(transport),
+				                                         time,
+				                                         JniUtils::toOrder(receivedOrdering),
+				                                         supplemental );
+			}
+			else
+			{
+				javarti->fedamb->reflectAttributeValues( JniUtils::toObjectHandle(handle),
+				                                         attributes,
+				                                         tag,
+				                                         JniUtils::toOrder(sentOrdering),
+				                                         JniUtils::toTransport(transport),
+				                                         time,
+				                                         JniUtils::toOrder(receivedOrdering),
+				                                         JniUtils::toRetractionHandle(retractionHandle),
+				                                         supplemental );
+			}
+		}
+		else if( type == CALLBACK_RECEIVE )
+		{
+			ParameterHandleValueMap parameters = readParameters( position );
+			SupplementalReceiveInfo supplemental;
+			if( producingFederate != -1 )
+			{
+				supplemental.hasProducingFederate = true;
+				supplemental.producingFederate = JniUtils::toFederateHandle( producingFederate );
+			}
+			if( regionCount > 0 )
+			{
+				supplemental.hasSentRegions = true;
+				supplemental.sentRegions = regions;
+			}
+
+			if( timeType == TIME_NONE )
+			{
+				javarti->fedamb->receiveInteraction( JniUtils::toInteractionClassHandle(handle),
+				                                     parameters,
+				                                     tag,
+				                                     JniUtils::toOrder(sentOrdering),
+				                                     JniUtils::toTransport(transport),
+				                                     supplemental );
+			}
+			else if( retractionHandle == -1 )
+			{
+				javarti->fedamb->receiveInteraction( JniUtils::toInteractionClassHandle(handle),
+				                                     parameters,
+				                                     tag,
+				                                     JniUtils::toOrder(sentOrdering),
+				                                     JniUtils::toTransport(transport),
+				                                     time,
+				                                     JniUtils::toOrder(receivedOrdering),
+				                                     supplemental );
+			}
+			else
+			{
+				javarti->fedamb->receiveInteraction( JniUtils::toInteractionClassHandle(handle),
+				                                     parameters,
+				                                     tag,
+				                                     JniUtils::toOrder(sentOrdering),
+				                                     JniUtils::toTransport(transport),
+				                                     time,
+				                                     JniUtils::toOrder(receivedOrdering),
+				                                     JniUtils::toRetractionHandle(retractionHandle),
+				                                     supplemental );
+			}
+		}
+		else
+		{
+			javarti->logger->error( "Unknown callback type in callback buffer: %d", type );
+		}
+
+		// move on to the next record
+		position = record + recordLength;
+	}
+}
+
 /*
  * Class:     org_portico_impl_cpp1516e_FederateAmbassadorLink
  * Method:    removeObjectInstance
@@ -7,6 +7,14 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+/*
+ * Class:     org_portico_impl_cpp1516e_FederateAmbassadorLink
+ * Method:    deliverCallbacks
+ * Signature: (ILjava/nio/ByteBuffer;I)V
+ */
+JNIEXPORT void JNICALL Java_org_portico_impl_cpp1516e_FederateAmbassadorLink_deliverCallbacks
+  (JNIEnv *, jobject, jint, jobject, jint);
+
 /*
  * Class:     org_portico_impl_cpp1516e_FederateAmbassadorLink
  * Method:    connectionLost
@@ -29,6 +29,9 @@ JavaRTI::JavaRTI( Runtime* jniRuntime, int id )
 	this->jniRuntime  = jniRuntime;
 	this->jproxyClass = NULL;
 	this->jproxy      = NULL;
+	this->joutgoing   = NULL;
+	this->outgoing    = NULL;
+	this->outgoingCapacity = 0;
 
 	// get a name for the logger
 	stringstream ss;
@@ -46,10 +49,13 @@ JavaRTI::JavaRTI( Runtime* jniRuntime, int id )
 
 JavaRTI::~JavaRTI()
 {
-	// delete the global reference to the proxy
+	// delete the global reference to the proxy and its buffer
 	if( this->jproxy != NULL )
 	{
 		JNIEnv* jnienv = getJniEnvironment();
+		if( this->joutgoing != NULL )
+			jnienv->DeleteGlobalRef( joutgoing );
+
 		jnienv->DeleteGlobalRef( jproxy );
 		exceptionCheck();
 	}
@@ -144,6 +150,35 @@ JNIEnv* JavaRTI::getJniEnvironment()
 	return this->jniRuntime->attachToJVM();
 }
 
+/*
+ * Updates and interactions are passed to the Java side by writing them into a direct buffer
+ * that it shares with us (see ProxyRtiAmbassador.getOutgoingBuffer()), rather than by making
+ * a new Java array for every value. This returns the address of that buffer, asking the Java
+ * side for a bigger one if the one we have can't hold the given number of bytes.
+ */
+char* JavaRTI::getOutgoingBuffer( JNIEnv* jnienv, size_t size ) throw( RTIinternalError )
+{
+	if( this->outgoing != NULL && (jlong)size <= this->outgoingCapacity )
+		return this->outgoing;
+
+	jobject localReference = jnienv->CallObjectMethod( jproxy, GET_OUTGOING_BUFFER, (jint)size );
+	if( localReference == NULL )
+	{
+		logger->error( "Could not get outgoing buffer of size %d", (int)size );
+		throw RTIinternalError( L"Could not get outgoing buffer from ProxyRtiAmbassador" );
+	}
+
+	// swap the buffer we have for the new one
+	if( this->joutgoing != NULL )
+		jnienv->DeleteGlobalRef( joutgoing );
+
+	this->joutgoing = jnienv->NewGlobalRef( localReference );
+	this->outgoing = (char*)jnienv->GetDirectBufferAddress( joutgoing );
+	this->outgoingCapacity = jnienv->GetDirectBufferCapacity( joutgoing );
+	jnienv->DeleteLocalRef( localReference );
+	return this->outgoing;
+}
+
 /////////////////////////////////////////////////////////////////////////////////////////////
 /////////////////////////////////// VM Management Methods ///////////////////////////////////
 /////////////////////////////////////////////////////////////////////////////////////////////
@@ -313,10 +348,11 @@ void JavaRTI::cacheMethodIds() throw( RTIinternalError )
 	cacheMethod( jnienv, &RELEASE_MULTIPLE_NAMES, "releaseMultipleObjectInstanceName", "([Ljava/lang/String;)V" );
 	cacheMethod( jnienv, &REGISTER_OBJECT, "registerObjectInstance", "(I)I" );
 	cacheMethod( jnienv, &REGISTER_OBJECT_WITH_NAME, "registerObjectInstance", "(ILjava/lang/String;)I" );
-	cacheMethod( jnienv, &UPDATE_ATTRIBUTE_VALUES, "updateAttributeValues", "(I[I[[B[B)V" );
-	cacheMethod( jnienv, &UPDATE_ATTRIBUTE_VALUES_WITH_TIME, "updateAttributeValues", "(I[I[[B[BD)I" );
-	cacheMethod( jnienv, &SEND_INTERACTION, "sendInteraction", "(I[I[[B[B)V" );
-	cacheMethod( jnienv, &SEND_INTERACTION_WITH_TIME, "sendInteraction", "(I[I[[B[BD)I" );
+	cacheMethod( jnienv, &UPDATE_ATTRIBUTE_VALUES, "updateAttributeValues", "(II)V" );
+	cacheMethod( jnienv, &UPDATE_ATTRIBUTE_VALUES_WITH_TIME, "updateAttributeValues", "(IID)I" );
+	cacheMethod( jnienv, &SEND_INTERACTION, "sendInteraction", "(II)V" );
+	cacheMethod( jnienv, &SEND_INTERACTION_WITH_TIME, "sendInteraction", "(IID)I" );
+	cacheMethod( jnienv, &GET_OUTGOING_BUFFER, "getOutgoingBuffer", "(I)Ljava/nio/ByteBuffer;" );
 	cacheMethod( jnienv, &DELETE_OBJECT_INSTANCE, "deleteObjectInstance", "(I[B)V" );
 	cacheMethod( jnienv, &DELETE_OBJECT_INSTANCE_WITH_TIME, "deleteObjectInstance", "(I[BD)I" );
 	cacheMethod( jnienv, &LOCAL_DELETE_OBJECT_INSTANCE, "localDeleteObjectInstance", "(I)V" );
@@ -61,6 +61,11 @@ class JavaRTI
 		string eName;
 		string eReason;
 
+		// direct buffer that updates and interactions are written into for the Java side
+		jobject joutgoing;
+		char*   outgoing;
+		jlong   outgoingCapacity;
+
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
@@ -80,6 +85,7 @@ class JavaRTI
 		void pushException( string exceptionName, string reason );
 		
 		JNIEnv* getJniEnvironment();
+		char* getOutgoingBuffer( JNIEnv* jnienv, size_t size ) throw( RTIinternalError );
 
 	private:
 		void initialize() throw( RTIinternalError );
@@ -155,6 +161,7 @@ class JavaRTI
 		jmethodID UPDATE_ATTRIBUTE_VALUES_WITH_TIME;
 		jmethodID SEND_INTERACTION;
 		jmethodID SEND_INTERACTION_WITH_TIME;
+		jmethodID GET_OUTGOING_BUFFER;
 		jmethodID DELETE_OBJECT_INSTANCE;
 		jmethodID DELETE_OBJECT_INSTANCE_WITH_TIME;
 		jmethodID LOCAL_DELETE_OBJECT_INSTANCE;
@@ -460,6 +460,92 @@ HVPS JniUtils::fromMap( JNIEnv *jnienv, ParameterHandleValueMap values )
 	return hvps;
 }
 
+/**
+ * Figure out how many bytes encode() will need to write the given values and tag. Each
+ * value takes its own size plus two ints (handle and length). Add to that the tag with
+ * its length and the value count.
+ */
+size_t JniUtils::encodedSize( const AttributeHandleValueMap& values,
+                              const VariableLengthData& tag )
+{
+	size_t size = sizeof(jint) + tag.size() + sizeof(jint);
+	AttributeHandleValueMap::const_iterator iterator;
+	for( iterator = values.begin(); iterator != values.end(); iterator++ )
+		size += sizeof(jint) + sizeof(jint) + (*iterator).second.size();
+
+	return size;
+}
+
+size_t JniUtils::encodedSize( const ParameterHandleValueMap& values,
+                              const VariableLengthData& tag )
+{
+	size_t size = sizeof(jint) + tag.size() + sizeof(jint);
+	ParameterHandleValueMap::const_iterator iterator;
+	for( iterator = values.begin(); iterator != values.end(); iterator++ )
+		size += sizeof(jint) + sizeof(jint) + (*iterator).second.size();
+
+	return size;
+}
+
+/**
+ * Write the tag and values into the given buffer in the form that ProxyRtiAmbassador reads
+ * them back out in. Everything is in native byte order:
+ *
+ *   int tag length, tag bytes, int value count, then for each value:
+ *   int handle, int length, value bytes
+ *
+ * The buffer must have at least encodedSize() bytes of room. Returns the bytes written.
+ */
+jint JniUtils::encode( char *buffer,
+                       const AttributeHandleValueMap& values,
+                       const VariableLengthData& tag )
+{
+	char *position = buffer;
+	jint tagLength = (jint)tag.size();
+	jint count = (jint)values.size();
+
+	::memcpy( position, &tagLength, sizeof(jint) ); position += sizeof(jint);
+	::memcpy( position, tag.data(), tagLength );    position += tagLength;
+	::memcpy( position, &count, sizeof(jint) );     position += sizeof(jint);
+
+	AttributeHandleValueMap::const_iterator iterator;
+	for( iterator = values.begin(); iterator != values.end(); iterator++ )
+	{
+		jint handle = JniUtils::fromHandle( (*iterator).first );
+		jint length = (jint)(*iterator).second.size();
+		::memcpy( position, &handle, sizeof(jint) ); position += sizeof(jint);
+		::memcpy( position, &length, sizeof(jint) ); position += sizeof(jint);
+		::memcpy( position, (*iterator).second.data(), length ); position += length;
+	}
+
+	return (jint)(position - buffer);
+}
+
+jint JniUtils::encode( char *buffer,
+                       const ParameterHandleValueMap& values,
+                       const VariableLengthData& tag )
+{
+	char *position = buffer;
+	jint tagLength = (jint)tag.size();
+	jint count = (jint)values.size();
+
+	::memcpy( position, &tagLength, sizeof(jint) ); position += sizeof(jint);
+	::memcpy( position, tag.data(), tagLength );    position += tagLength;
+	::memcpy( position, &count, sizeof(jint) );     position += sizeof(jint);
+
+	ParameterHandleValueMap::const_iterator iterator;
+	for( iterator = values.begin(); iterator != values.end(); iterator++ )
+	{
+		jint handle = JniUtils::fromHandle( (*iterator).first );
+		jint length = (jint)(*iterator).second.size();
+		::memcpy( position, &handle, sizeof(jint) ); position += sizeof(jint);
+		::memcpy( position, &length, sizeof(jint) ); position += sizeof(jint);
+		::memcpy( position, (*iterator).second.data(), length ); position += length;
+	}
+
+	return (jint)(position - buffer);
+}
+
 ////////////////////////////////////////////////////////////////////////////////////////////////
 /////////////////////////////////// Time Conversion Helpers ////////////////////////////////////
 ////////////////////////////////////////////////////////////////////////////////////////////////
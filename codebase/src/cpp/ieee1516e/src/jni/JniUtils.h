@@ -90,6 +90,20 @@ class JniUtils
 		static HVPS fromMap( JNIEnv *jnienv, AttributeHandleValueMap values );
 		static HVPS fromMap( JNIEnv *jnienv, ParameterHandleValueMap values );
 
+		// write a tag and map straight into a direct buffer shared with the Java side, see
+		// JavaRTI::getOutgoingBuffer(). Call encodedSize() first to find out how much room
+		// is needed. Returns the number of bytes written.
+		static size_t encodedSize( const AttributeHandleValueMap& values,
+		                           const VariableLengthData& tag );
+		static size_t encodedSize( const ParameterHandleValueMap& values,
+		                           const VariableLengthData& tag );
+		static jint encode( char *buffer,
+		                    const AttributeHandleValueMap& values,
+		                    const VariableLengthData& tag );
+		static jint encode( char *buffer,
+		                    const ParameterHandleValueMap& values,
+		                    const VariableLengthData& tag );
+
 		///// time conversion methods ///////////////////////////////////////////////////////
 		static MessageRetractionHandle toRetractionHandle( jint handle );
 		
@@ -260,21 +260,18 @@ void PorticoRtiAmbassador::updateAttributeValues( ObjectInstanceHandle theObject
 	JNIEnv* jnienv = this->javarti->getJniEnvironment();
 
 	// get java versions of the parameters
+	// the tag and attributes are written straight into the buffer shared with the Java side
 	jint jobjectHandle = JniUtils::fromHandle( theObject );
-	HVPS jattributes = JniUtils::fromMap( jnienv, attributes );
-	jbyteArray jtag = JniUtils::fromTag( jnienv, tag );
+	char *buffer = javarti->getOutgoingBuffer( jnienv, JniUtils::encodedSize(attributes,tag) );
+	jint length = JniUtils::encode( buffer, attributes, tag );
 	
 	// call the method
 	jnienv->CallVoidMethod( javarti->jproxy,
 	                        javarti->UPDATE_ATTRIBUTE_VALUES,
 	                        jobjectHandle,
-	                        jattributes.handles,
-	                        jattributes.values,
-	                        jtag );
+	                        length );
 
-	// clean up and run the exception check
-	JniUtils::deleteHVPS( jnienv, jattributes );
-	jnienv->DeleteLocalRef( jtag );
+	// run the exception check
 	javarti->exceptionCheck();
 	
 	if( logger->isTraceEnabled() )
@@ -312,23 +309,20 @@ MessageRetractionHandle PorticoRtiAmbassador::updateAttributeValues(
 	JNIEnv* jnienv = this->javarti->getJniEnvironment();
 
 	// get java versions of the parameters
+	// the tag and attributes are written straight into the buffer shared with the Java side
 	jint jobjectHandle = JniUtils::fromHandle( theObject );
-	HVPS jattributes = JniUtils::fromMap( jnienv, attributes );
-	jbyteArray jtag = JniUtils::fromTag( jnienv, tag );
 	jdouble jtime = JniUtils::fromTime( theTime );
+	char *buffer = javarti->getOutgoingBuffer( jnienv, JniUtils::encodedSize(attributes,tag) );
+	jint length = JniUtils::encode( buffer, attributes, tag );
 	
 	// call the method
 	jint retraction = jnienv->CallIntMethod( javarti->jproxy,
 	                                         javarti->UPDATE_ATTRIBUTE_VALUES_WITH_TIME,
 	                                         jobjectHandle,
-	                                         jattributes.handles,
-	                                         jattributes.values,
-	                                         jtag,
+	                                         length,
 	                                         jtime );
 
-	// clean up and run the exception check
-	JniUtils::deleteHVPS( jnienv, jattributes );
-	jnienv->DeleteLocalRef( jtag );
+	// run the exception check
 	javarti->exceptionCheck();
 	
 	if( logger->isTraceEnabled() )
@@ -366,21 +360,18 @@ void PorticoRtiAmbassador::sendInteraction( InteractionClassHandle theInteractio
 	JNIEnv* jnienv = this->javarti->getJniEnvironment();
 
 	// get java versions of the parameters
+	// the tag and parameters are written straight into the buffer shared with the Java side
 	jint jinteraction = JniUtils::fromHandle( theInteraction );
-	HVPS jparameters = JniUtils::fromMap( jnienv, parameters );
-	jbyteArray jtag = JniUtils::fromTag( jnienv, tag );
+	char *buffer = javarti->getOutgoingBuffer( jnienv, JniUtils::encodedSize(parameters,tag) );
+	jint length = JniUtils::encode( buffer, parameters, tag );
 
 	// call the method
 	jnienv->CallVoidMethod( javarti->jproxy,
 	                        javarti->SEND_INTERACTION,
 	                        jinteraction,
-	                        jparameters.handles,
-	                        jparameters.values,
-	                        jtag );
+	                        length );
 
-	// clean up and run the exception check
-	JniUtils::deleteHVPS( jnienv, jparameters );
-	jnienv->DeleteLocalRef( jtag );
+	// run the exception check
 	javarti->exceptionCheck();
 	
 	if( logger->isTraceEnabled() )
@@ -418,23 +409,20 @@ MessageRetractionHandle PorticoRtiAmbassador::sendInteraction(
 	JNIEnv* jnienv = this->javarti->getJniEnvironment();
 
 	// get java versions of the parameters
+	// the tag and parameters are written straight into the buffer shared with the Java side
 	jint jinteraction = JniUtils::fromHandle( theInteraction );
-	HVPS jparameters = JniUtils::fromMap( jnienv, parameters );
-	jbyteArray jtag = JniUtils::fromTag( jnienv, tag );
 	jdouble jtime = JniUtils::fromTime( theTime );
+	char *buffer = javarti->getOutgoingBuffer( jnienv, JniUtils::encodedSize(parameters,tag) );
+	jint length = JniUtils::encode( buffer, parameters, tag );
 	
 	// call the method
 	jint retraction = jnienv->CallIntMethod( javarti->jproxy,
 	                                         javarti->SEND_INTERACTION_WITH_TIME,
 	                                         jinteraction,
-	                                         jparameters.handles,
-	                                         jparameters.values,
-	                                         jtag,
+	                                         length,
 	                                         jtime );
 
-	// clean up and run the exception check
-	JniUtils::deleteHVPS( jnienv, jparameters );
-	jnienv->DeleteLocalRef( jtag );
+	// run the exception check
 	javarti->exceptionCheck();
 	
 	if( logger->isTraceEnabled() )
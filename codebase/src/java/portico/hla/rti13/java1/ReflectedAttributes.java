@@ -14,12 +14,11 @@
  */
 package hla.rti13.java1;
 
-import java.util.HashMap;
 
 import org.portico.impl.hla13.types.HLA13ReflectedAttributes;
 import org.portico.impl.hla13.types.Java1Region;
 import org.portico.lrc.model.RegionInstance;
-import org.portico2.common.services.object.msg.UpdateAttributes.FilteredAttribute;
+import org.portico2.common.services.object.msg.UpdateAttributes.FilteredAttributes;
 
 public class ReflectedAttributes
 {
@@ -41,7 +40,7 @@ public class ReflectedAttributes
 		
 	}
 	
-	public ReflectedAttributes( HashMap<Integer,FilteredAttribute> params )
+	public ReflectedAttributes( FilteredAttributes params )
 	{
 		this.attributes = new HLA13ReflectedAttributes( params );
 	}
@@ -273,10 +273,9 @@ public class JGroupsConnection implements IConnection
 			logger.debug( "Merging "+joinMessage.getParsedJoinModules().size()+
 			              " additional FOM modules that we receive with join request" );
 
+			// the merger unlocks the FOM for the merge and locks it again afterwards
 			ObjectModel fom = federation.getManifest().getFom();
-			fom.unlock();
 			federation.getManifest().setFom( ModelMerger.merge(fom,joinMessage.getParsedJoinModules()) );
-			fom.lock();
 		}
 
 		// create and return the roster
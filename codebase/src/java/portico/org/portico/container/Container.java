@@ -138,9 +138,7 @@ public class Container
 	 * This method will do all the container initialization. This includes:
 	 * <ul>
 	 *   <li>Configuring the logging framework</li>
-	 *   <li>Loading all the libraries in the plugins directory and extending the classpath.
-	 *       This will just store the library information and extend the classpath, it will
-	 *       not load the plugin data yet.</li>
+	 *   <li>Adding any handlers found in the plugin locations to the handler registry</li>
 	 * </ul>
 	 */
 	private void initializeContainer()
@@ -148,6 +146,15 @@ public class Container
 		// set up the logging
 		Log4jConfigurator.bootstrapLogging();
 		
+		// the standard handlers are already in the registry, only look for plugin handlers
+		// in the plugin locations (if there are any)
+		List<File> pluginPath = getContainerPluginPath();
+		if( pluginPath.isEmpty() == false )
+		{
+			logger.debug( "Scanning for plugin handlers in: " + pluginPath );
+			this.handlerRegistry.loadPluginHandlers( pluginPath );
+		}
+		
 		// log RID file information
 		if( RID.getRidLocation() != null )
 		{
@@ -251,7 +258,7 @@ public class Container
 		String rtiHome = System.getenv( "RTI_HOME" );
 		if( rtiHome != null )
 		{
-			File defaultLocation = new File( rtiHome + pathSeparator + "plugins" );
+			File defaultLocation = new File( rtiHome, "plugins" );
 			if( defaultLocation.exists() && defaultLocation.canRead() )
 				paths.add( getCanonicalFile(defaultLocation) );
 		}
@@ -0,0 +1,202 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.impl.cpp1516e;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.portico2.common.utils.HandleValueMap;
+
+/**
+ * Reflections and interactions make up almost all of the callbacks a federate gets, and passing
+ * each one over the JNI boundary as a separate call with an <code>int[]</code> and a
+ * <code>byte[][]</code> means the C++ side has to make a JNI call for every value just to get at
+ * it. Instead, the {@link ProxyFederateAmbassador} writes them into one of these. It is a direct
+ * buffer, so the C++ side can read straight out of its memory, and the records in it are passed
+ * over in a single {@link FederateAmbassadorLink#deliverCallbacks(int, ByteBuffer, int)} call.
+ * <p/>
+ *
+ * All values are written in the native byte order. Each record is laid out as follows:
+ *
+ * <pre>
+ * int    type               (REFLECT or RECEIVE)
+ * int    length             (of the whole record in bytes, including this header)
+ * int    handle             (object instance or interaction class)
+ * int    sent order
+ * int    transport
+ * int    time type          (TIME_NONE, TIME_FLOAT or TIME_INTEGER)
+ * 8bytes time               (double or long depending on the time type, 0 if there isn't one)
+ * int    received order
+ * int    retraction handle  (-1 if there isn't one)
+ * int    producing federate (-1 if there isn't one)
+ * int    region count, followed by that many int region handles
+ * int    tag length         (-1 for a null tag), followed by that many bytes
+ * int    value count, followed by that many of:
+ *        int handle, int length, and that many bytes
+ * </pre>
+ *
+ * There are two buffers. The records in one are handed over to the C++ side while any callbacks
+ * that come in while they are being processed go into the other. This class is not thread-safe,
+ * but the LRC only ever delivers one callback at a time.
+ */
+class CallbackBuffer
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	public static final int REFLECT = 1;
+	public static final int RECEIVE = 2;
+
+	public static final int TIME_NONE    = 0;
+	public static final int TIME_FLOAT   = 1;
+	public static final int TIME_INTEGER = 2;
+
+	private static final int HEADER_SIZE = 48;   // everything up to and including the region count
+	private static final int INITIAL_CAPACITY = 64 * 1024;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private FederateAmbassadorLink link;
+	private int ambassadorId;
+
+	private ByteBuffer buffer;  // where records are being written
+	private ByteBuffer spare;   // the other buffer, null while it is being delivered
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	protected CallbackBuffer( FederateAmbassadorLink link, int ambassadorId )
+	{
+		this.link = link;
+		this.ambassadorId = ambassadorId;
+		this.buffer = allocate( INITIAL_CAPACITY );
+		this.spare = allocate( INITIAL_CAPACITY );
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * Add a record to the buffer. If there isn't room for it, the records already in the buffer
+	 * are delivered first. See the class comments for what each of the values are.
+	 */
+	public void write( int type,
+	                   int handle,
+	                   HandleValueMap values,
+	                   byte[] tag,
+	                   int sentOrder,
+	                   int transport,
+	                   int timeType,
+	                   long timeBits,
+	                   int receivedOrder,
+	                   int retraction,
+	                   int producer,
+	                   int[] regions )
+	{
+		// figure out how big the record is and make sure we have room for it
+		int length = HEADER_SIZE + (regions.length*4) + 4 /*tag length*/ + 4 /*value count*/;
+		if( tag != null )
+			length += tag.length;
+		for( int i = 0; i < values.size(); i++ )
+			length += 8 + values.valueAt(i).length;
+
+		ensureRoom( length );
+
+		// write the record
+		buffer.putInt( type );
+		buffer.putInt( length );
+		buffer.putInt( handle );
+		buffer.putInt( sentOrder );
+		buffer.putInt( transport );
+		buffer.putInt( timeType );
+		buffer.putLong( timeBits );
+		buffer.putInt( receivedOrder );
+		buffer.putInt( retraction );
+		buffer.putInt( producer );
+
+		buffer.putInt( regions.length );
+		for( int region : regions )
+			buffer.putInt( region );
+
+		if( tag == null )
+		{
+			buffer.putInt( -1 );
+		}
+		else
+		{
+			buffer.putInt( tag.length );
+			buffer.put( tag );
+		}
+
+		buffer.putInt( values.size() );
+		for( int i = 0; i < values.size(); i++ )
+		{
+			byte[] value = values.valueAt( i );
+			buffer.putInt( values.handleAt(i) );
+			buffer.putInt( value.length );
+			buffer.put( value );
+		}
+	}
+
+	/**
+	 * Pass all the records in the buffer over to the C++ side. Returns once they have all been
+	 * given to the federate ambassador.
+	 */
+	public void flush()
+	{
+		if( buffer.position() == 0 )
+			return;
+
+		// swap the buffers over so that anything that comes in while the C++ side is
+		// processing these records doesn't write over the top of them
+		ByteBuffer pending = buffer;
+		this.buffer = spare != null ? spare : allocate( pending.capacity() );
+		this.spare = null;
+
+		try
+		{
+			link.deliverCallbacks( ambassadorId, pending, pending.position() );
+		}
+		finally
+		{
+			pending.clear();
+			this.spare = pending;
+		}
+	}
+
+	public boolean isEmpty()
+	{
+		return buffer.position() == 0;
+	}
+
+	private void ensureRoom( int length )
+	{
+		if( buffer.remaining() >= length )
+			return;
+
+		flush();
+		if( buffer.capacity() < length )
+			this.buffer = allocate( Math.max(length,buffer.capacity()*2) );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+	private static ByteBuffer allocate( int capacity )
+	{
+		return ByteBuffer.allocateDirect( capacity ).order( ByteOrder.nativeOrder() );
+	}
+}
@@ -14,6 +14,8 @@
  */
 package org.portico.impl.cpp1516e;
 
+import java.nio.ByteBuffer;
+
 /**
  * This class provides a set of native methods that allow the RTI to call back to
  * C++ based federate ambassadors. For each C++ federate, we create an intermediate
@@ -61,6 +63,17 @@ public class FederateAmbassadorLink
 	//----------------------------------------------------------
 	//                    INSTANCE METHODS
 	//----------------------------------------------------------
+	/**
+	 * Pass a batch of reflections and interactions over to the federate ambassador. The buffer
+	 * is a direct buffer that the C++ side reads the records straight out of. They are laid out
+	 * as described in {@link CallbackBuffer}.
+	 *
+	 * @param id     The id of the federate the callbacks are for
+	 * @param buffer The direct buffer holding the records
+	 * @param length The number of bytes in the buffer that hold records
+	 */
+	public native void deliverCallbacks( int id, ByteBuffer buffer, int length );
+
 	public native void connectionLost( int id, String description );
 
 	//4.7
@@ -14,10 +14,15 @@
  */
 package org.portico.impl.cpp1516e;
 
+import java.util.Map;
 import java.util.Set;
 
 import static org.portico.impl.hla1516e.types.HLA1516eHandle.*;
 
+import org.portico.impl.hla1516e.types.HLA1516eAttributeHandleValueMap;
+import org.portico.impl.hla1516e.types.HLA1516eParameterHandleValueMap;
+import org.portico2.common.utils.HandleValueMap;
+
 import hla.rti1516e.AttributeHandle;
 import hla.rti1516e.AttributeHandleSet;
 import hla.rti1516e.AttributeHandleValueMap;
@@ -59,6 +64,16 @@ import hla.rti1516e.time.HLAinteger64Time;
  * make the JNI code simpler to write, the native methods take mostly raw types (primitives,
  * arrays and the like). So the role of the proxy is to catch callbacks, translate them
  * into the basic types and pass them to the native methods in the link class.
+ * <p/>
+ * Reflections and interactions don't go through the link one at a time. They are written to a
+ * {@link CallbackBuffer} and handed over together. While the C++ federate is in a call to
+ * <code>evokeCallback()</code> or <code>evokeMultipleCallbacks()</code> (see
+ * {@link #beginBatch()} and {@link #endBatch()}) they are held until the buffer is full or the
+ * LRC gets to the end of the tick and calls {@link #flush()}. That happens while the federate is
+ * still flagged as being in a callback, so it can't call back into the RTI from them. Outside of
+ * an evoke, they are handed over straight away. Any other callback will hand over what is in the
+ * buffer before it is passed on, so the federate still gets everything in the order it was
+ * delivered.
  */
 public class ProxyFederateAmbassador implements FederateAmbassador
 {
@@ -71,6 +86,8 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	//----------------------------------------------------------
 	private FederateAmbassadorLink link;
 	private int ambassadorId;
+	private CallbackBuffer callbacks;
+	private boolean batching;
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -79,6 +96,8 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	{
 		this.link = new FederateAmbassadorLink();
 		this.ambassadorId = id;
+		this.callbacks = new CallbackBuffer( link, id );
+		this.batching = false;
 	}
 
 	//----------------------------------------------------------
@@ -148,11 +167,117 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 		return type.ordinal()+1;
 	}
 
+	private HandleValueMap toHandleValueMap( AttributeHandleValueMap map )
+	{
+		// ours are already backed by one, so we don't have to convert it
+		if( map instanceof HLA1516eAttributeHandleValueMap )
+			return ((HLA1516eAttributeHandleValueMap)map).getHandleValueMap();
+
+		HandleValueMap values = new HandleValueMap( map.size() );
+		for( Map.Entry<AttributeHandle,byte[]> entry : map.entrySet() )
+			values.put( fromHandle(entry.getKey()), entry.getValue() );
+
+		return values;
+	}
+
+	private HandleValueMap toHandleValueMap( ParameterHandleValueMap map )
+	{
+		if( map instanceof HLA1516eParameterHandleValueMap )
+			return ((HLA1516eParameterHandleValueMap)map).getHandleValueMap();
+
+		HandleValueMap values = new HandleValueMap( map.size() );
+		for( Map.Entry<ParameterHandle,byte[]> entry : map.entrySet() )
+			values.put( fromHandle(entry.getKey()), entry.getValue() );
+
+		return values;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////// Callback Batching ////////////////////////////////// 
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * The C++ federate is about to evoke callbacks. Until {@link #endBatch()} is called,
+	 * reflections and interactions will be held in the buffer rather than passed on as soon as
+	 * they arrive.
+	 */
+	public void beginBatch()
+	{
+		this.batching = true;
+	}
+
+	/**
+	 * The C++ federate has finished evoking callbacks. Go back to passing reflections and
+	 * interactions on as they arrive. Anything that was held has already been handed over by
+	 * the LRC at the end of the tick (see {@link #flush()}).
+	 */
+	public void endBatch()
+	{
+		this.batching = false;
+	}
+
+	/**
+	 * Write a reflection or interaction to the buffer, handing it over straight away if we are
+	 * not in a batch. If there is no time, the received order is ignored.
+	 */
+	private void buffer( int type,
+	                     int handle,
+	                     HandleValueMap values,
+	                     byte[] tag,
+	                     int sentOrder,
+	                     int transport,
+	                     LogicalTime<?,?> time,
+	                     int receivedOrder,
+	                     int retraction,
+	                     int producer,
+	                     int[] regions )
+	{
+		int timeType = CallbackBuffer.TIME_NONE;
+		long timeBits = 0;
+		if( time instanceof HLAfloat64Time )
+		{
+			timeType = CallbackBuffer.TIME_FLOAT;
+			timeBits = Double.doubleToRawLongBits( toDouble(time) );
+		}
+		else if( time != null )
+		{
+			timeType = CallbackBuffer.TIME_INTEGER;
+			timeBits = toLong( time );
+		}
+
+		callbacks.write( type,
+		                 handle,
+		                 values,
+		                 tag,
+		                 sentOrder,
+		                 transport,
+		                 timeType,
+		                 timeBits,
+		                 receivedOrder,
+		                 retraction,
+		                 producer,
+		                 regions );
+
+		if( batching == false )
+			callbacks.flush();
+	}
+
+	/**
+	 * Hand over any reflections or interactions we're holding on to. Must be called before any
+	 * other callback is passed on so that the federate gets them in the right order. The LRC also
+	 * calls this at the end of each tick, inside the callback guard (see
+	 * {@link org.portico2.lrc.LRC#setCallbackFlush(Runnable)}).
+	 */
+	protected void flush()
+	{
+		callbacks.flush();
+	}
+
 	////////////////////////////////////////////////////////////////////////////////////////
 	///////////////////////////// Federation Management Methods ////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
 	public void connectionLost( String faultDescription ) throws FederateInternalError
 	{
+		flush();
 		link.connectionLost( ambassadorId, faultDescription );
 	}
 
@@ -160,6 +285,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void synchronizationPointRegistrationSucceeded( String label )
 	    throws FederateInternalError
 	{
+		flush();
 		link.synchronizationPointRegistrationSucceeded( ambassadorId, label );
 	}
 
@@ -167,6 +293,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                                    SynchronizationPointFailureReason reason )
 	    throws FederateInternalError
 	{
+		flush();
 		link.synchronizationPointRegistrationFailed( ambassadorId, label, reason.name() );
 	}
 
@@ -174,6 +301,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void announceSynchronizationPoint( String label, byte[] tag )
 		throws FederateInternalError
 	{
+		flush();
 		link.announceSynchronizationPoint( ambassadorId, label, tag );
 	}
 
@@ -181,6 +309,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void federationSynchronized( String label, FederateHandleSet failedSet )
 	    throws FederateInternalError
 	{
+		flush();
 		link.federationSynchronized( ambassadorId, label, convert(failedSet) );
 	}
 
@@ -190,11 +319,13 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	//4.12
 	public void initiateFederateSave( String label ) throws FederateInternalError
 	{
+		flush();
 		link.initiateFederateSave( ambassadorId, label );
 	}
 
 	public void initiateFederateSave( String label, LogicalTime time ) throws FederateInternalError
 	{
+		flush();
 		if( time instanceof HLAfloat64Time )
 			link.initiateFederateSave( ambassadorId, label, toDouble(time) );
 		else
@@ -204,11 +335,13 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	// 4.15
 	public void federationSaved() throws FederateInternalError
 	{
+		flush();
 		link.federationSaved( ambassadorId );
 	}
 
 	public void federationNotSaved( SaveFailureReason reason ) throws FederateInternalError
 	{
+		flush();
 		link.federationNotSaved( ambassadorId, reason.name() );
 	}
 
@@ -216,6 +349,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void federationSaveStatusResponse( FederateHandleSaveStatusPair[] response )
 	    throws FederateInternalError
 	{
+		flush();
 		int[] handles = new int[response.length];
 		String[] statuses = new String[response.length];
 		for( int i = 0; i < response.length; i++ )
@@ -230,17 +364,20 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	// 4.19
 	public void requestFederationRestoreSucceeded( String label ) throws FederateInternalError
 	{
+		flush();
 		link.requestFederationRestoreSucceeded( ambassadorId, label );
 	}
 
 	public void requestFederationRestoreFailed( String label ) throws FederateInternalError
 	{
+		flush();
 		link.requestFederationRestoreFailed( ambassadorId, label );
 	}
 
 	// 4.20
 	public void federationRestoreBegun() throws FederateInternalError
 	{
+		flush();
 		link.federationRestoreBegun( ambassadorId );
 	}
 
@@ -250,6 +387,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                     FederateHandle federateHandle )
 	    throws FederateInternalError
 	{
+		flush();
 		link.initiateFederateRestore( ambassadorId,
 		                              label,
 		                              federateName,
@@ -259,11 +397,13 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	// 4.23
 	public void federationRestored() throws FederateInternalError
 	{
+		flush();
 		link.federationRestored( ambassadorId );
 	}
 
 	public void federationNotRestored( RestoreFailureReason reason ) throws FederateInternalError
 	{
+		flush();
 		link.federationNotRestored( ambassadorId, reason.name() );
 	}
 
@@ -271,6 +411,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void federationRestoreStatusResponse( FederateRestoreStatus[] response )
 	    throws FederateInternalError
 	{
+		flush();
 		int[] preHandles = new int[response.length];
 		int[] postHandles = new int[response.length];
 		String[] statuses = new String[response.length];
@@ -290,6 +431,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void reportFederationExecutions( FederationExecutionInformationSet set )
 	    throws FederateInternalError
 	{
+		flush();
 		String[] federations = new String[set.size()];
 		String[] implementations = new String[set.size()];
 		int count = 0;
@@ -307,6 +449,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void startRegistrationForObjectClass( ObjectClassHandle theClass )
 	    throws FederateInternalError
 	{
+		flush();
 		link.startRegistrationForObjectClass( ambassadorId, fromHandle(theClass) );
 	}
 
@@ -314,12 +457,14 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void stopRegistrationForObjectClass( ObjectClassHandle theClass )
 	    throws FederateInternalError
 	{
+		flush();
 		link.stopRegistrationForObjectClass( ambassadorId, fromHandle(theClass) );
 	}
 
 	// 5.12
 	public void turnInteractionsOn( InteractionClassHandle theHandle ) throws FederateInternalError
 	{
+		flush();
 		link.turnInteractionsOn( ambassadorId, fromHandle(theHandle) );
 	}
 
@@ -327,6 +472,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void turnInteractionsOff( InteractionClassHandle theHandle )
 	    throws FederateInternalError
 	{
+		flush();
 		link.turnInteractionsOff( ambassadorId, fromHandle(theHandle) );
 	}
 
@@ -337,12 +483,14 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void objectInstanceNameReservationSucceeded( String objectName )
 	    throws FederateInternalError
 	{
+		flush();
 		link.objectInstanceNameReservationSucceeded( ambassadorId, objectName );
 	}
 
 	public void multipleObjectInstanceNameReservationSucceeded( Set<String> objectNames )
 	    throws FederateInternalError
 	{
+		flush();
 		link.multipleObjectInstanceNameReservationSucceeded( ambassadorId,
 		                                                     objectNames.toArray(new String[]{}) );
 	}
@@ -350,12 +498,14 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void objectInstanceNameReservationFailed( String objectName )
 	    throws FederateInternalError
 	{
+		flush();
 		link.objectInstanceNameReservationFailed( ambassadorId, objectName );
 	}
 
 	public void multipleObjectInstanceNameReservationFailed( Set<String> objectNames )
 	    throws FederateInternalError
 	{
+		flush();
 		link.multipleObjectInstanceNameReservationFailed( ambassadorId,
 		                                                  objectNames.toArray(new String[]{}) );
 	}
@@ -369,6 +519,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                    String objectName )
 	    throws FederateInternalError
 	{
+		flush();
 		link.discoverObjectInstance( ambassadorId,
 		                             fromHandle(theObject),
 		                             fromHandle(theObjectClass),
@@ -381,6 +532,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                    FederateHandle producingFederate )
 	    throws FederateInternalError
 	{
+		flush();
 		link.discoverObjectInstance( ambassadorId,
 		                             fromHandle(theObject),
 		                             fromHandle(theObjectClass),
@@ -400,26 +552,17 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                    SupplementalReflectInfo reflectInfo )
 	    throws FederateInternalError
 	{
-		// convert the AttributeHandleValueMap
-		int[] attributeHandles = new int[theAttributes.size()];
-		byte[][] attributeValues = new byte[theAttributes.size()][];
-		int count = 0;
-		for( AttributeHandle handle : theAttributes.keySet() )
-		{
-			attributeHandles[count] = fromHandle(handle);
-			attributeValues[count] = theAttributes.get(handle);
-			count++;
-		}
-		
-		link.reflectAttributeValues( ambassadorId,
-		                             fromHandle(theObject),
-		                             attributeHandles,
-		                             attributeValues,
-		                             tag,
-		                             convert(sentOrdering),
-		                             fromHandle(theTransport),
-		                             fromHandle(reflectInfo.getProducingFederate()),
-		                             convert(reflectInfo.getSentRegions()) );
+		buffer( CallbackBuffer.REFLECT,
+		        fromHandle(theObject),
+		        toHandleValueMap(theAttributes),
+		        tag,
+		        convert(sentOrdering),
+		        fromHandle(theTransport),
+		        null,
+		        0,
+		        -1,
+		        fromHandle(reflectInfo.getProducingFederate()),
+		        convert(reflectInfo.getSentRegions()) );
 	}
 
 	public void reflectAttributeValues( ObjectInstanceHandle theObject,
@@ -432,45 +575,17 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                    SupplementalReflectInfo reflectInfo )
 	    throws FederateInternalError
 	{
-		// convert the AttributeHandleValueMap
-		int[] attributeHandles = new int[theAttributes.size()];
-		byte[][] attributeValues = new byte[theAttributes.size()][];
-		int count = 0;
-		for( AttributeHandle handle : theAttributes.keySet() )
-		{
-			attributeHandles[count] = fromHandle(handle);
-			attributeValues[count] = theAttributes.get(handle);
-			count++;
-		}
-
-		if( theTime instanceof HLAfloat64Time )
-		{
-    		link.reflectAttributeValues( ambassadorId,
-    		                             fromHandle(theObject),
-    		                             attributeHandles,
-    		                             attributeValues,
-    		                             tag,
-    		                             convert(sentOrdering),
-    		                             fromHandle(theTransport),
-    		                             toDouble(theTime),
-    		                             convert(receivedOrdering),
-    		                             fromHandle(reflectInfo.getProducingFederate()),
-    		                             convert(reflectInfo.getSentRegions()) );
-		}
-		else
-		{
-    		link.reflectAttributeValues( ambassadorId,
-    		                             fromHandle(theObject),
-    		                             attributeHandles,
-    		                             attributeValues,
-    		                             tag,
-    		                             convert(sentOrdering),
-    		                             fromHandle(theTransport),
-    		                             toLong(theTime),
-    		                             convert(receivedOrdering),
-    		                             fromHandle(reflectInfo.getProducingFederate()),
-    		                             convert(reflectInfo.getSentRegions()) );
-		}
+		buffer( CallbackBuffer.REFLECT,
+		        fromHandle(theObject),
+		        toHandleValueMap(theAttributes),
+		        tag,
+		        convert(sentOrdering),
+		        fromHandle(theTransport),
+		        theTime,
+		        convert(receivedOrdering),
+		        -1,
+		        fromHandle(reflectInfo.getProducingFederate()),
+		        convert(reflectInfo.getSentRegions()) );
 	}
 
 	public void reflectAttributeValues( ObjectInstanceHandle theObject,
@@ -484,47 +599,17 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                    SupplementalReflectInfo reflectInfo )
 	    throws FederateInternalError
 	{
-		// convert the AttributeHandleValueMap
-		int[] attributeHandles = new int[theAttributes.size()];
-		byte[][] attributeValues = new byte[theAttributes.size()][];
-		int count = 0;
-		for( AttributeHandle handle : theAttributes.keySet() )
-		{
-			attributeHandles[count] = fromHandle(handle);
-			attributeValues[count] = theAttributes.get(handle);
-			count++;
-		}
-
-		if( theTime instanceof HLAfloat64Time )
-		{
-        	link.reflectAttributeValues( ambassadorId,
-        	                             fromHandle(theObject),
-        	                             attributeHandles,
-        	                             attributeValues,
-        	                             tag,
-        	                             convert(sentOrdering),
-        	                             fromHandle(theTransport),
-        	                             toDouble(theTime),
-        	                             convert(receivedOrdering),
-        	                             fromHandle(retractionHandle),
-        	                             fromHandle(reflectInfo.getProducingFederate()),
-        	                             convert(reflectInfo.getSentRegions()) );
-		}
-		else
-		{
-        	link.reflectAttributeValues( ambassadorId,
-        	                             fromHandle(theObject),
-        	                             attributeHandles,
-        	                             attributeValues,
-        	                             tag,
-        	                             convert(sentOrdering),
-        	                             fromHandle(theTransport),
-        	                             toLong(theTime),
-        	                             convert(receivedOrdering),
-        	                             fromHandle(retractionHandle),
-        	                             fromHandle(reflectInfo.getProducingFederate()),
-        	                             convert(reflectInfo.getSentRegions()) );
-		}
+		buffer( CallbackBuffer.REFLECT,
+		        fromHandle(theObject),
+		        toHandleValueMap(theAttributes),
+		        tag,
+		        convert(sentOrdering),
+		        fromHandle(theTransport),
+		        theTime,
+		        convert(receivedOrdering),
+		        fromHandle(retractionHandle),
+		        fromHandle(reflectInfo.getProducingFederate()),
+		        convert(reflectInfo.getSentRegions()) );
 	}
 
 	///////////////////////////////////////////////////////////////////////////////////////////
@@ -539,26 +624,17 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                SupplementalReceiveInfo receiveInfo )
 	    throws FederateInternalError
 	{
-		// convert the ParameterHandleValueMap
-		int[] parameterHandles = new int[theParameters.size()];
-		byte[][] parameterValues = new byte[theParameters.size()][];
-		int count = 0;
-		for( ParameterHandle handle : theParameters.keySet() )
-		{
-			parameterHandles[count] = fromHandle(handle);
-			parameterValues[count] = theParameters.get(handle);
-			count++;
-		}
-
-		link.receiveInteraction( ambassadorId,
-		                         fromHandle(interactionClass),
-		                         parameterHandles,
-		                         parameterValues,
-		                         tag,
-		                         convert(sentOrdering),
-		                         fromHandle(theTransport),
-		                         fromHandle(receiveInfo.getProducingFederate()),
-		                         convert(receiveInfo.getSentRegions()) );
+		buffer( CallbackBuffer.RECEIVE,
+		        fromHandle(interactionClass),
+		        toHandleValueMap(theParameters),
+		        tag,
+		        convert(sentOrdering),
+		        fromHandle(theTransport),
+		        null,
+		        0,
+		        -1,
+		        fromHandle(receiveInfo.getProducingFederate()),
+		        convert(receiveInfo.getSentRegions()) );
 	}
 
 	public void receiveInteraction( InteractionClassHandle interactionClass,
@@ -571,45 +647,17 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                SupplementalReceiveInfo receiveInfo )
 	    throws FederateInternalError
 	{
-		// convert the ParameterHandleValueMap
-		int[] parameterHandles = new int[theParameters.size()];
-		byte[][] parameterValues = new byte[theParameters.size()][];
-		int count = 0;
-		for( ParameterHandle handle : theParameters.keySet() )
-		{
-			parameterHandles[count] = fromHandle(handle);
-			parameterValues[count] = theParameters.get(handle);
-			count++;
-		}
-
-		if( theTime instanceof HLAfloat64Time )
-		{
-    		link.receiveInteraction( ambassadorId,
-    		                         fromHandle(interactionClass),
-    		                         parameterHandles,
-    		                         parameterValues,
-    		                         tag,
-    		                         convert(sentOrdering),
-    		                         fromHandle(theTransport),
-    		                         toDouble(theTime),
-    		                         convert(receivedOrdering),
-    		                         fromHandle(receiveInfo.getProducingFederate()),
-    		                         convert(receiveInfo.getSentRegions()) );
-		}
-		else
-		{
-    		link.receiveInteraction( ambassadorId,
-    		                         fromHandle(interactionClass),
-    		                         parameterHandles,
-    		                         parameterValues,
-    		                         tag,
-    		                         convert(sentOrdering),
-    		                         fromHandle(theTransport),
-    		                         toLong(theTime),
-    		                         convert(receivedOrdering),
-    		                         fromHandle(receiveInfo.getProducingFederate()),
-    		                         convert(receiveInfo.getSentRegions()) );
-		}
+		buffer( CallbackBuffer.RECEIVE,
+		        fromHandle(interactionClass),
+		        toHandleValueMap(theParameters),
+		        tag,
+		        convert(sentOrdering),
+		        fromHandle(theTransport),
+		        theTime,
+		        convert(receivedOrdering),
+		        -1,
+		        fromHandle(receiveInfo.getProducingFederate()),
+		        convert(receiveInfo.getSentRegions()) );
 	}
 
 	public void receiveInteraction( InteractionClassHandle interactionClass,
@@ -623,47 +671,17 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                SupplementalReceiveInfo receiveInfo )
 	    throws FederateInternalError
 	{
-		// convert the ParameterHandleValueMap
-		int[] parameterHandles = new int[theParameters.size()];
-		byte[][] parameterValues = new byte[theParameters.size()][];
-		int count = 0;
-		for( ParameterHandle handle : theParameters.keySet() )
-		{
-			parameterHandles[count] = fromHandle(handle);
-			parameterValues[count] = theParameters.get(handle);
-			count++;
-		}
-		
-		if( theTime instanceof HLAfloat64Time )
-		{
-    		link.receiveInteraction( ambassadorId,
-    		                         fromHandle(interactionClass),
-    		                         parameterHandles,
-    		                         parameterValues,
-    		                         tag,
-    		                         convert(sentOrdering),
-    		                         fromHandle(theTransport),
-    		                         toDouble(theTime),
-    		                         convert(receivedOrdering),
-    		                         fromHandle(retractionHandle),
-    		                         fromHandle(receiveInfo.getProducingFederate()),
-    		                         convert(receiveInfo.getSentRegions()) );
-		}
-		else
-		{
-    		link.receiveInteraction( ambassadorId,
-    		                         fromHandle(interactionClass),
-    		                         parameterHandles,
-    		                         parameterValues,
-    		                         tag,
-    		                         convert(sentOrdering),
-    		                         fromHandle(theTransport),
-    		                         toLong(theTime),
-    		                         convert(receivedOrdering),
-    		                         fromHandle(retractionHandle),
-    		                         fromHandle(receiveInfo.getProducingFederate()),
-    		                         convert(receiveInfo.getSentRegions()) );
-		}
+		buffer( CallbackBuffer.RECEIVE,
+		        fromHandle(interactionClass),
+		        toHandleValueMap(theParameters),
+		        tag,
+		        convert(sentOrdering),
+		        fromHandle(theTransport),
+		        theTime,
+		        convert(receivedOrdering),
+		        fromHandle(retractionHandle),
+		        fromHandle(receiveInfo.getProducingFederate()),
+		        convert(receiveInfo.getSentRegions()) );
 	}
 
 	///////////////////////////////////////////////////////////////////////////////////////////
@@ -676,6 +694,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                  SupplementalRemoveInfo removeInfo )
 	    throws FederateInternalError
 	{
+		flush();
 		link.removeObjectInstance( ambassadorId,
 		                           fromHandle(theObject),
 		                           tag,
@@ -691,6 +710,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                  SupplementalRemoveInfo removeInfo )
 	    throws FederateInternalError
 	{
+		flush();
 		if( theTime instanceof HLAfloat64Time )
 		{
 			link.removeObjectInstance( ambassadorId,
@@ -722,6 +742,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                  SupplementalRemoveInfo removeInfo )
 	    throws FederateInternalError
 	{
+		flush();
 		if( theTime instanceof HLAfloat64Time )
 		{
 			link.removeObjectInstance( ambassadorId,
@@ -753,6 +774,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void attributesInScope( ObjectInstanceHandle theObject, AttributeHandleSet theAttributes )
 	    throws FederateInternalError
 	{
+		flush();
 		link.attributesInScope( ambassadorId, fromHandle(theObject), convert(theAttributes) );
 	}
 
@@ -761,6 +783,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                  AttributeHandleSet theAttributes )
 	    throws FederateInternalError
 	{
+		flush();
 		link.attributesOutOfScope( ambassadorId, fromHandle(theObject), convert(theAttributes) );
 	}
 
@@ -769,6 +792,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                         AttributeHandleSet theAttributes,
 	                                         byte[] tag ) throws FederateInternalError
 	{
+		flush();
 		link.provideAttributeValueUpdate( ambassadorId,
 		                                  fromHandle(theObject),
 		                                  convert(theAttributes),
@@ -780,6 +804,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                            AttributeHandleSet theAttributes )
 	    throws FederateInternalError
 	{
+		flush();
 		link.turnUpdatesOnForObjectInstance( ambassadorId,
 		                                     fromHandle(theObject),
 		                                     convert(theAttributes) );
@@ -790,6 +815,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                            String updateRateDesignator )
 	    throws FederateInternalError
 	{
+		flush();
 		link.turnUpdatesOnForObjectInstance( ambassadorId,
 		                                     fromHandle(theObject),
 		                                     convert(theAttributes),
@@ -801,6 +827,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                             AttributeHandleSet theAttributes )
 	    throws FederateInternalError
 	{
+		flush();
 		link.turnUpdatesOffForObjectInstance( ambassadorId,
 		                                      fromHandle(theObject),
 		                                      convert(theAttributes) );
@@ -812,6 +839,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                                      TransportationTypeHandle theTransport )
 	    throws FederateInternalError
 	{
+		flush();
 		link.confirmAttributeTransportationTypeChange( ambassadorId,
 		                                               fromHandle(theObject),
 		                                               convert(theAttributes),
@@ -823,6 +851,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                                        TransportationTypeHandle theTransport )
 	    throws FederateInternalError
 	{
+		flush();
 		link.confirmInteractionTransportationTypeChange( ambassadorId,
 		                                                 fromHandle(theInteraction),
 		                                                 fromHandle(theTransport) );
@@ -834,6 +863,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                               TransportationTypeHandle theTransport )
 	    throws FederateInternalError
 	{
+		flush();
 		link.reportAttributeTransportationType( ambassadorId,
 		                                        fromHandle(theObject),
 		                                        fromHandle(theAttribute),
@@ -846,6 +876,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                                 TransportationTypeHandle theTransport )
 	    throws FederateInternalError
 	{
+		flush();
 		link.reportInteractionTransportationType( ambassadorId,
 		                                          fromHandle(theFederate),
 		                                          fromHandle(theInteraction),
@@ -861,6 +892,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                                 byte[] tag )
 	    throws FederateInternalError
 	{
+		flush();
 		link.requestAttributeOwnershipAssumption( ambassadorId,
 		                                          fromHandle(theObject),
 		                                          convert(offeredAttributes),
@@ -872,6 +904,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                            AttributeHandleSet offeredAttributes )
 	    throws FederateInternalError
 	{
+		flush();
 		link.requestDivestitureConfirmation( ambassadorId,
 		                                     fromHandle(theObject),
 		                                     convert(offeredAttributes) );
@@ -883,6 +916,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                                       byte[] tag )
 	    throws FederateInternalError
 	{
+		flush();
 		link.attributeOwnershipAcquisitionNotification( ambassadorId,
 		                                                fromHandle(theObject),
 		                                                convert(securedAttributes),
@@ -894,6 +928,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                           AttributeHandleSet theAttributes )
 	    throws FederateInternalError
 	{
+		flush();
 		link.attributeOwnershipUnavailable( ambassadorId,
 		                                    fromHandle(theObject),
 		                                    convert(theAttributes) );
@@ -905,6 +940,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                              byte[] tag )
 	    throws FederateInternalError
 	{
+		flush();
 		link.requestAttributeOwnershipRelease( ambassadorId,
 		                                       fromHandle(theObject),
 		                                       convert(candidateAttributes),
@@ -916,6 +952,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                                              AttributeHandleSet theAttributes )
 	    throws FederateInternalError
 	{
+		flush();
 		link.confirmAttributeOwnershipAcquisitionCancellation( ambassadorId,
 		                                                       fromHandle(theObject),
 		                                                       convert(theAttributes) );
@@ -927,6 +964,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	                                      FederateHandle theOwner )
 	    throws FederateInternalError
 	{
+		flush();
 		link.informAttributeOwnership( ambassadorId,
 		                               fromHandle(theObject),
 		                               fromHandle(theAttribute),
@@ -936,12 +974,14 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	public void attributeIsNotOwned( ObjectInstanceHandle theObject, AttributeHandle theAttribute )
 	    throws FederateInternalError
 	{
+		flush();
 		link.attributeIsNotOwned( ambassadorId, fromHandle(theObject), fromHandle(theAttribute) );
 	}
 
 	public void attributeIsOwnedByRTI( ObjectInstanceHandle theObject, AttributeHandle theAttribute )
 	    throws FederateInternalError
 	{
+		flush();
 		link.attributeIsOwnedByRTI( ambassadorId, fromHandle(theObject), fromHandle(theAttribute) );
 	}
 
@@ -951,6 +991,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	// 8.3
 	public void timeRegulationEnabled( LogicalTime time ) throws FederateInternalError
 	{
+		flush();
 		if( time instanceof HLAfloat64Time )
 			link.timeRegulationEnabled( ambassadorId, toDouble(time) );
 		else
@@ -960,6 +1001,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	// 8.6
 	public void timeConstrainedEnabled( LogicalTime time ) throws FederateInternalError
 	{
+		flush();
 		if( time instanceof HLAfloat64Time )
 			link.timeConstrainedEnabled( ambassadorId, toDouble(time) );
 		else
@@ -969,6 +1011,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	// 8.13
 	public void timeAdvanceGrant( LogicalTime time ) throws FederateInternalError
 	{
+		flush();
 		if( time instanceof HLAfloat64Time )
 			link.timeAdvanceGrant( ambassadorId, toDouble(time) );
 		else
@@ -978,6 +1021,7 @@ public class ProxyFederateAmbassador implements FederateAmbassador
 	// 8.22
 	public void requestRetraction( MessageRetractionHandle theHandle ) throws FederateInternalError
 	{
+		flush();
 		link.requestRetraction( ambassadorId, fromHandle(theHandle) );
 	}
 
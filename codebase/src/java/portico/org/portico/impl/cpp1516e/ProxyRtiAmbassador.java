@@ -20,6 +20,8 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.HashSet;
 import java.util.Properties;
  
@@ -52,6 +54,7 @@ import org.portico.impl.hla1516e.types.time.DoubleTime;
 import org.portico.impl.hla1516e.types.time.DoubleTimeInterval;
 
 import org.portico.lrc.model.datatype.*;
+import org.portico2.common.utils.HandleValueMap;
  
 
 /**
@@ -87,6 +90,7 @@ public class ProxyRtiAmbassador
 	private ProxyFederateAmbassador fedamb;
 	private int id;
 	private Logger logger;
+	private ByteBuffer outgoing; // updates and interactions from C++, see getOutgoingBuffer()
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -175,6 +179,57 @@ public class ProxyRtiAmbassador
 		return handleSet;
 	}
 
+	/**
+	 * Updates and interactions are passed over from C++ in a direct buffer rather than as
+	 * arrays, so that the C++ side can just copy them in without making a JNI call for every
+	 * value. This returns the buffer for it to use, making a bigger one if the current one isn't
+	 * big enough to hold <code>size</code> bytes. The C++ side holds on to the buffer and only
+	 * calls this again when it needs more room.
+	 * <p/>
+	 * Each call that uses the buffer has the following written to the start of it (all in the
+	 * native byte order): int tag length, the tag bytes, int value count, then for each value an
+	 * int handle, int length and the value bytes.
+	 */
+	public ByteBuffer getOutgoingBuffer( int size )
+	{
+		if( outgoing == null || outgoing.capacity() < size )
+		{
+			int capacity = Math.max( size, outgoing == null ? 64*1024 : outgoing.capacity()*2 );
+			this.outgoing = ByteBuffer.allocateDirect( capacity ).order( ByteOrder.nativeOrder() );
+		}
+
+		return outgoing;
+	}
+
+	/**
+	 * Read the tag from the start of the outgoing buffer, leaving it positioned after it.
+	 * The length is the number of bytes the C++ side wrote to the buffer.
+	 */
+	private byte[] readTag( int length )
+	{
+		outgoing.clear();
+		outgoing.limit( length );
+		byte[] tag = new byte[outgoing.getInt()];
+		outgoing.get( tag );
+		return tag;
+	}
+
+	/** Read the values that come after the tag in the outgoing buffer */
+	private HandleValueMap readValues()
+	{
+		int count = outgoing.getInt();
+		HandleValueMap values = new HandleValueMap( count );
+		for( int i = 0; i < count; i++ )
+		{
+			int handle = outgoing.getInt();
+			byte[] value = new byte[outgoing.getInt()];
+			outgoing.get( value );
+			values.put( handle, value );
+		}
+
+		return values;
+	}
+
 	////////////////////////////////////////////////////////////////////////////////////////////
     ////////////////////////////// Federation Management Services //////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////////
@@ -189,6 +244,10 @@ public class ProxyRtiAmbassador
 			logger.trace( "connect() called" );
 			this.fedamb = new ProxyFederateAmbassador( this.id );
 			this.rtiamb.connect( this.fedamb, CallbackModel.valueOf(callbackModel) );
+
+			// held reflections and interactions are handed over at the end of each tick,
+			// while the federate is still flagged as being in a callback
+			this.rtiamb.getHelper().getLrc().setCallbackFlush( this.fedamb::flush );
 		}
 		catch( Exception e )
 		{
@@ -205,6 +264,7 @@ public class ProxyRtiAmbassador
 			this.rtiamb.disconnect();
 			
 			// remove our federate ambassador reference
+			this.rtiamb.getHelper().getLrc().setCallbackFlush( null );
 			this.fedamb = null;
 		}
 		catch( Exception e )
@@ -874,18 +934,15 @@ public class ProxyRtiAmbassador
 	}
 
 	// 6.10
-	public void updateAttributeValues( int theObject,
-	                                   int[] attributes,
-	                                   byte[][] values,
-	                                   byte[] tag )
+	public void updateAttributeValues( int theObject, int length )
 	{
 		try
 		{
-			HLA1516eAttributeHandleValueMap attributeValues = new HLA1516eAttributeHandleValueMap();
-			for( int i = 0; i < attributes.length; i++ )
-				attributeValues.put( new HLA1516eHandle(attributes[i]), values[i] );
-
-			rtiamb.updateAttributeValues( new HLA1516eHandle(theObject), attributeValues, tag );
+			byte[] tag = readTag( length );
+			HandleValueMap values = readValues();
+			rtiamb.updateAttributeValues( new HLA1516eHandle(theObject),
+			                              HLA1516eAttributeHandleValueMap.wrap(values),
+			                              tag );
 		}
 		catch( Exception e )
 		{
@@ -894,24 +951,17 @@ public class ProxyRtiAmbassador
 	}
 
 	// 6.10
-	public int updateAttributeValues( int theObject,
-	                                  int[] attributes,
-	                                  byte[][] values,
-	                                  byte[] tag,
-	                                  double theTime )
+	public int updateAttributeValues( int theObject, int length, double theTime )
 	{
 		try
 		{
-			HLA1516eHandle objectHandle = new HLA1516eHandle( theObject );
-			HLA1516eAttributeHandleValueMap attributeValues = new HLA1516eAttributeHandleValueMap();
-			DoubleTime time = new DoubleTime( theTime );
-			for( int i = 0; i < attributes.length; i++ )
-				attributeValues.put( new HLA1516eHandle(attributes[i]), values[i] );
-
-			MessageRetractionReturn result = rtiamb.updateAttributeValues( objectHandle,
-			                                                               attributeValues,
-			                                                               tag,
-			                                                               time );
+			byte[] tag = readTag( length );
+			HandleValueMap values = readValues();
+			MessageRetractionReturn result =
+				rtiamb.updateAttributeValues( new HLA1516eHandle(theObject),
+				                              HLA1516eAttributeHandleValueMap.wrap(values),
+				                              tag,
+				                              new DoubleTime(theTime) );
 			return HLA1516eHandle.fromHandle( result.handle );
 		}
 		catch( Exception e )
@@ -922,18 +972,15 @@ public class ProxyRtiAmbassador
 	}
 
 	// 6.12
-	public void sendInteraction( int theInteraction,
-	                             int[] parameters,
-	                             byte[][] values,
-	                             byte[] tag )
+	public void sendInteraction( int theInteraction, int length )
 	{
 		try
 		{
-			HLA1516eParameterHandleValueMap parameterValues = new HLA1516eParameterHandleValueMap();
-			for( int i = 0; i < parameters.length; i++ )
-				parameterValues.put( new HLA1516eHandle(parameters[i]), values[i] );
-
-			rtiamb.sendInteraction( new HLA1516eHandle(theInteraction), parameterValues, tag );
+			byte[] tag = readTag( length );
+			HandleValueMap values = readValues();
+			rtiamb.sendInteraction( new HLA1516eHandle(theInteraction),
+			                        HLA1516eParameterHandleValueMap.wrap(values),
+			                        tag );
 		}
 		catch( Exception e )
 		{
@@ -942,25 +989,17 @@ public class ProxyRtiAmbassador
 	}
 
 	// 6.12
-	public int sendInteraction( int theInteraction,
-	                            int[] parameters,
-	                            byte[][] values,
-	                            byte[] tag,
-	                            double theTime )
+	public int sendInteraction( int theInteraction, int length, double theTime )
 	{
 		try
 		{
-			HLA1516eHandle classHandle = new HLA1516eHandle( theInteraction );
-			HLA1516eParameterHandleValueMap parameterValues = new HLA1516eParameterHandleValueMap();
-			DoubleTime time = new DoubleTime( theTime );
-			for( int i = 0; i < parameters.length; i++ )
-				parameterValues.put( new HLA1516eHandle(parameters[i]), values[i] );
-
-			MessageRetractionReturn result = rtiamb.sendInteraction( classHandle,
-			                                                         parameterValues,
-			                                                         tag,
-			                                                         time );
-
+			byte[] tag = readTag( length );
+			HandleValueMap values = readValues();
+			MessageRetractionReturn result =
+				rtiamb.sendInteraction( new HLA1516eHandle(theInteraction),
+				                        HLA1516eParameterHandleValueMap.wrap(values),
+				                        tag,
+				                        new DoubleTime(theTime) );
 			return HLA1516eHandle.fromHandle( result.handle );
 		}
 		catch( Exception e )
@@ -2113,6 +2152,12 @@ public class ProxyRtiAmbassador
 	// 10.41
 	public boolean evokeCallback( double minSeconds )
 	{
+		// hold on to reflections and interactions until the LRC hands them over together at
+		// the end of the tick, inside the callback guard (see LRC.setCallbackFlush())
+		ProxyFederateAmbassador callbacks = this.fedamb;
+		if( callbacks != null )
+			callbacks.beginBatch();
+
 		try
 		{
 			return rtiamb.evokeCallback( minSeconds );
@@ -2122,11 +2167,22 @@ public class ProxyRtiAmbassador
 			ExceptionManager.pushException( this.id, e );
 			return false;
 		}
+		finally
+		{
+			if( callbacks != null )
+				callbacks.endBatch();
+		}
 	}
 
 	// 10.42
 	public boolean evokeMultipleCallbacks( double minSeconds, double maxSeconds )
 	{
+		// hold on to reflections and interactions until the LRC hands them over together at
+		// the end of the tick, inside the callback guard (see LRC.setCallbackFlush())
+		ProxyFederateAmbassador callbacks = this.fedamb;
+		if( callbacks != null )
+			callbacks.beginBatch();
+
 		try
 		{
 			return rtiamb.evokeMultipleCallbacks( minSeconds, maxSeconds );
@@ -2136,6 +2192,11 @@ public class ProxyRtiAmbassador
 			ExceptionManager.pushException( this.id, e );
 			return false;
 		}
+		finally
+		{
+			if( callbacks != null )
+				callbacks.endBatch();
+		}
 	}
 
 	// 10.43
@@ -17,7 +17,6 @@ package org.portico.impl.hla13.handlers;
 import hla.rti13.java1.EncodingHelpers;
 import hla.rti13.java1.ReceivedInteraction;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.portico.impl.hla13.types.DoubleTime;
@@ -62,7 +61,7 @@ public class ReceiveInteractionCallbackHandler extends HLA13CallbackHandler
 	{
 		SendInteraction request = context.getRequest( SendInteraction.class, this );
 		int classHandle = request.getInteractionId();
-		HashMap<Integer,byte[]> parameters = request.getParameters();
+		Map<Integer,byte[]> parameters = request.getParameters();
 		double timestamp = request.getTimestamp();
 
 		// log the callback
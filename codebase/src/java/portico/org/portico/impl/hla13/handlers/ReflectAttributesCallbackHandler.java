@@ -17,7 +17,6 @@ package org.portico.impl.hla13.handlers;
 import hla.rti13.java1.EncodingHelpers;
 import hla.rti13.java1.ReflectedAttributes;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.portico.impl.hla13.types.DoubleTime;
@@ -25,7 +24,7 @@ import org.portico.impl.hla13.types.HLA13ReflectedAttributes;
 import org.portico.utils.messaging.MessageContext;
 import org.portico.utils.messaging.MessageHandler;
 import org.portico2.common.services.object.msg.UpdateAttributes;
-import org.portico2.common.services.object.msg.UpdateAttributes.FilteredAttribute;
+import org.portico2.common.services.object.msg.UpdateAttributes.FilteredAttributes;
 
 /**
  * Generate reflectAttributeValues() callbacks to a HLA 1.3 compliant federate ambassador
@@ -62,8 +61,7 @@ public class ReflectAttributesCallbackHandler extends HLA13CallbackHandler
 	{
 		UpdateAttributes request = context.getRequest( UpdateAttributes.class, this );
 		int objectHandle = request.getObjectId();
-		HashMap<Integer,byte[]> attributes = request.getAttributes();
-		HashMap<Integer,FilteredAttribute> filteredAttributes = request.getFilteredAttributes();
+		FilteredAttributes filteredAttributes = request.getFilteredAttributes();
 		double timestamp = request.getTimestamp();
 
 		// log the callback
@@ -73,18 +71,8 @@ public class ReflectAttributesCallbackHandler extends HLA13CallbackHandler
 			if( request.isTimestamped() )
 				timeInfo = ",time:"+timestamp+") (TSO)";
 
-			// strip the supplied attributes of those that were not filtered out - this is a hack
-			// to deal with the new way of handling regions and filtered attributes
-			HashMap<Integer,byte[]> filteredValuesOnly = new HashMap<Integer,byte[]>();
-			for( Integer key : attributes.keySet() )
-			{
-				if( filteredAttributes.containsKey(key) )
-					filteredValuesOnly.put(key,attributes.get(key) );
-			}
-			
-			
 			logger.trace( "CALLBACK reflectAttributeValues(object="+objectHandle+",attributes="+
-			              super.acMonikerWithSizes(filteredValuesOnly)+timeInfo );
+			              super.acMonikerWithSizes(filteredAttributes.toHandleValueMap())+timeInfo );
 		}
 		
 		// do the callback
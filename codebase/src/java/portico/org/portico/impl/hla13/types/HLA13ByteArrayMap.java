@@ -24,7 +24,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.portico.lrc.model.RegionInstance;
-import org.portico2.common.services.object.msg.UpdateAttributes.FilteredAttribute;
+import org.portico2.common.services.object.msg.UpdateAttributes.FilteredAttributes;
 
 /**
  * This class provides the common Map "functionality" required by the HLA 1.3 spec. Implementations
@@ -80,13 +80,12 @@ public class HLA13ByteArrayMap implements Serializable
 	 * the filtered information and will populate the local array-map from it. This only applies
 	 * to attribute reflections and not interactions. 
 	 */
-	public void populateForCallback( Map<Integer,FilteredAttribute> filteredAttributes )
+	public void populateForCallback( FilteredAttributes filteredAttributes )
 	{
-		for( Integer key : filteredAttributes.keySet() )
+		for( int i = 0; i < filteredAttributes.size(); i++ )
 		{
-			FilteredAttribute filtered = filteredAttributes.get( key );
-			this.pairs.add( new Pair(key,filtered.value) );
-			this.regions.add( filtered.region );
+			this.pairs.add( new Pair(filteredAttributes.handleAt(i),filteredAttributes.valueAt(i)) );
+			this.regions.add( filteredAttributes.regionAt(i) );
 		}
 	}
 	
@@ -14,7 +14,6 @@
  */
 package org.portico.impl.hla13.types;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.portico.lrc.model.RegionInstance;
@@ -43,7 +42,7 @@ public class HLA13ReceivedInteraction implements ReceivedInteraction
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
-	public HLA13ReceivedInteraction( HashMap<Integer,byte[]> values, RegionInstance region )
+	public HLA13ReceivedInteraction( Map<Integer,byte[]> values, RegionInstance region )
 	{
 		this.values = new HLA13ByteArrayMap( values );
 		if( region == null )
@@ -18,11 +18,10 @@ import hla.rti.ArrayIndexOutOfBounds;
 import hla.rti.ReflectedAttributes;
 import hla.rti.Region;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.portico.lrc.model.RegionInstance;
-import org.portico2.common.services.object.msg.UpdateAttributes.FilteredAttribute;
+import org.portico2.common.services.object.msg.UpdateAttributes.FilteredAttributes;
 
 /**
  * This class just wraps a {@link HLA13ByteArrayMap HLA13ByteArrayMap} and passes all the relevant
@@ -43,7 +42,7 @@ public class HLA13ReflectedAttributes implements ReflectedAttributes
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
-	public HLA13ReflectedAttributes( HashMap<Integer,FilteredAttribute> filteredAttributes )
+	public HLA13ReflectedAttributes( FilteredAttributes filteredAttributes )
 	{
 		this.values = new HLA13ByteArrayMap();
 		this.values.populateForCallback( filteredAttributes );
@@ -16,7 +16,6 @@ package org.portico.impl.hla1516.handlers;
 
 import hla.rti1516.FederateAmbassador;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.portico.impl.hla1516.Impl1516Helper;
@@ -66,7 +65,7 @@ public class ReceiveInteractionCallbackHandler extends LRCMessageHandler
 	{
 		SendInteraction request = context.getRequest( SendInteraction.class, this );
 		int classHandle = request.getInteractionId();
-		HashMap<Integer,byte[]> parameters = request.getParameters();
+		Map<Integer,byte[]> parameters = request.getParameters();
 		double timestamp = request.getTimestamp();
 
 		// convert the attributes into an appropriate form
@@ -16,7 +16,6 @@ package org.portico.impl.hla1516e;
 
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -145,6 +144,7 @@ import org.portico2.common.services.time.msg.ModifyLookahead;
 import org.portico2.common.services.time.msg.NextEventRequest;
 import org.portico2.common.services.time.msg.QueryGalt;
 import org.portico2.common.services.time.msg.TimeAdvanceRequest;
+import org.portico2.common.utils.HandleValueMap;
 import org.portico2.lrc.services.object.data.LOCInstance;
 
 /**
@@ -2116,7 +2116,7 @@ public abstract class Rti1516eAmbassador implements RTIambassador
 		///////////////////////////////////////////////////////
 		// 1. create the message and pass it to the LRC sink //
 		///////////////////////////////////////////////////////
-		HashMap<Integer,byte[]> map = HLA1516eAttributeHandleValueMap.toJavaMap( theAttributes );
+		HandleValueMap map = HLA1516eAttributeHandleValueMap.toHandleValueMap( theAttributes );
 		int objectId = HLA1516eHandle.fromHandle( theObject );
 		UpdateAttributes request = new UpdateAttributes( objectId, tag, map );
 		ResponseMessage response = processMessage( request );
@@ -2198,7 +2198,7 @@ public abstract class Rti1516eAmbassador implements RTIambassador
 		if( theTime != null )
 			doubleTime = DoubleTime.fromTime( theTime );
 
-		HashMap<Integer,byte[]> map = HLA1516eAttributeHandleValueMap.toJavaMap( theAttributes );
+		HandleValueMap map = HLA1516eAttributeHandleValueMap.toHandleValueMap( theAttributes );
 		int oHandle = HLA1516eHandle.fromHandle( theObject );
 		
 		///////////////////////////////////////////////////////
@@ -2284,7 +2284,7 @@ public abstract class Rti1516eAmbassador implements RTIambassador
 		///////////////////////////////////////////////////////
 		// 1. create the message and pass it to the LRC sink //
 		///////////////////////////////////////////////////////
-		HashMap<Integer,byte[]> map = HLA1516eParameterHandleValueMap.toJavaMap( theParameters ); 
+		HandleValueMap map = HLA1516eParameterHandleValueMap.toHandleValueMap( theParameters ); 
 		int interactionId = HLA1516eHandle.fromHandle( theInteraction );
 		SendInteraction request = new SendInteraction( interactionId, tag, map );
 		ResponseMessage response = processMessage( request );
@@ -2365,7 +2365,7 @@ public abstract class Rti1516eAmbassador implements RTIambassador
 		double doubleTime = PorticoConstants.NULL_TIME;
 		if( theTime != null )
 			doubleTime = DoubleTime.fromTime( theTime );
-		HashMap<Integer,byte[]> map = HLA1516eParameterHandleValueMap.toJavaMap( theParameters );
+		HandleValueMap map = HLA1516eParameterHandleValueMap.toHandleValueMap( theParameters );
 		int iHandle = HLA1516eHandle.fromHandle( theInteraction );
 
 		///////////////////////////////////////////////////////
@@ -16,7 +16,6 @@ package org.portico.impl.hla1516e.handlers;
 
 import hla.rti1516e.OrderType;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import static org.portico.impl.hla1516e.types.HLA1516eTransportationTypeHandleFactory.*;
@@ -28,6 +27,7 @@ import org.portico.impl.hla1516e.types.HLA1516eParameterHandleValueMap;
 import org.portico.utils.messaging.MessageContext;
 import org.portico.utils.messaging.MessageHandler;
 import org.portico2.common.services.object.msg.SendInteraction;
+import org.portico2.common.utils.HandleValueMap;
 
 /**
  * Generate receiveInteraction() callbacks to a IEEE1516e compliant federate ambassador
@@ -63,11 +63,11 @@ public class ReceiveInteractionCallbackHandler extends HLA1516eCallbackHandler
 	{
 		SendInteraction request = context.getRequest( SendInteraction.class, this );
 		int classHandle = request.getInteractionId();
-		HashMap<Integer,byte[]> parameters = request.getParameters();
+		HandleValueMap parameters = request.getParameters();
 		double timestamp = request.getTimestamp();
 
-		// convert the attributes into an appropriate form
-		HLA1516eParameterHandleValueMap received = new HLA1516eParameterHandleValueMap(parameters);
+		// wrap the parameters in an appropriate form, they'll only be copied if the federate changes them
+		HLA1516eParameterHandleValueMap received = HLA1516eParameterHandleValueMap.wrap( parameters );
 		
 		// generate the Supplemental Information
 		SupplementalInfo supplement = null;//new SupplementalInfo( request.getSourceFederate() );
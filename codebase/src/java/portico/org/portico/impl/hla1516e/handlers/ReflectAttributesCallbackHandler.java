@@ -16,7 +16,6 @@ package org.portico.impl.hla1516e.handlers;
 
 import hla.rti1516e.OrderType;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import static org.portico.impl.hla1516e.types.HLA1516eTransportationTypeHandleFactory.*;
@@ -28,7 +27,7 @@ import org.portico.impl.hla1516e.types.HLA1516eHandle;
 import org.portico.utils.messaging.MessageContext;
 import org.portico.utils.messaging.MessageHandler;
 import org.portico2.common.services.object.msg.UpdateAttributes;
-import org.portico2.common.services.object.msg.UpdateAttributes.FilteredAttribute;
+import org.portico2.common.utils.HandleValueMap;
 
 /**
  * Generate reflectAttributeValues() callbacks to a IEEE1516e compliant federate ambassador
@@ -64,11 +63,11 @@ public class ReflectAttributesCallbackHandler extends HLA1516eCallbackHandler
 	{
 		UpdateAttributes request = context.getRequest( UpdateAttributes.class, this );
 		int objectHandle = request.getObjectId();
-		HashMap<Integer,byte[]> attributes = getFilteredAttributes( request );
+		HandleValueMap attributes = request.getFilteredAttributes().toHandleValueMap();
 		double timestamp = request.getTimestamp();
 
-		// convert the attributes into an appropriate form
-		HLA1516eAttributeHandleValueMap reflected = new HLA1516eAttributeHandleValueMap(attributes);
+		// wrap the attributes in an appropriate form, they'll only be copied if the federate changes them
+		HLA1516eAttributeHandleValueMap reflected = HLA1516eAttributeHandleValueMap.wrap( attributes );
 		SupplementalInfo supplement = null;//new SupplementalInfo( request.getSourceFederate() );
 		
 		
@@ -113,23 +112,6 @@ public class ReflectAttributesCallbackHandler extends HLA1516eCallbackHandler
 			logger.trace( "         reflectAttributeValues() callback complete" );
 	}
 
-	/**
-	 * The set of filtered attributes that should be delivered to the federate are contained in a
-	 * Map<Integer,FilteredAttribute> where FilteredAttribute contains the byte[] value and the
-	 * subscription region that overlapped with the sending region. This information is put into
-	 * the information returned in the callback in HLA 1.3, but isn't in 1516. This method converts
-	 * that map into a Map<Integer,byte[]> we can deliver as part of a 1516 callback.
-	 */
-	private HashMap<Integer,byte[]> getFilteredAttributes( UpdateAttributes request )
-	{
-		HashMap<Integer,byte[]> filteredSet = new HashMap<Integer,byte[]>();
-		HashMap<Integer,FilteredAttribute> received = request.getFilteredAttributes();
-		for( Integer attribute : received.keySet() )
-			filteredSet.put( attribute, received.get(attribute).value );
-		
-		return filteredSet;
-	}
-
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -17,7 +17,6 @@ package org.portico.impl.hla1516e.handlers2;
 import static org.portico.impl.hla1516e.types.HLA1516eTransportationTypeHandleFactory.BEST_EFFORT;
 import static org.portico.impl.hla1516e.types.HLA1516eTransportationTypeHandleFactory.RELIABLE;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.portico.impl.hla1516e.types.HLA1516eHandle;
@@ -26,6 +25,7 @@ import org.portico.impl.hla1516e.types.time.DoubleTime;
 import org.portico.lrc.compat.JConfigurationException;
 import org.portico2.common.messaging.MessageContext;
 import org.portico2.common.services.object.msg.SendInteraction;
+import org.portico2.common.utils.HandleValueMap;
 
 import hla.rti1516e.InteractionClassHandle;
 import hla.rti1516e.LogicalTime;
@@ -60,11 +60,11 @@ public class ReceiveInteractionCallbackHandler extends LRC1516eCallbackHandler
 	{
 		SendInteraction request = context.getRequest( SendInteraction.class, this );
 		InteractionClassHandle classHandle = new HLA1516eHandle( request.getInteractionId() );
-		HashMap<Integer,byte[]> parameters = request.getParameters();
+		HandleValueMap parameters = request.getParameters();
 		byte[] tag = request.getTag();
 
-		// convert the attributes into an appropriate form
-		HLA1516eParameterHandleValueMap received = new HLA1516eParameterHandleValueMap(parameters);
+		// wrap the parameters in an appropriate form, they'll only be copied if the federate changes them
+		HLA1516eParameterHandleValueMap received = HLA1516eParameterHandleValueMap.wrap( parameters );
 		
 		// generate the Supplemental Information
 		SupplementalInfo supplement = new SupplementalInfo( request.getSourceFederate() );
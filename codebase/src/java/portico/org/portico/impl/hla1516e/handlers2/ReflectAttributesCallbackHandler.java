@@ -14,7 +14,6 @@
  */
 package org.portico.impl.hla1516e.handlers2;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.portico.impl.hla1516e.types.HLA1516eAttributeHandleValueMap;
@@ -23,7 +22,7 @@ import org.portico.impl.hla1516e.types.time.DoubleTime;
 import org.portico.lrc.compat.JConfigurationException;
 import org.portico2.common.messaging.MessageContext;
 import org.portico2.common.services.object.msg.UpdateAttributes;
-import org.portico2.common.services.object.msg.UpdateAttributes.FilteredAttribute;
+import org.portico2.common.utils.HandleValueMap;
 
 import static org.portico.impl.hla1516e.types.HLA1516eTransportationTypeHandleFactory.*;
 
@@ -60,11 +59,11 @@ public class ReflectAttributesCallbackHandler extends LRC1516eCallbackHandler
 	{
 		UpdateAttributes request = context.getRequest( UpdateAttributes.class, this );
 		ObjectInstanceHandle handle = new HLA1516eHandle( request.getObjectId() );
-		HashMap<Integer,byte[]> attributes = getFilteredAttributes( request );
+		HandleValueMap attributes = request.getFilteredAttributes().toHandleValueMap();
 		byte[] tag = request.getTag();
 
-		// convert the attributes into an appropriate form
-		HLA1516eAttributeHandleValueMap reflected = new HLA1516eAttributeHandleValueMap(attributes);
+		// wrap the attributes in an appropriate form, they'll only be copied if the federate changes them
+		HLA1516eAttributeHandleValueMap reflected = HLA1516eAttributeHandleValueMap.wrap( attributes );
 		SupplementalInfo supplement = null;//new SupplementalInfo( request.getSourceFederate() );
 		
 		
@@ -130,23 +129,6 @@ public class ReflectAttributesCallbackHandler extends LRC1516eCallbackHandler
 			logger.trace( "         reflectAttributeValues() callback complete" );
 	}
 
-	/**
-	 * The set of filtered attributes that should be delivered to the federate are contained in a
-	 * Map<Integer,FilteredAttribute> where FilteredAttribute contains the byte[] value and the
-	 * subscription region that overlapped with the sending region. This information is put into
-	 * the information returned in the callback in HLA 1.3, but isn't in 1516. This method converts
-	 * that map into a Map<Integer,byte[]> we can deliver as part of a 1516 callback.
-	 */
-	private HashMap<Integer,byte[]> getFilteredAttributes( UpdateAttributes request )
-	{
-		HashMap<Integer,byte[]> filteredSet = new HashMap<Integer,byte[]>();
-		HashMap<Integer,FilteredAttribute> received = request.getFilteredAttributes();
-		for( Integer attribute : received.keySet() )
-			filteredSet.put( attribute, received.get(attribute).value );
-		
-		return filteredSet;
-	}
-
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -22,13 +22,21 @@ import hla.rti1516e.exceptions.RTIinternalError;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.portico2.common.utils.HandleValueMap;
+
+/**
+ * Portico's {@link AttributeHandleValueMap}. The values are held in a {@link HandleValueMap} so that
+ * they can be handed to (and taken from) the RTI messages without being converted one entry at a
+ * time. See {@link HLA1516eHandleValueMap} for the details.
+ */
 public class HLA1516eAttributeHandleValueMap
-       extends HashMap<AttributeHandle,byte[]>
+       extends HLA1516eHandleValueMap<AttributeHandle>
        implements AttributeHandleValueMap
 {
 	//----------------------------------------------------------
 	//                    STATIC VARIABLES
 	//----------------------------------------------------------
+	private static final long serialVersionUID = 98121116105109L;
 
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
@@ -39,7 +47,7 @@ public class HLA1516eAttributeHandleValueMap
 	//----------------------------------------------------------
 	public HLA1516eAttributeHandleValueMap()
 	{
-		super();
+		super( 0 );
 	}
 
 	public HLA1516eAttributeHandleValueMap( int capacity )
@@ -49,9 +57,12 @@ public class HLA1516eAttributeHandleValueMap
 
 	public HLA1516eAttributeHandleValueMap( Map<Integer,byte[]> attributes )
 	{
-		this();
-		for( Integer attribute : attributes.keySet() )
-			this.put( new HLA1516eHandle(attribute), attributes.get(attribute) );
+		super( new HandleValueMap(attributes), false );
+	}
+
+	private HLA1516eAttributeHandleValueMap( HandleValueMap attributes, boolean shared )
+	{
+		super( attributes, shared );
 	}
 
 	//----------------------------------------------------------
@@ -89,6 +100,41 @@ public class HLA1516eAttributeHandleValueMap
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
+	/**
+	 * Create a map for a callback around the given values without copying them. They will
+	 * only be copied if the federate makes changes to the map.
+	 */
+	public static HLA1516eAttributeHandleValueMap wrap( HandleValueMap attributes )
+	{
+		return new HLA1516eAttributeHandleValueMap( attributes, true );
+	}
+
+	/**
+	 * Convert the given map into the form used inside the RTI. The federate is free to change
+	 * its map once the call has returned, so this is always a copy. If the map is one of ours,
+	 * that is just a copy of its arrays.
+	 */
+	public static HandleValueMap toHandleValueMap( AttributeHandleValueMap map )
+		throws RTIinternalError
+	{
+		if( map instanceof HLA1516eAttributeHandleValueMap )
+			return ((HLA1516eAttributeHandleValueMap)map).getHandleValueMap().copy();
+
+		try
+		{
+			HandleValueMap realMap = new HandleValueMap( map.size() );
+			for( Map.Entry<AttributeHandle,byte[]> entry : map.entrySet() )
+				realMap.put( ((HLA1516eHandle)entry.getKey()).handle, entry.getValue() );
+
+			return realMap;
+		}
+		catch( Exception e )
+		{
+			throw new RTIinternalError( "Can't convert AttributeHandleValueMap to Portico native type: " +
+			                            e.getMessage() , e );
+		}
+	}
+
 	public static HashMap<Integer,byte[]> toJavaMap( AttributeHandleValueMap map )
 		throws RTIinternalError
 	{
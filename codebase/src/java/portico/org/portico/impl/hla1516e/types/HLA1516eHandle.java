@@ -14,6 +14,8 @@
  */
 package org.portico.impl.hla1516e.types;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import org.portico.lrc.model.ObjectModel;
 import org.portico.utils.bithelpers.BitHelpers;
 
@@ -67,6 +69,11 @@ public class HLA1516eHandle implements AttributeHandle,
 	//----------------------------------------------------------
 	public static final int EncodedLength = 8;
 
+	// shared instances of the handles we see most, see valueOf()
+	private static final int CACHE_SIZE = 4096;
+	private static final AtomicReferenceArray<HLA1516eHandle> CACHE =
+		new AtomicReferenceArray<>( CACHE_SIZE );
+
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
 	//----------------------------------------------------------
@@ -136,6 +143,28 @@ public class HLA1516eHandle implements AttributeHandle,
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
+	/**
+	 * Get a handle with the given value. Handles below a limit (which covers those that the
+	 * object model hands out for most FOMs) are created once and then shared, so use this
+	 * rather than the constructor in places that are hit for every attribute or parameter.
+	 * Don't {@link #decode(byte[], int)} into a handle obtained from here.
+	 */
+	public static HLA1516eHandle valueOf( int handle )
+	{
+		if( handle < 0 || handle >= CACHE_SIZE )
+			return new HLA1516eHandle( handle );
+
+		HLA1516eHandle cached = CACHE.get( handle );
+		if( cached == null )
+		{
+			// if someone else beats us to it, use theirs
+			CACHE.compareAndSet( handle, null, new HLA1516eHandle(handle) );
+			cached = CACHE.get( handle );
+		}
+
+		return cached;
+	}
+
 	/**
 	 * Decode a generic handle. Should only pass one of the standard handle interfaces
 	 * to this method, otherwise you'll get a class cast exception.
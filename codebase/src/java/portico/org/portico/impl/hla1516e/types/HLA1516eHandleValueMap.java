@@ -0,0 +1,250 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.impl.hla1516e.types;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.portico2.common.utils.HandleValueMap;
+
+/**
+ * Common parent of {@link HLA1516eAttributeHandleValueMap} and
+ * {@link HLA1516eParameterHandleValueMap}. Both are a thin layer over a {@link HandleValueMap},
+ * which is what the RTI uses internally, so values can be passed between the federate and the
+ * RTI without converting every entry.
+ * <p/>
+ *
+ * For callbacks the map is built around the values that came in with the message (see the
+ * <code>wrap()</code> methods on the subclasses) rather than a copy of them. If the federate
+ * changes the map, it will take its own copy first. Handles given out as keys are the shared
+ * instances from {@link HLA1516eHandle#valueOf(int)}, so iterating doesn't create new ones.
+ */
+abstract class HLA1516eHandleValueMap<K> extends AbstractMap<K,byte[]>
+                                         implements Cloneable, Serializable
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final long serialVersionUID = 98121116105109L;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private HandleValueMap values;
+	private boolean shared; // values belong to someone else, copy them before making changes
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	protected HLA1516eHandleValueMap( int capacity )
+	{
+		this.values = new HandleValueMap( capacity );
+		this.shared = false;
+	}
+
+	protected HLA1516eHandleValueMap( HandleValueMap values, boolean shared )
+	{
+		this.values = values;
+		this.shared = shared;
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * @return The underlying values. These may be shared with a message, so don't change them.
+	 */
+	public HandleValueMap getHandleValueMap()
+	{
+		return values;
+	}
+
+	/** @return The underlying values, copied first if they are shared with anyone else */
+	private HandleValueMap writable()
+	{
+		if( shared )
+		{
+			this.values = values.copy();
+			this.shared = false;
+		}
+
+		return values;
+	}
+
+	@Override
+	public int size()
+	{
+		return values.size();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return values.isEmpty();
+	}
+
+	@Override
+	public byte[] get( Object key )
+	{
+		if( key instanceof HLA1516eHandle )
+			return values.get( ((HLA1516eHandle)key).handle );
+		else
+			return null;
+	}
+
+	@Override
+	public boolean containsKey( Object key )
+	{
+		return key instanceof HLA1516eHandle && values.containsKey( ((HLA1516eHandle)key).handle );
+	}
+
+	@Override
+	public byte[] put( K key, byte[] value )
+	{
+		return writable().put( ((HLA1516eHandle)key).handle, value );
+	}
+
+	@Override
+	public byte[] remove( Object key )
+	{
+		if( key instanceof HLA1516eHandle && containsKey(key) )
+			return writable().remove( ((HLA1516eHandle)key).handle );
+		else
+			return null;
+	}
+
+	@Override
+	public void clear()
+	{
+		if( shared )
+		{
+			this.values = new HandleValueMap();
+			this.shared = false;
+		}
+		else
+		{
+			values.clear();
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<K,byte[]>> entrySet()
+	{
+		return new EntrySet();
+	}
+
+	/**
+	 * Shallow copy. The clone and this map share their values until one of them changes.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object clone()
+	{
+		try
+		{
+			HLA1516eHandleValueMap<K> clone = (HLA1516eHandleValueMap<K>)super.clone();
+			clone.shared = true;
+			this.shared = true;
+			return clone;
+		}
+		catch( CloneNotSupportedException cnse )
+		{
+			throw new InternalError( cnse );
+		}
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Private Inner Class: EntrySet   ///////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	private class EntrySet extends AbstractSet<Map.Entry<K,byte[]>>
+	{
+		@Override
+		public int size()
+		{
+			return values.size();
+		}
+
+		@Override
+		public void clear()
+		{
+			HLA1516eHandleValueMap.this.clear();
+		}
+
+		@Override
+		public Iterator<Map.Entry<K,byte[]>> iterator()
+		{
+			return new Iterator<Map.Entry<K,byte[]>>()
+			{
+				private int next = 0;
+				private int last = -1;
+
+				public boolean hasNext()
+				{
+					return next < values.size();
+				}
+
+				public Map.Entry<K,byte[]> next()
+				{
+					if( next >= values.size() )
+						throw new NoSuchElementException();
+
+					last = next++;
+					return new Entry( values.handleAt(last), values.valueAt(last) );
+				}
+
+				public void remove()
+				{
+					if( last == -1 )
+						throw new IllegalStateException();
+
+					// the last entry moves into the removed position, so visit that one next
+					writable().remove( values.handleAt(last) );
+					next = last;
+					last = -1;
+				}
+			};
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Private Inner Class: Entry   //////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	private class Entry extends AbstractMap.SimpleEntry<K,byte[]>
+	{
+		private static final long serialVersionUID = 98121116105109L;
+
+		@SuppressWarnings("unchecked")
+		private Entry( int handle, byte[] value )
+		{
+			super( (K)HLA1516eHandle.valueOf(handle), value );
+		}
+
+		@Override
+		public byte[] setValue( byte[] value )
+		{
+			writable().put( ((HLA1516eHandle)getKey()).handle, value );
+			return super.setValue( value );
+		}
+	}
+}
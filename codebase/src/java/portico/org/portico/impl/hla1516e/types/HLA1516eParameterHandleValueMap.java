@@ -22,13 +22,21 @@ import hla.rti1516e.exceptions.RTIinternalError;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.portico2.common.utils.HandleValueMap;
+
+/**
+ * Portico's {@link ParameterHandleValueMap}. The values are held in a {@link HandleValueMap} so that
+ * they can be handed to (and taken from) the RTI messages without being converted one entry at a
+ * time. See {@link HLA1516eHandleValueMap} for the details.
+ */
 public class HLA1516eParameterHandleValueMap
-       extends HashMap<ParameterHandle,byte[]>
+       extends HLA1516eHandleValueMap<ParameterHandle>
        implements ParameterHandleValueMap
 {
 	//----------------------------------------------------------
 	//                    STATIC VARIABLES
 	//----------------------------------------------------------
+	private static final long serialVersionUID = 98121116105109L;
 
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
@@ -39,19 +47,22 @@ public class HLA1516eParameterHandleValueMap
 	//----------------------------------------------------------
 	public HLA1516eParameterHandleValueMap()
 	{
-		super();
+		super( 0 );
 	}
 
 	public HLA1516eParameterHandleValueMap( int capacity )
 	{
 		super( capacity );
 	}
-	
+
 	public HLA1516eParameterHandleValueMap( Map<Integer,byte[]> parameters )
 	{
-		this();
-		for( Integer parameter : parameters.keySet() )
-			this.put( new HLA1516eHandle(parameter), parameters.get(parameter) );
+		super( new HandleValueMap(parameters), false );
+	}
+
+	private HLA1516eParameterHandleValueMap( HandleValueMap parameters, boolean shared )
+	{
+		super( parameters, shared );
 	}
 
 	//----------------------------------------------------------
@@ -89,6 +100,41 @@ public class HLA1516eParameterHandleValueMap
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
+	/**
+	 * Create a map for a callback around the given values without copying them. They will
+	 * only be copied if the federate makes changes to the map.
+	 */
+	public static HLA1516eParameterHandleValueMap wrap( HandleValueMap parameters )
+	{
+		return new HLA1516eParameterHandleValueMap( parameters, true );
+	}
+
+	/**
+	 * Convert the given map into the form used inside the RTI. The federate is free to change
+	 * its map once the call has returned, so this is always a copy. If the map is one of ours,
+	 * that is just a copy of its arrays.
+	 */
+	public static HandleValueMap toHandleValueMap( ParameterHandleValueMap map )
+		throws RTIinternalError
+	{
+		if( map instanceof HLA1516eParameterHandleValueMap )
+			return ((HLA1516eParameterHandleValueMap)map).getHandleValueMap().copy();
+
+		try
+		{
+			HandleValueMap realMap = new HandleValueMap( map.size() );
+			for( Map.Entry<ParameterHandle,byte[]> entry : map.entrySet() )
+				realMap.put( ((HLA1516eHandle)entry.getKey()).handle, entry.getValue() );
+
+			return realMap;
+		}
+		catch( Exception e )
+		{
+			throw new RTIinternalError( "Can't convert ParameterHandleValueMap to Portico native type: " +
+			                            e.getMessage() , e );
+		}
+	}
+
 	public static HashMap<Integer,byte[]> toJavaMap( ParameterHandleValueMap map )
 		throws RTIinternalError
 	{
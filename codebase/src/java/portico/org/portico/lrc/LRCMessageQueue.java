@@ -17,18 +17,15 @@ package org.portico.lrc;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.portico.lrc.services.saverestore.data.SaveRestoreTarget;
+import org.portico.utils.messaging.CallbackQueue;
 import org.portico.utils.messaging.MessageContext;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.services.time.data.TimeStatus;
@@ -47,6 +44,12 @@ import org.portico2.common.services.time.data.TimeStatus;
  * state (briefly: when the federation-lbts is greater-or-equal to the timestamp AND the time of
  * the local federate is as well).
  * <p/>
+ * The messages themselves are held in a {@link CallbackQueue}. Offering a message never takes a
+ * lock; it is just put on a lock-free incoming queue. The thread that takes messages out (the
+ * tick thread, or the immediate callback thread) sorts anything that has come in into the RO or
+ * TSO queues before it looks at them. The lock in this class is only ever shared between threads
+ * taking messages out, so the network receivers never have to fight over it.
+ * <p/>
  * Any messages that are placed in the queue and have the
  * {@link PorticoMessage#isImmediateProcessingRequired()} flag set will be automatically routed
  * into the incoming sink of the kernel associated with the LRC rather than storing them. I repeat,
@@ -64,15 +67,13 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	private LRC lrc;
 	private LRCState state;
 	
-	private BlockingQueue<PorticoMessage> roQueue;
-	private PriorityBlockingQueue<PorticoMessage> tsoQueue;
+	private CallbackQueue queue;
 
 	// hla-related properties //
 	private TimeStatus timeStatus;
 	
 	// locking and concurrency //
-	private Lock lock;
-	private Condition condition;
+	private Lock lock; // only taken by threads removing messages
 	
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -82,12 +83,10 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	{
 		this.state = lrcState;
 		this.lrc = lrcState.theLRC;
-		this.roQueue = new LinkedBlockingQueue<PorticoMessage>();
-		this.tsoQueue = new PriorityBlockingQueue<PorticoMessage>( 13, new Sorter() );
+		this.queue = new CallbackQueue();
 		
 		// locking and concurrency //
 		this.lock = new ReentrantLock();
-		this.condition = this.lock.newCondition();
 		
 		// this will be lazy-loaded
 		// when a federate first joins a federation, the time status will be created and
@@ -138,6 +137,11 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	 * Timestamped messages will be ordered according to their time (lowest to highest). If the
 	 * federate is *NOT* constrained, messages will automatically be stored in the RO queue (and
 	 * will have their times set to PorticoConstants.NULL_TIME).
+	 * <p/>
+	 * Whether the message is treated as RO or TSO is decided here, using the constrained status
+	 * at the time it is offered (so a message that arrives while we are not constrained is still
+	 * RO even if constrained is enabled before it is taken out). The thread that takes messages
+	 * out just files it accordingly. This method does not block.
 	 * 
 	 * @return true if the message was successfully added to the queue, false otherwise.
 	 */
@@ -145,49 +149,55 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	{
 		if( message == null )
 			return false;
-		
-		lock.lock();
-		try
+
+		// if this is a priority message, process it right away
+		if( message.isImmediateProcessingRequired() )
 		{
-			// if this is a priority message, process it right away (removed for now)
-			if( message.isImmediateProcessingRequired() )
+			try
 			{
-				try
-				{
-					lrc.incoming.process( new MessageContext(message) );
-					return true;
-				}
-				catch( Exception e )
-				{
-					lrc.logger.info( "Exception processing priority message", e );
-					return false;
-				}
+				lrc.incoming.process( new MessageContext(message) );
+				return true;
 			}
-			
-			// FIX: PORT-103: If not constrained, store the message RO and remove the timestamp
-			if( timeStatus().isConstrained() == false )
+			catch( Exception e )
 			{
-				message.setTimestamp( PorticoConstants.NULL_TIME );
-				return this.roQueue.offer( message );
+				lrc.logger.info( "Exception processing priority message", e );
+				return false;
 			}
-			
-			// check if it is RO or TSO
+			finally
+			{
+				// processing may have changed what can be released
+				queue.wake();
+			}
+		}
+
+		// FIX: PORT-103: If not constrained, store the message RO and remove the timestamp
+		if( timeStatus().isConstrained() == false )
+			message.setTimestamp( PorticoConstants.NULL_TIME );
+
+		// hand it over, waking the tick thread if it is waiting for something to arrive
+		queue.add( message );
+		return true;
+	}
+
+	/**
+	 * Move anything that has been offered since we last looked into the RO or TSO queue.
+	 * The lock must be held when calling this.
+	 */
+	private void sortIncoming()
+	{
+		PorticoMessage message = null;
+		while( (message = queue.takeIncoming()) != null )
+		{
+			// offer() has already removed the timestamp if we weren't constrained (PORT-103)
 			if( message.isTimestamped() )
 			{
-				return this.tsoQueue.offer( message );
+				queue.putTimestamped( message );
 			}
 			else
 			{
-				return this.roQueue.offer( message );
+				queue.putReceiveOrder( message );
 			}
 		}
-		finally
-		{
-			// signal to any threads waiting on the condition
-			condition.signalAll();
-			// release the lock
-			lock.unlock();
-		}
 	}
 
 	/**
@@ -219,13 +229,14 @@ public class LRCMessageQueue implements SaveRestoreTarget
 		// check for a message //
 		try
 		{
+			sortIncoming();
 			TimeStatus localStatus = timeStatus();
 
 			///////////////////////////////
 			// check for any RO messages //
 			///////////////////////////////
 			// is there an RO message for delivery?
-			if( this.roQueue.isEmpty() == false )
+			if( queue.hasReceiveOrder() )
 			{
 				// we have an RO message
 				////////////////////////////
@@ -246,19 +257,20 @@ public class LRCMessageQueue implements SaveRestoreTarget
 					localStatus.isAsynchronous() == false &&
 					localStatus.isAdvanceRequestOutstanding() == false )
 				{
-					return this.pollForNonMessage();
+					// non-"messages" are kept separately, so this is just the head of that lane
+					return queue.pollReceiveOrderCallback();
 				}
 				else
 				{
 					// we don't need to worry about the async status, just deliver the RO message
-					return this.roQueue.poll();
+					return queue.pollReceiveOrder();
 				}
 			}
 			
 			////////////////////////////////////////////////////////
 			// no RO messages - check for releasable TSO messages //
 			////////////////////////////////////////////////////////
-			PorticoMessage message = this.tsoQueue.peek();
+			PorticoMessage message = queue.peekTimestamped();
 			if( message != null )
 			{
 				// There is a message at the head of the set, is it of a releasable time?
@@ -271,13 +283,13 @@ public class LRCMessageQueue implements SaveRestoreTarget
 				if( message.isTimeAdvance() )
 				{
 					// it is! release it - we also need to remove it, so we'll poll
-					return this.tsoQueue.poll();
+					return queue.pollTimestamped();
 				}
 				else if( message.getTimestamp() <= federationLbts() &&
 				         message.getTimestamp() <= localStatus.getRequestedTime() )
 				{
 					// it is! release it - we also need to remove it, so we'll poll
-					return this.tsoQueue.poll();
+					return queue.pollTimestamped();
 				}
 			}
 	
@@ -306,20 +318,21 @@ public class LRCMessageQueue implements SaveRestoreTarget
 
 		try
 		{
+			sortIncoming();
 			List<PorticoMessage> flushList = new ArrayList<PorticoMessage>();
 
 			// flush out all the RO messages
-			roQueue.drainTo( flushList );
+			queue.drainReceiveOrder( flushList );
 
 			// get all the TSO messages up to the specified time
-			PorticoMessage temp = tsoQueue.peek();
+			PorticoMessage temp = queue.peekTimestamped();
 			while( temp != null )
 			{
 				if( temp.getTimestamp() > maxTime )
 					break;
 
-				flushList.add( tsoQueue.poll() );
-				temp = tsoQueue.peek();
+				flushList.add( queue.pollTimestamped() );
+				temp = queue.peekTimestamped();
 			}
 
 			return flushList;
@@ -329,54 +342,6 @@ public class LRCMessageQueue implements SaveRestoreTarget
 			lock.unlock();
 		}
 	}
-	
-	/**
-	 * All this applies to RO messages only.
-	 * <p/>
-	 * The HLA specification says that if a federate: a) is constrained and b) does NOT have
-	 * asynchronous delivery enabled and c) isn't in the middle of a time advance, then RO
-	 * "messages" cannot be released to it. Sadly, the HLA spec also defines "messages" as
-	 * (basically) reflections, interactions and removals. Everything else is not a "message" and
-	 * thus can be happily delivered RO. 
-	 * <p/>
-	 * This method will find, remove and return from the RO queue the first non "message" callback
-	 * message. Thus, in the situation above, it will return the first queued message that can
-	 * happily be delivered, or null, if none exists
-	 * 
-	 * @return The first RO message in the queue that can be delivered, or null, if none can 
-	 */
-	private PorticoMessage pollForNonMessage()
-	{
-		// we are contrained, NOT asynchronous and NOT advancing, we can only
-		// release RO messages that are NOT "messages" (according to the spec
-		// definition of the word)
-		if( roQueue.peek().isSpecDefinedMessage() == false )
-		{
-			// the first available message can happily be released
-			return roQueue.poll();
-		}
-
-		// we have to trawl the queue for the first "non-message" message
-		// so we can return it
-		PorticoMessage winner = null;
-		Iterator<PorticoMessage> iterator = this.roQueue.iterator();
-		while( iterator.hasNext() )
-		{
-			PorticoMessage message = iterator.next();
-			if( message.isSpecDefinedMessage() == false )
-			{
-				// found one!
-				winner = message;
-				break;
-			}
-		}
-		
-		// remove the message from the queue and return it, unless we didn't find one
-		if( winner != null )
-			this.roQueue.remove( winner );
-
-		return winner;
-	}
 
 	/**
 	 * This method is the same as {@link #poll()} except that if there are no messages available,
@@ -385,35 +350,29 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	 */
 	public PorticoMessage poll( long timeoutNanos )
 	{
-		lock.lock();
+		// 1. check to see if we have a message //
+		PorticoMessage theMessage = poll();
+		if( theMessage != null )
+		{
+			// there is a message so we can just return it
+			return theMessage;
+		}
+
+		// 2. need to wait for an update to come through //
+		// we don't hold the lock while waiting, only threads offering can wake us
 		try
 		{
-			// 1. check to see if we have a message //
-			// there is no need to aquire the lock as we are not accessing the queue directly
-			// lock is reentrant, so we shouldn't take hit for aquiring it in poll()
-			PorticoMessage theMessage = poll();
-			if( theMessage != null )
-			{
-				// there is a message so we can just return it
-				return theMessage;
-			}
-	
-			// 2. need to wait for an update to come through //
-			// wait on condition
-			condition.awaitNanos( timeoutNanos );
-			// we have been woken up:
-			//  -if by timeout: return null
-			//  -if by signal: return available message
-			return poll();
+			queue.awaitIncoming( Math.max(timeoutNanos,0) );
 		}
 		catch( InterruptedException ie )
 		{
 			return null;
 		}
-		finally
-		{
-			lock.unlock();
-		}
+
+		// we have been woken up:
+		//  -if by timeout: return null
+		//  -if by signal: return available message
+		return poll();
 	}
 
 	/**
@@ -423,31 +382,20 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	 */
 	public PorticoMessage pollUntilNextMessage() throws InterruptedException
 	{
-		lock.lock();
-		try
-		{
-			// 1. check to see if we have a message
-			// there is no need to aquire the lock as we are not accessing the queue directly
-			// lock is reentrant, so we shouldn't take hit for aquiring it in poll()
-			PorticoMessage theMessage = poll();
-			if( theMessage != null )
-			{
-				// there is a message so we can just return it
-				return theMessage;
-			}
-	
-			// 2. need to wait for an update to come through
-			// wait on condition
-			condition.await();
-			// we have been woken up:
-			//  -if by timeout: return null
-			//  -if by signal: return available message
-			return poll();
-		}
-		finally
+		// 1. check to see if we have a message
+		PorticoMessage theMessage = poll();
+		if( theMessage != null )
 		{
-			lock.unlock();
+			// there is a message so we can just return it
+			return theMessage;
 		}
+
+		// 2. need to wait for an update to come through
+		queue.awaitIncoming( -1 );
+		// we have been woken up:
+		//  -if by timeout: return null
+		//  -if by signal: return available message
+		return poll();
 	}
 
 	/**
@@ -457,31 +405,25 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	 */
 	public PorticoMessage pollUntil( Date deadline )
 	{
-		lock.lock();
+		// 1. check to see if we have a message
+		PorticoMessage theMessage = poll();
+		if( theMessage != null )
+		{
+			// there is a message so we can just return it
+			return theMessage;
+		}
+
+		// 2. need to wait for an update to come through
 		try
 		{
-			// 1. check to see if we have a message
-			// there is no need to aquire the lock as we are not accessing the queue directly
-			// lock is reentrant, so we shouldn't take hit for aquiring it in poll()
-			PorticoMessage theMessage = poll();
-			if( theMessage != null )
-			{
-				// there is a message so we can just return it
-				return theMessage;
-			}
-	
-			// 2. need to wait for an update to come through
-			condition.awaitUntil( deadline );
-			return poll();
+			queue.awaitIncomingUntil( deadline.getTime() );
 		}
 		catch( InterruptedException ie )
 		{
 			return null;
 		}
-		finally
-		{
-			lock.unlock();
-		}
+
+		return poll();
 	}
 
 	/**
@@ -491,13 +433,15 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	 */
 	public PorticoMessage peekTSO()
 	{
-		if( tsoQueue.isEmpty() )
+		lock.lock();
+		try
 		{
-			return null;
+			sortIncoming();
+			return queue.peekTimestamped();
 		}
-		else
+		finally
 		{
-			return tsoQueue.peek();
+			lock.unlock();
 		}
 	}
 
@@ -506,16 +450,7 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	 */
 	public boolean isEmpty()
 	{
-		lock.lock();
-		try
-		{
-			// test the queues //
-			return this.roQueue.isEmpty() && this.tsoQueue.isEmpty();
-		}
-		finally
-		{
-			lock.unlock();
-		}
+		return queue.isEmpty();
 	}
 
 	////////////////////////////////////////////////////////////////////////////////////////////
@@ -532,14 +467,8 @@ public class LRCMessageQueue implements SaveRestoreTarget
 		lock.lock();
 		try
 		{
-			for( PorticoMessage message : this.tsoQueue )
-			{
-				message.setTimestamp( PorticoConstants.NULL_TIME );
-				roQueue.offer( message );
-			}
-
-			// clear the tso queue
-			this.tsoQueue.clear();
+			sortIncoming();
+			queue.moveTimestampedToReceiveOrder( PorticoConstants.NULL_TIME );
 		}
 		finally
 		{
@@ -549,59 +478,73 @@ public class LRCMessageQueue implements SaveRestoreTarget
 
 	public int getSize()
 	{
-		return this.roQueue.size() + this.tsoQueue.size();
+		return queue.size();
 	}
 	
 	public String toString()
 	{
+		// only look at what has already been sorted
+		List<PorticoMessage> roMessages = null;
+		List<PorticoMessage> tsoMessages = null;
+		lock.lock();
+		try
+		{
+			roMessages = queue.getReceiveOrder();
+			tsoMessages = queue.getTimestamped();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
 		StringBuilder builder = new StringBuilder( "Message Queue (federate:" );
 		builder.append( state.getFederateHandle() );
 		builder.append( ")\n" );
 		
 		// Receive Order Queue //
 		builder.append( "\t[RO Queue]\n" );
-		if( roQueue.isEmpty() )
+		if( roMessages.isEmpty() )
 		{
 			builder.append( "\t(empty)\n" );
 		}
 		else
 		{
-			PorticoMessage[] roArray = roQueue.toArray( new PorticoMessage[roQueue.size()] );
-			for( int i = 0; i < roArray.length; i++ )
+			for( int i = 0; i < roMessages.size(); i++ )
 			{
+				PorticoMessage message = roMessages.get( i );
 				builder.append( "\t[" );
 				builder.append( i+1 );
 				builder.append( "] message=" );
-				builder.append( roArray[i].getClass().getCanonicalName() );
+				builder.append( message.getClass().getCanonicalName() );
 				builder.append( ", src=" );
-				builder.append( roArray[i].getSourceFederate() );
+				builder.append( message.getSourceFederate() );
 				builder.append( ", dst=" );
-				builder.append( roArray[i].getTargetFederate() );
+				builder.append( message.getTargetFederate() );
 				builder.append( "\n" );
 			}
 		}
 		
 		// Receive Order Queue //
 		builder.append( "\t[TSO Queue]\n" );
-		if( tsoQueue.isEmpty() )
+		if( tsoMessages.isEmpty() )
 		{
 			builder.append( "\t(empty)\n" );
 		}
 		else
 		{
-			PorticoMessage[] tsoArray = tsoQueue.toArray( new PorticoMessage[tsoQueue.size()] );
-			for( int i = 0; i < tsoArray.length; i++ )
+			for( int i = 0; i < tsoMessages.size(); i++ )
 			{
+				PorticoMessage message = tsoMessages.get( i );
 				builder.append( "\t[" );
 				builder.append( i+1 );
 				builder.append( "] message=" );
-				builder.append( tsoArray[i].getClass().getCanonicalName() );
+				builder.append( message.getClass().getCanonicalName() );
 				builder.append( " @" );
-				builder.append( tsoArray[0].getTimestamp() );
+				builder.append( message.getTimestamp() );
 				builder.append( ", src=" );
-				builder.append( tsoArray[i].getSourceFederate() );
+				builder.append( message.getSourceFederate() );
 				builder.append( ", dst=" );
-				builder.append( tsoArray[i].getTargetFederate() );
+				builder.append( message.getTargetFederate() );
 				builder.append( "\n" );
 			}
 		}
@@ -617,12 +560,10 @@ public class LRCMessageQueue implements SaveRestoreTarget
 		try
 		{
 			lock.lock();
+			sortIncoming();
 
-			// only write the CONTENTS of the tsoQueue. Writing the whole queue means that
-    		// we have to write the Sorter, and because it's an inner class it attempts to
-    		// write the queue itself (which we don't want to do)
-    		ArrayList<PorticoMessage> tsoContents = new ArrayList<PorticoMessage>();
-    		tsoQueue.drainTo( tsoContents );
+			// only write the CONTENTS of the TSO queue, in the order they'd be released
+    		ArrayList<PorticoMessage> tsoContents = new ArrayList<PorticoMessage>( queue.getTimestamped() );
     		output.writeObject( tsoContents );
 
     		// don't include any Save status messages from the RO-Queue when we write the
@@ -631,7 +572,6 @@ public class LRCMessageQueue implements SaveRestoreTarget
     		// back to life due to a restore (to fix PORT-847)
     		//output.writeObject( roQueue );
     		output.writeObject( filterSaveMessages() );
-    		
     		output.writeObject( timeStatus );
 		}
 		finally
@@ -647,7 +587,7 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	private BlockingQueue<PorticoMessage> filterSaveMessages()
 	{
 		BlockingQueue<PorticoMessage> newQueue = new LinkedBlockingQueue<PorticoMessage>();
-		for( PorticoMessage message : roQueue )
+		for( PorticoMessage message : queue.getReceiveOrder() )
 		{
 			if( message instanceof org.portico.lrc.services.saverestore.msg.SaveBegun ||
 				message instanceof org.portico.lrc.services.saverestore.msg.SaveComplete )
@@ -671,10 +611,18 @@ public class LRCMessageQueue implements SaveRestoreTarget
 			lock.lock();
 			
     		ArrayList<PorticoMessage> tsoContents = (ArrayList<PorticoMessage>)input.readObject();
-    		this.tsoQueue.addAll( tsoContents );
-    
-    		this.roQueue = (BlockingQueue<PorticoMessage>)input.readObject();
+    		BlockingQueue<PorticoMessage> roContents = (BlockingQueue<PorticoMessage>)input.readObject();
     		this.timeStatus = (TimeStatus)input.readObject();
+
+    		// the restored RO queue replaces the current one, the TSO messages are added
+    		sortIncoming();
+    		queue.drainReceiveOrder( new ArrayList<PorticoMessage>() );
+    		for( PorticoMessage message : tsoContents )
+    			queue.add( message );
+    		for( PorticoMessage message : roContents )
+    			queue.add( message );
+
+    		sortIncoming();
 		}
 		finally
 		{
@@ -685,42 +633,4 @@ public class LRCMessageQueue implements SaveRestoreTarget
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
-	/////////////////////////////////////////////////////////////////////////////////////////
-	////////////////////////////////// Private Inner Class //////////////////////////////////
-	/////////////////////////////////////////////////////////////////////////////////////////
-	/**
-	 * Comparator used for sorting TSO callback messages such that the callback queue remains
-	 * ordered. If the TSO message is a time advance grant (responds <code>true</code> to the
-	 * {@link PorticoMessage#isTimeAdvance()}), it is considered LESS than any other
-	 * message with the SAME timestamp. This way, it forces it to the bottom of the queue for
-	 * that timestamp.
-	 */
-	private class Sorter implements Comparator<PorticoMessage>
-	{
-		public int compare( PorticoMessage o1, PorticoMessage o2 )
-		{
-			double time1 = o1.getTimestamp();
-			double time2 = o2.getTimestamp();
-			
-			if( time1 < time2 )
-			{
-				return -1;
-			}
-			else if( time1 > time2 )
-			{
-				return 1;
-			}
-			else
-			{
-				// they appear to be equal, which is fine as long as NEITHER of them
-				// is a time advance grant
-				if( o1.isTimeAdvance() )
-					return 1;
-				else if( o2.isTimeAdvance() )
-					return -1;
-				else
-					return 0;
-			}
-		}
-	}
 }
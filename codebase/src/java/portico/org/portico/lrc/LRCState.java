@@ -248,6 +248,7 @@ public class LRCState extends NullNotificationListener implements SaveRestoreTar
 		this.federateType = federateType;
 		this.federationName = federationName;
 		this.fom = fom;
+		this.fom.lock(); // it won't be locked if it was sent to us
 		this.joined = true;
 		
 		// tell the time manager that we've joined and cache the local state
@@ -329,10 +330,9 @@ public class LRCState extends NullNotificationListener implements SaveRestoreTar
 
 		try
 		{
+			// the merger unlocks the FOM for the merge and locks it again afterwards
 			modules.add( 0, this.fom );
-			this.fom.unlock();
 			this.fom = ModelMerger.merge( modules );
-			this.fom.lock();
 		}
 		catch( Exception e )
 		{
@@ -853,6 +853,8 @@ public class LRCState extends NullNotificationListener implements SaveRestoreTar
 
 		// Object Model //
 		this.fom = (ObjectModel)input.readObject();
+		if( this.fom != null )
+			this.fom.lock(); // the lock isn't saved with the model
 		
 		// Time related settings //
 		this.timeStatus = timeManager.getTimeStatus( federateHandle );
@@ -779,7 +779,7 @@ public class PorticoConstants
 	 * The first numbers are the handles, the numbers in parenthesis are the size of the byte[]
 	 * corresponding to those numbers.
 	 */
-	public static String mapToStringWithSizes( HashMap<Integer,byte[]> map )
+	public static String mapToStringWithSizes( Map<Integer,byte[]> map )
 	{
 		if( map == null )
 			return "{null}";
@@ -0,0 +1,283 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.lrc.model;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A read-only index over a locked {@link ObjectModel}. The model itself is built for merging and
+ * editing, so name lookups scan every class and attribute lookups walk up the class hierarchy.
+ * Once the model is locked it no longer changes, so we work all of that out up front and keep it
+ * here, making each lookup a single hash or array access.
+ * <p/>
+ *
+ * For the model as a whole we keep:
+ * <ul>
+ *   <li>Object and interaction classes by their lower-case version-safe qualified name, and by
+ *       their lower-case local name</li>
+ *   <li>Classes by handle, held in arrays</li>
+ *   <li>The name of each attribute and parameter handle</li>
+ * </ul>
+ *
+ * For each class we keep all the attributes or parameters it has (declared and inherited) by
+ * handle and by name, a bitset of those handles, and a bitset holding the handle of the class
+ * and all its parents.
+ * <p/>
+ *
+ * The index is created by {@link ObjectModel#lock()} and thrown away by
+ * {@link ObjectModel#unlock()}. It is not serialized with the model. A model that is sent to
+ * someone else will build a new one the first time it is used. Once created the index is never
+ * changed, so it is safe to use from any thread.
+ */
+final class FomIndex
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private final Map<String,OCMetadata> objectsByName;       // version-safe qualified, lower case
+	private final Map<String,OCMetadata> objectsByLocalName;  // lower case
+	private final Map<String,ICMetadata> interactionsByName;
+	private final Map<String,ICMetadata> interactionsByLocalName;
+	private final ObjectClass[] objectClasses;                // indexed by class handle
+	private final InteractionClass[] interactionClasses;      // indexed by class handle
+	private final Map<Integer,String> attributeNames;
+	private final Map<Integer,String> parameterNames;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	FomIndex( Map<Integer,OCMetadata> objects, Map<Integer,ICMetadata> interactions )
+	{
+		this.objectsByName = new HashMap<>();
+		this.objectsByLocalName = new HashMap<>();
+		this.interactionsByName = new HashMap<>();
+		this.interactionsByLocalName = new HashMap<>();
+		this.attributeNames = new HashMap<>();
+		this.parameterNames = new HashMap<>();
+
+		// object classes
+		int maxHandle = 0;
+		for( OCMetadata clazz : objects.values() )
+			maxHandle = Math.max( maxHandle, clazz.getHandle() );
+
+		this.objectClasses = new ObjectClass[maxHandle+1];
+		for( OCMetadata clazz : objects.values() )
+		{
+			// if two classes have the same name, the first one found wins (as it did when we
+			// used to scan for them)
+			objectsByName.putIfAbsent( clazz.getVersionSafeQualifiedName().toLowerCase(), clazz );
+			objectsByLocalName.putIfAbsent( clazz.getLocalName().toLowerCase(), clazz );
+			for( ACMetadata attribute : clazz.getDeclaredAttributes() )
+				attributeNames.putIfAbsent( attribute.getHandle(), attribute.getName() );
+
+			index( clazz, objects );
+		}
+
+		// interaction classes
+		maxHandle = 0;
+		for( ICMetadata clazz : interactions.values() )
+			maxHandle = Math.max( maxHandle, clazz.getHandle() );
+
+		this.interactionClasses = new InteractionClass[maxHandle+1];
+		for( ICMetadata clazz : interactions.values() )
+		{
+			interactionsByName.putIfAbsent( clazz.getVersionSafeQualifiedName().toLowerCase(), clazz );
+			interactionsByLocalName.putIfAbsent( clazz.getLocalName().toLowerCase(), clazz );
+			for( PCMetadata parameter : clazz.getDeclaredParameters() )
+				parameterNames.putIfAbsent( parameter.getHandle(), parameter.getName() );
+
+			index( clazz, interactions );
+		}
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Index Building   //////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Create the entry for the given class, creating those for its parents first as we build
+	 * on top of them. A parent that isn't part of the model is ignored.
+	 */
+	private ObjectClass index( OCMetadata clazz, Map<Integer,OCMetadata> objects )
+	{
+		ObjectClass existing = objectClasses[clazz.getHandle()];
+		if( existing != null )
+			return existing;
+
+		ObjectClass entry = new ObjectClass( clazz );
+		OCMetadata parent = clazz.getParent();
+		if( parent != null && objects.get(parent.getHandle()) == parent )
+		{
+			ObjectClass inherited = index( parent, objects );
+			entry.ancestors.or( inherited.ancestors );
+			entry.attributeHandles.or( inherited.attributeHandles );
+			entry.attributes.putAll( inherited.attributes );
+			entry.attributesByName.putAll( inherited.attributesByName );
+		}
+
+		// our own attributes go in last so that they override anything inherited
+		entry.ancestors.set( clazz.getHandle() );
+		for( ACMetadata attribute : clazz.getDeclaredAttributes() )
+		{
+			entry.attributeHandles.set( attribute.getHandle() );
+			entry.attributes.put( attribute.getHandle(), attribute );
+			entry.attributesByName.put( attribute.getName(), attribute );
+		}
+
+		objectClasses[clazz.getHandle()] = entry;
+		return entry;
+	}
+
+	private InteractionClass index( ICMetadata clazz, Map<Integer,ICMetadata> interactions )
+	{
+		InteractionClass existing = interactionClasses[clazz.getHandle()];
+		if( existing != null )
+			return existing;
+
+		InteractionClass entry = new InteractionClass( clazz );
+		ICMetadata parent = clazz.getParent();
+		if( parent != null && interactions.get(parent.getHandle()) == parent )
+		{
+			InteractionClass inherited = index( parent, interactions );
+			entry.parameters.putAll( inherited.parameters );
+			entry.parametersByName.putAll( inherited.parametersByName );
+		}
+
+		for( PCMetadata parameter : clazz.getDeclaredParameters() )
+		{
+			entry.parameters.put( parameter.getHandle(), parameter );
+			entry.parametersByName.put( parameter.getName(), parameter );
+		}
+
+		interactionClasses[clazz.getHandle()] = entry;
+		return entry;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Lookup Methods   //////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * @param name The lower-case name of the class with any object root prefix removed
+	 * @return The class with the given version-safe qualified name or, failing that, local name.
+	 *         Null if there is neither.
+	 */
+	OCMetadata getObjectClass( String name )
+	{
+		OCMetadata clazz = objectsByName.get( name );
+		return clazz != null ? clazz : objectsByLocalName.get( name );
+	}
+
+	/** @return The entry for the given class, or null if it isn't the one this index was built on */
+	ObjectClass getObjectClass( OCMetadata clazz )
+	{
+		int handle = clazz.getHandle();
+		if( handle < 0 || handle >= objectClasses.length )
+			return null;
+
+		ObjectClass entry = objectClasses[handle];
+		return entry != null && entry.metadata == clazz ? entry : null;
+	}
+
+	/**
+	 * @param name The lower-case name of the class with any interaction root prefix removed
+	 * @return The class with the given version-safe qualified name or, failing that, local name.
+	 *         Null if there is neither.
+	 */
+	ICMetadata getInteractionClass( String name )
+	{
+		ICMetadata clazz = interactionsByName.get( name );
+		return clazz != null ? clazz : interactionsByLocalName.get( name );
+	}
+
+	/** @return The entry for the given class, or null if it isn't the one this index was built on */
+	InteractionClass getInteractionClass( ICMetadata clazz )
+	{
+		int handle = clazz.getHandle();
+		if( handle < 0 || handle >= interactionClasses.length )
+			return null;
+
+		InteractionClass entry = interactionClasses[handle];
+		return entry != null && entry.metadata == clazz ? entry : null;
+	}
+
+	/** @return The name of the attribute with the given handle, or null if there isn't one */
+	String getAttributeName( int handle )
+	{
+		return attributeNames.get( handle );
+	}
+
+	/** @return The name of the parameter with the given handle, or null if there isn't one */
+	String getParameterName( int handle )
+	{
+		return parameterNames.get( handle );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Inner Class: ObjectClass   ////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Everything about an object class, inherited information included
+	 */
+	static final class ObjectClass
+	{
+		final OCMetadata metadata;
+		final BitSet ancestors;                      // handles of this class and all its parents
+		final BitSet attributeHandles;
+		final Map<Integer,ACMetadata> attributes;
+		final Map<String,ACMetadata> attributesByName;
+
+		private ObjectClass( OCMetadata metadata )
+		{
+			this.metadata = metadata;
+			this.ancestors = new BitSet();
+			this.attributeHandles = new BitSet();
+			this.attributes = new HashMap<>();
+			this.attributesByName = new HashMap<>();
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Inner Class: InteractionClass   ///////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Everything about an interaction class, inherited information included
+	 */
+	static final class InteractionClass
+	{
+		final ICMetadata metadata;
+		final Map<Integer,PCMetadata> parameters;
+		final Map<String,PCMetadata> parametersByName;
+
+		private InteractionClass( ICMetadata metadata )
+		{
+			this.metadata = metadata;
+			this.parameters = new HashMap<>();
+			this.parametersByName = new HashMap<>();
+		}
+	}
+}
@@ -112,6 +112,7 @@ public class ICMetadata implements Serializable
 		}
 		
 		// remove our link to the model //
+		modelChanged();
 		this.model = null;
 	}
 	
@@ -141,6 +142,7 @@ public class ICMetadata implements Serializable
 		this.parameters.put( parameter.getHandle(), parameter );
 		// assign the container property
 		parameter.setContainer( this );
+		modelChanged();
 		return true;
 	}
 	
@@ -158,6 +160,7 @@ public class ICMetadata implements Serializable
 		else
 		{
 			parameter.setContainer( null );
+			modelChanged();
 			return parameter;
 		}
 	}
@@ -175,6 +178,10 @@ public class ICMetadata implements Serializable
 	 */
 	public Set<PCMetadata> getAllParameters()
 	{
+		FomIndex.InteractionClass indexed = indexed();
+		if( indexed != null )
+			return new HashSet<PCMetadata>( indexed.parameters.values() );
+		
 		// if we don't have parent, all our parameters are just our local ones
 		if( this.parent == null )
 		{
@@ -230,6 +237,10 @@ public class ICMetadata implements Serializable
 	 */
 	public PCMetadata getParameter( int handle )
 	{
+		FomIndex.InteractionClass indexed = indexed();
+		if( indexed != null )
+			return indexed.parameters.get( handle );
+		
 		// check for the parameter locally first
 		if( this.parameters.containsKey(handle) )
 		{
@@ -257,6 +268,13 @@ public class ICMetadata implements Serializable
 	 */
 	public int getParameterHandle( String name )
 	{
+		FomIndex.InteractionClass indexed = indexed();
+		if( indexed != null )
+		{
+			PCMetadata parameter = indexed.parametersByName.get( name );
+			return parameter == null ? ObjectModel.INVALID_HANDLE : parameter.getHandle();
+		}
+		
 		// check locally first
 		for( PCMetadata temp : this.parameters.values() )
 		{
@@ -286,6 +304,13 @@ public class ICMetadata implements Serializable
 	 */
 	public String getParameterName( int handle )
 	{
+		FomIndex.InteractionClass indexed = indexed();
+		if( indexed != null )
+		{
+			PCMetadata parameter = indexed.parameters.get( handle );
+			return parameter == null ? null : parameter.getName();
+		}
+		
 		if( this.parameters.containsKey(handle) )
 		{
 			return this.parameters.get(handle).getName();
@@ -302,6 +327,29 @@ public class ICMetadata implements Serializable
 		}
 	}
 
+	/**
+	 * @return Our entry in the model's index, or null if the model isn't locked (or we're not in
+	 *         one), in which case lookups have to be done the long way
+	 */
+	private FomIndex.InteractionClass indexed()
+	{
+		if( this.model == null )
+			return null;
+		
+		FomIndex index = this.model.getIndex();
+		return index == null ? null : index.getInteractionClass( this );
+	}
+
+	/**
+	 * Tell our model that we've changed, so that it doesn't keep using an index that no longer
+	 * matches what we look like
+	 */
+	private void modelChanged()
+	{
+		if( this.model != null )
+			this.model.modelChanged();
+	}
+
 	////////////////////////////////////////////////////////////
 	//////////////////// Get and Set Methods ///////////////////
 	////////////////////////////////////////////////////////////
@@ -431,6 +479,9 @@ public class ICMetadata implements Serializable
 		{
 			parent.children.add( this );
 		}
+		
+		// the hierarchy has changed, so any index of it is out of date //
+		modelChanged();
 	}
 
 	public Transport getTransport()
@@ -98,15 +98,30 @@ public class ModelMerger
 		// Make a clone of the first model, so that existing handle values are preserved
 		// and then merge in the additional models to the clone
 		ObjectModel base = models.get(0);
-		for( int i = 1; i < models.size(); i++ )
+
+		// a locked model ignores new classes, so unlock the base while we merge into it,
+		// locking it again afterwards (which also rebuilds its index with the new classes)
+		boolean wasLocked = base.isLocked();
+		if( wasLocked )
+			base.unlock();
+
+		try
 		{
-			ObjectModel current = models.get(i);
-			logger.trace( "Merging ["+current.getFileName()+"] into combined FOM" );
-			merge( base, current );
+			for( int i = 1; i < models.size(); i++ )
+			{
+				ObjectModel current = models.get(i);
+				logger.trace( "Merging ["+current.getFileName()+"] into combined FOM" );
+				merge( base, current );
+			}
+
+			// validate the model to ensure it has everything we need
+			return validate( base );
+		}
+		finally
+		{
+			if( wasLocked )
+				base.lock();
 		}
-		
-		// validate the model to ensure it has everything we need
-		return validate( base );
 	}
 
 	/**
@@ -744,7 +759,8 @@ public class ModelMerger
 	 * exception.
 	 * <p/>
 	 * Not that this method will ALTER the first model (merging everything else into it) but
-	 * not alter any of the subsequent models (copies of them will be made).
+	 * not alter any of the subsequent models (copies of them will be made). If the first model
+	 * is locked, it is unlocked for the merge and locked again once it is done.
 	 */
 	public static ObjectModel merge( List<ObjectModel> models )
 		throws JInconsistentFDD,
@@ -101,6 +101,10 @@ public class OCMetadata implements Serializable
 	 */
 	public boolean isAssignableTo( OCMetadata other )
 	{
+		FomIndex.ObjectClass indexed = indexed();
+		if( indexed != null && other != null )
+			return indexed.ancestors.get(other.getHandle()) && other.getModel() == this.model;
+		
 		OCMetadata current = this;
 		while( current != null )
 		{
@@ -182,6 +186,7 @@ public class OCMetadata implements Serializable
 		}
 		
 		// remove our link to the model //
+		modelChanged();
 		this.model = null;
 	}
 
@@ -210,6 +215,7 @@ public class OCMetadata implements Serializable
 		this.attributes.put( attribute.getHandle(), attribute );
 		// assign the container property of the attribute to us
 		attribute.setContainer( this );
+		modelChanged();
 		return true;
 	}
 	
@@ -227,6 +233,7 @@ public class OCMetadata implements Serializable
 		else
 		{
 			attribute.setContainer( null );
+			modelChanged();
 			return attribute;
 		}
 	}
@@ -244,6 +251,10 @@ public class OCMetadata implements Serializable
 	 */
 	public Set<ACMetadata> getAllAttributes()
 	{
+		FomIndex.ObjectClass indexed = indexed();
+		if( indexed != null )
+			return new HashSet<ACMetadata>( indexed.attributes.values() );
+		
 		// if we don't have parent, all our attributes are just our local ones
 		if( this.parent == null )
 		{
@@ -302,6 +313,10 @@ public class OCMetadata implements Serializable
 	 */
 	public Set<Integer> getAllAttributeHandles()
 	{
+		FomIndex.ObjectClass indexed = indexed();
+		if( indexed != null )
+			return new HashSet<Integer>( indexed.attributes.keySet() );
+		
 		// if we don't have parent, all our attributes are just our local ones
 		if( this.parent == null )
 		{
@@ -348,6 +363,10 @@ public class OCMetadata implements Serializable
 	 */
 	public ACMetadata getAttribute( int handle )
 	{
+		FomIndex.ObjectClass indexed = indexed();
+		if( indexed != null )
+			return indexed.attributes.get( handle );
+		
 		// check for the attribute locally first
 		if( this.attributes.containsKey(handle) )
 		{
@@ -376,6 +395,15 @@ public class OCMetadata implements Serializable
 	 */
 	public int getAttributeHandle( String name )
 	{
+		FomIndex.ObjectClass indexed = indexed();
+		if( indexed != null )
+		{
+			// if it isn't here, the search below will still find privilegeToDelete
+			ACMetadata attribute = indexed.attributesByName.get( name );
+			if( attribute != null )
+				return attribute.getHandle();
+		}
+		
 		// check locally first
 		for( ACMetadata temp : this.attributes.values() )
 		{
@@ -413,6 +441,13 @@ public class OCMetadata implements Serializable
 	 */
 	public String getAttributeName( int handle )
 	{
+		FomIndex.ObjectClass indexed = indexed();
+		if( indexed != null )
+		{
+			ACMetadata attribute = indexed.attributes.get( handle );
+			return attribute == null ? null : attribute.getName();
+		}
+		
 		// check locally first
 		if( this.attributes.containsKey(handle) )
 		{
@@ -437,6 +472,10 @@ public class OCMetadata implements Serializable
 	 */
 	public boolean hasAttribute( int handle )
 	{
+		FomIndex.ObjectClass indexed = indexed();
+		if( indexed != null )
+			return handle >= 0 && indexed.attributeHandles.get( handle );
+		
 		if( this.attributes.containsKey(handle) )
 			return true;
 		else if( parent != null )
@@ -454,6 +493,29 @@ public class OCMetadata implements Serializable
 		return attributes.size();
 	}
 
+	/**
+	 * @return Our entry in the model's index, or null if the model isn't locked (or we're not in
+	 *         one), in which case lookups have to be done the long way
+	 */
+	private FomIndex.ObjectClass indexed()
+	{
+		if( this.model == null )
+			return null;
+		
+		FomIndex index = this.model.getIndex();
+		return index == null ? null : index.getObjectClass( this );
+	}
+
+	/**
+	 * Tell our model that we've changed, so that it doesn't keep using an index that no longer
+	 * matches what we look like
+	 */
+	private void modelChanged()
+	{
+		if( this.model != null )
+			this.model.modelChanged();
+	}
+
 	////////////////////////////////////////////////////////////
 	//////////////////// Get and Set Methods ///////////////////
 	////////////////////////////////////////////////////////////
@@ -571,6 +633,9 @@ public class OCMetadata implements Serializable
 		{
 			oc.children.add( this );
 		}
+		
+		// the hierarchy has changed, so any index of it is out of date //
+		modelChanged();
 	}
 	
 	public Sharing getSharing()
@@ -70,7 +70,7 @@ public class ObjectModel implements Serializable
 	private String filename;
 
 	private HLAVersion version;
-	private boolean locked;
+	private transient boolean locked; // not sent, see lock()
 	private Map<String,IDatatype> datatypes;
 	private Map<Integer,OCMetadata> oclasses;
 	private Map<Integer,ICMetadata> iclasses;
@@ -79,6 +79,7 @@ public class ObjectModel implements Serializable
 	private ICMetadata icroot;
 	
 	private int privilegeToDelete; // set when object root is set
+	private transient volatile FomIndex index; // built when locked, see getIndex()
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
@@ -268,23 +269,34 @@ public class ObjectModel implements Serializable
 		else if( name.startsWith("hlaobjectroot.") )
 			name = name.substring(14);
 		
-		// check for the qualified version of the name first, but using version-safe qualified
-		for( OCMetadata oc : this.oclasses.values() )
+		FomIndex index = getIndex();
+		if( index != null )
 		{
-			if( oc.getVersionSafeQualifiedName().equalsIgnoreCase(name) )
-			{
+			// locked, so the index has both the version-safe qualified and local names
+			OCMetadata oc = index.getObjectClass( name );
+			if( oc != null )
 				return oc;
-			}
 		}
-
-		// we didn't find it in the version safe stuff, check the name by itself
-		// FIXME: Check to see if this is actually defined in the spec, it might just be that
-		//        the ObjectRoot bit is optional, not the entire prefix
-		for( OCMetadata oc : this.oclasses.values() )
+		else
 		{
-			if( oc.getLocalName().equalsIgnoreCase(name) )
+			// check for the qualified version of the name first, but using version-safe qualified
+			for( OCMetadata oc : this.oclasses.values() )
 			{
-				return oc;
+				if( oc.getVersionSafeQualifiedName().equalsIgnoreCase(name) )
+				{
+					return oc;
+				}
+			}
+	
+			// we didn't find it in the version safe stuff, check the name by itself
+			// FIXME: Check to see if this is actually defined in the spec, it might just be that
+			//        the ObjectRoot bit is optional, not the entire prefix
+			for( OCMetadata oc : this.oclasses.values() )
+			{
+				if( oc.getLocalName().equalsIgnoreCase(name) )
+				{
+					return oc;
+				}
 			}
 		}
 		
@@ -443,6 +455,7 @@ public class ObjectModel implements Serializable
 	 */
 	public OCMetadata removeObjectClass( int handle )
 	{
+		this.index = null;
 		OCMetadata removed = this.oclasses.remove( handle );
 		// set the model to null
 		if( removed != null )
@@ -490,11 +503,19 @@ public class ObjectModel implements Serializable
 	/**
 	 * This method will scan EVERY OBJECT CLASS in the FOM until it finds the attribute with the
 	 * given handle. It will then return that attributes name. Note that depending on the size of
-	 * the FOM, this could be *VERY* slow. If no attribute for the handle can be found, the string
+	 * the FOM, this could be *VERY* slow (unless the model is locked, in which case the name is
+	 * looked up in the index). If no attribute for the handle can be found, the string
 	 * "&lt;unknown&gt;" will be returned.
 	 */
 	public String findAttributeName( int attributeHandle )
 	{
+		FomIndex index = getIndex();
+		if( index != null )
+		{
+			String name = index.getAttributeName( attributeHandle );
+			return name != null ? name : attributeHandle+" <unknown>";
+		}
+		
 		for( OCMetadata objectClass : this.oclasses.values() )
 		{
 			ACMetadata attributeClass = objectClass.getDeclaredAttribute( attributeHandle );
@@ -569,23 +590,34 @@ public class ObjectModel implements Serializable
 		else if( name.startsWith("hlainteractionroot.") )
 			name = name.substring(19);
 		
-		// check for the qualified version of the name first, but using version-safe qualified
-		for( ICMetadata ic : this.iclasses.values() )
+		FomIndex index = getIndex();
+		if( index != null )
 		{
-			if( ic.getVersionSafeQualifiedName().equalsIgnoreCase(name) )
-			{
+			// locked, so the index has both the version-safe qualified and local names
+			ICMetadata ic = index.getInteractionClass( name );
+			if( ic != null )
 				return ic;
-			}
 		}
-
-		// we didn't find it in the version safe stuff, check the name by itself
-		// FIXME: Check to see if this is actually defined in the spec, it might just be that
-		//        the ObjectRoot bit is optional, not the entire prefix
-		for( ICMetadata ic : this.iclasses.values() )
+		else
 		{
-			if( ic.getLocalName().equalsIgnoreCase(name) )
+			// check for the qualified version of the name first, but using version-safe qualified
+			for( ICMetadata ic : this.iclasses.values() )
 			{
-				return ic;
+				if( ic.getVersionSafeQualifiedName().equalsIgnoreCase(name) )
+				{
+					return ic;
+				}
+			}
+	
+			// we didn't find it in the version safe stuff, check the name by itself
+			// FIXME: Check to see if this is actually defined in the spec, it might just be that
+			//        the ObjectRoot bit is optional, not the entire prefix
+			for( ICMetadata ic : this.iclasses.values() )
+			{
+				if( ic.getLocalName().equalsIgnoreCase(name) )
+				{
+					return ic;
+				}
 			}
 		}
 		
@@ -672,6 +704,7 @@ public class ObjectModel implements Serializable
 	 */
 	public ICMetadata removeInteractionClass( int handle )
 	{
+		this.index = null;
 		return this.iclasses.remove( handle );
 	}
 	
@@ -712,11 +745,19 @@ public class ObjectModel implements Serializable
 	/**
 	 * This method will scan EVERY INTERACTION CLASS in the FOM until it finds the parameter with
 	 * the given handle. It will then return that parameter's name. Note that depending on the size
-	 * of the FOM, this could be *VERY* slow. If no parameter for the handle is found, the string
+	 * of the FOM, this could be *VERY* slow (unless the model is locked, in which case the name is
+	 * looked up in the index). If no parameter for the handle is found, the string
 	 * "&lt;unknown&gt;" will be returned.
 	 */
 	public String findParameterName( int parameterHandle )
 	{
+		FomIndex index = getIndex();
+		if( index != null )
+		{
+			String name = index.getParameterName( parameterHandle );
+			return name != null ? name : "<unknown>";
+		}
+		
 		for( ICMetadata interactionClass : this.iclasses.values() )
 		{
 			PCMetadata parameterClass = interactionClass.getDeclaredParameter( parameterHandle );
@@ -731,11 +772,26 @@ public class ObjectModel implements Serializable
 	//////////////////// Dynamic FOM Methods ////////////////////
 	/////////////////////////////////////////////////////////////
 	/**
-	 * Locks this model so that changes can no longer be made. 
+	 * Locks this model so that changes can no longer be made. This should be done once all the
+	 * modules have been merged and the symbols resolved. Once locked, an index of the model is
+	 * built so that class and attribute lookups by name or handle don't have to search for them
+	 * (see {@link FomIndex}).
+	 * <p/>
+	 * <b>Note:</b> Classes can still be changed directly through their metadata even when the
+	 *              model is locked. If that happens the index is thrown away and rebuilt the
+	 *              next time it is needed, but it should be avoided. Unlock the model first.
+	 * <p/>
+	 * The lock isn't serialized. A model that is copied or sent to someone else arrives unlocked
+	 * (so a copy can be merged into), and whoever takes it on as their federation's FOM has to
+	 * lock it again. Locking a model that is already locked does nothing.
 	 */
 	public synchronized void lock()
 	{
+		if( this.locked && this.index != null )
+			return;
+
 		this.locked = true;
+		this.index = new FomIndex( oclasses, iclasses );
 	}
 	
 	/**
@@ -744,6 +800,42 @@ public class ObjectModel implements Serializable
 	public synchronized void unlock()
 	{
 		this.locked = false;
+		this.index = null;
+	}
+	
+	public boolean isLocked()
+	{
+		return this.locked;
+	}
+	
+	/**
+	 * Called by the class metadata when one of the classes in this model has been changed (an
+	 * attribute or parameter added or removed, or a class moved in the hierarchy). Any index
+	 * we have is now out of date, so drop it. If we are locked, it is rebuilt on next use.
+	 */
+	void modelChanged()
+	{
+		this.index = null;
+	}
+
+	/**
+	 * @return The index for this model, or null if it isn't locked. The index isn't serialized, so
+	 *         if the model was locked when it was sent to us, we build it on first use.
+	 */
+	FomIndex getIndex()
+	{
+		if( !locked )
+			return null;
+		
+		FomIndex current = this.index;
+		if( current == null )
+		{
+			// no harm if two threads get here at once, they will build the same thing
+			current = new FomIndex( oclasses, iclasses );
+			this.index = current;
+		}
+		
+		return current;
 	}
 	
 	/////////////////////////////////////////////////////////////
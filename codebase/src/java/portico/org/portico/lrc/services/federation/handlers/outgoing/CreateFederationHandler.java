@@ -93,6 +93,9 @@ public class CreateFederationHandler extends LRCMessageHandler
 
 		// Now that all datatypes have been finalized, we can link the placeholder symbols
 		ObjectModel.resolveSymbols( combinedFOM );
+
+		// it won't change from here on, lock it so lookups can use the index
+		combinedFOM.lock();
 		
 		// we have our grand unified FOM!
 		request.setModel( combinedFOM, modules );
@@ -27,6 +27,7 @@ import org.portico.utils.messaging.MessageHandler;
 import org.portico2.common.services.ddm.data.RegionGroup;
 import org.portico2.common.services.object.msg.UpdateAttributes;
 import org.portico2.common.services.pubsub.data.OCInterest;
+import org.portico2.common.utils.HandleValueMap;
 
 @MessageHandler(modules="lrc-base",
                 keywords={"lrc13","lrcjava1","lrc1516","lrc1516e"},
@@ -129,9 +130,11 @@ public class ReflectAttributesHandler extends LRCMessageHandler
 		if( subscriptionGroup == null )
 			return;
 		
-		Map<Integer,byte[]> raw = request.getAttributes();
-		for( Integer reflectedHandle : raw.keySet() )
+		HandleValueMap raw = request.getAttributes();
+		for( int i = 0; i < raw.size(); i++ )
 		{
+			int reflectedHandle = raw.handleAt( i );
+
 			// are we subscribed to this attribute?
 			Set<RegionInstance> subscribedRegions =
 				subscriptionGroup.getRegionsForAttribute( reflectedHandle );
@@ -143,7 +146,7 @@ public class ReflectAttributesHandler extends LRCMessageHandler
 			// of the processing as it is only ddm related
 			if( subscribedRegions.contains(null) )
 			{
-				request.addFilteredAttribute( reflectedHandle, raw.get(reflectedHandle), null );
+				request.addFilteredAttribute( reflectedHandle, null );
 				continue;
 			}
 			
@@ -151,7 +154,7 @@ public class ReflectAttributesHandler extends LRCMessageHandler
 			ACInstance reflectedAttribute = instance.getAttribute( reflectedHandle );
 			if( reflectedAttribute.getRegion() == null )
 			{
-				request.addFilteredAttribute( reflectedHandle, raw.get(reflectedHandle), null );
+				request.addFilteredAttribute( reflectedHandle, null );
 				continue;
 			}
 
@@ -160,9 +163,7 @@ public class ReflectAttributesHandler extends LRCMessageHandler
 			{
 				if( subscribedRegion.overlapsWith(reflectedAttribute.getRegion()) )
 				{
-					request.addFilteredAttribute( reflectedHandle,
-					                              raw.get(reflectedHandle),
-					                              subscribedRegion );
+					request.addFilteredAttribute( reflectedHandle, subscribedRegion );
 					break;
 				}
 			}
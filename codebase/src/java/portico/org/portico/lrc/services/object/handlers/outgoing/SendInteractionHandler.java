@@ -14,7 +14,6 @@
  */
 package org.portico.lrc.services.object.handlers.outgoing;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -61,7 +60,7 @@ public class SendInteractionHandler extends LRCMessageHandler
 	{
 		SendInteraction request = context.getRequest( SendInteraction.class, this );
 		int classHandle = request.getInteractionId();
-		HashMap<Integer,byte[]> parameters = request.getParameters();
+		Map<Integer,byte[]> parameters = request.getParameters();
 		int regionToken = request.getRegionToken(); // optional:default PorticoConstants.NULL_HANDLE
 
 		// basic validity checks
@@ -14,7 +14,6 @@
  */
 package org.portico.lrc.services.object.handlers.outgoing;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.portico.lrc.LRCMessageHandler;
@@ -57,7 +56,7 @@ public class UpdateAttributesHandler extends LRCMessageHandler
 	{
 		UpdateAttributes request = context.getRequest( UpdateAttributes.class, this );
 		int objectHandle = request.getObjectId();
-		HashMap<Integer,byte[]> attributes = request.getAttributes();
+		Map<Integer,byte[]> attributes = request.getAttributes();
 
 		// basic validity checks
 		lrcState.checkJoined();
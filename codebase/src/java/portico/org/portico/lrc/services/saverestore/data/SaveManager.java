@@ -14,8 +14,8 @@
  */
 package org.portico.lrc.services.saverestore.data;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.portico.lrc.PorticoConstants;
 import org.portico.lrc.compat.JSaveInProgress;
@@ -36,10 +36,11 @@ public class SaveManager
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
 	//----------------------------------------------------------
-	private String activeLabel;
-	private int registeringFederate;
+	// the local federate's result is recorded from the save writer thread, see SaveCompleteHandler
+	private volatile String activeLabel;
+	private volatile int registeringFederate;
 	private Map<Integer,SRStatus> saveStatus; // key: federateHandle
-	private boolean inProgress; // for the local federate
+	private volatile boolean inProgress; // for the local federate
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -48,7 +49,7 @@ public class SaveManager
 	{
 		this.activeLabel = null;
 		this.registeringFederate = PorticoConstants.NULL_HANDLE;
-		this.saveStatus = new HashMap<Integer,SRStatus>();
+		this.saveStatus = new ConcurrentHashMap<Integer,SRStatus>();
 		this.inProgress = false;
 	}
 
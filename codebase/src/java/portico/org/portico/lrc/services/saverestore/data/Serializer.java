@@ -14,11 +14,33 @@
  */
 package org.portico.lrc.services.saverestore.data;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
 
 import org.apache.logging.log4j.Logger;
 
@@ -26,21 +48,74 @@ import org.apache.logging.log4j.Logger;
  * This class contains all the logic that does the actual saving and restoring of LRC state data
  * to and from a file. When you want to save, you give the {@link #save(Manifest, String)} method
  * a {@link Manifest} telling it which components need to save their data, and a file location to
- * save the data to. The Serializer will get an output stream to the file and then give that
- * stream to each {@link SaveRestoreTarget} inside the Manifest, tracking progress.
+ * save the data to. The Serializer gives an output stream to each {@link SaveRestoreTarget}
+ * inside the Manifest, tracking progress.
  * <p/>
  * The process for restoring is exactly the same, only data is read in rather than written out.
+ * <p/>
+ *
+ * <b>Saving in the Background</b>
+ * Saving is split in two. First the targets write their state into memory. That is the snapshot,
+ * and once it has been taken nothing the federate does can change what gets saved. The
+ * {@link #save(Manifest, String)} call returns at that point with a future that is completed when
+ * the snapshot has been written to disk. The writing is done by a single shared daemon thread.
+ * The snapshot goes to a temporary file which is then moved over the top of the save file, so
+ * there is never a half-written save file lying around (if the JVM exits part way through, the
+ * previous save file is left as it was). A restore from a location that is still being written
+ * waits for the write to finish first.
+ * <p/>
+ *
+ * All the targets write into the same object stream. They share objects (the FOM metadata for
+ * one), and writing them into separate streams would give each its own copy on restore. This
+ * means the targets are saved and restored one after the other, in manifest order.
+ * <p/>
+ *
+ * <b>File Format</b>
+ * A save file is a header followed by the snapshot. All values are big-endian.
+ *
+ * <pre>
+ *   int     magic              (0x50525356, "PRSV")
+ *   int     version            (currently 1)
+ *   int     target count
+ *     [for each target]
+ *     short   name length, followed by that many bytes of UTF-8 class name
+ *     int     number of bytes of the snapshot written by this target
+ *                          (these add up to the snapshot length less the 4 byte stream header)
+ *   long    CRC32 of the snapshot
+ *   int     snapshot length
+ *   byte[]  snapshot           (a single Java object stream)
+ * </pre>
+ *
+ * When restoring, the header is checked against the manifest before any target is given the
+ * stream, so a file from a different version or a different set of targets is rejected rather
+ * than half-restored. Files from before this format (a bare object stream) are still read.
  */
 public class Serializer
 {
 	//----------------------------------------------------------
 	//                    STATIC VARIABLES
 	//----------------------------------------------------------
+	private static final int MAGIC = 0x50525356;
+	private static final int VERSION = 1;
+
+	/** The first four bytes of a file that is just a Java object stream (the old format) */
+	private static final int LEGACY_MAGIC = 0xaced0005;
+
+	/** Bytes an object stream writes before anything is written to it (magic and version) */
+	private static final int STREAM_HEADER_SIZE = 4;
+
+	/** Writes snapshots out. Saves are rare, so one thread shared by every LRC is plenty. */
+	private static final ExecutorService WRITER = Executors.newSingleThreadExecutor( runnable -> {
+		Thread thread = new Thread( runnable, "Portico Save Writer" );
+		thread.setDaemon( true );
+		return thread;
+	});
 
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
 	//----------------------------------------------------------
 	private Logger logger;
+	private Map<String,CompletableFuture<Void>> pendingWrites; // key: file location
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -48,29 +123,37 @@ public class Serializer
 	public Serializer( Logger logger )
 	{
 		this.logger = logger;
+		this.pendingWrites = new ConcurrentHashMap<>();
 	}
 
 	//----------------------------------------------------------
 	//                    INSTANCE METHODS
 	//----------------------------------------------------------
 	/**
-	 * Opens the file at the location provided and passes it to each of the targets in the 
-	 * given manifest so that they can save their contents out. If any of the targets should
-	 * fail to save (as indicated by an exception), the save processing will stop and a
-	 * {@link SaveRestoreFailed} will be thrown.
+	 * Takes a snapshot of each of the targets in the given manifest and then starts writing it
+	 * to the file at the location provided. If any of the targets should fail to save (as
+	 * indicated by an exception), the save processing will stop and a {@link SaveRestoreFailed}
+	 * will be thrown.
+	 * <p/>
+	 * This method returns as soon as the snapshot has been taken. The file is written in the
+	 * background (see the class comments). Don't tell anyone the save is complete until the
+	 * returned future has been completed. If the write fails, it is completed exceptionally with
+	 * a {@link SaveRestoreFailed}.
 	 * <p/>
-	 * If the save file already exists, it will be overwritten. If there is a problem opening
-	 * the file or writing to it, a SaveRestoreFailed will be thrown.
-	 * 
+	 * If the save file already exists, it will be overwritten. If the file can't be created or
+	 * written to, a SaveRestoreFailed will be thrown.
+	 *
 	 * @param manifest The manifest containing references to the {@link SaveRestoreTarget}s to save
 	 * @param fileLocation The location of the file to save to
+	 * @return A future that is completed once the snapshot has been written to the file
 	 * @throws SaveRestoreFailed If there is a problem opening the file or any of the targets fail
 	 *                           when attempting to save their data out.
 	 */
-	public void save( Manifest manifest, String fileLocation ) throws SaveRestoreFailed
+	public CompletableFuture<Void> save( Manifest manifest, String fileLocation )
+		throws SaveRestoreFailed
 	{
 		logger.debug( "Serializer: Save manifest (hash:"+manifest.hashCode()+") to "+fileLocation );
-		
+
 		//////////////////////
 		// Prepare the file //
 		//////////////////////
@@ -83,7 +166,7 @@ public class Serializer
 		else
 		{
 			// create the file and any missing parent directories
-			saveFile.getParentFile().mkdirs();
+			saveFile.getAbsoluteFile().getParentFile().mkdirs();
 			try
 			{
 				saveFile.createNewFile();
@@ -93,65 +176,153 @@ public class Serializer
 				throw new SaveRestoreFailed( "Couldn't create file to save to ["+fileLocation+"]", e );
 			}
 		}
-		
+
 		if( saveFile.canWrite() == false )
 			throw new SaveRestoreFailed( "Can't write to file "+fileLocation );
-		
-		// open and get an output stream around the file
-		ObjectOutputStream ostream = null;
+
+		// if we're still writing an earlier save to this file, let it finish first
+		awaitWrite( fileLocation );
+
+		///////////////////////
+		// Take the snapshot //
+		///////////////////////
+		// loop over each entry in the manifest and write it into memory
+		logger.debug( "ATTEMPT Save "+manifest.size()+" targets in manifest ("+
+		              manifest.hashCode()+")" );
+
+		Snapshot snapshot = new Snapshot();
+		List<String> names = new ArrayList<>();
+		List<Integer> sizes = new ArrayList<>();
 		try
 		{
-			ostream = new ObjectOutputStream( new FileOutputStream(saveFile) );
+			// flush the stream header out so it isn't counted as part of the first target
+			ObjectOutputStream ostream = new ObjectOutputStream( snapshot );
+			ostream.flush();
+			for( SaveRestoreTarget target : manifest )
+			{
+				String name = target.getClass().getSimpleName();
+				int start = snapshot.size();
+
+				try
+				{
+					logger.debug( "...saving target ["+name+"]" );
+					target.saveToStream( ostream );
+					ostream.flush();
+				}
+				catch( Exception e )
+				{
+					throw new SaveRestoreFailed( "Internal save error: exception saving target ["+name+"]", e );
+				}
+
+				names.add( target.getClass().getName() );
+				sizes.add( snapshot.size()-start );
+			}
+
+			ostream.close();
 		}
-		catch( Exception e )
+		catch( IOException ioex )
 		{
-			throw new SaveRestoreFailed( "Problem opening file to write state data to", e );
+			throw new SaveRestoreFailed( "Problem creating snapshot of state data", ioex );
 		}
-		
-		///////////////////////////
-		// Save data to the file //
-		///////////////////////////
-		// loop over each entry in the manifest and write it out
-		logger.debug( "ATTEMPT Save "+manifest.size()+" targets in manifest ("+
-		              manifest.hashCode()+")" );
 
-		for( SaveRestoreTarget target : manifest )
-		{
-			String name = target.getClass().getSimpleName();
-			
+		logger.debug( "Snapshot taken (%d bytes), writing to file in the background", snapshot.size() );
+
+		////////////////////////////
+		// Write it to the file   //
+		////////////////////////////
+		// the snapshot is ours now, so the caller can carry on while it is written out
+		ByteBuffer header = createHeader( names, sizes, snapshot );
+		CompletableFuture<Void> write = new CompletableFuture<>();
+		pendingWrites.put( fileLocation, write );
+		WRITER.execute( () -> {
 			try
 			{
-				logger.debug( "...saving target ["+name+"]" );
-				target.saveToStream( ostream );
+				writeFile( saveFile.toPath(), header, snapshot.toByteBuffer() );
+				pendingWrites.remove( fileLocation, write );
+				write.complete( null );
 			}
-			catch( Exception e )
+			catch( Throwable throwable )
 			{
-				throw new SaveRestoreFailed( "Internal save error: exception saving target ["+name+"]", e );
+				pendingWrites.remove( fileLocation, write );
+				write.completeExceptionally(
+					new SaveRestoreFailed("Saved state was not written to ["+fileLocation+"]",throwable) );
 			}
+		});
+
+		// huzzah!
+		logger.debug( "SUCCESS Saved "+manifest.size()+" targets in manifest ("+
+		              manifest.hashCode()+")" );
+		return write;
+	}
+
+	/**
+	 * Write the header and snapshot to a temporary file next to the given one and then move it
+	 * over the top. Called on the writer thread.
+	 */
+	private void writeFile( Path saveFile, ByteBuffer header, ByteBuffer snapshot ) throws IOException
+	{
+		Path temp = saveFile.resolveSibling( saveFile.getFileName()+".tmp" );
+		try
+		{
+			try( FileChannel channel = FileChannel.open(temp,
+			                                            StandardOpenOption.CREATE,
+			                                            StandardOpenOption.WRITE,
+			                                            StandardOpenOption.TRUNCATE_EXISTING) )
+			{
+				ByteBuffer[] buffers = new ByteBuffer[]{ header, snapshot };
+				while( header.hasRemaining() || snapshot.hasRemaining() )
+					channel.write( buffers );
+
+				channel.force( false );
+			}
+
+			Files.move( temp, saveFile, StandardCopyOption.ATOMIC_MOVE );
+			logger.debug( "Saved state written to file ["+saveFile+"]" );
+		}
+		catch( IOException ioex )
+		{
+			logger.error( "Problem writing saved state to file ["+saveFile+"]: "+ioex.getMessage(), ioex );
+			Files.deleteIfExists( temp );
+			throw ioex;
 		}
-		
+	}
+
+	/**
+	 * If a save to the given location is still being written in the background, wait for it to
+	 * finish. Returns straight away if there isn't one. The failure of a write is reported through
+	 * the future returned by {@link #save(Manifest, String)}, and is only thrown from here if we
+	 * had to wait for it. Either way, the file is whatever was there before (the write never
+	 * touches it directly).
+	 *
+	 * @throws SaveRestoreFailed If the write we waited for failed
+	 */
+	public void awaitWrite( String fileLocation ) throws SaveRestoreFailed
+	{
+		CompletableFuture<Void> write = pendingWrites.get( fileLocation );
+		if( write == null )
+			return;
+
 		try
 		{
-			// clean things up
-			ostream.close();
+			write.get();
 		}
-		catch( Exception e )
+		catch( ExecutionException ee )
 		{
-			throw new SaveRestoreFailed( "Error closing save file ["+fileLocation+
-			                             "], save not successful", e );
+			throw (SaveRestoreFailed)ee.getCause();
+		}
+		catch( InterruptedException ie )
+		{
+			Thread.currentThread().interrupt();
+			throw new SaveRestoreFailed( "Interrupted waiting for save to ["+fileLocation+"]", ie );
 		}
-		
-		// huzzah!
-		logger.debug( "SUCCESS Saved "+manifest.size()+" targets in manifest ("+
-		              manifest.hashCode()+")" );
 	}
-	
+
 	/**
 	 * Opens the file at the given location for reading. The input stream is passed to each
 	 * {@link SaveRestoreTarget} in the {@link Manifest}, allowing them to read in data that
 	 * was previously persisted. If there is a problem during this process (or the file cannot
 	 * be located or opened), an exception is thrown.
-	 * 
+	 *
 	 * @param manifest Manifest containing references to all the targets that want to restore data
 	 * @param fileLocation The location of the file to read LRC state data from
 	 * @throws SaveRestoreFailed If there is a problem finding or reading the file, or restoring
@@ -160,7 +331,10 @@ public class Serializer
 	public void restore( Manifest manifest, String fileLocation ) throws SaveRestoreFailed
 	{
 		logger.debug( "Serializer: Restore manifest (hash:"+manifest.hashCode()+") from "+fileLocation );
-		
+
+		// if we're still writing this file out, wait for it
+		awaitWrite( fileLocation );
+
 		//////////////////////
 		// Prepare the file //
 		//////////////////////
@@ -177,18 +351,32 @@ public class Serializer
 			throw new SaveRestoreFailed( "Can't load internal state data from file ["+fileLocation+
 			                             "]: can't read file" );
 		}
-		
-		// open and get an output stream around the file
+
+		// map the file and get an input stream around the snapshot in it
 		ObjectInputStream istream = null;
-		try
+		try( FileChannel channel = FileChannel.open(restoreFile.toPath(), StandardOpenOption.READ) )
+		{
+			MappedByteBuffer mapped = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+			if( mapped.remaining() >= 4 && mapped.getInt(0) == LEGACY_MAGIC )
+			{
+				logger.debug( "Save file is in the old format, reading as plain object stream" );
+				istream = new ObjectInputStream( new BufferedInputStream(new FileInputStream(restoreFile)) );
+			}
+			else
+			{
+				ByteBuffer snapshot = readHeader( manifest, mapped, fileLocation );
+				istream = new ObjectInputStream( new BufferInputStream(snapshot) );
+			}
+		}
+		catch( SaveRestoreFailed srf )
 		{
-			istream = new ObjectInputStream( new FileInputStream(restoreFile) );
+			throw srf;
 		}
 		catch( Exception e )
 		{
 			throw new SaveRestoreFailed( "Problem opening file to restore data from", e );
 		}
-		
+
 		////////////////////////////////
 		// Restore data from the file //
 		////////////////////////////////
@@ -199,7 +387,7 @@ public class Serializer
 		for( SaveRestoreTarget target : manifest )
 		{
 			String name = target.getClass().getSimpleName();
-			
+
 			try
 			{
 				logger.debug( "...restoring target ["+name+"]" );
@@ -211,7 +399,7 @@ public class Serializer
 				                             name+"]", e );
 			}
 		}
-		
+
 		try
 		{
 			// clean things up
@@ -222,13 +410,192 @@ public class Serializer
 			throw new SaveRestoreFailed( "Error closing file ["+fileLocation+
 			                             "], restore not successful", e );
 		}
-		
+
 		// huzzah!
 		logger.debug( "SUCCESS Restored "+manifest.size()+" targets in manifest ("+
 		              manifest.hashCode()+")" );
 	}
 
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  File Header Methods   /////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	private ByteBuffer createHeader( List<String> names, List<Integer> sizes, Snapshot snapshot )
+		throws SaveRestoreFailed
+	{
+		CRC32 crc = new CRC32();
+		crc.update( snapshot.toByteBuffer() );
+
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream header = new DataOutputStream( bytes );
+			header.writeInt( MAGIC );
+			header.writeInt( VERSION );
+			header.writeInt( names.size() );
+			for( int i = 0; i < names.size(); i++ )
+			{
+				byte[] name = names.get(i).getBytes( StandardCharsets.UTF_8 );
+				header.writeShort( name.length );
+				header.write( name );
+				header.writeInt( sizes.get(i) );
+			}
+
+			header.writeLong( crc.getValue() );
+			header.writeInt( snapshot.size() );
+			header.close();
+			return ByteBuffer.wrap( bytes.toByteArray() );
+		}
+		catch( IOException ioex )
+		{
+			throw new SaveRestoreFailed( "Problem creating save file header", ioex );
+		}
+	}
+
+	/**
+	 * Read and check the header at the start of the given buffer.
+	 *
+	 * @return A buffer over the snapshot that follows the header
+	 * @throws SaveRestoreFailed If the file is not a save file, is a version we can't read, was
+	 *                           saved from a different set of targets or is corrupt
+	 */
+	private ByteBuffer readHeader( Manifest manifest, ByteBuffer file, String fileLocation )
+		throws SaveRestoreFailed
+	{
+		try
+		{
+			int magic = file.getInt();
+			if( magic != MAGIC )
+				throw new SaveRestoreFailed( "["+fileLocation+"] is not a Portico save file" );
+
+			int version = file.getInt();
+			if( version != VERSION )
+			{
+				throw new SaveRestoreFailed( "["+fileLocation+"] is save file version "+version+
+				                             ", only version "+VERSION+" is supported" );
+			}
+
+			int count = file.getInt();
+			if( count != manifest.size() )
+			{
+				throw new SaveRestoreFailed( "["+fileLocation+"] has "+count+" targets, expected "+
+				                             manifest.size() );
+			}
+
+			long total = 0;
+			StringBuilder sizes = new StringBuilder();
+			for( SaveRestoreTarget target : manifest )
+			{
+				byte[] name = new byte[file.getShort()];
+				file.get( name );
+				int size = file.getInt();
+				String saved = new String( name, StandardCharsets.UTF_8 );
+				if( saved.equals(target.getClass().getName()) == false )
+				{
+					throw new SaveRestoreFailed( "["+fileLocation+"] targets do not match: found "+
+					                             saved+", expected "+target.getClass().getName() );
+				}
+
+				total += size;
+				sizes.append( target.getClass().getSimpleName() ).append( "=" ).append( size ).append( " " );
+			}
+
+			long checksum = file.getLong();
+			int length = file.getInt();
+			if( length > file.remaining() )
+			{
+				throw new SaveRestoreFailed( "["+fileLocation+"] is truncated: expected "+length+
+				                             " bytes, found "+file.remaining() );
+			}
+
+			// everything in the snapshot after the stream header was written by one of the
+			// targets, so if their sizes don't add up the header itself can't be trusted
+			if( total != length-STREAM_HEADER_SIZE )
+			{
+				throw new SaveRestoreFailed( "["+fileLocation+"] is corrupt: target sizes ( "+sizes+
+				                             ") add up to "+total+" bytes, snapshot has "+
+				                             (length-STREAM_HEADER_SIZE) );
+			}
+
+			logger.debug( "Save file targets: %s", sizes );
+
+			ByteBuffer snapshot = file.slice();
+			snapshot.limit( length );
+
+			CRC32 crc = new CRC32();
+			crc.update( snapshot.duplicate() );
+			if( crc.getValue() != checksum )
+				throw new SaveRestoreFailed( "["+fileLocation+"] is corrupt: checksum does not match" );
+
+			return snapshot;
+		}
+		catch( BufferUnderflowException bue )
+		{
+			throw new SaveRestoreFailed( "["+fileLocation+"] is truncated: header is incomplete" );
+		}
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Inner Class: Snapshot   ///////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * The in-memory snapshot. Lets us get at what has been written without copying it.
+	 */
+	private static class Snapshot extends ByteArrayOutputStream
+	{
+		public Snapshot()
+		{
+			super( 64 * 1024 );
+		}
+
+		public synchronized ByteBuffer toByteBuffer()
+		{
+			return ByteBuffer.wrap( buf, 0, count );
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Inner Class: BufferInputStream   //////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Reads straight out of a (mapped) buffer so that the file doesn't have to be read into
+	 * memory before the object stream can get at it.
+	 */
+	private static class BufferInputStream extends InputStream
+	{
+		private ByteBuffer buffer;
+
+		public BufferInputStream( ByteBuffer buffer )
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read( byte[] bytes, int offset, int length )
+		{
+			if( length == 0 )
+				return 0;
+			if( buffer.hasRemaining() == false )
+				return -1;
+
+			length = Math.min( length, buffer.remaining() );
+			buffer.get( bytes, offset, length );
+			return length;
+		}
+
+		@Override
+		public int available()
+		{
+			return buffer.remaining();
+		}
+	}
 }
@@ -28,7 +28,9 @@ import org.portico.utils.messaging.MessageHandler;
  * Handles notifications from the local federate that it has completed saving. If the local federate
  * was successful, this handler will then try and save the local LRC state to a file. Should this
  * fail, the success notice will be switched to a failure before broadcasting it out to the other
- * federates.
+ * federates. The save is only reported as complete once the file has been written, not just when
+ * the snapshot has been taken. The federate's call returns as soon as the snapshot is taken; the
+ * result is recorded and sent to the federation from the save writer thread when the write is done.
  */
 @MessageHandler(modules="lrc-base",
                 keywords={"lrc13","lrcjava1","lrc1516","lrc1516e"},
@@ -80,6 +82,7 @@ public class SaveCompleteHandler extends LRCMessageHandler
 			// local federate wasn't successful in its save attempt, don't both trying to save
 			// out our LRC state.
 			saveManager.federateSaveNotComplete( federateHandle() );
+			connection.broadcast( request );
 		}
 		else
 		{
@@ -93,25 +96,53 @@ public class SaveCompleteHandler extends LRCMessageHandler
 			                                                    federateName() );
 			try
 			{
-				lrcState.getSerializer().save( lrcState.getManifest(), location );
+				// the snapshot is written to disk in the background, but we can't tell the
+				// federation we're done until it is actually there to restore from
+				lrcState.getSerializer().save( lrcState.getManifest(), location )
+				                        .whenComplete( (written,failure) -> saveWritten(request,failure) );
+			}
+			catch( SaveRestoreFailed srf )
+			{
+				// couldn't even take the snapshot
+				saveWritten( request, srf );
+			}
+		}
+		
+		context.success();
+	}
+
+	/**
+	 * Record the result of writing our state out and pass the request on to the federation.
+	 * Usually called from the save writer thread once the file is written. If it couldn't be
+	 * written, the request is switched to a failure first.
+	 */
+	private void saveWritten( SaveComplete request, Throwable failure )
+	{
+		try
+		{
+			if( failure == null )
+			{
 				saveManager.federateSaveComplete( federateHandle() );
-				
 				if( logger.isInfoEnabled() )
 					logger.info( "SUCCESS Federate ["+moniker()+"] state has been saved, notify federation" );
 			}
-			catch( SaveRestoreFailed srf )
+			else
 			{
 				// FAILURE!
 				// mark the save as incomplete and replace the existing request with info about why
-				logger.error( "Save Failed", srf );
+				logger.error( "Save Failed", failure );
 				saveManager.federateSaveNotComplete( federateHandle() );
 				request.setFailure();
 			}
+
+			// pass the request on to the federation
+			connection.broadcast( request );
+		}
+		catch( Exception e )
+		{
+			logger.error( "Could not tell the federation that federate ["+moniker()+
+			              "] has completed its save: "+e.getMessage(), e );
 		}
-		
-		// pass the request on to the federation
-		connection.broadcast( request );
-		context.success();
 	}
 
 	//----------------------------------------------------------
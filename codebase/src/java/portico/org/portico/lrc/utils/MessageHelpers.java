@@ -26,6 +26,7 @@ import org.portico.lrc.compat.JRTIinternalError;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
 import org.portico2.common.messaging.ResponseMessage;
+import org.portico2.common.messaging.codec.MessageCodec;
 import org.portico2.common.network.CallType;
 import org.portico2.common.network.Header;
 import org.portico2.common.services.object.msg.SendInteraction;
@@ -64,12 +65,9 @@ public class MessageHelpers
 	 * (see {@link #deflateHeader(byte[], int, PorticoMessage, CallType, int, boolean, int)}.
 	 * <p/>
 	 * 
-	 * <b>Note:</b> If the message supports manual marshaling (where the reflection-based
-	 * serialization is ignored, instead providing total control to the message class), then
-	 * that process will be used in preference (resulting in
-	 * {@link PorticoMessage#marshal(java.io.ObjectOutput)} being called). This should not be
-	 * used unless you know what you are doing and have added the message id to the hardcoded
-	 * private method {@link #manuallyUnmarshal(ObjectInputStream, LRC)}).
+	 * <b>Note:</b> If there is a binary codec registered for the message in the {@link MessageCodec}
+	 * (which is the case for all the standard message types), it is used to write the message.
+	 * Java serialization is only used as a fallback for anything else.
 	 * 
 	 * @param message    The message to encode
 	 * @param calltype   The type of Portico call this is (Data, ControlSync, ...)
@@ -79,6 +77,15 @@ public class MessageHelpers
 	                                     CallType calltype,
 	                                     int requestId )
 	{
+		// Use the binary codec if the message has one. It leaves space for the header at the
+		// front of the buffer, so all we have to do is fill that in.
+		if( MessageCodec.canEncode(message) )
+		{
+			byte[] buffer = MessageCodec.encode( message );
+			Header.writeHeader( buffer, 0, message, calltype, requestId, buffer.length-Header.HEADER_LENGTH );
+			return buffer;
+		}
+
 		// Step 1. Write empty header (update later) and then full body
 		//         We write the body first because we need to know its length to include
 		//         in the header. For efficiency, we write an empty block of bytes into
@@ -166,6 +173,16 @@ public class MessageHelpers
 	                                      int sourceFederate,
 	                                      int targetFederate )
 	{
+		// Plain success/error responses don't carry anything that isn't already in the
+		// header call type, so just send the header with an empty payload
+		if( MessageCodec.canEncode(response) )
+		{
+			byte[] buffer = new byte[Header.HEADER_LENGTH];
+			Header.writeResponseHeader( buffer, 0, requestId, response, request, 0 );
+			new Header( buffer, 0 ).writeIsManualMarshal( true );
+			return buffer;
+		}
+
 		// Step 1. Write the body of the message
 		//         We write the body first because we need to know its length to include
 		//         in the header. For efficiency, we write an empty block of bytes into
@@ -225,20 +242,41 @@ public class MessageHelpers
 	 * can be used by the message to short-circuit potentially expensive inflation if it isn't
 	 * needed (however the filter determines that).
 	 * <p/>
-	 * <b>Note:</b> If the message supports manual unmarshaling (where the reflection-based
-	 * deserialization is ignored, instead providing total control to the message class), then
-	 * that process will be used in preference (resulting in
-	 * {@link PorticoMessage#unmarshal(java.io.ObjectInput)} being called). This should not be
-	 * used unless you know what you are doing and have added the message id to the hardcoded
-	 * private method {@link #manuallyUnmarshal(ObjectInputStream, LRC)}).
+	 * <b>Note:</b> If the header says the message was written with the binary {@link MessageCodec}
+	 * then it is used to read the message back. Otherwise the payload is treated as a Java
+	 * serialization stream.
 	 */
 	public static final <T> T inflate2( byte[] data, Class<T> expectedType, LRC lrc )
+	{
+		return inflate2( data, 0, data.length, expectedType, lrc );
+	}
+
+	/**
+	 * Same as {@link #inflate2(byte[], Class, LRC)}, except that the message is read from a
+	 * slice of the given array, starting with its header at <code>offset</code>. This lets us
+	 * inflate messages in place when they arrive in a bundle, without first copying them out.
+	 *
+	 * @param data The array containing the message
+	 * @param offset The index the message header starts at
+	 * @param length The length of the message, including the header
+	 */
+	public static final <T> T inflate2( byte[] data,
+	                                    int offset,
+	                                    int length,
+	                                    Class<T> expectedType,
+	                                    LRC lrc )
 	{
 		try
 		{
+			// was this written by the binary codec?
+			if( new Header(data,offset).isManualMarshal() )
+				return expectedType.cast( MessageCodec.decode(data,offset) );
+
+
 			// create the stream we'll read from, skipping the header
-			int length = data.length - Header.HEADER_LENGTH;
-			ByteArrayInputStream bais = new ByteArrayInputStream( data, Header.HEADER_LENGTH, length );
+			ByteArrayInputStream bais = new ByteArrayInputStream( data,
+			                                                      offset+Header.HEADER_LENGTH,
+			                                                      length-Header.HEADER_LENGTH );
 			ObjectInputStream ois = new ObjectInputStream( bais );
 			
 			// find out whether of not manual marshaling was used
@@ -258,7 +296,7 @@ public class MessageHelpers
 		}
 		catch( Exception e )
 		{
-			Header header = new Header( data, 0 );
+			Header header = new Header( data, offset );
 			throw new JRTIinternalError( "Couldn't convert byte[] ("+header.getMessageType()+") into "+
 			                             expectedType.getSimpleName(), e );
 		}		
@@ -0,0 +1,442 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.utils.messaging;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The storage behind the LRC message queues. It knows nothing about time status or the rules for
+ * when a message can be released; it just holds the messages in a way that makes the questions
+ * those rules ask cheap to answer. Messages live in one of three places:
+ *
+ * <ul>
+ *   <li><b>Incoming</b>: A lock-free queue that any number of threads can {@link #add(PorticoMessage)}
+ *       to. Nothing is sorted here, so network receivers never wait on the thread that is
+ *       processing callbacks.</li>
+ *   <li><b>Receive Order</b>: Two FIFO lanes, one for spec-defined "messages" (reflections,
+ *       interactions and removals) and one for everything else. Each entry is stamped with a
+ *       sequence number so the lanes can be merged back into arrival order, while the first
+ *       non-"message" callback is always at the head of its own lane.</li>
+ *   <li><b>Timestamp Order</b>: Messages are bucketed by timestamp, with the buckets sorted by
+ *       time. Within a bucket messages stay in arrival order and time advance grants are kept
+ *       behind everything else, so draining in time order is a walk along the head bucket.</li>
+ * </ul>
+ *
+ * The owning queue moves messages out of incoming and into one of the other two (deciding which
+ * based on its own rules) with {@link #takeIncoming()}. Threads that want to block until a new
+ * message arrives use {@link #awaitIncoming(long)}. Each {@link #add(PorticoMessage)} unparks all
+ * of the waiting threads, but only if there are any, so the common case of nobody waiting costs
+ * a single check. Everyone is woken (as the old <code>signalAll</code> did) because a woken
+ * thread may be about to give up waiting anyway, and waking only it could leave a message
+ * sitting until another waiter times out.
+ * <p/>
+ *
+ * <b>Thread safety:</b> {@link #add(PorticoMessage)}, {@link #awaitIncoming(long)},
+ * {@link #size()} and {@link #isEmpty()} can be called from any thread. Everything else must only
+ * be called by one thread at a time, which the owning queue is responsible for.
+ */
+public class CallbackQueue
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	// shared between producers and the consumer //
+	private Queue<PorticoMessage> incoming;
+	private Queue<Thread> waiters;
+	private AtomicInteger size;
+
+	// consumer only //
+	private ArrayDeque<Entry> roMessages;   // spec-defined "messages"
+	private ArrayDeque<Entry> roCallbacks;  // everything else
+	private long roSequence;
+	private TreeMap<Double,Bucket> tsoBuckets;
+	private Bucket tsoHead;                 // cached first bucket, null if there are none
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public CallbackQueue()
+	{
+		this.incoming = new ConcurrentLinkedQueue<>();
+		this.waiters = new ConcurrentLinkedQueue<>();
+		this.size = new AtomicInteger( 0 );
+
+		this.roMessages = new ArrayDeque<>();
+		this.roCallbacks = new ArrayDeque<>();
+		this.roSequence = 0;
+		this.tsoBuckets = new TreeMap<>();
+		this.tsoHead = null;
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Incoming (any thread)   ///////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Add the message to the incoming queue and wake any waiting threads. Safe to call from any
+	 * thread and never blocks.
+	 */
+	public void add( PorticoMessage message )
+	{
+		size.incrementAndGet();
+		incoming.add( message );
+		wake();
+	}
+
+	/**
+	 * Wake all the threads waiting in {@link #awaitIncoming(long)}, if there are any. Use this
+	 * when something other than a new message may have made a message releasable.
+	 */
+	public void wake()
+	{
+		if( waiters.isEmpty() )
+			return;
+
+		Thread waiter = null;
+		while( (waiter = waiters.poll()) != null )
+			LockSupport.unpark( waiter );
+	}
+
+	/**
+	 * Block the calling thread until a message is {@link #add(PorticoMessage) added} (or we are
+	 * {@link #wake() woken}), or until the timeout passes. Returns straight away if there are messages in incoming that nobody
+	 * has taken yet. Note that being woken doesn't mean there is anything that can be released,
+	 * just that it is worth checking again.
+	 *
+	 * @param timeoutNanos How long to wait for. A value less than zero waits until woken.
+	 * @throws InterruptedException If the thread was interrupted while waiting
+	 */
+	public void awaitIncoming( long timeoutNanos ) throws InterruptedException
+	{
+		Thread current = Thread.currentThread();
+		long deadline = System.nanoTime() + timeoutNanos;
+
+		// register before we check so we can't miss an add that happens in between
+		waiters.add( current );
+		try
+		{
+			while( incoming.isEmpty() )
+			{
+				if( timeoutNanos < 0 )
+				{
+					LockSupport.park( this );
+				}
+				else
+				{
+					long remaining = deadline - System.nanoTime();
+					if( remaining <= 0 )
+						break;
+
+					LockSupport.parkNanos( this, remaining );
+				}
+
+				if( Thread.interrupted() )
+					throw new InterruptedException();
+
+				// if we were taken off the waiter list, someone woke us on purpose
+				if( waiters.contains(current) == false )
+					break;
+			}
+		}
+		finally
+		{
+			waiters.remove( current );
+		}
+	}
+
+	/** Same as {@link #awaitIncoming(long)}, but waits until the given wall-clock time */
+	public void awaitIncomingUntil( long deadlineMillis ) throws InterruptedException
+	{
+		long remaining = deadlineMillis - System.currentTimeMillis();
+		if( remaining > 0 )
+			awaitIncoming( TimeUnit.MILLISECONDS.toNanos(remaining) );
+	}
+
+	/** @return The number of messages held, including any that are still in incoming */
+	public int size()
+	{
+		return size.get();
+	}
+
+	public boolean isEmpty()
+	{
+		return size.get() == 0;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Sorting (consumer only)   /////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Remove and return the next message from incoming. The caller <b>must</b> then put it into
+	 * either the RO or TSO store with {@link #putReceiveOrder(PorticoMessage)} or
+	 * {@link #putTimestamped(PorticoMessage)}. The message is still counted in the
+	 * {@link #size()} while it is moved.
+	 *
+	 * @return The next incoming message, or null if there are none
+	 */
+	public PorticoMessage takeIncoming()
+	{
+		return incoming.poll();
+	}
+
+	public void putReceiveOrder( PorticoMessage message )
+	{
+		Entry entry = new Entry( roSequence++, message );
+		if( message.isSpecDefinedMessage() )
+			roMessages.add( entry );
+		else
+			roCallbacks.add( entry );
+	}
+
+	public void putTimestamped( PorticoMessage message )
+	{
+		double time = message.getTimestamp();
+		Bucket bucket = null;
+		if( tsoHead != null && tsoHead.time == time )
+			bucket = tsoHead;
+		else
+			bucket = tsoBuckets.get( time );
+
+		if( bucket == null )
+		{
+			bucket = new Bucket( time );
+			tsoBuckets.put( time, bucket );
+			if( tsoHead == null || time < tsoHead.time )
+				tsoHead = bucket;
+		}
+
+		if( message.isTimeAdvance() )
+			bucket.advances.add( message );
+		else
+			bucket.messages.add( message );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Receive Order (consumer only)   ///////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	public boolean hasReceiveOrder()
+	{
+		return roMessages.isEmpty() == false || roCallbacks.isEmpty() == false;
+	}
+
+	/** @return The RO message that arrived first, or null if there are none */
+	public PorticoMessage pollReceiveOrder()
+	{
+		Entry message = roMessages.peek();
+		Entry callback = roCallbacks.peek();
+		if( message == null && callback == null )
+			return null;
+
+		size.decrementAndGet();
+		if( callback == null || (message != null && message.sequence < callback.sequence) )
+			return roMessages.poll().message;
+		else
+			return roCallbacks.poll().message;
+	}
+
+	/**
+	 * @return The first RO message that isn't a spec-defined "message" (see
+	 *         {@link PorticoMessage#isSpecDefinedMessage()}), or null if there are none
+	 */
+	public PorticoMessage pollReceiveOrderCallback()
+	{
+		Entry callback = roCallbacks.poll();
+		if( callback == null )
+			return null;
+
+		size.decrementAndGet();
+		return callback.message;
+	}
+
+	/** @return All the RO messages, in the order they arrived. They are not removed. */
+	public List<PorticoMessage> getReceiveOrder()
+	{
+		List<PorticoMessage> list = new ArrayList<>( roMessages.size()+roCallbacks.size() );
+		Iterator<Entry> messages = roMessages.iterator();
+		Iterator<Entry> callbacks = roCallbacks.iterator();
+		Entry message = messages.hasNext() ? messages.next() : null;
+		Entry callback = callbacks.hasNext() ? callbacks.next() : null;
+		while( message != null || callback != null )
+		{
+			if( callback == null || (message != null && message.sequence < callback.sequence) )
+			{
+				list.add( message.message );
+				message = messages.hasNext() ? messages.next() : null;
+			}
+			else
+			{
+				list.add( callback.message );
+				callback = callbacks.hasNext() ? callbacks.next() : null;
+			}
+		}
+
+		return list;
+	}
+
+	/** Remove all the RO messages, adding them to the given list in the order they arrived */
+	public void drainReceiveOrder( List<PorticoMessage> list )
+	{
+		PorticoMessage message = null;
+		while( (message = pollReceiveOrder()) != null )
+			list.add( message );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Timestamp Order (consumer only)   /////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * @return The TSO message with the lowest timestamp (with time advance grants behind any
+	 *         other message of the same time), or null if there are none. It is not removed.
+	 */
+	public PorticoMessage peekTimestamped()
+	{
+		return tsoHead == null ? null : tsoHead.peek();
+	}
+
+	/** Remove and return the message {@link #peekTimestamped()} would return */
+	public PorticoMessage pollTimestamped()
+	{
+		if( tsoHead == null )
+			return null;
+
+		PorticoMessage message = tsoHead.poll();
+		if( tsoHead.isEmpty() )
+		{
+			tsoBuckets.remove( tsoHead.time );
+			Map.Entry<Double,Bucket> next = tsoBuckets.firstEntry();
+			tsoHead = next == null ? null : next.getValue();
+		}
+
+		size.decrementAndGet();
+		return message;
+	}
+
+	public boolean hasTimestamped()
+	{
+		return tsoHead != null;
+	}
+
+	/** @return All the TSO messages, in the order they would be released. They are not removed. */
+	public List<PorticoMessage> getTimestamped()
+	{
+		List<PorticoMessage> list = new ArrayList<>();
+		for( Bucket bucket : tsoBuckets.values() )
+		{
+			list.addAll( bucket.messages );
+			list.addAll( bucket.advances );
+		}
+
+		return list;
+	}
+
+	/**
+	 * Move all the TSO messages to the end of the RO store, in the order they would have been
+	 * released, setting the timestamp of each to the given value as they go.
+	 */
+	public void moveTimestampedToReceiveOrder( double timestamp )
+	{
+		for( Bucket bucket : tsoBuckets.values() )
+		{
+			for( PorticoMessage message : bucket.messages )
+			{
+				message.setTimestamp( timestamp );
+				putReceiveOrder( message );
+			}
+
+			for( PorticoMessage message : bucket.advances )
+			{
+				message.setTimestamp( timestamp );
+				putReceiveOrder( message );
+			}
+		}
+
+		tsoBuckets.clear();
+		tsoHead = null;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Private Inner Classes   ///////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/** An RO message and the order it arrived in */
+	private static class Entry
+	{
+		private final long sequence;
+		private final PorticoMessage message;
+
+		private Entry( long sequence, PorticoMessage message )
+		{
+			this.sequence = sequence;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * All the TSO messages for a single timestamp. Time advance grants are held separately so
+	 * they are always released after everything else at that time.
+	 */
+	private static class Bucket
+	{
+		private final double time;
+		private final ArrayDeque<PorticoMessage> messages;
+		private final ArrayDeque<PorticoMessage> advances;
+
+		private Bucket( double time )
+		{
+			this.time = time;
+			this.messages = new ArrayDeque<>();
+			this.advances = new ArrayDeque<>( 1 );
+		}
+
+		private PorticoMessage peek()
+		{
+			return messages.isEmpty() ? advances.peek() : messages.peek();
+		}
+
+		private PorticoMessage poll()
+		{
+			return messages.isEmpty() ? advances.poll() : messages.poll();
+		}
+
+		private boolean isEmpty()
+		{
+			return messages.isEmpty() && advances.isEmpty();
+		}
+
+		private int size()
+		{
+			return messages.size() + advances.size();
+		}
+	}
+}
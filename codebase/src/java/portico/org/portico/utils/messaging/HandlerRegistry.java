@@ -14,8 +14,11 @@
  */
 package org.portico.utils.messaging;
 
+import java.io.File;
+import java.net.MalformedURLException;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.portico.impl.hla13.handlers.AssumptionRequestCallbackHandler;
@@ -145,7 +148,11 @@ import org.portico.lrc.services.time.handlers.outgoing.TimeAdvanceRequestHandler
  * lookup mechanism that was designed to automatically find implementing handlers anywhere on
  * the classpath. Unfortunately that approach was typically over-engineered: "magic" when it 
  * worked, and frequently broken. This simple approach may have fewer fairies, but it is simple
- * and explicit.
+ * and explicit. It also means nothing has to be opened or read to find the handlers that ship
+ * with Portico, which matters when a process is starting up a lot of federates.
+ * <p/>
+ * Scanning is still used for third-party plugins (see {@link #loadPluginHandlers(List)}), but
+ * only the plugin locations are searched, never the whole classpath.
  */
 public class HandlerRegistry
 {
@@ -425,6 +432,40 @@ public class HandlerRegistry
 		}
 	}
 
+	/**
+	 * Search each of the given plugin locations (jar files or directories) for classes that
+	 * declare the {@link MessageHandler} annotation and add them to the registry. Handlers for a
+	 * module we already have are added to that module. The classes must be loadable from the
+	 * classpath.
+	 * 
+	 * @param locations The plugin locations to search
+	 * @throws JConfigurationException If a location can't be scanned, or one of the classes found
+	 *                                 isn't a valid handler
+	 */
+	public void loadPluginHandlers( List<File> locations ) throws JConfigurationException
+	{
+		for( File location : locations )
+		{
+			Collection<Module> found = null;
+			try
+			{
+				found = Module.findModules( location.toURI().toURL() );
+			}
+			catch( MalformedURLException mue )
+			{
+				throw new JConfigurationException( "Invalid plugin location: "+location, mue );
+			}
+			
+			for( Module module : found )
+			{
+				if( modules.containsKey(module.getName()) )
+					modules.get(module.getName()).combine( module );
+				else
+					modules.put( module.getName(), module );
+			}
+		}
+	}
+
 	//////////////////////////////////////////////////////////////////////////////////
 	/// Accessor and Mutator Methods   ///////////////////////////////////////////////
 	//////////////////////////////////////////////////////////////////////////////////
@@ -203,6 +203,10 @@ public class Module
 		HashMap<String,MessageSink> sinkMap = new HashMap<String,MessageSink>();
 		for( MessageSink sink : sinks )
 			sinkMap.put( sink.getName(), sink );
+		
+		// every handler is initialized with the same set of properties, so only go through
+		// the system properties once rather than once per handler
+		Map<String,Object> initializationProperties = getInitializationProperties( properties );
 
 		// for each handler class, find out what message sinks it is interested in and
 		// find each of those sinks in those given to the method. Add a new instance of
@@ -245,7 +249,7 @@ public class Module
 				                    targetSink,
 				                    annotation.messages(),
 				                    annotation.global(),
-				                    properties );
+				                    initializationProperties );
 				
 				appliedHandlers.add( handlerClass );
 			}
@@ -408,9 +412,9 @@ public class Module
 	 * if the <code>global</code> variable says that this hander is a global handler, the messages
 	 * will be ignored and the handler will be registered as a global handler as appropriate.
 	 * <p/>
-	 * The given properties will be passed to each and every handler that is created via its
-	 * {@link IMessageHandler#initialize(Map)} method. A new properties map will be used, so the
-	 * original won't be modified.
+	 * The given properties (system properties included) will be passed to each and every handler
+	 * that is created via its {@link IMessageHandler#initialize(Map)} method. A new properties map
+	 * will be used, so the original won't be modified.
 	 * <p/>
 	 * An exception will be thrown if there is a problem instantiating the handler class or
 	 * registering it with the {@link MessageSink}.
@@ -434,7 +438,7 @@ public class Module
 		IMessageHandler handler = null;
 		try
 		{
-			handlerClass.getDeclaredConstructor().newInstance();
+			handler = handlerClass.getDeclaredConstructor().newInstance();
 		}
 		catch( Exception e )
 		{
@@ -462,10 +466,9 @@ public class Module
 		}
 		
 		// initialize the handler before we let it go
-		// create a new properties map so we don't modify the original, populate it with
-		// the system properties and then add in any of the given properties. add the message
+		// create a new properties map so we don't modify the original, and add the message
 		// sink before initializing the handler
-		Map<String,Object> initializationProperties = getInitializationProperties( givenProperties );
+		Map<String,Object> initializationProperties = new HashMap<String,Object>( givenProperties );
 		initializationProperties.put( MessageSink.KEY_MESSAGE_SINK, messageSink );
 		handler.initialize( initializationProperties );
 	}
@@ -27,6 +27,10 @@ import org.portico.lrc.compat.JRTIinternalError;
 import org.portico.lrc.utils.MessageHelpers;
 import org.portico2.common.PorticoConstants;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
+import org.portico2.common.messaging.codec.MessageCodec;
+import org.portico2.common.network.Message;
 
 /**
  * This is the parent class of all Portico request messages. All messages sent through the Portico
@@ -76,6 +80,9 @@ public abstract class PorticoMessage implements Serializable, Cloneable
 	
 	protected Set<Integer> multipleTargets; // only used if we have multiple targets for a message
 
+	// the network message this was inflated from (RTI only, see setReceivedMessage())
+	private transient Message receivedMessage;
+
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
@@ -91,6 +98,7 @@ public abstract class PorticoMessage implements Serializable, Cloneable
 		this.immediate = false;
 		
 		this.multipleTargets = null; // only set when it has to be
+		this.receivedMessage = null; // only set when it has to be
 	}
 
 	//----------------------------------------------------------
@@ -134,6 +142,26 @@ public abstract class PorticoMessage implements Serializable, Cloneable
 		this.setSourceFederateIfNull( PorticoConstants.RTI_HANDLE );
 		//this.sourceFederate = PorticoConstants.RTI_HANDLE;
 	}
+
+	/**
+	 * The RTI passes most data messages on exactly as they arrived. To save serializing (and
+	 * perhaps encrypting) them all over again, the connection that received one stores the
+	 * network {@link Message} it came in as here, so the RTI can forward that instead. This is
+	 * not serialized or cloned, and anything that changes the message before it is forwarded
+	 * must clear it.
+	 * 
+	 * @param message The network message this was inflated from, or null to clear it
+	 */
+	public void setReceivedMessage( Message message )
+	{
+		this.receivedMessage = message;
+	}
+
+	/** @return The network message this was inflated from, or null if it wasn't stored */
+	public Message getReceivedMessage()
+	{
+		return this.receivedMessage;
+	}
 	
 	/**
 	 * Defaults to {@link PorticoConstants#NULL_HANDLE} unless otherwise set.
@@ -364,7 +392,20 @@ public abstract class PorticoMessage implements Serializable, Cloneable
 	/////////////////////////////////////////////////////////////
 	public Object clone() throws CloneNotSupportedException
 	{
-		return super.clone();
+		PorticoMessage clone = (PorticoMessage)super.clone();
+		clone.receivedMessage = null; // clones are made to be changed
+		return clone;
+	}
+
+	/**
+	 * Give this message its own copy of any <code>byte[]</code> values it carries, rather than
+	 * sharing them with the message it was cloned from. A clone shares them, which is fine while
+	 * the message stays inside Portico, but messages passed between connections in the same JVM
+	 * end up in federate code that can change them (or in the sender's, which can reuse them).
+	 * Does nothing by default; messages that carry values override it.
+	 */
+	public void copyValues()
+	{
 	}
 
 	/**
@@ -484,7 +525,43 @@ public abstract class PorticoMessage implements Serializable, Cloneable
 	public void unmarshal( ObjectInput buffer ) throws IOException, ClassNotFoundException
 	{
 	}
-	
+
+	/////////////////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////////// Codec Methods /////////////////////////////////////
+	/////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Write the contents of this message into the given output. This is used by the binary
+	 * {@link MessageCodec} when the message is deflated for the network. This implementation
+	 * writes the common values held by all messages. Subclasses with their own state must
+	 * override it, call <code>super.encode(output)</code> first and then write their own fields.
+	 * They must also override {@link #decode(CodecInput)} to read those fields back in the same
+	 * order, and be registered with the {@link MessageCodec}.
+	 */
+	public void encode( CodecOutput output )
+	{
+		// FIXME What about multiple targets? (not sent by writeExternal() either)
+		output.putBoolean( isFromRti );
+		output.putBoolean( immediate );
+		output.putInt( sourceFederate );
+		output.putInt( targetFederate );
+		output.putInt( targetFederation );
+		output.putDouble( timestamp );
+	}
+
+	/**
+	 * Read the contents of this message from the given input. The reverse of
+	 * {@link #encode(CodecOutput)}.
+	 */
+	public void decode( CodecInput input )
+	{
+		this.isFromRti = input.getBoolean();
+		this.immediate = input.getBoolean();
+		this.sourceFederate = input.getInt();
+		this.targetFederate = input.getInt();
+		this.targetFederation = input.getInt();
+		this.timestamp = input.getDouble();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
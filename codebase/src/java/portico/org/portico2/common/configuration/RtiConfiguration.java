@@ -32,18 +32,35 @@ public class RtiConfiguration
 	//----------------------------------------------------------
 	//                    STATIC VARIABLES
 	//----------------------------------------------------------
+	// Message Processing Properties
+	public static final String KEY_DATA_THREADS    = "dataThreads";
+	public static final String KEY_DATA_QUEUE      = "dataQueueSize";
+	public static final String KEY_SHARD_BY        = "shardBy";
+	public static final String KEY_CONTROL_QUEUE   = "controlQueueSize";
 
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
 	//----------------------------------------------------------
 	private Map<String,ConnectionConfiguration> rtiConnections;
 
+	// Message Processing
+	private int dataThreads;
+	private int dataQueueSize;
+	private ShardBy shardBy;
+	private int controlQueueSize;
+
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 	protected RtiConfiguration()
 	{
 		this.rtiConnections = new HashMap<>();
+
+		// Message Processing
+		this.dataThreads = 0;         // work it out from the number of processors
+		this.dataQueueSize = 4096;
+		this.shardBy = ShardBy.Federate;
+		this.controlQueueSize = 10000;
 	}
 
 	//----------------------------------------------------------
@@ -100,6 +117,78 @@ public class RtiConfiguration
 			rtiConnections.remove( name );
 	}
 
+	////////////////////////////////////////////////////////////////////////////////////////
+	/// Message Processing Options    //////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * @return The number of threads that forward data messages for all the federations in the
+	 *         RTI. If this is 0 (the default), the number is picked based on the available
+	 *         processors.
+	 */
+	public int getDataThreads()
+	{
+		if( this.dataThreads > 0 )
+			return this.dataThreads;
+		else
+			return Math.max( 1, Runtime.getRuntime().availableProcessors() );
+	}
+
+	public void setDataThreads( int threads )
+	{
+		if( threads < 0 )
+			throw new JConfigurationException( "Number of data threads cannot be negative: "+threads );
+		else
+			this.dataThreads = threads;
+	}
+
+	/**
+	 * @return The number of data messages that can be waiting on each data thread. Once a queue
+	 *         is full, the connection trying to add to it must wait. Default: 4096.
+	 */
+	public int getDataQueueSize()
+	{
+		return this.dataQueueSize;
+	}
+
+	public void setDataQueueSize( int size )
+	{
+		if( size < 1 )
+			throw new JConfigurationException( "Data queue size must be at least 1: "+size );
+		else
+			this.dataQueueSize = size;
+	}
+
+	/**
+	 * @return How data messages are spread over the data threads. Messages with the same key always
+	 *         go to the same thread, so they are forwarded in the order they arrived.
+	 */
+	public ShardBy getShardBy()
+	{
+		return this.shardBy;
+	}
+
+	public void setShardBy( ShardBy shardBy )
+	{
+		this.shardBy = shardBy;
+	}
+
+	/**
+	 * @return The number of control messages each federation can have waiting to go out to its
+	 *         federates. Once full, whoever is queueing must wait. Default: 10000.
+	 */
+	public int getControlQueueSize()
+	{
+		return this.controlQueueSize;
+	}
+
+	public void setControlQueueSize( int size )
+	{
+		if( size < 1 )
+			throw new JConfigurationException( "Control queue size must be at least 1: "+size );
+		else
+			this.controlQueueSize = size;
+	}
+
 	////////////////////////////////////////////////////////////////////////////////////////
 	/// Configuration Parsing Methods   ////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
@@ -120,9 +209,66 @@ public class RtiConfiguration
 			configuration.parseConfiguration( rid, connectionElement );
 			this.rtiConnections.put( name, configuration );
 		}
+
+		// Fetch the Message Processing Properties
+		Element processing = XmlUtils.getChild( rtiElement, "processing", false );
+		if( processing != null )
+			parseProcessing( processing );
+	}
+
+	private void parseProcessing( Element element ) throws JConfigurationException
+	{
+		try
+		{
+			if( element.hasAttribute(KEY_DATA_THREADS) )
+				this.setDataThreads( Integer.parseInt(element.getAttribute(KEY_DATA_THREADS)) );
+
+			if( element.hasAttribute(KEY_DATA_QUEUE) )
+				this.setDataQueueSize( Integer.parseInt(element.getAttribute(KEY_DATA_QUEUE)) );
+
+			if( element.hasAttribute(KEY_SHARD_BY) )
+				this.setShardBy( ShardBy.fromString(element.getAttribute(KEY_SHARD_BY)) );
+
+			if( element.hasAttribute(KEY_CONTROL_QUEUE) )
+				this.setControlQueueSize( Integer.parseInt(element.getAttribute(KEY_CONTROL_QUEUE)) );
+		}
+		catch( NumberFormatException nfe )
+		{
+			throw new JConfigurationException( "RTI <processing> has an invalid number: "+nfe.getMessage(), nfe );
+		}
 	}
 	
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/// Public Inner Enum: ShardBy   //////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * What the RTI uses to decide which data thread forwards a data message.
+	 */
+	public enum ShardBy
+	{
+		/** All the data messages from one federate are forwarded in order by the same thread */
+		Federate,
+
+		/**
+		 * Attribute updates are spread by object instance, so one busy federate can use many
+		 * threads. Updates to a single object are still in order, but there is no ordering between
+		 * objects, or between updates and the interactions a federate sends.
+		 */
+		Object;
+
+		public static ShardBy fromString( String value ) throws JConfigurationException
+		{
+			for( ShardBy shardBy : values() )
+			{
+				if( shardBy.name().equalsIgnoreCase(value.trim()) )
+					return shardBy;
+			}
+
+			throw new JConfigurationException( "Unknown value for "+KEY_SHARD_BY+": "+value );
+		}
+	}
 }
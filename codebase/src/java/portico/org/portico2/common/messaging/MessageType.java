@@ -120,7 +120,8 @@ public enum MessageType
 	
 	// Management Object Model (150-159)
 	SetServiceReporting     ( (short)150 ),
-	SetExceptionReporting   ( (short)151 );
+	SetExceptionReporting   ( (short)151 ),
+	ReceiveFilterReport     ( (short)152 );
 	
 	// Reserved for future use (160-253)
 	
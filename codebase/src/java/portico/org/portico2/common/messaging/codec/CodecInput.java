@@ -0,0 +1,234 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.messaging.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.portico.lrc.compat.JRTIinternalError;
+import org.portico2.common.utils.HandleValueMap;
+
+/**
+ * Reads values out of a message that was encoded by the {@link MessageCodec}. This is a thin
+ * wrapper around a {@link ByteBuffer} that is positioned over the payload of the message, and
+ * understands the formats written by {@link CodecOutput}. Values must be read back in exactly
+ * the same order they were written.
+ * <p/>
+ *
+ * The buffer is wrapped, not copied. Only the values pulled out of it (strings, byte[]s, ...)
+ * will cause an allocation.
+ */
+public class CodecInput
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int NULL_LENGTH = -1;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private ByteBuffer buffer;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public CodecInput( byte[] data, int offset, int length )
+	{
+		this.buffer = ByteBuffer.wrap( data, offset, length );
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/** @return The number of bytes left to be read */
+	public int remaining()
+	{
+		return buffer.remaining();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Primitive Types   /////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	public boolean getBoolean()
+	{
+		return buffer.get() != 0;
+	}
+
+	public byte getByte()
+	{
+		return buffer.get();
+	}
+
+	public short getShort()
+	{
+		return buffer.getShort();
+	}
+
+	public int getInt()
+	{
+		return buffer.getInt();
+	}
+
+	public long getLong()
+	{
+		return buffer.getLong();
+	}
+
+	public double getDouble()
+	{
+		return buffer.getDouble();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Variable Length Types   ///////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	public byte[] getBytes()
+	{
+		int length = buffer.getInt();
+		if( length == NULL_LENGTH )
+			return null;
+
+		byte[] bytes = new byte[length];
+		buffer.get( bytes );
+		return bytes;
+	}
+
+	public String getString()
+	{
+		int length = buffer.getInt();
+		if( length == NULL_LENGTH )
+			return null;
+
+		String string = new String( buffer.array(),
+		                            buffer.arrayOffset() + buffer.position(),
+		                            length,
+		                            StandardCharsets.UTF_8 );
+		buffer.position( buffer.position() + length );
+		return string;
+	}
+
+	public <E extends Enum<E>> E getEnum( Class<E> type )
+	{
+		short ordinal = buffer.getShort();
+		if( ordinal == NULL_LENGTH )
+			return null;
+		else
+			return type.getEnumConstants()[ordinal];
+	}
+
+	public HashSet<Integer> getIntSet()
+	{
+		int size = buffer.getInt();
+		if( size == NULL_LENGTH )
+			return null;
+
+		HashSet<Integer> set = new HashSet<>( (int)(size/0.75f)+1 );
+		for( int i = 0; i < size; i++ )
+			set.add( buffer.getInt() );
+
+		return set;
+	}
+
+	public ArrayList<Integer> getIntList()
+	{
+		int size = buffer.getInt();
+		if( size == NULL_LENGTH )
+			return null;
+
+		ArrayList<Integer> list = new ArrayList<>( size );
+		for( int i = 0; i < size; i++ )
+			list.add( buffer.getInt() );
+
+		return list;
+	}
+
+	public HashSet<String> getStringSet()
+	{
+		int size = buffer.getInt();
+		if( size == NULL_LENGTH )
+			return null;
+
+		HashSet<String> set = new HashSet<>( (int)(size/0.75f)+1 );
+		for( int i = 0; i < size; i++ )
+			set.add( getString() );
+
+		return set;
+	}
+
+	public ArrayList<String> getStringList()
+	{
+		int size = buffer.getInt();
+		if( size == NULL_LENGTH )
+			return null;
+
+		ArrayList<String> list = new ArrayList<>( size );
+		for( int i = 0; i < size; i++ )
+			list.add( getString() );
+
+		return list;
+	}
+
+	/**
+	 * Read a map of handle/value pairs as written by {@link CodecOutput#putHandleValueMap(java.util.Map)}
+	 */
+	public HandleValueMap getHandleValueMap()
+	{
+		int size = buffer.getInt();
+		if( size == NULL_LENGTH )
+			return null;
+
+		HandleValueMap map = new HandleValueMap( size );
+		for( int i = 0; i < size; i++ )
+		{
+			int handle = buffer.getInt();
+			map.put( handle, getBytes() );
+		}
+
+		return map;
+	}
+
+	/**
+	 * Read an object that was written with standard Java serialization through
+	 * {@link CodecOutput#putObject(Object)} and cast it to the given type.
+	 */
+	public <T> T getObject( Class<T> expectedType )
+	{
+		int length = buffer.getInt();
+		if( length == NULL_LENGTH )
+			return null;
+
+		int start = buffer.arrayOffset() + buffer.position();
+		buffer.position( buffer.position() + length );
+		try( ObjectInputStream ois =
+		         new ObjectInputStream(new ByteArrayInputStream(buffer.array(),start,length)) )
+		{
+			return expectedType.cast( ois.readObject() );
+		}
+		catch( Exception e )
+		{
+			throw new JRTIinternalError( "Couldn't deserialize "+expectedType.getSimpleName()+": "+
+			                             e.getMessage(), e );
+		}
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
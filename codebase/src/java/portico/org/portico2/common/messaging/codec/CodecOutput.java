@@ -0,0 +1,263 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.messaging.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.portico.lrc.compat.JRTIinternalError;
+import org.portico2.common.utils.HandleValueMap;
+
+/**
+ * Growable output buffer that messages write themselves into when they are being encoded by
+ * the {@link MessageCodec}. Values are written straight into a heap {@link ByteBuffer} in
+ * big-endian order, with no stream headers or block framing. If there isn't enough space left
+ * for a value, the buffer is grown automatically.
+ * <p/>
+ *
+ * Variable length values (strings, byte[]s, collections) are written with an int length prefix.
+ * A length of <code>-1</code> is used to represent <code>null</code> so that it can be restored
+ * as such on the other side.
+ */
+public class CodecOutput
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int NULL_LENGTH = -1;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private ByteBuffer buffer;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public CodecOutput( int initialCapacity )
+	{
+		this.buffer = ByteBuffer.allocate( initialCapacity );
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	private final void ensureCapacity( int bytesNeeded )
+	{
+		if( buffer.remaining() >= bytesNeeded )
+			return;
+
+		int newCapacity = Math.max( buffer.capacity() * 2, buffer.position() + bytesNeeded );
+		ByteBuffer grown = ByteBuffer.allocate( newCapacity );
+		buffer.flip();
+		grown.put( buffer );
+		this.buffer = grown;
+	}
+
+	/** Discard any content that has been written so that the buffer can be reused */
+	public void reset()
+	{
+		buffer.clear();
+	}
+
+	/** @return The number of bytes that have been written so far */
+	public int size()
+	{
+		return buffer.position();
+	}
+
+	/** @return The current size of the backing buffer (which may be larger than {@link #size()}) */
+	public int capacity()
+	{
+		return buffer.capacity();
+	}
+
+	/** @return A copy of the bytes that have been written, trimmed to the right length */
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf( buffer.array(), buffer.position() );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Primitive Types   /////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	public void putBoolean( boolean value )
+	{
+		ensureCapacity( 1 );
+		buffer.put( value ? (byte)1 : (byte)0 );
+	}
+
+	public void putByte( byte value )
+	{
+		ensureCapacity( 1 );
+		buffer.put( value );
+	}
+
+	public void putShort( short value )
+	{
+		ensureCapacity( 2 );
+		buffer.putShort( value );
+	}
+
+	public void putInt( int value )
+	{
+		ensureCapacity( 4 );
+		buffer.putInt( value );
+	}
+
+	public void putLong( long value )
+	{
+		ensureCapacity( 8 );
+		buffer.putLong( value );
+	}
+
+	public void putDouble( double value )
+	{
+		ensureCapacity( 8 );
+		buffer.putDouble( value );
+	}
+
+	/** Write the raw bytes with no length prefix. Use {@link #putBytes(byte[])} normally. */
+	public void putRaw( byte[] bytes )
+	{
+		ensureCapacity( bytes.length );
+		buffer.put( bytes );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Variable Length Types   ///////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	public void putBytes( byte[] bytes )
+	{
+		if( bytes == null )
+		{
+			putInt( NULL_LENGTH );
+			return;
+		}
+
+		ensureCapacity( 4 + bytes.length );
+		buffer.putInt( bytes.length );
+		buffer.put( bytes );
+	}
+
+	public void putString( String string )
+	{
+		putBytes( string == null ? null : string.getBytes(StandardCharsets.UTF_8) );
+	}
+
+	/** Enums are written as their ordinal, so both sides must be running the same version */
+	public void putEnum( Enum<?> value )
+	{
+		putShort( value == null ? (short)NULL_LENGTH : (short)value.ordinal() );
+	}
+
+	public void putIntCollection( Collection<Integer> collection )
+	{
+		if( collection == null )
+		{
+			putInt( NULL_LENGTH );
+			return;
+		}
+
+		ensureCapacity( 4 + (collection.size()*4) );
+		buffer.putInt( collection.size() );
+		for( Integer value : collection )
+			buffer.putInt( value );
+	}
+
+	public void putStringCollection( Collection<String> collection )
+	{
+		if( collection == null )
+		{
+			putInt( NULL_LENGTH );
+			return;
+		}
+
+		putInt( collection.size() );
+		for( String value : collection )
+			putString( value );
+	}
+
+	/**
+	 * Write a map of handle/value pairs, such as the attributes in an update or the parameters
+	 * in an interaction.
+	 */
+	public void putHandleValueMap( Map<Integer,byte[]> map )
+	{
+		if( map == null )
+		{
+			putInt( NULL_LENGTH );
+			return;
+		}
+
+		putInt( map.size() );
+		if( map instanceof HandleValueMap )
+		{
+			// no need to box anything
+			HandleValueMap handleValues = (HandleValueMap)map;
+			for( int i = 0; i < handleValues.size(); i++ )
+			{
+				putInt( handleValues.handleAt(i) );
+				putBytes( handleValues.valueAt(i) );
+			}
+		}
+		else
+		{
+			for( Map.Entry<Integer,byte[]> entry : map.entrySet() )
+			{
+				putInt( entry.getKey() );
+				putBytes( entry.getValue() );
+			}
+		}
+	}
+
+	/**
+	 * Write the given object using standard Java serialization, prefixed with its length. This is
+	 * only meant for large object graphs (like FOMs) that are exchanged rarely, where it isn't
+	 * worth maintaining a hand-written encoding.
+	 */
+	public void putObject( Object object )
+	{
+		if( object == null )
+		{
+			putInt( NULL_LENGTH );
+			return;
+		}
+
+		try
+		{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream( baos );
+			oos.writeObject( object );
+			oos.close();
+			putBytes( baos.toByteArray() );
+		}
+		catch( IOException ioex )
+		{
+			throw new JRTIinternalError( "Couldn't serialize ["+object.getClass()+"]: "+
+			                             ioex.getMessage(), ioex );
+		}
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
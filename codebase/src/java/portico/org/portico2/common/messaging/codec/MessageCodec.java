@@ -0,0 +1,297 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.messaging.codec;
+
+import java.util.function.Supplier;
+
+import org.portico.lrc.compat.JRTIinternalError;
+import org.portico.utils.messaging.PorticoMessage;
+import org.portico2.common.messaging.ResponseMessage;
+import org.portico2.common.network.CallType;
+import org.portico2.common.network.Header;
+import org.portico2.common.services.federation.msg.Authenticate;
+import org.portico2.common.services.federation.msg.Connect;
+import org.portico2.common.services.federation.msg.CreateFederation;
+import org.portico2.common.services.federation.msg.DestroyFederation;
+import org.portico2.common.services.federation.msg.JoinFederation;
+import org.portico2.common.services.federation.msg.ListFederations;
+import org.portico2.common.services.federation.msg.ResignFederation;
+import org.portico2.common.services.federation.msg.RtiProbe;
+import org.portico2.common.services.mom.msg.ReceiveFilterReport;
+import org.portico2.common.services.mom.msg.SetExceptionReporting;
+import org.portico2.common.services.mom.msg.SetServiceReporting;
+import org.portico2.common.services.object.msg.DeleteObject;
+import org.portico2.common.services.object.msg.DiscoverObject;
+import org.portico2.common.services.object.msg.LocalDelete;
+import org.portico2.common.services.object.msg.RegisterObject;
+import org.portico2.common.services.object.msg.RequestClassUpdate;
+import org.portico2.common.services.object.msg.RequestObjectUpdate;
+import org.portico2.common.services.object.msg.ReserveObjectName;
+import org.portico2.common.services.object.msg.ReserveObjectNameResult;
+import org.portico2.common.services.object.msg.SendInteraction;
+import org.portico2.common.services.object.msg.UpdateAttributes;
+import org.portico2.common.services.ownership.msg.AttributeAcquire;
+import org.portico2.common.services.pubsub.msg.PublishInteractionClass;
+import org.portico2.common.services.pubsub.msg.PublishObjectClass;
+import org.portico2.common.services.pubsub.msg.SubscribeInteractionClass;
+import org.portico2.common.services.pubsub.msg.SubscribeObjectClass;
+import org.portico2.common.services.pubsub.msg.UnpublishInteractionClass;
+import org.portico2.common.services.pubsub.msg.UnpublishObjectClass;
+import org.portico2.common.services.pubsub.msg.UnsubscribeInteractionClass;
+import org.portico2.common.services.pubsub.msg.UnsubscribeObjectClass;
+import org.portico2.common.services.sync.msg.AnnounceSyncPoint;
+import org.portico2.common.services.sync.msg.FederationSynchronized;
+import org.portico2.common.services.sync.msg.RegisterSyncPoint;
+import org.portico2.common.services.sync.msg.RegisterSyncPointResult;
+import org.portico2.common.services.sync.msg.SyncPointAchieved;
+import org.portico2.common.services.time.msg.DisableAsynchronousDelivery;
+import org.portico2.common.services.time.msg.DisableTimeConstrained;
+import org.portico2.common.services.time.msg.DisableTimeRegulation;
+import org.portico2.common.services.time.msg.EnableAsynchronousDelivery;
+import org.portico2.common.services.time.msg.EnableTimeConstrained;
+import org.portico2.common.services.time.msg.EnableTimeRegulation;
+import org.portico2.common.services.time.msg.FlushQueueRequest;
+import org.portico2.common.services.time.msg.ModifyLookahead;
+import org.portico2.common.services.time.msg.NextEventRequest;
+import org.portico2.common.services.time.msg.QueryGalt;
+import org.portico2.common.services.time.msg.TimeAdvanceGrant;
+import org.portico2.common.services.time.msg.TimeAdvanceRequest;
+
+/**
+ * Compact binary codec for {@link PorticoMessage}s, used in place of Java serialization when
+ * messages are deflated for the network by {@link org.portico.lrc.utils.MessageHelpers}.
+ * <p/>
+ *
+ * Each message type has an entry in a registry indexed by its {@link
+ * org.portico2.common.messaging.MessageType} id. The entry is a factory for an empty instance of
+ * the message class. On the way out, a message writes its own fields straight into a reusable
+ * {@link CodecOutput} via {@link PorticoMessage#encode(CodecOutput)}. On the way in, the message
+ * type is read from the {@link Header}, the factory creates an empty instance, and the instance
+ * reads its fields back via {@link PorticoMessage#decode(CodecInput)}. There is no stream header,
+ * class descriptor or block framing in the payload. It is just the fields.
+ * <p/>
+ *
+ * The header's "manual marshal" flag is set on messages encoded this way. Messages without a
+ * registered codec (or subclasses of registered messages) still use Java serialization. Plain
+ * {@link ResponseMessage}s, which carry nothing beyond the success/error flag that is already
+ * part of the header call type, are sent with an empty payload.
+ */
+public class MessageCodec
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	/** Starting size of the per-thread encoding buffer */
+	private static final int SCRATCH_SIZE = 1024;
+	/** Encoding buffers that grow beyond this (FOM transfers) are not kept for reuse */
+	private static final int SCRATCH_LIMIT = 64 * 1024;
+
+	private static final ThreadLocal<CodecOutput> SCRATCH =
+		ThreadLocal.withInitial( () -> new CodecOutput(SCRATCH_SIZE) );
+
+	private static final Supplier<? extends PorticoMessage>[] FACTORIES = newFactoryTable( 256 );
+	private static final Class<?>[] TYPES = new Class<?>[256];
+
+	static
+	{
+		// Federation Management
+		register( Connect::new );
+		register( RtiProbe::new );
+		register( CreateFederation::new );
+		register( JoinFederation::new );
+		register( ResignFederation::new );
+		register( DestroyFederation::new );
+		register( ListFederations::new );
+		register( Authenticate::new );
+
+		// Synchronization Points
+		register( RegisterSyncPoint::new );
+		register( RegisterSyncPointResult::new );
+		register( AnnounceSyncPoint::new );
+		register( SyncPointAchieved::new );
+		register( FederationSynchronized::new );
+
+		// Publish and Subscribe
+		register( PublishObjectClass::new );
+		register( PublishInteractionClass::new );
+		register( UnpublishObjectClass::new );
+		register( UnpublishInteractionClass::new );
+		register( SubscribeObjectClass::new );
+		register( SubscribeInteractionClass::new );
+		register( UnsubscribeObjectClass::new );
+		register( UnsubscribeInteractionClass::new );
+
+		// Object Management
+		register( RegisterObject::new );
+		register( DiscoverObject::new );
+		register( UpdateAttributes::new );
+		register( SendInteraction::new );
+		register( DeleteObject::new );
+		register( LocalDelete::new );
+		register( ReserveObjectName::new );
+		register( ReserveObjectNameResult::new );
+		register( RequestObjectUpdate::new );
+		register( RequestClassUpdate::new );
+
+		// Ownership Management
+		register( AttributeAcquire::new );
+
+		// Time Management
+		register( EnableTimeConstrained::new );
+		register( DisableTimeConstrained::new );
+		register( EnableTimeRegulation::new );
+		register( DisableTimeRegulation::new );
+		register( ModifyLookahead::new );
+		register( TimeAdvanceRequest::new );
+		register( TimeAdvanceGrant::new );
+		register( NextEventRequest::new );
+		register( FlushQueueRequest::new );
+		register( QueryGalt::new );
+		register( EnableAsynchronousDelivery::new );
+		register( DisableAsynchronousDelivery::new );
+
+		// Management Object Model
+		register( SetServiceReporting::new );
+		register( SetExceptionReporting::new );
+		register( ReceiveFilterReport::new );
+	}
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	private MessageCodec()
+	{
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+	/** Java can't create an array of a generic type, so this is the one place we need a cast */
+	@SuppressWarnings({"rawtypes","unchecked"})
+	private static Supplier<? extends PorticoMessage>[] newFactoryTable( int size )
+	{
+		return new Supplier[size];
+	}
+
+	/**
+	 * Add the message class produced by the given factory to the registry. An instance is created
+	 * straight away to find the message type and class it should be registered against.
+	 */
+	private static void register( Supplier<? extends PorticoMessage> factory )
+	{
+		PorticoMessage prototype = factory.get();
+		int id = prototype.getType().getId();
+		if( FACTORIES[id] != null )
+		{
+			throw new IllegalStateException( "Message type id "+id+" registered twice: "+
+			                                 TYPES[id].getSimpleName()+" and "+
+			                                 prototype.getClass().getSimpleName() );
+		}
+
+		FACTORIES[id] = factory;
+		TYPES[id] = prototype.getClass();
+	}
+
+	/**
+	 * @return True if there is a codec registered for the exact class of the given message.
+	 *         Subclasses of registered messages return false, as they may carry extra state
+	 *         the codec doesn't know about.
+	 */
+	public static boolean canEncode( PorticoMessage message )
+	{
+		return TYPES[message.getType().getId()] == message.getClass();
+	}
+
+	/**
+	 * @return True if the given response carries no state other than its success/error status,
+	 *         and can therefore be sent with an empty payload.
+	 */
+	public static boolean canEncode( ResponseMessage response )
+	{
+		return response.getClass() == ResponseMessage.class;
+	}
+
+	/**
+	 * Encode the given message into a new <code>byte[]</code>. The first {@link Header#HEADER_LENGTH}
+	 * bytes are left empty for the caller to fill in. The message is written into a buffer that
+	 * is reused by the calling thread, so the only allocation is the returned array.
+	 *
+	 * @param message The message to encode. {@link #canEncode(PorticoMessage)} must be true.
+	 * @return A buffer with space for the header followed by the encoded message
+	 */
+	public static byte[] encode( PorticoMessage message )
+	{
+		CodecOutput output = SCRATCH.get();
+		output.reset();
+		output.putRaw( Header.EMPTY_HEADER );
+		message.encode( output );
+
+		byte[] buffer = output.toByteArray();
+		if( output.capacity() > SCRATCH_LIMIT )
+			SCRATCH.remove();
+
+		return buffer;
+	}
+
+	/**
+	 * Decode the message contained in the given buffer. The message type is taken from the
+	 * header at the start of the buffer. If the header has a response call type, a
+	 * {@link ResponseMessage} is returned, otherwise a {@link PorticoMessage}.
+	 *
+	 * @param buffer The buffer containing a header and payload written by {@link #encode(PorticoMessage)}
+	 * @return The decoded message
+	 * @throws JRTIinternalError If there is no codec registered for the message type
+	 */
+	public static Object decode( byte[] buffer ) throws JRTIinternalError
+	{
+		return decode( buffer, 0 );
+	}
+
+	/**
+	 * Decode the message whose header starts at the given offset in the buffer. The payload is
+	 * read in place. See {@link #decode(byte[])}.
+	 *
+	 * @param buffer The buffer containing the message
+	 * @param offset The index in the buffer that the header starts at
+	 * @return The decoded message
+	 * @throws JRTIinternalError If there is no codec registered for the message type
+	 */
+	public static Object decode( byte[] buffer, int offset ) throws JRTIinternalError
+	{
+		Header header = new Header( buffer, offset );
+		CallType calltype = header.getCallType();
+		if( calltype == CallType.ControlResponseOK )
+			return new ResponseMessage( false );
+		else if( calltype == CallType.ControlResponseErr )
+			return new ResponseMessage( true );
+
+		int id = header.getMessageType().getId();
+		Supplier<? extends PorticoMessage> factory = FACTORIES[id];
+		if( factory == null )
+			throw new JRTIinternalError( "No codec registered for message type: "+header.getMessageType() );
+
+		PorticoMessage message = factory.get();
+		message.decode( new CodecInput(buffer,offset+Header.HEADER_LENGTH,header.getPayloadLength()) );
+		return message;
+	}
+}
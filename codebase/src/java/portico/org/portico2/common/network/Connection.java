@@ -14,6 +14,11 @@
  */
 package org.portico2.common.network;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.portico.lrc.compat.JConfigurationException;
@@ -216,16 +221,41 @@ public class Connection
 	 * these messages are only a small subset of all those available, in any given federation
 	 * they will represent the _vast_ majority of the volume of messages exchanged and so often
 	 * can use a faster network path than control messages.
+	 * <p/>
+	 * 
+	 * If the transport supports it (see {@link Transport#sendsByReference()}) the message is not
+	 * serialized at all, and the receivers are given (a copy of) the object itself.
 	 * 
 	 * @param message The message to send to all other federates
 	 * @throws JException If there is a problem sending the message
 	 */
 	public void sendDataMessage( PorticoMessage message ) throws JException
 	{
-		Message outgoing = new Message( message, CallType.DataMessage, 0 );
+		// skip the serialization if the transport can hand the object straight over
+		Message outgoing = null;
+		if( transport.sendsByReference() )
+			outgoing = Message.byReference( message, CallType.DataMessage, 0 );
+		else
+			outgoing = new Message( message, CallType.DataMessage, 0 );
+
 		protocolStack.down( outgoing );
 	}
 
+	/**
+	 * Same as {@link #sendDataMessage(PorticoMessage)} except that the message has already been
+	 * deflated. This lets a caller sending the same data message over many connections serialize
+	 * it only once and give each connection a {@link Message} that shares the same buffer (see
+	 * {@link Message#Message(Message)}). Each connection must be handed its own {@link Message}
+	 * instance, as protocols may replace the buffer it holds on the way down.
+	 * 
+	 * @param message The deflated data message to send to all other federates
+	 * @throws JException If there is a problem sending the message
+	 */
+	public void sendDataMessage( Message message ) throws JException
+	{
+		protocolStack.down( message );
+	}
+
 	/**
 	 * Builds and sends a notification message down the protocol stack to the transport.
 	 * This message will carry the call type {@link CallType#Notification} to signal that
@@ -251,26 +281,71 @@ public class Connection
 	 * @throws JRTIinternalError If there is a problem processing the request.
 	 */
 	public void sendControlRequest( MessageContext context ) throws JRTIinternalError
+	{
+		PorticoMessage request = context.getRequest();
+		CompletableFuture<ResponseMessage> future = sendControlRequestAsync( request );
+
+		// Wait for the response - the correlator will time the request out for us
+		try
+		{
+			context.setResponse( future.get() );
+		}
+		catch( InterruptedException ie )
+		{
+			// keep the interrupt for whoever is further up the stack
+			Thread.currentThread().interrupt();
+			context.error( "Interrupted waiting for response (request:"+request.getType()+")" );
+		}
+		catch( ExecutionException | CancellationException e )
+		{
+			context.error( "No response received (request:"+request.getType()+") - RTI/Federates still running?" );
+		}
+	}
+
+	/**
+	 * Send the given control request without waiting for the response. The returned future is
+	 * completed when the response turns up, or completed exceptionally with a
+	 * {@link TimeoutException} if it doesn't turn up within the correlator's timeout. Timeouts
+	 * are fired from a shared timer thread, so anything chained on to the future must not block.
+	 * <p/>
+	 * 
+	 * This lets a caller have many requests outstanding at once, and then wait on (or combine)
+	 * all of the futures.
+	 * 
+	 * @param request The request to send
+	 * @return A future that will be completed with the response
+	 * @throws JRTIinternalError If there is a problem sending the request
+	 */
+	public CompletableFuture<ResponseMessage> sendControlRequestAsync( PorticoMessage request )
+		throws JRTIinternalError
 	{
 		// FIXME -- REMOVE ME -- Left here on purpose to flag an issue.
-		if( context.getRequest().isAsync() )
+		if( request.isAsync() )
 			throw new JRTIinternalError( "Async Messages no longer supported - move to Notificatins" );
 		
 		// Get an ID for the request
-		int requestId = responseCorrelator.register();
-		
-		// Send the message
-		PorticoMessage request = context.getRequest();
-		protocolStack.down( new Message(request,CallType.ControlRequest,requestId) );
+		ResponseCorrelator.Pending<ResponseMessage> pending = null;
+		try
+		{
+			pending = responseCorrelator.register();
+		}
+		catch( IllegalStateException ise )
+		{
+			throw new JRTIinternalError( ise.getMessage(), ise );
+		}
 
-		// Wait for the response
-		ResponseMessage response = responseCorrelator.waitFor( requestId );
+		// Send the message
+		try
+		{
+			protocolStack.down( new Message(request,CallType.ControlRequest,pending.getId()) );
+		}
+		catch( RuntimeException re )
+		{
+			responseCorrelator.cancel( pending.getId() );
+			throw re;
+		}
 
-		// Package the response
-		if( response != null )
-			context.setResponse( response );
-		else
-			context.error( "No response received (request:"+request.getType()+") - RTI/Federates still running?" );
+		return pending;
 	}
 	
 	///////////////////////////////////////////////////////////////////////////////////////
@@ -288,7 +363,16 @@ public class Connection
 		switch( header.getCallType() )
 		{
 			case DataMessage:
-				appReceiver.receiveDataMessage( message.inflateAsPorticoMessage() );
+				// check the header first, it's much cheaper than inflating something we'll drop
+				if( appReceiver.isReceivable(header) )
+				{
+					// the RTI can forward what we received rather than deflating it again
+					PorticoMessage request = message.inflateAsPorticoMessage();
+					if( host == Host.RTI )
+						request.setReceivedMessage( message );
+
+					appReceiver.receiveDataMessage( request );
+				}
 				break;
 			case Notification:
 				appReceiver.receiveNotification( message.inflateAsPorticoMessage() );
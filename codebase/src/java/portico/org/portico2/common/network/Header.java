@@ -19,6 +19,7 @@ import org.portico.utils.bithelpers.BufferUnderflowException;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
 import org.portico2.common.messaging.ResponseMessage;
+import org.portico2.common.messaging.codec.MessageCodec;
 import org.portico2.common.services.object.msg.SendInteraction;
 import org.portico2.common.services.object.msg.UpdateAttributes;
 
@@ -197,6 +198,13 @@ public class Header
 		BitHelpers.putBooleanBit( isManualMarshal, buffer, offset, 3 );
 	}
 	
+	/**
+	 * Data messages that carry a class or object handle in the filtering id field have this set.
+	 * Only attribute updates (object handle) and interactions (interaction class handle) do. Both
+	 * the LRC's <code>ReceiveFilter</code> and the forwarder's <code>Firewall</code> make their
+	 * decisions from the filtering id, so they should only look at it when this is set. Other
+	 * data messages have whatever the sender passed in the field, which isn't a handle.
+	 */
 	public final boolean isFiltering()
 	{
 		return BitHelpers.readBooleanBit( buffer, offset, 4 );
@@ -339,28 +347,36 @@ public class Header
 		// Authentication Flag
 		// This is written in by the AuthenticationProtocol if it is used.
 
-		// Manual Marshal Support
-		header.writeIsManualMarshal( message.supportsManualMarshal() );
+		// Manual Marshal Support -- set if the payload was written with the binary codec
+		header.writeIsManualMarshal( MessageCodec.canEncode(message) );
 
 		// Filtering Flags
 		if( calltype == CallType.DataMessage )
 		{
 			// If this is a data message, we must write in the Filtering ID/Handle information
-			header.writeIsFiltering( true );
 			switch( message.getType() )
 			{
 				case UpdateAttributes:
+					header.writeIsFiltering( true );
 					header.writeIsFilteringObjectClass( true );
 					header.writeFilteringId( ((UpdateAttributes)message).getObjectId() );
 					break;
 				case SendInteraction:
+					header.writeIsFiltering( true );
 					header.writeIsFilteringObjectClass( false );
 					header.writeFilteringId( ((SendInteraction)message).getInteractionId() );
 					break;
 				default:
+					header.writeFilteringId( reqOrFilteringId );
 					break;
 			}
 		}
+		else
+		{
+			// The filtering id and request id share a field, so only write this when we
+			// aren't filtering, otherwise we'll write over the top of it
+			header.writeRequestId( reqOrFilteringId );
+		}
 
 		// Payload Length
 		header.writePayloadLength( payloadLength );
@@ -371,11 +387,10 @@ public class Header
 		//    4-bit, Call Type     (enum)
 		//    4-bit, Federation ID (uint4)
 		//    8-bit, Message Type  (uint8)
-		//   16-bit, Request ID    (uint16)
+		//   16-bit, Request ID    (uint16) -- written above, shared with the filtering id
 		header.writeCallType( calltype );
 		header.writeFederation( message.getTargetFederation() );
 		header.writeMessageType( message.getType() );
-		header.writeRequestId( reqOrFilteringId );
 		
 		// Routing
 		//   16-bit, Source FederateHandle (uint16)
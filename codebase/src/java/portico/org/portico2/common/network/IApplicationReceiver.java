@@ -62,7 +62,9 @@ public interface IApplicationReceiver
 	 *     <li>{@link PorticoConstants#TARGET_MANY_HANDLE}: Message is for some but not all </li>
 	 * </ul>
 	 * 
-	 * Note that this filtering only applies to CONTROL messages.
+	 * This is also called for DATA messages before they are inflated. If the header is enough to
+	 * tell that a message is of no interest (for example, we don't subscribe to its class),
+	 * returning false here saves the cost of deserializing it only to throw it away.
 	 * 
 	 * @param header The message header.
 	 * @returns True if the message should be processed. False otherwise.
@@ -14,6 +14,8 @@
  */
 package org.portico2.common.network;
 
+import java.util.Arrays;
+
 import org.portico.lrc.utils.MessageHelpers;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
@@ -46,10 +48,18 @@ public class Message
 	private Header requestHeader; 
 	private ResponseMessage response;
 	
-	// serialized version of the message
+	// serialized version of the message. may be a slice of a larger array (like a bundle)
 	private byte[] buffer;
+	private int offset;
+	private int length;
 	private Header header;
 	
+	// encrypted version of the buffer, shared with any copies of this message
+	private EncryptedCache encrypted;
+	
+	// true if the request is being passed as an object, see byReference()
+	private boolean byReference;
+	
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
@@ -76,21 +86,140 @@ public class Message
 		// deflate the message into it
 		// populate the header in the buffer
 		this.buffer = MessageHelpers.deflate2( request, calltype, requestId );
+		this.offset = 0;
+		this.length = buffer.length;
 		this.header = new Header( buffer, 0 ); // FIXME
+		this.encrypted = null;       // set in cacheEncrypted()
+		this.byReference = false;
 	}
 	
+	/**
+	 * Construct a new {@link Message} that <b>shares</b> the already deflated buffer of the given
+	 * message rather than serializing the request again. This is used to fan a single message out
+	 * to many connections: it is deflated once and each connection is given its own lightweight
+	 * {@link Message} wrapping the same buffer to pass down its protocol stack.
+	 * <p/>
+	 * 
+	 * Because the buffer is shared, it must be treated as read-only. Any protocol that wants to
+	 * transform the contents must build a new array and install it via {@link #replaceBuffer(byte[])},
+	 * which only affects this instance.
+	 * 
+	 * @param other The message whose deflated buffer we should share
+	 */
+	public Message( Message other )
+	{
+		// a message passed by reference may not have been deflated yet
+		other.deflate();
+
+		this.calltype = other.calltype;
+		this.requestId = other.requestId;
+		this.messageType = other.messageType;
+		
+		this.request = other.request;
+		this.requestHeader = other.requestHeader;
+		this.response = other.response;
+		
+		this.buffer = other.buffer;
+		this.offset = other.offset;
+		this.length = other.length;
+		this.header = new Header( buffer, offset );
+		
+		// share the encrypted version, so only the first connection to encrypt has to do it
+		if( other.encrypted == null )
+			other.encrypted = new EncryptedCache();
+		this.encrypted = other.encrypted;
+		this.byReference = false;
+	}
+
 	public Message( byte[] buffer )
+	{
+		this( buffer, 0, buffer.length );
+	}
+
+	/**
+	 * Construct a new {@link Message} over a <b>slice</b> of the given array, such as a single
+	 * message inside a bundle that was received from the network. The array is not copied. The
+	 * message (header first) is expected to start at <code>offset</code> and run for
+	 * <code>length</code> bytes. As with {@link #Message(Message)}, the array is shared and must
+	 * be treated as read-only.
+	 * 
+	 * @param buffer The array that contains the message
+	 * @param offset The index in the array that the message header starts at
+	 * @param length The length of the message (header and payload)
+	 */
+	public Message( byte[] buffer, int offset, int length )
 	{
 		this.buffer = buffer;
-		this.header = new Header( buffer, 0 );
+		this.offset = offset;
+		this.length = length;
+		this.header = new Header( buffer, offset );
 		this.requestId = header.getRequestId();
 		this.calltype = this.header.getCallType();
 		this.messageType = this.header.getMessageType();
+		this.encrypted = null;       // set in cacheEncrypted()
+		this.byReference = false;
+	}
+
+	/**
+	 * Private constructor for messages passed by reference. See {@link #byReference}.
+	 */
+	private Message( PorticoMessage request, CallType calltype, int requestId, byte[] header )
+	{
+		this.calltype = calltype;
+		this.requestId = requestId;
+		this.messageType = request.getType();
+
+		this.request = request;
+		this.requestHeader = null;
+		this.response = null;
+
+		this.buffer = null;          // set in deflate(), if it is ever needed
+		this.offset = 0;
+		this.length = 0;
+		this.header = new Header( header, 0 );
+		this.encrypted = null;
+		this.byReference = true;
 	}
 
 	//----------------------------------------------------------
 	//                    INSTANCE METHODS
 	//----------------------------------------------------------
+	/**
+	 * If this message is being passed by reference and has not been deflated yet, deflate it.
+	 * Called by anything that needs the buffer.
+	 */
+	private final void deflate()
+	{
+		if( this.buffer != null )
+			return;
+
+		this.buffer = MessageHelpers.deflate2( request, calltype, requestId );
+		this.offset = 0;
+		this.length = buffer.length;
+		this.header = new Header( buffer, 0 );
+	}
+
+	/**
+	 * Create the copy of a message passed by reference that is given to a single receiver. Each
+	 * receiver gets its own clone of the request, as the receiving side is free to change its
+	 * fields (handlers filter attributes and fill in region tokens, for example). Each also gets
+	 * its own copy of the attribute/parameter values and tag ({@link PorticoMessage#copyValues()}).
+	 * Those end up in federate code, which is free to change them, and the sender is free to
+	 * reuse its arrays once the call has returned. Serializing the message used to take care of
+	 * this, and copying the arrays is still far cheaper than that.
+	 *
+	 * @return A new message for a receiver, holding its own copy of the request
+	 * @throws IllegalStateException If this message is not being passed by reference
+	 */
+	public final Message copyForReceiver()
+	{
+		if( byReference == false )
+			throw new IllegalStateException( "Only messages passed by reference can be copied for a receiver" );
+
+		PorticoMessage copy = request.clone( PorticoMessage.class );
+		copy.copyValues();
+		return byReference( copy, calltype, requestId );
+	}
 
 	//////////////////////////////////////////////////////////////////////////////////////////////////////
 	/**
@@ -103,7 +232,11 @@ public class Message
 	 */
 	public final PorticoMessage inflateAsPorticoMessage()
 	{
-		this.request = MessageHelpers.inflate2( buffer, PorticoMessage.class ); 
+		// nothing to inflate if we were given the object
+		if( byReference )
+			return request;
+
+		this.request = MessageHelpers.inflate2( buffer, offset, length, PorticoMessage.class, null );
 		return request;
 	}
 	
@@ -114,7 +247,7 @@ public class Message
 	
 	public final ResponseMessage inflateAsResponse()
 	{
-		return MessageHelpers.inflate2( buffer, ResponseMessage.class );
+		return MessageHelpers.inflate2( buffer, offset, length, ResponseMessage.class, null );
 	}
 	
 	public final void deflateAndStoreResponse( ResponseMessage response )
@@ -122,9 +255,11 @@ public class Message
 		if( this.request == null )
 			throw new IllegalArgumentException( "You cannot deflate a ResponseMessage without a request" );
 		
+		deflate();
 		this.response = response;
-		this.requestHeader = new Header( buffer, 0 ); // store the old header
+		this.requestHeader = new Header( buffer, offset ); // store the old header
 		this.replaceBuffer( MessageHelpers.deflate2(response,this.requestId,this.request) );
+		this.encrypted = null; // was for the request
 	}
 	
 	/**
@@ -133,24 +268,58 @@ public class Message
 	 * appropriate size based on the new buffer.
 	 * <p/>
 	 * 
-	 * This call is primariliy used by the encryption protocols.
+	 * This call is primariliy used by the encryption protocols. The buffer held by a message
+	 * may be shared with other messages (see {@link #Message(Message)}), so anything that needs
+	 * to change the contents must do so in a new array and hand it over through this method
+	 * rather than writing into {@link #getBuffer()} directly.
 	 * 
 	 * @param buffer The new buffer we want to use.
 	 */
 	public final void replaceBuffer( byte[] buffer )
 	{
 		this.buffer = buffer;
+		this.offset = 0;
+		this.length = buffer.length;
 		this.header = new Header( buffer, 0 );
 		this.header.writePayloadLength( buffer.length-Header.HEADER_LENGTH );
 	}
 
+	/**
+	 * Store the encrypted version of this message. Any copy of it (see {@link #Message(Message)})
+	 * that is being sent over another connection using the same key can then send these bytes
+	 * rather than encrypting the same contents again. This is also used when an encrypted message
+	 * is received, so that if it is passed on unchanged, the bytes that came in are what go out.
+	 * <p/>
+	 * 
+	 * The array is shared between the copies, so it must not be changed once stored.
+	 * 
+	 * @param key The key the message was encrypted with
+	 * @param buffer The whole encrypted message, header first
+	 */
+	public final void cacheEncrypted( Object key, byte[] buffer )
+	{
+		if( this.encrypted == null )
+			this.encrypted = new EncryptedCache();
+
+		this.encrypted.put( key, buffer );
+	}
+
+	/**
+	 * @param key The key that the message would be encrypted with
+	 * @return The encrypted version of this message stored for the given key (see
+	 *         {@link #cacheEncrypted(Object, byte[])}), or <code>null</code> if there isn't one
+	 */
+	public final byte[] getCachedEncrypted( Object key )
+	{
+		return encrypted == null ? null : encrypted.get( key );
+	}
+
 
 	////////////////////////////////////////////////////////////////////////////////////////
 	///  Accessors and Mutators   //////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
 	public final int getRequestId() { return this.requestId; }
 	public final Header getHeader() { return this.header; }
-	public final byte[] getBuffer() { return this.buffer; }
 	public final CallType getCallType() { return this.header.getCallType(); }
 	public final MessageType getMessageType() { return this.header.getMessageType(); }
 	public final boolean hasRequest() { return this.request != null; }
@@ -164,8 +333,82 @@ public class Message
 	public final boolean hasResponse() { return this.response != null; }
 	public final ResponseMessage getResponse() { return this.response; }
 
+	/**
+	 * @return The message (header first) as an array of exactly the right length. If this message
+	 *         is a slice of a larger array, the slice is copied out into its own array the first
+	 *         time this is called. Code that can work with an offset and length should use
+	 *         {@link #getRawBuffer()}, {@link #getOffset()} and {@link #getLength()} instead.
+	 */
+	public final byte[] getBuffer()
+	{
+		deflate();
+		if( offset != 0 || length != buffer.length )
+		{
+			this.buffer = Arrays.copyOfRange( buffer, offset, offset+length );
+			this.offset = 0;
+			this.header = new Header( buffer, 0 );
+		}
+
+		return this.buffer;
+	}
+
+	/** @return The array the message is held in. It starts at {@link #getOffset()}. Read-only! */
+	public final byte[] getRawBuffer() { deflate(); return this.buffer; }
+	/** @return The index in {@link #getRawBuffer()} that the message header starts at */
+	public final int getOffset() { deflate(); return this.offset; }
+	/** @return The length of the message (header and payload) in {@link #getRawBuffer()} */
+	public final int getLength() { deflate(); return this.length; }
+
+	/** @return True if the request is being passed as an object. See {@link #byReference} */
+	public final boolean isByReference() { return this.byReference; }
+
 	
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
+	/**
+	 * Create a message that carries the given request as an object rather than serializing it.
+	 * This is for transports that can hand the message straight to the receiver, such as the JVM
+	 * transport. Only the header is written, so the receiving side can check it the same way as
+	 * for any other message. {@link #inflateAsPorticoMessage()} just returns the request.
+	 * <p/>
+	 *
+	 * If anything asks for the buffer, the request is deflated then. So the message can still be
+	 * passed on to connections that need the bytes, it just costs the deflation that was put off.
+	 * Receivers must each be given their own copy, see {@link #copyForReceiver()}.
+	 *
+	 * @param request The request to send
+	 * @param calltype The type of call that it is (will go into the header)
+	 * @param requestId The request ID, if any, for the call (will go into the header)
+	 */
+	public static Message byReference( PorticoMessage request, CallType calltype, int requestId )
+	{
+		byte[] header = new byte[Header.HEADER_LENGTH];
+		Header.writeHeader( header, 0, request, calltype, requestId, 0 );
+		return new Message( request, calltype, requestId, header );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Private Inner Class: EncryptedCache   /////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * The encrypted version of a message and the key it was encrypted with. Copies of a message
+	 * may be sent from different threads, so access is synchronized.
+	 */
+	private static final class EncryptedCache
+	{
+		private Object key;
+		private byte[] buffer;
+
+		private synchronized void put( Object key, byte[] buffer )
+		{
+			this.key = key;
+			this.buffer = buffer;
+		}
+
+		private synchronized byte[] get( Object key )
+		{
+			return key != null && key.equals(this.key) ? buffer : null;
+		}
+	}
 }
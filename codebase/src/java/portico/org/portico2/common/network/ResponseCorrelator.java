@@ -15,10 +15,11 @@
 package org.portico2.common.network;
 
 
-import java.util.Hashtable;
-import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * When you want to represent synchronous semantics over asynchronous messaging, you need
@@ -30,32 +31,38 @@ import java.util.concurrent.atomic.AtomicInteger;
  * 
  * <ul>
  *   <li> Registering of a request for which a response is sought </li>
- *   <li> Allowing a sender to wait for a response to turn up (potentially timing out) </li>
+ *   <li> Handing back a future that completes when the response turns up (or times out) </li>
  *   <li> Correlating incoming messages with their associated requests (and requestors) </li>
  * </ul>
  *   
- * To use it, a sender first registers their request via {@link #register()} and is given an ID
- * that can be used to fetch a request later on.
+ * To use it, a sender first registers their request via {@link #register()} and is given a
+ * {@link Pending} request. This is a {@link CompletableFuture} that also carries the ID that
+ * should be sent with the request.
  * <p/>
  * 
- * The sender then sends their message via whatever medium they want. They can then call
- * {@link #waitFor(int)}, passing in the ID of the request. This method will block until
- * either a response with that ID has been provided, or a timeout period has been reached.
- * There is an overload you can specify a precise timeout with, but the default timeout
- * can be set on the correlator (in milliseconds) via {@link #setTimeout(long)}.
+ * The sender then sends their message via whatever medium they want. They can then block on the
+ * future, or attach whatever callbacks they want to it. If no response turns up within the
+ * timeout, the future completes exceptionally with a {@link TimeoutException}. The default
+ * timeout can be set on the correlator (in milliseconds) via {@link #setTimeout(long)}.
+ * Timeouts are all handled by one shared timer wheel thread, so nobody has to sit and wait for
+ * a request to time out. Callbacks for timed out requests run on that thread, so they must not
+ * block.
  * <p/>
  * 
  * On the input side, the medium receiving messages can offer them to the correlator via the
- * {@link #offer(int, Object)} method. The correlator will take and store the reference against
- * the ID if there is an outstanding request. It will then notify anybody waiting on the ID
- * that a response has arrived.
+ * {@link #offer(int, Object)} method. If there is an outstanding request with that ID, its
+ * future is completed with the response.
  * <p/>
  * 
- * Once someone has consumed the ID, it is available for use again, although the specific manner
- * in which IDs are generated is not specified and should not be assumed.
+ * Request IDs have to fit in the 16-bit request ID field of the {@link Header}, so outstanding
+ * requests are held in an array indexed by ID. Registering claims a free slot with a CAS, and
+ * skips any ID that is still in use, so IDs are never shared by two outstanding requests even
+ * once the ID space wraps around. Once a request has completed its ID is available for use
+ * again, although the specific manner in which IDs are generated is not specified and should
+ * not be assumed.
  * <p/>
  * 
- * This class is <b>thread-safe</b>.
+ * This class is <b>thread-safe</b> and does not take any locks.
  */
 public class ResponseCorrelator<T>
 {
@@ -68,9 +75,11 @@ public class ResponseCorrelator<T>
 	//                   INSTANCE VARIABLES
 	//----------------------------------------------------------
 	private AtomicInteger idGenerator;
-	private long timeout;
+	private volatile long timeout;
 	
-	private Map<Integer,Holder> responseMap;
+	private AtomicReferenceArray<Pending<T>> outstanding; // indexed by request id
+	private AtomicInteger outstandingCount;
+	private TimeoutWheel timeoutWheel;
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -79,94 +88,137 @@ public class ResponseCorrelator<T>
 	{
 		this.idGenerator = new AtomicInteger(0);
 		this.timeout = 2000;
-		this.responseMap = new Hashtable<>();
+		this.outstanding = new AtomicReferenceArray<>( MAX_REQUEST_ID+1 );
+		this.outstandingCount = new AtomicInteger(0);
+		this.timeoutWheel = TimeoutWheel.get();
 	}
 
 	//----------------------------------------------------------
 	//                    INSTANCE METHODS
 	//----------------------------------------------------------
 	/**
-	 * Register a new request that will require correlation. This method will return
-	 * the unique ID that should be used for the request. After this call, the correlator
-	 * will keep an eye out for any incoming responses with this ID.
+	 * Register a new request that will require correlation, using the default timeout. 
+	 * See {@link #register(long)}.
 	 * 
-	 * @return The unique ID to send with the request
+	 * @return The pending request, containing the unique ID to send with the request
 	 */
-	public int register()
+	public Pending<T> register()
 	{
-		int id = idGenerator.incrementAndGet();
-		if( id > MAX_REQUEST_ID )
-		{
-			id = 0;
-			idGenerator.set( 0 );
-		}
-
-		responseMap.put( id, new Holder() );
-		return id;
-	}
-	
-	public T waitFor( int id )
-	{
-		return waitFor( id, timeout );
+		return register( this.timeout );
 	}
-	
-	public T waitFor( int id, long timeout )
+
+	/**
+	 * Register a new request that will require correlation. The returned request contains the
+	 * unique ID that should be sent with the request. After this call, the correlator will keep
+	 * an eye out for any incoming responses with this ID and complete the request when one
+	 * turns up. If none has turned up after the given timeout, the request is completed
+	 * exceptionally with a {@link TimeoutException}.
+	 * 
+	 * @param timeout How long to wait for a response (millis)
+	 * @return The pending request, containing the unique ID to send with the request
+	 * @throws IllegalStateException If every request ID is already in use
+	 */
+	public Pending<T> register( long timeout ) throws IllegalStateException
 	{
-		// Make sure we know about the request
-		if( responseMap.containsKey(id) == false )
-			throw new IllegalArgumentException( "ID not registered with response correlator: "+id );
-		
-		// Wait for a response to turn up
-		Holder holder = responseMap.get( id );
-		if( holder.isPresent() == false )
+		// find a free id - ID 0 is left for messages that aren't requests
+		Pending<T> pending = new Pending<>();
+		for( int i = 0; i < MAX_REQUEST_ID; i++ )
 		{
-			try
-			{
-				synchronized( holder )
-				{
-					holder.wait( timeout );
-				}
-			}
-			catch( InterruptedException ie )
+			int id = idGenerator.incrementAndGet() & MAX_REQUEST_ID;
+			if( id == 0 )
+				continue;
+
+			pending.id = id;
+			if( outstanding.compareAndSet(id,null,pending) )
 			{
-				// We have been demanded to exit!
+				outstandingCount.incrementAndGet();
+				pending.timeout = timeoutWheel.schedule( timeout, () -> expire(pending,timeout) );
+				return pending;
 			}
 		}
-		
-		// We either have a response or not.
-		// Remove the request from the map and either return the response or null
-		responseMap.remove( id );
-		return holder.get();
+
+		throw new IllegalStateException( "All request IDs are in use ("+MAX_REQUEST_ID+")" );
 	}
-	
-	
+
+	/**
+	 * Offer up a response. If there is an outstanding request with the given ID it will be
+	 * completed with the response, otherwise it will be ignored.
+	 */
 	public void offer( int id, T response )
 	{
-		// check to see if we are waiting for this request
-		if( responseMap.containsKey(id) == false )
-			return;
-		
-		// get the placeholder and notify anyone waiting on it
-		Holder holder = responseMap.get( id );
-		synchronized( holder )
+		Pending<T> pending = release( id );
+		if( pending != null )
+		{
+			pending.cancelTimeout();
+			pending.complete( response );
+		}
+	}
+
+	/**
+	 * Stop waiting for a response to the request with the given ID and free the ID up. If the
+	 * request was still outstanding it is cancelled.
+	 * 
+	 * @return true if there was an outstanding request with the ID, false otherwise
+	 */
+	public boolean cancel( int id )
+	{
+		Pending<T> pending = release( id );
+		if( pending == null )
+			return false;
+
+		pending.cancelTimeout();
+		pending.cancel( false );
+		return true;
+	}
+
+	/** Called from the timeout wheel once a request has been waiting too long */
+	private void expire( Pending<T> pending, long timeout )
+	{
+		if( outstanding.compareAndSet(pending.id,pending,null) )
 		{
-    		holder.set( response );
-    		holder.notifyAll();
+			outstandingCount.decrementAndGet();
+			pending.completeExceptionally(
+			    new TimeoutException("No response to request "+pending.id+" after "+timeout+"ms") );
 		}
 	}
 
+	/** Take the request with the given ID out of the outstanding set (if it is there) */
+	private Pending<T> release( int id )
+	{
+		if( id < 0 || id > MAX_REQUEST_ID )
+			return null;
+
+		Pending<T> pending = outstanding.getAndSet( id, null );
+		if( pending != null )
+			outstandingCount.decrementAndGet();
+
+		return pending;
+	}
+
 	////////////////////////////////////////////////////////////////////////////////////////
 	///  Accessors and Mutators   //////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
+	/** Set the default timeout (millis) for requests registered from now on */
 	public void setTimeout( long millis )
 	{
 		if( millis > 0 )
 			this.timeout = millis;
 	}
+
+	public long getTimeout()
+	{
+		return this.timeout;
+	}
 	
 	public boolean isRegistered( int id )
 	{
-		return responseMap.containsKey(id);
+		return id >= 0 && id <= MAX_REQUEST_ID && outstanding.get(id) != null;
+	}
+
+	/** @return The number of requests that are still waiting on a response */
+	public int getOutstandingCount()
+	{
+		return outstandingCount.get();
 	}
 
 	//----------------------------------------------------------
@@ -178,25 +230,37 @@ public class ResponseCorrelator<T>
 	}
 
 	////////////////////////////////////////////////////////////////////////////////////////
-	///  Private Inner Class: Holder   /////////////////////////////////////////////////////
+	///  Inner Class: Pending   ////////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
-	private class Holder
+	/**
+	 * A request that has been registered with the correlator. Completes with the response, or
+	 * exceptionally with a {@link TimeoutException} if one doesn't turn up in time.
+	 */
+	public static class Pending<T> extends CompletableFuture<T>
 	{
-		private T value;
-		
-		public boolean isPresent()
+		private int id;
+		private volatile TimeoutWheel.Timeout timeout;
+
+		private Pending()
 		{
-			return value != null;
+			this.id = 0;         // set when registered
+			this.timeout = null; // set when registered
 		}
-		
-		public T get()
+
+		/** @return The ID that should be sent with the request */
+		public int getId()
 		{
-			return this.value;
+			return this.id;
 		}
-		
-		public void set( T value )
+
+		// The timeout is set just after the request is registered, so a (stale) response
+		// could turn up before it is. If so the timeout will find the request gone when it
+		// fires and do nothing.
+		private void cancelTimeout()
 		{
-			this.value = value;
+			TimeoutWheel.Timeout timeout = this.timeout;
+			if( timeout != null )
+				timeout.cancel();
 		}
 	}
 
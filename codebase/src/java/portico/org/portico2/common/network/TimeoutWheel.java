@@ -0,0 +1,213 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.network;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A hashed timer wheel that is shared by all the {@link ResponseCorrelator}s in the JVM, so that
+ * request timeouts are handled by one thread rather than by each waiting caller.
+ * <p/>
+ *
+ * Time is split into ticks of {@link #TICK_MILLIS}. Each slot in the wheel holds the timeouts
+ * due on the ticks that map to it. Once per tick the wheel thread visits the next slot, fires
+ * anything that is due and drops anything that has been cancelled. Timeouts further away than
+ * one turn of the wheel stay in their slot and count down the turns.
+ * <p/>
+ *
+ * Scheduling is lock free (timeouts are put on a queue that the wheel thread drains each tick)
+ * and cancelling just sets a flag. Timeouts are fired on the wheel thread, so they should be
+ * short and must not block.
+ */
+class TimeoutWheel
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final long TICK_MILLIS = 10;
+	private static final int WHEEL_SIZE = 512;  // power of 2 - about 5 seconds per turn
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	private static TimeoutWheel INSTANCE = null;
+
+	// shared by everything in the JVM, so it gets its own logger rather than a connection's
+	private static final Logger LOGGER = LogManager.getFormatterLogger( "portico.timeout" );
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Queue<Timeout> incoming;    // scheduled, but not yet put in a slot
+	private Queue<Timeout>[] wheel;     // only touched by the wheel thread
+	private long startTime;             // nanoTime that tick 0 started at
+	private long tick;                  // the last tick that was processed
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	private TimeoutWheel()
+	{
+		this.incoming = new ConcurrentLinkedQueue<>();
+		this.wheel = newWheel( WHEEL_SIZE );
+		for( int i = 0; i < WHEEL_SIZE; i++ )
+			this.wheel[i] = new ArrayDeque<>();
+
+		this.startTime = System.nanoTime();
+		this.tick = 0;
+
+		Thread thread = new Thread( this::run, "Portico Timeout Wheel" );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * Schedule the given task to run once the timeout has passed. The timeout will be rounded
+	 * up to the next tick.
+	 *
+	 * @param millis How long to wait before running the task
+	 * @param task The task to run if the timeout isn't cancelled first
+	 * @return A handle that can be used to cancel the timeout
+	 */
+	public Timeout schedule( long millis, Runnable task )
+	{
+		Timeout timeout = new Timeout( System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(millis), task );
+		incoming.add( timeout );
+		return timeout;
+	}
+
+	private void run()
+	{
+		long tickNanos = TimeUnit.MILLISECONDS.toNanos( TICK_MILLIS );
+		while( true )
+		{
+			// wait for the next tick to come around
+			long nextTick = startTime + (tick+1)*tickNanos;
+			long now = System.nanoTime();
+			if( now < nextTick )
+			{
+				LockSupport.parkNanos( this, nextTick-now );
+				continue;
+			}
+
+			++tick;
+			placeIncoming();
+			expire( wheel[(int)(tick & WHEEL_MASK)] );
+		}
+	}
+
+	/** Put everything that has been scheduled since the last tick in its slot */
+	private void placeIncoming()
+	{
+		long tickNanos = TimeUnit.MILLISECONDS.toNanos( TICK_MILLIS );
+		Timeout timeout = null;
+		while( (timeout = incoming.poll()) != null )
+		{
+			if( timeout.cancelled )
+				continue;
+
+			// work out which tick it is due on (rounded up), never earlier than this one
+			long due = (timeout.deadline - startTime + tickNanos - 1) / tickNanos;
+			due = Math.max( due, tick );
+			timeout.turns = (due - tick) / WHEEL_SIZE;
+			wheel[(int)(due & WHEEL_MASK)].add( timeout );
+		}
+	}
+
+	/** Fire everything in the slot that is due, keeping anything that has turns to go */
+	private void expire( Queue<Timeout> slot )
+	{
+		for( int i = slot.size(); i > 0; i-- )
+		{
+			Timeout timeout = slot.poll();
+			if( timeout.cancelled )
+				continue;
+
+			if( timeout.turns > 0 )
+			{
+				--timeout.turns;
+				slot.add( timeout );
+				continue;
+			}
+
+			try
+			{
+				timeout.task.run();
+			}
+			catch( Throwable throwable )
+			{
+				// don't let one bad task stop the wheel, but don't hide it either. Tasks
+				// complete futures, so this could be a failure in anything chained on to them
+				LOGGER.error( "Timeout task failed on the timeout wheel thread: %s",
+				              throwable.getMessage(), throwable );
+			}
+		}
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+	/** Java can't create an array of a generic type, so this is the one place we need a cast */
+	@SuppressWarnings({"rawtypes","unchecked"})
+	private static Queue<Timeout>[] newWheel( int size )
+	{
+		return new Queue[size];
+	}
+
+	/** @return The shared wheel, starting it if this is the first time it has been used */
+	public static synchronized TimeoutWheel get()
+	{
+		if( INSTANCE == null )
+			INSTANCE = new TimeoutWheel();
+
+		return INSTANCE;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Inner Class: Timeout   ////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * A scheduled timeout. Call {@link #cancel()} to stop it from firing. It will be dropped
+	 * from the wheel the next time its slot comes around.
+	 */
+	public static class Timeout
+	{
+		private final long deadline;
+		private final Runnable task;
+		private volatile boolean cancelled;
+		private long turns; // wheel thread only
+
+		private Timeout( long deadline, Runnable task )
+		{
+			this.deadline = deadline;
+			this.task = task;
+			this.cancelled = false;
+			this.turns = 0;
+		}
+
+		public void cancel()
+		{
+			this.cancelled = true;
+		}
+	}
+}
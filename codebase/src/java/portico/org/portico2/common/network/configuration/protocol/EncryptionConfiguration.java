@@ -35,6 +35,7 @@ public class EncryptionConfiguration extends ProtocolConfiguration
 	private int keyLength;
 	private CipherMode cipherMode;
 	private String sharedKey;
+	private boolean bundleScope;
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -46,6 +47,7 @@ public class EncryptionConfiguration extends ProtocolConfiguration
 		this.keyLength  = 128;
 		this.cipherMode = CipherMode.defaultMode();
 		this.sharedKey  = null;
+		this.bundleScope = false;
 	}
 
 	//----------------------------------------------------------
@@ -67,11 +69,16 @@ public class EncryptionConfiguration extends ProtocolConfiguration
 	    it ourselves randomly if we are the RTI. */
 	public String     getSharedKey() { return this.sharedKey; }
 	public boolean    hasSharedKey() { return this.sharedKey != null; }
+	/** Return true if whole bundles should be encrypted by the transport rather than each
+	    message being encrypted by the protocol. Only transports that bundle can do this; others
+	    fall back to encrypting each message. */
+	public boolean    isBundleScope() { return this.bundleScope; }
 	
 	public void setKeyLength( int keylen )       { this.keyLength = keylen; }
 	public void setCipherMode( CipherMode mode ) { this.cipherMode = mode; }
 	public void setCipherConfig( String cipherConfig ) { this.cipherMode = CipherMode.fromConfigString(cipherConfig); }
 	public void setSharedKey( String sharedKey ) { this.sharedKey = sharedKey; }
+	public void setBundleScope( boolean bundle ) { this.bundleScope = bundle; }
 
 	////////////////////////////////////////////////////////////////////////////////////////
 	///  Configuration Parsing   ///////////////////////////////////////////////////////////
@@ -95,6 +102,17 @@ public class EncryptionConfiguration extends ProtocolConfiguration
 		if( element.hasAttribute("key") )
 			this.sharedKey = element.getAttribute("key");
 		
+		if( element.hasAttribute("scope") )
+		{
+			String scope = element.getAttribute("scope");
+			if( scope.equalsIgnoreCase("bundle") )
+				this.bundleScope = true;
+			else if( scope.equalsIgnoreCase("message") )
+				this.bundleScope = false;
+			else
+				throw new JConfigurationException( "Encryption scope must be \"message\" or \"bundle\"; found \""+scope+"\"" );
+		}
+		
 	}
 
 	//----------------------------------------------------------
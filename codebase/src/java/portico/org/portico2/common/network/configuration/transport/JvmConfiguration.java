@@ -24,10 +24,12 @@ public class JvmConfiguration extends TransportConfiguration
 	//----------------------------------------------------------
 	//                    STATIC VARIABLES
 	//----------------------------------------------------------
+	public static final String KEY_BY_REFERENCE = "byReference";
 
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
 	//----------------------------------------------------------
+	private boolean isByReference;
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -35,6 +37,7 @@ public class JvmConfiguration extends TransportConfiguration
 	public JvmConfiguration( ConnectionConfiguration connectionConfiguration )
 	{
 		super( connectionConfiguration );
+		this.isByReference = false;
 	}
 
 	//----------------------------------------------------------
@@ -52,7 +55,8 @@ public class JvmConfiguration extends TransportConfiguration
 	@Override
 	public String toString()
 	{
-		return String.format( "[JVM: name=%s, enabled=%s]", super.name, super.enabled );
+		return String.format( "[JVM: name=%s, enabled=%s, byReference=%s]",
+		                      super.name, super.enabled, isByReference );
 	}
 
 	////////////////////////////////////////////////////////////////////////////////////////////
@@ -61,6 +65,25 @@ public class JvmConfiguration extends TransportConfiguration
 	@Override
 	public void parseConfiguration( RID rid, Element element )
 	{
+		if( element.hasAttribute(KEY_BY_REFERENCE) )
+			this.setByReference( Boolean.valueOf(element.getAttribute(KEY_BY_REFERENCE)) );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Accessors and Mutators   //////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * @return True if data messages should be handed to the other side as objects rather than
+	 *         being serialized. See {@link org.portico2.common.network.transport.jvm.JvmTransport}.
+	 */
+	public boolean isByReference()
+	{
+		return this.isByReference;
+	}
+
+	public void setByReference( boolean byReference )
+	{
+		this.isByReference = byReference;
 	}
 	
 	//----------------------------------------------------------
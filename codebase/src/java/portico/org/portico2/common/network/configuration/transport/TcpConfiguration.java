@@ -33,11 +33,17 @@ public class TcpConfiguration extends TransportConfiguration
 
 	public static final String DEFAULT_ADDRESS = "SITE_LOCAL";
 	public static final int    DEFAULT_PORT    = 52295;
+
+	// NIO Server Properties
+	public static final String KEY_SELECTORS   = "selectors";
+	public static final String KEY_MAX_FRAME_SIZE = "maxFrameSize";
+	public static final String KEY_MAX_QUEUED     = "maxQueued";
 	
 	// Bundling Properties
 	public static final String KEY_BUNDLING_ENABLED  = "bundling";
 	public static final String KEY_BUNDLING_MAX_SIZE = "bundling.maxSize";
 	public static final String KEY_BUNDLING_MAX_TIME = "bundling.maxTime";
+	public static final String KEY_BUNDLING_ADAPTIVE = "bundling.adaptive";
 
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
@@ -47,18 +53,22 @@ public class TcpConfiguration extends TransportConfiguration
 	private int port;
 	
 	private boolean recordMetrics;
+	private int selectorThreads;
+	private int maxFrameSize;
+	private int maxQueued;
 
 	// Bundling
 	private boolean isBundling;
 	private int bundlingMaxSize;
 	private int bundlingMaxTime;
+	private boolean isBundlingAdaptive;
 	
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 	/**
-	 * Create a new TcpConfiguration, which can be of type either {@link TransportType#TcpClient}
-	 * or {@link TransportType#TcpServer}.
+	 * Create a new TcpConfiguration, which can be of type {@link TransportType#TcpClient},
+	 * {@link TransportType#TcpServer} or {@link TransportType#NioServer}.
 	 * 
 	 * @param connectionConfiguration The configuration for the connection we are the transport for
 	 * @param transportType The specific transport type we're creating
@@ -66,19 +76,23 @@ public class TcpConfiguration extends TransportConfiguration
 	public TcpConfiguration( ConnectionConfiguration connectionConfiguration, TransportType transportType )
 	{
 		super( connectionConfiguration );
-		if( transportType != TransportType.TcpClient && transportType != TransportType.TcpServer )
-			throw new JConfigurationException( "TCP Configuration must have type of either tcp-client or tcp-server" );
+		if( isTcpType(transportType) == false )
+			throw new JConfigurationException( "TCP Configuration must have type of tcp-client, tcp-server or nio-server" );
 		
 		this.type    = transportType;
 		this.address = DEFAULT_ADDRESS;
 		this.port    = DEFAULT_PORT;
 		
 		this.recordMetrics = true;
+		this.selectorThreads = 0; // work it out from the number of processors
+		this.maxFrameSize = 32*1000*1000; // 32m
+		this.maxQueued = 64*1000*1000;    // 64m
 		
 		// Bundling
-		this.isBundling = false;
+		this.isBundling = transportType != TransportType.TcpClient; // servers bundle by default
 		this.bundlingMaxSize = 64000; // 64k
-		this.bundlingMaxTime = 20000; // 20ms
+		this.bundlingMaxTime = 20;    // 20ms
+		this.isBundlingAdaptive = false;
 		
 	}
 	
@@ -87,7 +101,8 @@ public class TcpConfiguration extends TransportConfiguration
 	//----------------------------------------------------------
 
 	/**
-	 * Can be {@link TransportType#TcpClient} or {@link TransportType#TcpServer}.
+	 * Can be {@link TransportType#TcpClient}, {@link TransportType#TcpServer} or
+	 * {@link TransportType#NioServer}.
 	 */
 	@Override
 	public TransportType getTransportType()
@@ -117,6 +132,28 @@ public class TcpConfiguration extends TransportConfiguration
 		
 		if( element.hasAttribute("port") )
 			this.setPort( Integer.parseInt(element.getAttribute("port")) );
+
+		if( element.hasAttribute(KEY_SELECTORS) )
+			this.setSelectorThreads( Integer.parseInt(element.getAttribute(KEY_SELECTORS)) );
+		if( element.hasAttribute(KEY_MAX_FRAME_SIZE) )
+			this.setMaxFrameSize( element.getAttribute(KEY_MAX_FRAME_SIZE) );
+		if( element.hasAttribute(KEY_MAX_QUEUED) )
+			this.setMaxQueued( element.getAttribute(KEY_MAX_QUEUED) );
+
+		/////////////////////////
+		// Bundling Properties //
+		/////////////////////////
+		if( element.hasAttribute(KEY_BUNDLING_ENABLED) )
+			this.setBundlingEnabled( Boolean.valueOf(element.getAttribute(KEY_BUNDLING_ENABLED)) );
+
+		if( element.hasAttribute(KEY_BUNDLING_MAX_SIZE) )
+			this.setBundleMaxSize( element.getAttribute(KEY_BUNDLING_MAX_SIZE) );
+
+		if( element.hasAttribute(KEY_BUNDLING_MAX_TIME) )
+			this.setBundleMaxTime( Integer.parseInt(element.getAttribute(KEY_BUNDLING_MAX_TIME)) );
+
+		if( element.hasAttribute(KEY_BUNDLING_ADAPTIVE) )
+			this.setBundlingAdaptive( Boolean.valueOf(element.getAttribute(KEY_BUNDLING_ADAPTIVE)) );
 	}
 
 	////////////////////////////////////////////////////////////////////////////////////////
@@ -124,10 +161,10 @@ public class TcpConfiguration extends TransportConfiguration
 	////////////////////////////////////////////////////////////////////////////////////////
 	public void setTransportType( TransportType type )
 	{
-		if( type == TransportType.TcpServer || type == TransportType.TcpClient )
+		if( isTcpType(type) )
 			this.type = type;
 		else
-			throw new JConfigurationException( "TCP connections must have the type 'tcp-server' or 'tcp-client': "+type );
+			throw new JConfigurationException( "TCP connections must have the type 'tcp-server', 'tcp-client' or 'nio-server': "+type );
 	}
 	
 	public String getAddressString()
@@ -175,15 +212,90 @@ public class TcpConfiguration extends TransportConfiguration
 		this.recordMetrics = record;
 	}
 
+	/**
+	 * Number of selector threads a {@link TransportType#NioServer} should use to service its
+	 * clients. If this is 0 (the default), the number is picked based on the available processors.
+	 * Ignored by the other TCP transports.
+	 */
+	public int getSelectorThreads()
+	{
+		if( this.selectorThreads > 0 )
+			return this.selectorThreads;
+		else
+			return Math.max( 1, Math.min(4,Runtime.getRuntime().availableProcessors()/2) );
+	}
+
+	public void setSelectorThreads( int threads )
+	{
+		if( threads < 0 )
+			throw new JConfigurationException( "Number of selector threads cannot be negative: "+threads );
+		else
+			this.selectorThreads = threads;
+	}
+
+	/**
+	 * The largest frame a {@link TransportType#NioServer} will accept from a client. A client
+	 * that announces a bigger one is disconnected rather than having the buffer allocated.
+	 * Default is 32m. Ignored by the other TCP transports.
+	 */
+	public int getMaxFrameSize()
+	{
+		return this.maxFrameSize;
+	}
+
+	/** @param value The size, in the same form as {@link #setBundleMaxSize(String)} */
+	public void setMaxFrameSize( String value )
+	{
+		this.maxFrameSize = parseSize( value, "max frame size" );
+	}
+
+	/**
+	 * The most a {@link TransportType#NioServer} will hold for a single client in each direction.
+	 * A client that falls this far behind reading what we send is disconnected so that it can't
+	 * use up all our memory (or hold up everyone else). If this much that the client has sent is
+	 * waiting to be processed, we stop reading from it until we catch up. Default is 64m. Ignored
+	 * by the other TCP transports.
+	 */
+	public int getMaxQueued()
+	{
+		return this.maxQueued;
+	}
+
+	/** @param value The size, in the same form as {@link #setBundleMaxSize(String)} */
+	public void setMaxQueued( String value )
+	{
+		this.maxQueued = parseSize( value, "max queued size" );
+	}
+
 
 	////////////////////////////////////////////////////////////////////////////////////////////
 	/// Bundling Settings   ////////////////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////////
-	/** Is bundling turned on? Default to false */
+	/** Is bundling turned on? Defaults to true for servers and false for clients */
 	public boolean isBundlingEnabled()
 	{
 		return this.isBundling;
 	}
+
+	public void setBundlingEnabled( boolean isBundling )
+	{
+		this.isBundling = isBundling;
+	}
+
+	/**
+	 * Should the adaptive bundler be used? If so, the max size and time are treated as upper
+	 * bounds and the bundler works out how long to hold messages for based on the load.
+	 * Default is false.
+	 */
+	public boolean isBundlingAdaptive()
+	{
+		return this.isBundlingAdaptive;
+	}
+
+	public void setBundlingAdaptive( boolean isBundlingAdaptive )
+	{
+		this.isBundlingAdaptive = isBundlingAdaptive;
+	}
 	
 	/**
 	 * Return the maximum size a bundle should grow to (bytes) before it is flushed.
@@ -206,6 +318,39 @@ public class TcpConfiguration extends TransportConfiguration
 		if( value == null )
 			throw new IllegalArgumentException( "Cannot pass null to setBundleMaxSize()" );
 
+		this.bundlingMaxSize = parseSize( value, "max bundle size" );
+	}
+	
+	/**
+	 * Return the maximum amount of time (millis) the bundler should hold a message for
+	 * before flushing, regardless of bundled size.
+	 * Default: 20ms
+	 */
+	public int getBundleMaxTime()
+	{
+		return this.bundlingMaxTime;
+	}
+	
+	public void setBundleMaxTime( int millis )
+	{
+		this.bundlingMaxTime = millis;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+	/**
+	 * Parse a size in bytes. Can be a straight value in bytes, or can be an abbreviation such
+	 * as "16b, 16k, 16m, ...
+	 *
+	 * @param value The size as a string
+	 * @param name What the size is for, used in error messages
+	 */
+	private static int parseSize( String value, String name )
+	{
+		if( value == null )
+			throw new JConfigurationException( "No value given for "+name );
+
 		value = value.trim().toLowerCase();
 
 		try
@@ -213,51 +358,37 @@ public class TcpConfiguration extends TransportConfiguration
 			if( value.endsWith("k") )
 			{
 				int size = Integer.parseInt( value.substring(0,value.length()-1) );
-				this.bundlingMaxSize = size*1000;
+				return size*1000;
 			}
 			else if( value.endsWith("m") )
 			{
 				int size = Integer.parseInt( value.substring(0,value.length()-1) );
-				this.bundlingMaxSize = size*1000*1000;
+				return size*1000*1000;
 			}
 			else if( value.endsWith("g") )
 			{
 				int size = Integer.parseInt( value.substring(0,value.length()-1) );
-				throw new JConfigurationException( "A max bundle size of " + size +
+				throw new JConfigurationException( "A "+name+" of " + size +
 				                                   "GB? Go home. You're drunk." );
 			}
 			else if( value.endsWith("b") )
 			{
-				int size = Integer.parseInt( value.substring(0,value.length()-1) );
-				this.bundlingMaxSize = size;
+				return Integer.parseInt( value.substring(0,value.length()-1) );
 			}
 			else
 			{
-				this.bundlingMaxSize = Integer.parseInt( value );
+				return Integer.parseInt( value );
 			}
 		}
 		catch( NumberFormatException e )
 		{
-			throw new JConfigurationException( "Could not parse max bundle size: "+value );
+			throw new JConfigurationException( "Could not parse "+name+": "+value );
 		}
 	}
-	
-	/**
-	 * Return the maximum amount of time (millis) the bundler should hold a message for
-	 * before flushing, regardless of bundled size.
-	 * Default: 20ms
-	 */
-	public int getBundleMaxTime()
+	private static boolean isTcpType( TransportType type )
 	{
-		return this.bundlingMaxTime;
-	}
-	
-	public void setBundleMaxTime( int millis )
-	{
-		this.bundlingMaxTime = millis;
+		return type == TransportType.TcpClient ||
+		       type == TransportType.TcpServer ||
+		       type == TransportType.NioServer;
 	}
-
-	//----------------------------------------------------------
-	//                     STATIC METHODS
-	//----------------------------------------------------------
 }
@@ -45,6 +45,11 @@ import org.portico2.common.network.transport.Transport;
  * The same is true in reverse. When a message is received from a {@link Transport}, it is passed
  * up the stack to the protocol immediately before the transport, which in turn passes it to the
  * one before it and so on. <p/>
+ * 
+ * The buffer inside a {@link Message} may be shared by several messages that are being sent
+ * to different connections at the same time (see {@link Message#Message(Message)}). Protocols
+ * must never modify it in place. If a protocol transforms the contents (encryption for example)
+ * it should build a new array and install it with {@link Message#replaceBuffer(byte[])}.
  */
 public abstract class Protocol
 {
@@ -14,15 +14,6 @@
  */
 package org.portico2.common.network.protocol.encryption;
 
-import java.security.GeneralSecurityException;
-import java.security.Security;
-
-import javax.crypto.Cipher;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-
-import org.bouncycastle.jcajce.provider.BouncyCastleFipsProvider;
 import org.portico.lrc.compat.JConfigurationException;
 import org.portico.lrc.compat.JRTIinternalError;
 import org.portico2.common.network.Connection;
@@ -31,6 +22,7 @@ import org.portico2.common.network.Message;
 import org.portico2.common.network.configuration.protocol.EncryptionConfiguration;
 import org.portico2.common.network.configuration.protocol.ProtocolConfiguration;
 import org.portico2.common.network.protocol.Protocol;
+import org.portico2.common.network.transport.Transport;
 
 /**
  * The {@link EncryptionProtocol} is separate from but may be related to the Auth protocol.
@@ -48,13 +40,24 @@ import org.portico2.common.network.protocol.Protocol;
  * <p>If we don't have a key and we receive a federation-level message, we throw an exception.
  * Things should never get that far without us having our key and something is wrong. However,
  * to allow setup to happen, we let non-federation messages get through unencrypted.</p>
+ * 
+ * <p><b>Message and Bundle Scope</b></p>
+ * <p>By default each message is encrypted on its own. If the configuration asks for bundle
+ * scope and the transport bundles messages (see {@link Transport#encryptBundles(SessionCipher)}),
+ * we hand our {@link SessionCipher} to the transport and it encrypts each bundle as a whole
+ * instead. This spreads the cost of setting up the cipher and the IV over many messages. We
+ * still make sure no federation message is sent before we have a key.</p>
+ * 
+ * <p>In message scope the encrypted version of a message is stored against it, so when the
+ * same message goes out over many connections it is only encrypted once. At the RTI we also
+ * store the encrypted data messages that come in, so that when they are forwarded on to the
+ * other connections the bytes we received are sent as they are.</p>
  */
 public class EncryptionProtocol extends Protocol
 {
 	//----------------------------------------------------------
 	//                    STATIC VARIABLES
 	//----------------------------------------------------------
-	static{ Security.addProvider(new BouncyCastleFipsProvider()); }
 
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
@@ -62,10 +65,8 @@ public class EncryptionProtocol extends Protocol
 	private EncryptionConfiguration configuration;
 
 	private boolean isEnabled;
-	private CipherMode cipherMode;
-	private SecretKey sessionKey;
-	private Cipher encryptCipher;
-	private Cipher decryptCipher;
+	private boolean bundled;         // true if the transport is encrypting bundles for us
+	private SessionCipher cipher;
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -77,10 +78,8 @@ public class EncryptionProtocol extends Protocol
 		
 		// Runtime Properties
 		this.isEnabled = false;      // set in configure()
-		this.cipherMode = CipherMode.defaultMode(); // set in configure()
-		this.sessionKey = null;      // set in open()
-		this.encryptCipher = null;   // set in configure()
-		this.decryptCipher = null;   // set in configure()		
+		this.bundled = false;        // set in open()
+		this.cipher = null;          // set in configure()
 	}
 
 	//----------------------------------------------------------
@@ -98,19 +97,9 @@ public class EncryptionProtocol extends Protocol
 
 		// Runtime Settings
 		this.isEnabled = configuration.isEnabled();
-		this.cipherMode = configuration.getCipherConfig();
 		
 		// Create the Ciphers
-		try
-		{
-			String configString = configuration.getCipherConfig().getConfigString();
-			this.encryptCipher = Cipher.getInstance( configString, "BCFIPS" );
-			this.decryptCipher = Cipher.getInstance( configString, "BCFIPS" );
-		}
-		catch( Exception e )
-		{
-			throw new JConfigurationException( "Error while setting up ciphers: "+e.getMessage(), e );
-		}
+		this.cipher = new SessionCipher( configuration.getCipherConfig() );
 		
 		// Shared key is extracted in open() call, or set by a the Auth protocol above
 		// us if we are getting it from the RTI
@@ -126,6 +115,9 @@ public class EncryptionProtocol extends Protocol
 	 *               we get our key.</li>
 	 *   <li>If RTI: We'll generate a session key for the federation, from FIXME</li>
 	 * </ul>
+	 * 
+	 * If we've been asked to encrypt whole bundles, this is also where we ask the transport
+	 * if it can do that for us.
 	 */
 	public void open()
 	{
@@ -144,6 +136,20 @@ public class EncryptionProtocol extends Protocol
     		configuredKey = String.format( keylength+"s", configuredKey );
     		setSessionKey( configuredKey.getBytes() );
 		}
+		
+		// See if the transport can encrypt whole bundles for us
+		if( configuration.isBundleScope() )
+		{
+			Protocol transport = this;
+			while( transport.hasNext() )
+				transport = transport.next();
+
+			this.bundled = transport instanceof Transport &&
+			               ((Transport)transport).encryptBundles( cipher );
+
+			if( bundled == false )
+				logger.warn( "Transport does not bundle messages; encrypting each message instead" );
+		}
 	}
 
 	public void close()
@@ -166,6 +172,9 @@ public class EncryptionProtocol extends Protocol
 	 * we'll throw an exception.
 	 * <p/>
 	 * 
+	 * If the transport is encrypting whole bundles, messages are passed down as they are.
+	 * <p/>
+	 * 
 	 * Skip all this guff if encryption isn't enabled.
 	 * 
 	 * @param message The message to encrypt (or maybe not!)
@@ -180,10 +189,11 @@ public class EncryptionProtocol extends Protocol
 			// If we don't have a session key, we'll let any non-federation 
 			// messages pass, but we'll have to push back on federation-level
 			// messages.
-			if( sessionKey != null )
+			if( cipher.hasSessionKey() )
 			{
-				// encrypt
-				encrypt( message );
+				// encrypt, unless the transport is going to do it
+				if( bundled == false )
+					encrypt( message );
 			}
 			else if( message.getMessageType().isFederationMessage() )
 			{
@@ -227,16 +237,13 @@ public class EncryptionProtocol extends Protocol
 	public void setSessionKey( byte[] sessionKey )
 	{
 		// Store the session key
-		if( sessionKey.length != 16 && sessionKey.length != 24 && sessionKey.length != 32 )
-			throw new IllegalArgumentException( "Key bit-length incorrect for AES (128, 192, 256): Found="+sessionKey.length );
- 
-		this.sessionKey = new SecretKeySpec( sessionKey, "AES" );
+		cipher.setSessionKey( sessionKey );
 	}
 
 	////////////////////////////////////////////////////////////////////////////////////////
 	///  Encryption/Decryption Methods   ///////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
-	private synchronized void encrypt( Message message ) throws JRTIinternalError
+	private void encrypt( Message message ) throws JRTIinternalError
 	{
 		//
 		// Note that if authentication is being used it will have been layered into
@@ -254,95 +261,80 @@ public class EncryptionProtocol extends Protocol
 		//       IV/Nonce     [16 Bytes]   -- may be different size
 		//
 
-		// Step 1. Get the original message buffer.
+		// Step 1. See if this message has already been encrypted with our key, either on
+		//         its way to another connection, or by whoever sent it to us
+		Object key = cipher.getSessionKey();
+		byte[] cached = message.getCachedEncrypted( key );
+		if( cached != null )
+		{
+			message.replaceBuffer( cached );
+			return;
+		}
+
+		// Step 2. Get the original message buffer.
 		//         We want to retain the header, but encrypt the payload.
-		byte[] original = message.getBuffer();
+		byte[] original = message.getRawBuffer();
+		int offset = message.getOffset();
 		int payloadLength = message.getHeader().getPayloadLength();
 		
-		// Step 2. Create a new buffer large enough to hold the encrypted output
-		int ivSize = cipherMode.getIvSize();
-		byte[] target = new byte[original.length + 4/*auth*/ + ivSize];
+		// Step 3. Create a new buffer large enough to hold the encrypted output. The buffer
+		//         we have may be shared with other messages, so we can't do it in place.
+		byte[] target = new byte[Header.HEADER_LENGTH + cipher.getEncryptedSize(payloadLength)];
 		
-		// Step 3. Encryption
-		//         Do the encryption, writing the CT into the new array.
-		//         Write the IV into the start of the payload section.
-		try
-		{
-			// Initialize the encrypter. This will generate a new IV.
-			encryptCipher.init( Cipher.ENCRYPT_MODE, sessionKey );
-			
-			// Write the Cipher Text first
-			encryptCipher.doFinal( original,                          // Source
-			                       Header.HEADER_LENGTH,              // Source Offset
-			                       payloadLength,                     // Length to read
-			                       target,                            // Destination
-			                       Header.HEADER_LENGTH );            // Destination Offset
-			
-			// Write the IV last
-			System.arraycopy( encryptCipher.getIV(),                  // Source
-			                  0,                                      // Source Offset
-			                  target,                                 // Destination
-			                  Header.HEADER_LENGTH+payloadLength,     // IV Offset
-			                  ivSize );                               // Num bytes to copy
-		}
-		catch( GeneralSecurityException gse )
-		{
-			throw new JRTIinternalError( "Error encrypting message: "+gse.getMessage(), gse );
-		}
+		// Step 4. Encryption
+		//         Write the Cipher Text and then the IV into the new array.
+		cipher.encrypt( original,                         // Source
+		                offset+Header.HEADER_LENGTH,      // Source Offset
+		                payloadLength,                    // Length to read
+		                target,                           // Destination
+		                Header.HEADER_LENGTH );           // Destination Offset
 
-		// Step 4. Write the original header into the new target
-		System.arraycopy( original, 0, target, 0, Header.HEADER_LENGTH );
+		// Step 5. Write the original header into the new target
+		System.arraycopy( original, offset, target, 0, Header.HEADER_LENGTH );
 		
-		// Step 5. Store the updated payload back in the message and update the header
+		// Step 6. Store the updated payload back in the message and update the header.
+		//         The payload length is updated from the size of the new buffer.
 		message.replaceBuffer( target );
 		message.getHeader().writeIsEncrypted( true );
-		message.getHeader().writePayloadLength( payloadLength + ivSize );
+		message.cacheEncrypted( key, target );
 	}
 	
-	private synchronized void decrypt( Message message ) throws JRTIinternalError
+	private void decrypt( Message message ) throws JRTIinternalError
 	{
 		if( message.getHeader().isEncrypted() == false )
 			return;
 
-		// Step 1. Get the original message buffer.
+		// Step 1. If we are the RTI, hold on to the encrypted data messages that come in.
+		//         They are forwarded to the other connections unchanged, so if those use
+		//         our key, they can send what we received rather than encrypt it again.
+		if( hostType == Connection.Host.RTI && message.getHeader().isDataMessage() )
+			message.cacheEncrypted( cipher.getSessionKey(), message.getBuffer() );
+
+		// Step 2. Get the original message buffer.
 		//         We want to retain the header, but decrypt the payload.
-		byte[] original = message.getBuffer();
+		byte[] original = message.getRawBuffer();
+		int offset = message.getOffset();
 		int payloadLength = message.getHeader().getPayloadLength();
 		
-		// Step 2. Create a new buffer of reduced size to hold just the plain text
-		int ivSize = cipherMode.getIvSize();
-		byte[] target = new byte[original.length-ivSize];
-
-		// Step 3. Decryption
-		//         Extract the IV from the tail of the payload and then decrypt the contents
-		//         in place, replacing the original buffer with the plain text version.
-		try
-		{
-			// Read the IV from the tail of the payload         [ <---- Offset ----> ]
-			IvParameterSpec iv = new IvParameterSpec( original, original.length-ivSize, ivSize );
-			
-			// Initialize the decrypter
-			decryptCipher.init( Cipher.DECRYPT_MODE, sessionKey, iv );
+		// Step 3. Create a new buffer of reduced size to hold just the plain text
+		int ivSize = cipher.getCipherMode().getIvSize();
+		byte[] target = new byte[Header.HEADER_LENGTH+payloadLength-ivSize];
 
-			// Decrypt the contents
-			decryptCipher.doFinal( original,
-			                       Header.HEADER_LENGTH,   // Offset to CT payload
-			                       payloadLength-ivSize,   // Size of section to decrypt
-			                       target,                 // Output buffer
-			                       Header.HEADER_LENGTH ); // Offset into output
-		}
-		catch( GeneralSecurityException gse )
-		{
-			throw new JRTIinternalError( "Error decrypting message: "+gse.getMessage(), gse );
-		}
+		// Step 4. Decryption
+		//         The IV is read from the tail of the payload and then the contents are
+		//         decrypted into the new buffer.
+		cipher.decrypt( original,
+		                offset+Header.HEADER_LENGTH,   // Offset to CT payload
+		                payloadLength,                 // Size of CT and IV
+		                target,                        // Output buffer
+		                Header.HEADER_LENGTH );        // Offset into output
 
-		// Step 4. Write the original header into the new target
-		System.arraycopy( original, 0, target, 0, Header.HEADER_LENGTH );
+		// Step 5. Write the original header into the new target
+		System.arraycopy( original, offset, target, 0, Header.HEADER_LENGTH );
 		
-		// Step 5. Store the updated payload back in the message and update the header
+		// Step 6. Store the updated payload back in the message and update the header
 		message.replaceBuffer( target );
 		message.getHeader().writeIsEncrypted( false );
-		message.getHeader().writePayloadLength( payloadLength-ivSize );
 	}
 
 	////////////////////////////////////////////////////////////////////////////////////////
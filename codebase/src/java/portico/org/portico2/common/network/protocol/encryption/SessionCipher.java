@@ -0,0 +1,207 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.network.protocol.encryption;
+
+import java.security.GeneralSecurityException;
+import java.security.Security;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jcajce.provider.BouncyCastleFipsProvider;
+import org.portico.lrc.compat.JConfigurationException;
+import org.portico.lrc.compat.JRTIinternalError;
+
+/**
+ * Holds the session key and the {@link Cipher}s that are used to encrypt and decrypt with it.
+ * A <code>Cipher</code> can only be used by one thread at a time. Rather than share a single
+ * one behind a lock, each thread that uses this class is given its own the first time it asks.
+ * That way the threads sending to different connections (or the bundler threads of different
+ * TCP channels) can all be encrypting at once.
+ * <p/>
+ *
+ * Encrypted output is always the cipher text followed by the IV that was used to create it:
+ *
+ * <pre>
+ *    Cipher Text [xx Bytes]   -- same size as the plain text for all supported modes
+ *    IV/Nonce    [16 Bytes]   -- see {@link CipherMode#getIvSize()}
+ * </pre>
+ *
+ * The source and target arrays given to {@link #encrypt(byte[], int, int, byte[], int)} and
+ * {@link #decrypt(byte[], int, int, byte[], int)} can be the same, so callers with a buffer of
+ * their own can encrypt in place rather than allocating a new one each time.
+ * <p/>
+ *
+ * The key can be set (or changed) at any time, and is picked up by every thread on its next call.
+ */
+public class SessionCipher
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	static{ Security.addProvider(new BouncyCastleFipsProvider()); }
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private CipherMode cipherMode;
+	private volatile SecretKey sessionKey;
+	private ThreadLocal<Cipher> encryptCiphers;
+	private ThreadLocal<Cipher> decryptCiphers;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	/**
+	 * @param cipherMode The mode all the ciphers should use
+	 * @throws JConfigurationException If a cipher can't be created for the given mode
+	 */
+	public SessionCipher( CipherMode cipherMode ) throws JConfigurationException
+	{
+		this.cipherMode = cipherMode;
+		this.sessionKey = null;      // set in setSessionKey()
+		this.encryptCiphers = ThreadLocal.withInitial( this::createCipher );
+		this.decryptCiphers = ThreadLocal.withInitial( this::createCipher );
+
+		// create one now so a bad configuration is found here, not when the first message is sent
+		this.encryptCiphers.get();
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	private Cipher createCipher()
+	{
+		try
+		{
+			return Cipher.getInstance( cipherMode.getConfigString(), "BCFIPS" );
+		}
+		catch( GeneralSecurityException gse )
+		{
+			throw new JConfigurationException( "Error while setting up ciphers: "+gse.getMessage(), gse );
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Encryption/Decryption Methods   ///////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Encrypt <code>length</code> bytes of the source array, writing the cipher text and then the
+	 * IV into the target. The target must have room for {@link #getEncryptedSize(int)} bytes.
+	 *
+	 * @return The number of bytes written into the target
+	 * @throws JRTIinternalError If there is no session key, or there is a problem encrypting
+	 */
+	public int encrypt( byte[] source, int sourceOffset, int length, byte[] target, int targetOffset )
+		throws JRTIinternalError
+	{
+		SecretKey key = this.sessionKey;
+		if( key == null )
+			throw new JRTIinternalError( "Cannot encrypt: no session key has been set" );
+
+		try
+		{
+			// Initialize the encrypter. This will generate a new IV.
+			Cipher cipher = encryptCiphers.get();
+			cipher.init( Cipher.ENCRYPT_MODE, key );
+
+			// Write the Cipher Text first, then the IV
+			int written = cipher.doFinal( source, sourceOffset, length, target, targetOffset );
+			byte[] iv = cipher.getIV();
+			System.arraycopy( iv, 0, target, targetOffset+written, iv.length );
+			return written + iv.length;
+		}
+		catch( GeneralSecurityException gse )
+		{
+			throw new JRTIinternalError( "Error encrypting message: "+gse.getMessage(), gse );
+		}
+	}
+
+	/**
+	 * Decrypt the <code>length</code> bytes of cipher text and IV in the source array (as written
+	 * by {@link #encrypt(byte[], int, int, byte[], int)}), writing the plain text into the target.
+	 *
+	 * @return The number of bytes of plain text written into the target
+	 * @throws JRTIinternalError If there is no session key, or there is a problem decrypting
+	 */
+	public int decrypt( byte[] source, int sourceOffset, int length, byte[] target, int targetOffset )
+		throws JRTIinternalError
+	{
+		SecretKey key = this.sessionKey;
+		if( key == null )
+			throw new JRTIinternalError( "Cannot decrypt: no session key has been set" );
+
+		try
+		{
+			// Read the IV from the tail. The spec takes a copy, so it's fine if we write over it.
+			int ivSize = cipherMode.getIvSize();
+			int textLength = length - ivSize;
+			IvParameterSpec iv = new IvParameterSpec( source, sourceOffset+textLength, ivSize );
+
+			Cipher cipher = decryptCiphers.get();
+			cipher.init( Cipher.DECRYPT_MODE, key, iv );
+			return cipher.doFinal( source, sourceOffset, textLength, target, targetOffset );
+		}
+		catch( GeneralSecurityException gse )
+		{
+			throw new JRTIinternalError( "Error decrypting message: "+gse.getMessage(), gse );
+		}
+	}
+
+	/**
+	 * @return The number of bytes that encrypting <code>plainTextSize</code> bytes will produce
+	 */
+	public int getEncryptedSize( int plainTextSize )
+	{
+		return cipherMode.getCipherTextSize(plainTextSize) + cipherMode.getIvSize();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Accessors and Mutators   //////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	public CipherMode getCipherMode()
+	{
+		return this.cipherMode;
+	}
+
+	/** @return The session key, or <code>null</code> if we don't have one yet */
+	public SecretKey getSessionKey()
+	{
+		return this.sessionKey;
+	}
+
+	public boolean hasSessionKey()
+	{
+		return this.sessionKey != null;
+	}
+
+	/**
+	 * @param sessionKey The AES key. Must be 128, 192 or 256 bits.
+	 * @throws IllegalArgumentException If the key is not a valid size
+	 */
+	public void setSessionKey( byte[] sessionKey )
+	{
+		if( sessionKey.length != 16 && sessionKey.length != 24 && sessionKey.length != 32 )
+			throw new IllegalArgumentException( "Key bit-length incorrect for AES (128, 192, 256): Found="+sessionKey.length );
+
+		this.sessionKey = new SecretKeySpec( sessionKey, "AES" );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -0,0 +1,182 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL)
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.network.transport;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.Logger;
+import org.portico.utils.messaging.PorticoMessage;
+import org.portico2.common.PorticoConstants;
+import org.portico2.common.messaging.ResponseMessage;
+import org.portico2.common.network.Connection;
+import org.portico2.common.network.Message;
+import org.portico2.common.services.federation.msg.JoinFederation;
+import org.portico2.common.services.federation.msg.ResignFederation;
+import org.portico2.common.services.federation.msg.WelcomePack;
+import org.portico2.rti.RTI;
+import org.portico2.rti.federation.Federation;
+import org.portico2.rti.federation.FederationManager;
+import org.portico2.rti.federation.RoutingTable;
+
+/**
+ * Server transports (tcp-server, nio-server) have many clients behind the one connection, so
+ * the RTI's {@link RoutingTable} can only decide whether the server as a whole gets a data
+ * message. This class lets the server decide which of its clients should get it.
+ * <p/>
+ *
+ * Each client has a {@link Client} record of the federate behind it. This is filled in from
+ * the response when the client joins a federation, and cleared when it resigns. When a data
+ * message is to be passed on to the clients, {@link #getReceivers(Message)} looks up the
+ * federates subscribed to it in the routing table and only clients with one of those federates
+ * are given it.
+ * <p/>
+ *
+ * Routing is only done when the server is in the RTI. Anywhere else, or if we can't tell who
+ * is subscribed to a message, every client gets it, as does any client that hasn't joined.
+ * Their LRCs throw away anything they aren't subscribed to.
+ */
+public class ClientRouter
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final Predicate<Client> ALL = client -> true;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Logger logger;
+	private FederationManager federationManager; // null if we aren't in the RTI
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public ClientRouter( Connection hostConnection )
+	{
+		this.logger = hostConnection.getLogger();
+		if( hostConnection.getHost() == Connection.Host.RTI )
+			this.federationManager = hostConnection.getHostReference(RTI.class).getFederationManager();
+		else
+			this.federationManager = null;
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * A message from the given client has been passed up and processed. If it was a successful
+	 * join or resign, update the record of which federate is behind the client. The RTI stores
+	 * the response in the message when processing a control request, so this must be called
+	 * after the message has been passed up.
+	 *
+	 * @param client The record for the client the message came from
+	 * @param message The message, after it has been passed up
+	 */
+	public void received( Client client, Message message )
+	{
+		if( federationManager == null || message.hasResponse() == false )
+			return;
+
+		ResponseMessage response = message.getResponse();
+		PorticoMessage request = message.getOriginalRequest();
+		if( response.isSuccess() == false )
+			return;
+
+		if( request instanceof JoinFederation )
+		{
+			WelcomePack welcome = (WelcomePack)response.getSuccessResult();
+			client.federationHandle = welcome.getFederationHandle();
+			client.federateHandle = welcome.getFederateHandle();
+			logger.debug( "Client %s is federate [%d] in federation [%d]",
+			              client.name, client.federateHandle, client.federationHandle );
+		}
+		else if( request instanceof ResignFederation )
+		{
+			logger.debug( "Client %s (federate [%d]) has resigned", client.name, client.federateHandle );
+			client.federationHandle = PorticoConstants.NULL_HANDLE;
+			client.federateHandle = PorticoConstants.NULL_HANDLE;
+		}
+	}
+
+	/**
+	 * Find out which clients should be given the data message. The message must still have the
+	 * request it was inflated into (see {@link Message#getOriginalRequest()}). If it doesn't,
+	 * every client is given it.
+	 *
+	 * @param message The data message to pass on to the clients
+	 * @return A test that passes for each client that should be given the message
+	 */
+	public Predicate<Client> getReceivers( Message message )
+	{
+		PorticoMessage request = message.getOriginalRequest();
+		if( federationManager == null || request == null )
+			return ALL;
+
+		Federation federation = federationManager.getFederation( request.getTargetFederation() );
+		if( federation == null )
+			return ALL;
+
+		Set<Integer> subscribers = federation.getRoutingTable().getSubscribers( request );
+		if( subscribers == null )
+			return ALL;
+
+		int federationHandle = federation.getFederationHandle();
+		return client -> client.isReceiver( federationHandle, subscribers );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  PUBLIC CLASS: Client   ///////////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/** The federate behind a single client of a server transport, if it has joined */
+	public static class Client
+	{
+		private String name;
+		private volatile int federationHandle;
+		private volatile int federateHandle;
+
+		/** @param name How the client is identified in log messages */
+		public Client( String name )
+		{
+			this.name = name;
+			this.federationHandle = PorticoConstants.NULL_HANDLE;
+			this.federateHandle = PorticoConstants.NULL_HANDLE;
+		}
+
+		private boolean isReceiver( int federationHandle, Set<Integer> subscribers )
+		{
+			// we don't know who is behind a client until it joins, so it gets everything
+			int federate = this.federateHandle;
+			if( federate == PorticoConstants.NULL_HANDLE )
+				return true;
+
+			return this.federationHandle == federationHandle && subscribers.contains( federate );
+		}
+
+		public int getFederationHandle()
+		{
+			return this.federationHandle;
+		}
+
+		public int getFederateHandle()
+		{
+			return this.federateHandle;
+		}
+	}
+}
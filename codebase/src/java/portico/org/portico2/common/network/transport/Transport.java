@@ -16,12 +16,15 @@ package org.portico2.common.network.transport;
 
 import org.portico.lrc.compat.JConfigurationException;
 import org.portico.lrc.compat.JRTIinternalError;
+import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.network.CallType;
 import org.portico2.common.network.Connection;
 import org.portico2.common.network.Message;
 import org.portico2.common.network.ProtocolStack;
 import org.portico2.common.network.configuration.protocol.ProtocolConfiguration;
 import org.portico2.common.network.protocol.Protocol;
+import org.portico2.common.network.protocol.encryption.EncryptionProtocol;
+import org.portico2.common.network.protocol.encryption.SessionCipher;
 
 /**
  * The {@link Transport} class is the parent of all implementations of a particular network
@@ -117,6 +120,38 @@ public abstract class Transport extends Protocol
 	 * @return Whether the transport is open or not.
 	 */
 	public abstract boolean isOpen();
+
+	/**
+	 * Called by the {@link EncryptionProtocol} when it has been configured to encrypt whole
+	 * bundles rather than each message. If the transport bundles messages, it should encrypt
+	 * each bundle with the given cipher before writing it, and decrypt them as they come in.
+	 * The cipher may not have a key yet. Until it does, bundles should be sent as they are.
+	 * <p/>
+	 * 
+	 * This is called before the transport is opened. By default transports don't support this.
+	 * 
+	 * @param cipher The cipher to encrypt and decrypt bundles with
+	 * @return True if the transport will encrypt its bundles. False if it can't, in which case
+	 *         the protocol will encrypt each message instead.
+	 */
+	public boolean encryptBundles( SessionCipher cipher )
+	{
+		return false;
+	}
+
+	/**
+	 * Should data messages sent through this transport be passed down as they are, rather than
+	 * being serialized first? If so, the connection will wrap them with
+	 * {@link Message#byReference(PorticoMessage, CallType, int)}. Only transports that can hand
+	 * the message object straight to the receiver (and that have no protocols in front of them
+	 * that would need to work on the bytes) should say yes. By default, transports don't.
+	 *
+	 * @return True if data messages should be sent by reference
+	 */
+	public boolean sendsByReference()
+	{
+		return false;
+	}
 	
 	///////////////////////////////////////////////////////////////////////////////////////
 	///  Protocol Messaging Methods   /////////////////////////////////////////////////////
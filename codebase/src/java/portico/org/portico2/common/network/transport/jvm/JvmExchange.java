@@ -18,6 +18,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.portico.lrc.compat.JRTIinternalError;
+import org.portico2.common.network.Message;
 
 /**
  * The {@link JvmExchange} is an aggregation point for {@link JvmTransport}s. Each connection will
@@ -84,7 +85,11 @@ public class JvmExchange
 	////////////////////////////////////////////////////////////////////////////////////////
 	///  Message Exchange Methods   ////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
-	protected void sendMessage( JvmTransport sender, byte[] message ) throws JRTIinternalError
+	/**
+	 * Pass the given message to all the other transports. Each builds its own {@link Message}
+	 * from it, see {@link JvmTransport#receive(Message)}.
+	 */
+	protected void sendMessage( JvmTransport sender, Message message ) throws JRTIinternalError
 	{
 		// reflect to all other connected JVM transports, skipping ourselves
 		for( JvmTransport temp : transports )
@@ -19,9 +19,28 @@ import org.portico.lrc.compat.JRTIinternalError;
 import org.portico2.common.network.Connection;
 import org.portico2.common.network.Message;
 import org.portico2.common.network.configuration.protocol.ProtocolConfiguration;
+import org.portico2.common.network.configuration.transport.JvmConfiguration;
 import org.portico2.common.network.transport.Transport;
 import org.portico2.common.network.transport.TransportType;
 
+/**
+ * Links connections that are all in the same process through the {@link JvmExchange}.
+ * <p/>
+ *
+ * <b>Passing by Reference</b>
+ * As there is no network in between, there is no need to turn data messages (reflections and
+ * interactions) into bytes and back again. Unless it has been turned off in the RID, data
+ * messages are passed through the exchange as objects (see {@link Message#byReference}) and each
+ * receiver is given its own shallow clone of the message. Control messages and their responses
+ * can carry things that both sides would go on to hold and change (such as the FOM), so they are
+ * always serialized, which gives each side its own copy.
+ * <p/>
+ *
+ * Protocols work on the bytes of a message, so data messages are only passed by reference when
+ * there are no protocols in the stack. The receiving side also has to have no protocols, or it
+ * is given the serialized message as before. When there are no protocols there is nothing in the
+ * stack to pass through, so the message is handed straight from one connection to the other.
+ */
 public class JvmTransport extends Transport
 {
 	//----------------------------------------------------------
@@ -31,6 +50,7 @@ public class JvmTransport extends Transport
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
 	//----------------------------------------------------------
+	private JvmConfiguration configuration;
 	private boolean isConnected;
 
 	//----------------------------------------------------------
@@ -52,6 +72,8 @@ public class JvmTransport extends Transport
 	protected void doConfigure( ProtocolConfiguration configuration, Connection connection )
 		throws JConfigurationException
 	{
+		this.configuration = (JvmConfiguration)configuration;
+
 		// drop the response wait time
 		connection.getResponseCorrelator().setTimeout( 100 );
 	}
@@ -92,12 +114,32 @@ public class JvmTransport extends Transport
 	@Override
 	public void down( Message message )
 	{
-		JvmExchange.instance().sendMessage( this, message.getBuffer() );
+		JvmExchange.instance().sendMessage( this, message );
 	}
 
-	protected void receive( byte[] message )
+	/**
+	 * Receive a message from another transport in the exchange. The message is shared with all
+	 * the other receivers, so we make our own from it before passing it up. That is a copy of the
+	 * request if it was passed by reference (and we can take it that way), or a new message over
+	 * the same (read-only) bytes if it wasn't.
+	 */
+	protected void receive( Message message )
+	{
+		if( message.isByReference() && sendsByReference() )
+			up( message.copyForReceiver() );
+		else
+			up( new Message(message.getRawBuffer(),message.getOffset(),message.getLength()) );
+	}
+
+	/**
+	 * Data messages go by reference if that hasn't been turned off in the RID, and if we have
+	 * no protocols that need to work on the serialized message.
+	 */
+	@Override
+	public boolean sendsByReference()
 	{
-		up( new Message(message) );
+		// with no protocols, we're linked directly to the application connector at the top
+		return configuration.isByReference() && previous().previous() == null;
 	}
 
 	//----------------------------------------------------------
@@ -0,0 +1,686 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.network.transport.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+import org.portico.lrc.compat.JRTIinternalError;
+import org.portico.utils.StringUtils;
+import org.portico2.common.PorticoConstants;
+import org.portico2.common.network.Header;
+import org.portico2.common.network.Message;
+import org.portico2.common.network.protocol.encryption.SessionCipher;
+import org.portico2.common.network.transport.ClientRouter;
+import org.portico2.common.network.transport.tcp.TcpClientProxy;
+import org.portico2.common.network.transport.tcp.channel.IBundler;
+import org.portico2.common.network.transport.tcp.channel.Metrics;
+
+/**
+ * The server side of a single client connected to a {@link NioServerTransport}. This is the
+ * non-blocking equivalent of {@link TcpClientProxy}. All of its reading and writing is done on
+ * the {@link SelectorLoop} it belongs to.
+ * <p/>
+ *
+ * <b>Receiving</b>
+ * Data is read into the loop's shared buffer and then copied into the frame currently being
+ * assembled. A frame is an int frame code, an int length and then that many bytes of one or
+ * more messages. A frame that claims to be bigger than the configured max frame size, or that
+ * holds a message running past its end, gets the connection dropped rather than trusted.
+ * <p/>
+ * Complete frames are queued and split into messages on one of the server's receiver threads,
+ * which passes them up to the server. Passing a message up can block (the RTI waits for room in
+ * its own queues), and that must not hold up the selector thread and every other client on it.
+ * Frames for a connection are processed one at a time and in order. If more than the configured
+ * max queued size is waiting, we stop reading from the socket until half of it has been
+ * processed, which pushes back on the client through TCP.
+ * <p/>
+ *
+ * <b>Sending</b>
+ * {@link #send(byte[],int,int)} can be called from any thread. It puts the message on the outbound
+ * queue and, if a flush isn't already pending, asks the loop to run one. The loop writes as
+ * much of the queue as it can with a single gathering write. If the socket can't take it all,
+ * it registers for write readiness and carries on when there is space. Message buffers are
+ * written straight from the queue and never copied.
+ * <p/>
+ * The queue is bounded by the configured max queued size. We can't push back on the sender, as
+ * that is the RTI, and blocking it would hold up every other client. A client that falls that
+ * far behind is disconnected instead.
+ * <p/>
+ *
+ * <b>Encryption</b>
+ * When the encryption protocol is running with bundle scope, clients send encrypted frames
+ * (see {@link IBundler}). These are decrypted in place before being split. Frames we send are
+ * encrypted by the {@link NioServerTransport} before they get here, once for all clients.
+ */
+public class NioConnection
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	// used to give each client an index
+	private static final AtomicLong ID_GENERATOR = new AtomicLong( 0 );
+
+	private static final int CODE_WELCOME = 0xbeef;
+	private static final int CODE_READY   = 0xfeed;
+	protected static final int CODE_BUNDLE  = IBundler.CODE_BUNDLE;
+	protected static final int CODE_ENCRYPTED_BUNDLE = IBundler.CODE_ENCRYPTED_BUNDLE;
+	private static final int CODE_SINGLE  = 0xbabe;
+
+	/** Max number of buffers we'll hand to a single gathering write */
+	private static final int MAX_GATHER = 64;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Logger logger;
+	private NioServerTransport server;
+	private SocketChannel socket;
+	private SelectorLoop loop;
+	private SelectionKey key;
+	private String connectionInfo;
+	private long hostID;
+	private boolean handshaken;
+	private boolean connected;
+	private ClientRouter.Client routing; // the federate behind this client, once it joins
+
+	// Receiving
+	private int maxFrameSize;
+	private ByteBuffer frameHeader;  // frame code and length
+	private byte[] frame;            // the frame body, null while we are reading a header
+	private int framePosition;       // number of bytes of the body we have so far
+	private boolean frameEncrypted;  // is the frame body encrypted
+	private Queue<InboundFrame> inbound;  // complete frames waiting for a receiver thread
+	private AtomicLong inboundBytes;
+	private AtomicBoolean receiving;      // is a receiver thread working on the inbound queue
+	private volatile boolean readPaused;  // have we stopped reading because inbound is full
+
+	// Sending
+	private Queue<ByteBuffer[]> outbound;
+	private AtomicLong queuedBytes;  // size of the message bodies sitting in the outbound queue
+	private long maxQueued;
+	private AtomicBoolean overflowed;
+	private AtomicBoolean flushScheduled;
+	private ByteBuffer[] gather;
+	private int gatherCount;
+
+	// Metrics
+	private Metrics metrics;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	protected NioConnection( NioServerTransport server, SocketChannel socket, SelectorLoop loop )
+		throws IOException
+	{
+		this.logger = server.getLogger();
+		this.server = server;
+		this.socket = socket;
+		this.loop = loop;
+		this.key = null;                // set in register()
+		this.connectionInfo = socket.getRemoteAddress().toString();
+		this.hostID = ID_GENERATOR.incrementAndGet();
+		this.handshaken = false;
+		this.connected = true;
+		this.routing = new ClientRouter.Client( connectionInfo );
+
+		// Receiving
+		this.maxFrameSize = server.getMaxFrameSize();
+		this.frameHeader = ByteBuffer.allocate( 8 );
+		this.frameHeader.limit( 4 );    // we only expect the READY code until the handshake is done
+		this.frame = null;
+		this.framePosition = 0;
+		this.frameEncrypted = false;
+		this.inbound = new ConcurrentLinkedQueue<>();
+		this.inboundBytes = new AtomicLong( 0 );
+		this.receiving = new AtomicBoolean( false );
+		this.readPaused = false;
+
+		// Sending
+		this.outbound = new ConcurrentLinkedQueue<>();
+		this.queuedBytes = new AtomicLong( 0 );
+		this.maxQueued = server.getMaxQueued();
+		this.overflowed = new AtomicBoolean( false );
+		this.flushScheduled = new AtomicBoolean( false );
+		this.gather = new ByteBuffer[MAX_GATHER];
+		this.gatherCount = 0;
+
+		// Metrics
+		this.metrics = new Metrics();
+
+		// Queue the welcome and ready codes. The client will respond with its own ready
+		// code, at which point we're good to go. See TcpClientProxy.handshake()
+		byte[] welcome = ("Portico Router ("+PorticoConstants.RTI_VERSION+"): Your ID"+hostID).getBytes();
+		ByteBuffer handshake = ByteBuffer.allocate( 12+welcome.length );
+		handshake.putInt( CODE_WELCOME );
+		handshake.putInt( welcome.length );
+		handshake.put( welcome );
+		handshake.putInt( CODE_READY );
+		handshake.flip();
+		this.outbound.add( new ByteBuffer[]{ handshake } );
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+
+	/////////////////////////////////////////////////////////////////////////////////////
+	/// Lifecycle Methods  //////////////////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Register with the given selector and start the handshake. Called on the selector thread.
+	 */
+	protected void register( Selector selector )
+	{
+		try
+		{
+			this.key = socket.register( selector, SelectionKey.OP_READ, this );
+			flush();
+		}
+		catch( ClosedChannelException cce )
+		{
+			disconnect( cce );
+		}
+	}
+
+	/**
+	 * Close the connection down and remove it from the server. Safe to call more than once.
+	 *
+	 * @param cause The reason for the disconnection, or null if we are being shut down
+	 */
+	protected void disconnect( Throwable cause )
+	{
+		if( this.connected == false )
+			return;
+
+		this.connected = false;
+		if( handshaken )
+			server.removeClient( this );
+
+		if( key != null )
+			key.cancel();
+
+		try
+		{
+			socket.close();
+		}
+		catch( IOException ioex )
+		{
+			logger.error( "Exception while closing NIO socket: "+ioex.getMessage(), ioex );
+		}
+
+		if( cause != null )
+			logger.debug( "NIO connection closed: "+cause.getMessage() );
+
+		// user feedback
+		String dataReceived = StringUtils.getSizeString( metrics.bytesReceived, 2 );
+		String dataSent = StringUtils.getSizeString( metrics.bytesSent, 2 );
+		logger.info( "  (Removed) Connection ID="+hostID+" has disconnected" );
+		logger.info( "            Packets From: "+metrics.messagesReceived+" packets, "+dataReceived );
+		logger.info( "            Packets Sent: "+metrics.messagesSent+" packets, "+dataSent );
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  Message SENDING Methods   ////////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Queue the given message for sending and make sure the selector loop knows about it.
+	 * This method never blocks and can be called from any thread. If the client has too much
+	 * waiting for it already, the message is dropped and the client is disconnected.
+	 *
+	 * @param buffer The array holding the message (header and body) to send. Not copied, so
+	 *               it must not be modified after it has been handed over.
+	 * @param offset The index in the array that the message starts at
+	 * @param length The length of the message
+	 */
+	public void send( byte[] buffer, int offset, int length )
+	{
+		send( CODE_BUNDLE, buffer, offset, length );
+	}
+
+	/**
+	 * Same as {@link #send(byte[], int, int)}, but with the given frame code. Used to send
+	 * frames that have already been encrypted.
+	 */
+	protected void send( int code, byte[] buffer, int offset, int length )
+	{
+		if( connected == false || overflowed.get() )
+			return;
+
+		if( queuedBytes.addAndGet(length) > maxQueued )
+		{
+			queuedBytes.addAndGet( -length );
+			if( overflowed.compareAndSet(false,true) )
+			{
+				String error = "Connection ID="+hostID+" is too slow: outbound queue is over "+
+				               StringUtils.getSizeString(maxQueued,2)+", disconnecting";
+				logger.warn( error );
+				loop.execute( () -> disconnect(new IOException(error)) );
+			}
+			return;
+		}
+
+		ByteBuffer frameHeader = ByteBuffer.allocate( 8 );
+		frameHeader.putInt( code );
+		frameHeader.putInt( length );
+		frameHeader.flip();
+		outbound.add( new ByteBuffer[]{ frameHeader, ByteBuffer.wrap(buffer,offset,length) } );
+
+		if( flushScheduled.compareAndSet(false,true) )
+			loop.execute( this::flush );
+	}
+
+	/**
+	 * Write as much of the outbound queue as the socket will take. If there is anything left
+	 * over, register interest in write readiness so we get called again when there is space.
+	 * Must only be called from the selector thread.
+	 */
+	protected void flush()
+	{
+		// clear the flag first so that anything queued while we're writing triggers another go
+		flushScheduled.set( false );
+		if( connected == false )
+			return;
+
+		try
+		{
+			while( true )
+			{
+				// top up the gather array from the queue
+				ByteBuffer[] next = null;
+				while( (next = outbound.peek()) != null && gatherCount+next.length <= MAX_GATHER )
+				{
+					outbound.poll();
+					for( ByteBuffer buffer : next )
+						gather[gatherCount++] = buffer;
+
+					if( next.length == 2 )
+					{
+						int size = next[1].remaining();
+						queuedBytes.addAndGet( -size );
+						++metrics.messagesSent;
+						metrics.bytesSent += size;
+					}
+				}
+
+				if( gatherCount == 0 )
+				{
+					// all done, no need to know about write readiness any more
+					key.interestOps( readOps() );
+					return;
+				}
+
+				socket.write( gather, 0, gatherCount );
+
+				// drop all the buffers that have been fully written
+				int written = 0;
+				while( written < gatherCount && gather[written].hasRemaining() == false )
+					++written;
+
+				System.arraycopy( gather, written, gather, 0, gatherCount-written );
+				Arrays.fill( gather, gatherCount-written, gatherCount, null );
+				gatherCount -= written;
+
+				if( gatherCount > 0 )
+				{
+					// socket is full, wait until we're told it has space again
+					key.interestOps( readOps() | SelectionKey.OP_WRITE );
+					return;
+				}
+			}
+		}
+		catch( IOException ioex )
+		{
+			disconnect( ioex );
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  Message RECEIVING Methods   //////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Read whatever is available from the socket into the given buffer and process it.
+	 * Must only be called from the selector thread.
+	 *
+	 * @param readBuffer The buffer to read into. Owned by the selector loop.
+	 */
+	protected void read( ByteBuffer readBuffer )
+	{
+		try
+		{
+			readBuffer.clear();
+			int count = socket.read( readBuffer );
+			if( count == -1 )
+			{
+				disconnect( new IOException("Connection closed by remote host") );
+				return;
+			}
+
+			readBuffer.flip();
+			while( readBuffer.hasRemaining() && connected )
+			{
+				if( frame == null )
+					readFrameHeader( readBuffer );
+				else
+					readFrameBody( readBuffer );
+			}
+		}
+		catch( IOException ioex )
+		{
+			disconnect( ioex );
+		}
+	}
+
+	private void readFrameHeader( ByteBuffer readBuffer ) throws IOException
+	{
+		transfer( readBuffer, frameHeader );
+		if( frameHeader.hasRemaining() )
+			return;
+
+		frameHeader.flip();
+		int code = frameHeader.getInt();
+		if( handshaken == false )
+		{
+			if( code != CODE_READY )
+			{
+				throw new IOException( "Expected code READY (0xfeed) but got "+
+				                       StringUtils.formatAsHex(code) );
+			}
+
+			this.handshaken = true;
+			frameHeader.clear();
+			server.addClient( this );
+			return;
+		}
+
+		int length = frameHeader.getInt();
+		frameHeader.clear();
+		if( code == CODE_SINGLE )
+			logger.warn( "We received a single message... wtf?" );
+		else if( code != CODE_BUNDLE && code != CODE_ENCRYPTED_BUNDLE )
+			throw new IOException( "Unknown frame code: "+StringUtils.formatAsHex(code) );
+
+		// don't allocate whatever the other end asks for
+		if( length < 0 || length > maxFrameSize )
+		{
+			throw new IOException( "Frame length of "+length+" bytes is outside the limit of "+
+			                       maxFrameSize+" bytes" );
+		}
+
+		this.frame = new byte[length];
+		this.framePosition = 0;
+		this.frameEncrypted = code == CODE_ENCRYPTED_BUNDLE;
+	}
+
+	private void readFrameBody( ByteBuffer readBuffer ) throws IOException
+	{
+		int count = Math.min( readBuffer.remaining(), frame.length-framePosition );
+		readBuffer.get( frame, framePosition, count );
+		framePosition += count;
+		if( framePosition < frame.length )
+			return;
+
+		byte[] completed = this.frame;
+		int length = frameEncrypted ? decryptFrame(completed) : completed.length;
+		this.frame = null;
+		checkFrame( completed, length );
+		queueFrame( completed, length );
+	}
+
+	/**
+	 * Walk the message headers in the frame and make sure they add up.
+	 *
+	 * @throws IOException If a message header doesn't fit in the frame, or a message claims to
+	 *                     run past the end of it
+	 */
+	private void checkFrame( byte[] frame, int length ) throws IOException
+	{
+		int offset = 0;
+		while( offset < length )
+		{
+			if( offset+Header.HEADER_LENGTH > length )
+				throw new IOException( "Frame ends part way through a message header" );
+
+			int messageLength = new Header(frame,offset).getPayloadLength() + Header.HEADER_LENGTH;
+			if( messageLength < Header.HEADER_LENGTH || messageLength > length-offset )
+			{
+				throw new IOException( "Message length of "+messageLength+" bytes runs past the "+
+				                       "end of the frame ("+(length-offset)+" bytes left)" );
+			}
+
+			offset += messageLength;
+		}
+	}
+
+	/**
+	 * Queue a complete frame for a receiver thread, starting one if there isn't one on it already.
+	 * If too much is waiting, stop reading until the receiver catches up. Called on the selector
+	 * thread.
+	 */
+	private void queueFrame( byte[] frame, int length )
+	{
+		// pause before publishing the frame, so whichever receiver takes it sees the pause
+		// and schedules the resume once it has drained the queue
+		if( inboundBytes.addAndGet(length) > maxQueued && readPaused == false )
+		{
+			logger.debug( "Connection ID=%d: over %s waiting to be processed, pausing reads",
+			              hostID, StringUtils.getSizeString(maxQueued,2) );
+			this.readPaused = true;
+			key.interestOps( key.interestOps() & ~SelectionKey.OP_READ );
+		}
+
+		inbound.add( new InboundFrame(frame,length) );
+
+		if( receiving.compareAndSet(false,true) )
+		{
+			try
+			{
+				server.getReceivers().execute( this::receive );
+			}
+			catch( RejectedExecutionException ree )
+			{
+				// server is shutting down
+				receiving.set( false );
+			}
+		}
+	}
+
+	/**
+	 * Pass every queued frame up to the server. Runs on a receiver thread.
+	 */
+	private void receive()
+	{
+		while( true )
+		{
+			InboundFrame next = null;
+			while( (next = inbound.poll()) != null )
+			{
+				int offset = 0;
+				while( offset < next.length && connected )
+					offset += receiveSingle( next.data, offset );
+
+				inboundBytes.addAndGet( -next.length );
+				if( readPaused && inboundBytes.get() <= maxQueued/2 )
+					loop.execute( this::resumeReading );
+			}
+
+			// let go, then check nothing was queued and no pause was missed just before we did
+			receiving.set( false );
+			if( readPaused && inboundBytes.get() <= maxQueued/2 )
+				loop.execute( this::resumeReading );
+
+			if( inbound.isEmpty() || receiving.compareAndSet(false,true) == false )
+				return;
+		}
+	}
+
+	/** Start reading again once the receiver has caught up. Called on the selector thread. */
+	private void resumeReading()
+	{
+		if( connected == false || readPaused == false || inboundBytes.get() > maxQueued/2 )
+			return;
+
+		this.readPaused = false;
+		key.interestOps( key.interestOps() | SelectionKey.OP_READ );
+	}
+
+	private int readOps()
+	{
+		return readPaused ? 0 : SelectionKey.OP_READ;
+	}
+
+	/**
+	 * Decrypt the given frame in place.
+	 *
+	 * @return The length of the plain text at the start of the frame
+	 * @throws IOException If we don't have a session key, or the frame can't be decrypted
+	 */
+	private int decryptFrame( byte[] frame ) throws IOException
+	{
+		SessionCipher cipher = server.getBundleCipher();
+		if( cipher == null || cipher.hasSessionKey() == false )
+			throw new IOException( "Received an encrypted bundle, but encryption is not enabled" );
+
+		try
+		{
+			return cipher.decrypt( frame, 0, frame.length, frame, 0 );
+		}
+		catch( JRTIinternalError rtie )
+		{
+			throw new IOException( rtie.getMessage(), rtie );
+		}
+	}
+
+	/**
+	 * Pass the message at the given offset in the frame up to the server. The frame has already
+	 * been checked by {@link #checkFrame(byte[], int)}.
+	 *
+	 * @param payload The frame the message is in
+	 * @param offset Where the message starts
+	 * @return The length of the message
+	 */
+	private int receiveSingle( byte[] payload, int offset )
+	{
+		Header header = new Header( payload, offset );
+		int messageLength = header.getPayloadLength() + Header.HEADER_LENGTH;
+
+		// Keep some stats
+		++metrics.messagesReceived;
+		metrics.bytesReceived += messageLength;
+
+		if( logger.isTraceEnabled() )
+		{
+			logger.trace( "(incoming) type=%s (id=%d), ptype=%s, from=%s, to=%s, size=%s, app=%s",
+			              header.getCallType(),
+			              header.getRequestId(),
+			              header.getMessageType(),
+			              StringUtils.sourceHandleToString( header.getSourceFederate() ),
+			              StringUtils.targetHandleToString( header.getTargetFederate() ),
+			              messageLength,
+			              connectionInfo );
+		}
+
+		try
+		{
+			// pass up the protocol stack and into the RTI
+			// the message is a view over the frame, it isn't copied out
+			Message message = new Message( payload, offset, messageLength );
+			server.up( message );
+
+			// if that was us joining or resigning, note which federate we are now
+			server.getRouter().received( routing, message );
+
+			// Loop data messages around to the other clients of this server with a federate
+			// subscribed to them, the same as the TcpClientProxy does. We pass on what was
+			// sent, which may not be what the message holds now if it was decrypted on the
+			// way up. See the notes in TcpClientProxy.receive()
+			if( message.getHeader().isDataMessage() )
+			{
+				server.sendToClients( payload, offset, messageLength,
+				                      server.getRouter().getReceivers(message), this );
+			}
+		}
+		catch( Exception e )
+		{
+			logger.warn( "Error while processing message: "+e.getMessage() );
+			logger.trace( "Exception Details", e );
+		}
+
+		return messageLength;
+	}
+
+	/** Copy as much as will fit from the source buffer into the destination */
+	private void transfer( ByteBuffer source, ByteBuffer destination )
+	{
+		int count = Math.min( source.remaining(), destination.remaining() );
+		for( int i = 0; i < count; i++ )
+			destination.put( source.get() );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Accessors and Mutators   //////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	public long getID()
+	{
+		return this.hostID;
+	}
+
+	public Metrics getMetrics()
+	{
+		return this.metrics;
+	}
+
+	protected ClientRouter.Client getRouting()
+	{
+		return this.routing;
+	}
+
+	@Override
+	public String toString()
+	{
+		return connectionInfo;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  PRIVATE CLASS: InboundFrame   ////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/** A complete frame and the length of its (decrypted) content */
+	private static class InboundFrame
+	{
+		private byte[] data;
+		private int length;
+
+		private InboundFrame( byte[] data, int length )
+		{
+			this.data = data;
+			this.length = length;
+		}
+	}
+}
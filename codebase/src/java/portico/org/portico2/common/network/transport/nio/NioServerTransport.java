@@ -0,0 +1,365 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.network.transport.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.Logger;
+import org.portico.lrc.compat.JConfigurationException;
+import org.portico.lrc.compat.JRTIinternalError;
+import org.portico2.common.network.Connection;
+import org.portico2.common.network.Message;
+import org.portico2.common.network.configuration.protocol.ProtocolConfiguration;
+import org.portico2.common.network.configuration.transport.TcpConfiguration;
+import org.portico2.common.network.protocol.encryption.SessionCipher;
+import org.portico2.common.network.transport.ClientRouter;
+import org.portico2.common.network.transport.Transport;
+import org.portico2.common.network.transport.TransportType;
+import org.portico2.common.network.transport.tcp.TcpClientTransport;
+import org.portico2.common.network.transport.tcp.TcpServerTransport;
+
+/**
+ * A TCP server transport that services all of its clients from a small, fixed pool of NIO
+ * selector threads, rather than the two threads per client used by {@link TcpServerTransport}.
+ * <p/>
+ *
+ * Sockets are non-blocking. Each accepted client is assigned to one of the {@link SelectorLoop}s
+ * (round robin), which does all the reading and writing for it from then on. Reads go into a
+ * direct buffer owned by the loop and are reassembled into messages by the {@link NioConnection}.
+ * Outgoing messages are put on a per-connection queue and written by the loop with gathering
+ * writes, so senders never block on a slow client.
+ * <p/>
+ *
+ * Received messages are passed up on a pool of receiver threads rather than the selector
+ * threads, as the RTI may block while processing them. Threads are only used while a connection
+ * has something to process, and each connection's messages are processed in order by one thread
+ * at a time. See {@link NioConnection}.
+ * <p/>
+ *
+ * The handshake and framing are the same as the regular TCP server, so clients connect to this
+ * transport using a normal {@link TcpClientTransport} (<code>tcp-client</code>). The bundling
+ * settings are not used. Each message is framed on its own and the gathering writes take care
+ * of putting many of them on the wire in one go.
+ * <p/>
+ *
+ * In the RID, use <code>transport="nio-server"</code> and a <code>&lt;nio-server&gt;</code>
+ * element. It takes the same options as <code>&lt;tcp-server&gt;</code>, plus an optional
+ * <code>selectors</code> attribute that sets the number of selector threads.
+ */
+public class NioServerTransport extends Transport
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final Predicate<ClientRouter.Client> ALL = client -> true;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private TcpConfiguration configuration;
+
+	// Runtime Components
+	private boolean isConnected;
+	private ServerSocketChannel serverChannel;
+	private SelectorLoop[] loops;
+	private int nextLoop;
+	private ExecutorService receivers;
+
+	// Connected Client Properties
+	protected List<NioConnection> clients;
+	private ClientRouter router;      // decides which clients get each data message
+
+	// Encryption
+	private SessionCipher bundleCipher;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public NioServerTransport()
+	{
+		super( TransportType.NioServer );
+
+		this.configuration = null;      // set in configure()
+
+		// Runtime Components
+		this.isConnected = false;
+		this.serverChannel = null;      // set in open()
+		this.loops = null;              // set in open()
+		this.nextLoop = 0;
+		this.receivers = null;          // set in open()
+
+		// Connected Clients
+		this.clients = new CopyOnWriteArrayList<>();
+		this.router = null;             // set in configure()
+
+		// Encryption
+		this.bundleCipher = null;       // set in encryptBundles() if we're asked to
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  Transport Lifecycle Methods   ////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	@Override
+	protected void doConfigure( ProtocolConfiguration protocolConfiguration, Connection connection )
+		throws JConfigurationException
+	{
+		this.configuration = (TcpConfiguration)protocolConfiguration;
+		this.router = new ClientRouter( connection );
+	}
+
+	/**
+	 * Open the server socket and start the selector loops. The first loop is also responsible
+	 * for accepting new connections.
+	 *
+	 * @throws JRTIinternalError If there is a problem encountered during connection
+	 */
+	@Override
+	public void open() throws JRTIinternalError
+	{
+		if( this.isConnected )
+			return;
+
+		int selectorCount = configuration.getSelectorThreads();
+		logger.trace( "--- NIO Server Configuration ---" );
+		logger.trace( "  >> Listen Address: "+this.configuration.getAddressString() );
+		logger.trace( "  >> Listen Port   : "+this.configuration.getPort() );
+		logger.trace( "  >> Selectors     : "+selectorCount );
+		logger.trace( "" );
+		logger.trace( "Opening server socket and listening for new connection requests" );
+
+		try
+		{
+			InetSocketAddress address = new InetSocketAddress( this.configuration.getAddress(),
+			                                                   this.configuration.getPort() );
+			this.serverChannel = ServerSocketChannel.open();
+			this.serverChannel.configureBlocking( false );
+			this.serverChannel.bind( address );
+
+			this.loops = new SelectorLoop[selectorCount];
+			for( int i = 0; i < loops.length; i++ )
+				loops[i] = new SelectorLoop( this, i );
+		}
+		catch( IOException ioex )
+		{
+			throw new JRTIinternalError( "Error starting NIO Server: "+ioex.getMessage(), ioex );
+		}
+
+		AtomicInteger receiverCount = new AtomicInteger( 0 );
+		this.receivers = Executors.newCachedThreadPool( runnable -> {
+			Thread thread = new Thread( runnable, "nio-receiver-"+receiverCount.getAndIncrement() );
+			thread.setDaemon( true );
+			return thread;
+		});
+
+		for( SelectorLoop loop : loops )
+			loop.start();
+
+		loops[0].registerAcceptor( serverChannel );
+
+		this.isConnected = true;
+		logger.trace( "NIO Server connection is open" );
+	}
+
+	/**
+	 * Stop the selector loops, which will disconnect all the clients, and close the server
+	 * socket so that we can't accept any more connections.
+	 *
+	 * @throws JRTIinternalError If there is a problem encountered during connection
+	 */
+	@Override
+	public void close() throws JRTIinternalError
+	{
+		if( this.isConnected == false )
+			return;
+
+		try
+		{
+			logger.trace( "Closing server socket and disconnecting all clients" );
+			for( SelectorLoop loop : loops )
+				loop.shutdown();
+
+			this.receivers.shutdownNow();
+			this.serverChannel.close();
+		}
+		catch( IOException ioex )
+		{
+			throw new JRTIinternalError( "Error stopping NIO Server: "+ioex.getMessage(), ioex );
+		}
+		finally
+		{
+			this.isConnected = false;
+		}
+	}
+
+	/**
+	 * Accept any pending connections and hand each one to a selector loop. Called from the
+	 * first selector loop when the server socket is ready to accept.
+	 */
+	protected void accept()
+	{
+		try
+		{
+			SocketChannel socket = null;
+			while( (socket = serverChannel.accept()) != null )
+			{
+				socket.configureBlocking( false );
+				socket.setOption( StandardSocketOptions.TCP_NODELAY, true );
+
+				SelectorLoop loop = loops[nextLoop];
+				nextLoop = (nextLoop+1) % loops.length;
+
+				NioConnection connection = new NioConnection( this, socket, loop );
+				loop.register( connection );
+				logger.info( "(Accepted) Connection ID=%d, ip=%s, selector=%s",
+				             connection.getID(),
+				             socket.getRemoteAddress(),
+				             loop.getName() );
+			}
+		}
+		catch( IOException ioex )
+		{
+			logger.error( "Error accepting connection: "+ioex.getMessage(), ioex );
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  Transport Messaging Methods   ////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	@Override
+	public void down( Message message )
+	{
+		// Data messages only go to the clients that have a federate subscribed to them.
+		// Everything else goes to all the clients, and their LRCs sort out who it is for.
+		Predicate<ClientRouter.Client> receivers = ALL;
+		if( message.getHeader().isDataMessage() )
+			receivers = router.getReceivers( message );
+
+		sendToClients( message.getRawBuffer(), message.getOffset(), message.getLength(), receivers, null );
+	}
+
+	/**
+	 * Queue the given message for each of the clients that pass the given test (other than the
+	 * one given). The actual writes happen on their selector threads. Each frame only holds a
+	 * single message, so if we are encrypting frames the message is encrypted here, once, and
+	 * the same cipher text is queued for everyone.
+	 *
+	 * @param receivers Which clients to send to, see {@link ClientRouter#getReceivers(Message)}
+	 * @param except The client not to send to, or null to send to all of them
+	 */
+	protected void sendToClients( byte[] buffer,
+	                              int offset,
+	                              int length,
+	                              Predicate<ClientRouter.Client> receivers,
+	                              NioConnection except )
+	{
+		int code = NioConnection.CODE_BUNDLE;
+		if( bundleCipher != null && bundleCipher.hasSessionKey() )
+		{
+			byte[] encrypted = new byte[bundleCipher.getEncryptedSize(length)];
+			length = bundleCipher.encrypt( buffer, offset, length, encrypted, 0 );
+			buffer = encrypted;
+			offset = 0;
+			code = NioConnection.CODE_ENCRYPTED_BUNDLE;
+		}
+
+		for( NioConnection client : clients )
+			if( client != except && receivers.test(client.getRouting()) )
+				client.send( code, buffer, offset, length );
+	}
+
+	/**
+	 * We write each message as its own frame, so encrypting frames costs the same as encrypting
+	 * messages, but we need to do it so that we can talk to clients that encrypt their bundles.
+	 */
+	@Override
+	public boolean encryptBundles( SessionCipher cipher )
+	{
+		this.bundleCipher = cipher;
+		return true;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Accessors and Mutators   //////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Override
+	public boolean isOpen()
+	{
+		return this.isConnected;
+	}
+
+	protected void addClient( NioConnection connection )
+	{
+		this.clients.add( connection );
+		logger.debug( "Connected NIO client: "+connection );
+	}
+
+	protected void removeClient( NioConnection connection )
+	{
+		this.clients.remove( connection );
+		logger.debug( "Disconnected NIO client: "+connection );
+	}
+
+	protected Logger getLogger()
+	{
+		return super.logger;
+	}
+
+	protected ClientRouter getRouter()
+	{
+		return this.router;
+	}
+
+	/** @return The threads that received messages are passed up on */
+	protected ExecutorService getReceivers()
+	{
+		return this.receivers;
+	}
+
+	/** @return The largest frame we will accept from a client, in bytes */
+	protected int getMaxFrameSize()
+	{
+		return this.configuration.getMaxFrameSize();
+	}
+
+	/** @return The most we will hold for a client in either direction before acting, in bytes */
+	protected long getMaxQueued()
+	{
+		return this.configuration.getMaxQueued();
+	}
+
+	/** @return The cipher to encrypt and decrypt frames with, or null if frames aren't encrypted */
+	protected SessionCipher getBundleCipher()
+	{
+		return this.bundleCipher;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -0,0 +1,228 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.network.transport.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A single thread that services a set of {@link NioConnection}s through one {@link Selector}.
+ * All reads and writes for a connection happen on the loop it is registered with, so the
+ * connection state doesn't need to be locked.
+ * <p/>
+ *
+ * Other threads interact with the loop by handing it tasks through {@link #execute(Runnable)}.
+ * These are run on the loop thread the next time it wakes up. This is how new connections are
+ * registered, and how connections are told that they have messages queued for sending.
+ * <p/>
+ *
+ * Each loop owns one direct buffer that all its connections read into. Because reads for a
+ * connection never overlap with reads for another on the same loop, it can be shared safely.
+ */
+public class SelectorLoop extends Thread
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Logger logger;
+	private NioServerTransport server;
+	private Selector selector;
+	private ByteBuffer readBuffer;
+	private Queue<Runnable> tasks;
+	private volatile boolean running;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	protected SelectorLoop( NioServerTransport server, int index ) throws IOException
+	{
+		super( "NIO Selector "+index );
+		super.setDaemon( true );
+
+		this.logger = server.getLogger();
+		this.server = server;
+		this.selector = Selector.open();
+		this.readBuffer = ByteBuffer.allocateDirect( READ_BUFFER_SIZE );
+		this.tasks = new ConcurrentLinkedQueue<>();
+		this.running = true;
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Task Submission   /////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Run the given task on the selector thread. The selector is woken up so that the task is
+	 * run straight away.
+	 */
+	public void execute( Runnable task )
+	{
+		tasks.add( task );
+		selector.wakeup();
+	}
+
+	/** Start listening for connections on the given server socket (from this loop) */
+	protected void registerAcceptor( ServerSocketChannel serverChannel )
+	{
+		execute( () -> {
+			try
+			{
+				serverChannel.register( selector, SelectionKey.OP_ACCEPT );
+			}
+			catch( ClosedChannelException cce )
+			{
+				logger.error( "Server socket closed before it could be registered" );
+			}
+		});
+	}
+
+	/** Take over servicing of the given connection */
+	protected void register( NioConnection connection )
+	{
+		execute( () -> connection.register(selector) );
+	}
+
+	/** Stop the loop and wait for it to disconnect all the connections it is servicing */
+	protected void shutdown()
+	{
+		this.running = false;
+		selector.wakeup();
+		try
+		{
+			this.join( 2000 );
+		}
+		catch( InterruptedException ie )
+		{
+			logger.warn( "Selector thread did not shut down cleanly (2 sec wait): "+getName() );
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Selector Loop   ///////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Override
+	public void run()
+	{
+		logger.debug( "Selector thread has started: "+getName() );
+		while( running )
+		{
+			try
+			{
+				selector.select();
+			}
+			catch( IOException ioex )
+			{
+				logger.error( "Error in selector, shutting down: "+ioex.getMessage(), ioex );
+				break;
+			}
+
+			runTasks();
+
+			Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+			while( iterator.hasNext() )
+			{
+				SelectionKey key = iterator.next();
+				iterator.remove();
+				if( key.isValid() == false )
+					continue;
+
+				// a problem with one connection must only take that connection down
+				try
+				{
+					if( key.isAcceptable() )
+					{
+						server.accept();
+						continue;
+					}
+
+					NioConnection connection = (NioConnection)key.attachment();
+					if( key.isReadable() )
+						connection.read( readBuffer );
+					if( key.isValid() && key.isWritable() )
+						connection.flush();
+				}
+				catch( Exception e )
+				{
+					if( key.attachment() instanceof NioConnection )
+					{
+						NioConnection connection = (NioConnection)key.attachment();
+						logger.error( "Error servicing connection "+connection+", disconnecting: "+
+						              e.getMessage(), e );
+						connection.disconnect( e );
+					}
+					else
+					{
+						logger.error( "Error accepting connection: "+e.getMessage(), e );
+					}
+				}
+			}
+		}
+
+		// disconnect everyone that is still attached to us
+		for( SelectionKey key : selector.keys() )
+		{
+			if( key.attachment() instanceof NioConnection )
+				((NioConnection)key.attachment()).disconnect( null );
+		}
+
+		try
+		{
+			selector.close();
+		}
+		catch( IOException ioex )
+		{
+			logger.error( "Error closing selector: "+ioex.getMessage(), ioex );
+		}
+
+		logger.debug( "Selector thread has stopped: "+getName() );
+	}
+
+	private void runTasks()
+	{
+		Runnable task = null;
+		while( (task = tasks.poll()) != null )
+		{
+			try
+			{
+				task.run();
+			}
+			catch( Exception e )
+			{
+				logger.error( "Error running task on selector thread: "+e.getMessage(), e );
+			}
+		}
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -25,6 +25,7 @@ import org.portico.lrc.compat.JRTIinternalError;
 import org.portico.utils.StringUtils;
 import org.portico2.common.PorticoConstants;
 import org.portico2.common.network.Message;
+import org.portico2.common.network.transport.ClientRouter;
 import org.portico2.common.network.transport.tcp.channel.ITcpChannelListener;
 import org.portico2.common.network.transport.tcp.channel.Metrics;
 import org.portico2.common.network.transport.tcp.channel.TcpChannel;
@@ -48,6 +49,7 @@ public class TcpClientProxy implements ITcpChannelListener
 	private DataInputStream instream;
 	private DataOutputStream outstream;
 	private TcpChannel channel;
+	private ClientRouter.Client routing; // the federate behind this client, once it joins
 	
 	private long hostID;
 	private boolean running;
@@ -65,6 +67,9 @@ public class TcpClientProxy implements ITcpChannelListener
 		this.instream  = new DataInputStream( socket.getInputStream() );
 		this.outstream = new DataOutputStream( socket.getOutputStream() );
 		this.channel = new TcpChannel( this );
+		this.channel.configure( server.getConfiguration() );
+		this.channel.setSessionCipher( server.getBundleCipher() );
+		this.routing = new ClientRouter.Client( socket.getRemoteSocketAddress().toString() );
 
 		this.hostID = ID_GENERATOR.incrementAndGet();
 		this.running = false;
@@ -76,6 +81,8 @@ public class TcpClientProxy implements ITcpChannelListener
 
 	public long getID() { return this.hostID; }
 	
+	protected ClientRouter.Client getRouting() { return this.routing; }
+	
 	/////////////////////////////////////////////////////////////////////////////////////
 	/// Lifecycle Methods  //////////////////////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////////////////////////
@@ -151,6 +158,8 @@ public class TcpClientProxy implements ITcpChannelListener
 		logger.info( "  (Removed) Connection ID="+hostID+" has disconnected" );
 		logger.info( "            Packets From: "+metrics.messagesReceived+" packets, "+dataReceived );
 		logger.info( "            Packets Sent: "+metrics.messagesSent+" packets, "+dataSent );
+		logger.info( "            Bundles Sent: "+metrics.bundlesSent+" bundles, "+metrics.immediateFlushes+
+		             " immediate (delay="+metrics.bundleDelayMicros+"us, target="+metrics.bundleTargetSize+"b)" );
 	}
 
 	public boolean isRunning()
@@ -163,33 +172,37 @@ public class TcpClientProxy implements ITcpChannelListener
 	///////////////////////////////////////////////////////////////////////////////////////
 	public void send( Message message )
 	{
-		channel.send( message.getBuffer() );
+		channel.send( message.getRawBuffer(), message.getOffset(), message.getLength() );
 	}
 
 	///////////////////////////////////////////////////////////////////////////////////////
 	///  Message RECEIVING Methods   //////////////////////////////////////////////////////
 	///////////////////////////////////////////////////////////////////////////////////////
 	@Override
-	public void receive( TcpChannel channel, byte[] payload ) throws JRTIinternalError
+	public void receive( TcpChannel channel, byte[] buffer, int offset, int length )
+		throws JRTIinternalError
 	{
 		// pass up the protocol stack and into the RTI
-		Message message = new Message( payload );
-		parent.up( message );
+		Message received = new Message( buffer, offset, length );
+		parent.up( received );
+		
+		// if that was us joining or resigning, note which federate we are now
+		parent.getRouter().received( routing, received );
 		
-		// We must also loop it around to all the other clients that are attached
+		// We must also loop data messages around to the other clients that are attached
 		// directly to us. The RTI will loop it around to any other _connections_,
 		// but our connection is actually the Server connection (that is our parent),
 		// under which a number of clients could be connected. As such, it'll skip
 		// over the server connection (because it is technically the origin), thus
 		// missing any other client proxies that are connected through it. So we
 		// must pick up the slack. We only do this for data messages, as control
-		// messages are meant for the RTI
-		if( message.getHeader().isDataMessage() )
-		{
-			for( TcpClientProxy proxy : parent.clients )
-				if( proxy != this )
-					proxy.send( message );
-		}
+		// messages are meant for the RTI. The server uses the RTI's RoutingTable to
+		// only pass it to the clients with a federate subscribed to it.
+		//
+		// The message may have been decrypted on the way up. It was done into a new buffer,
+		// so the one we were given still holds what was sent, and that's what we pass on.
+		if( received.getHeader().isDataMessage() )
+			parent.forwardToClients( received, new Message(buffer,offset,length), this );
 	}
 
 	@Override
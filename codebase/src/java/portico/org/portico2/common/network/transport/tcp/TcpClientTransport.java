@@ -20,6 +20,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 import org.apache.logging.log4j.Logger;
 import org.portico.lrc.compat.JConfigurationException;
@@ -29,6 +30,7 @@ import org.portico2.common.network.Connection;
 import org.portico2.common.network.Message;
 import org.portico2.common.network.configuration.protocol.ProtocolConfiguration;
 import org.portico2.common.network.configuration.transport.TcpConfiguration;
+import org.portico2.common.network.protocol.encryption.SessionCipher;
 import org.portico2.common.network.transport.Transport;
 import org.portico2.common.network.transport.TransportType;
 import org.portico2.common.network.transport.tcp.channel.ITcpChannelListener;
@@ -119,8 +121,8 @@ public class TcpClientTransport extends Transport implements ITcpChannelListener
 			InetSocketAddress address = this.serverAddress;
 			logger.debug( "Opening connection to RTI server on: "+address );
 
-			// create the socket - try and give it decent sized buffers
-			this.socket = new Socket();
+			// create the socket - backed by a channel so the bundler can use gathering writes
+			this.socket = SocketChannel.open().socket();
 			this.socket.setTcpNoDelay( true );
 			this.socket.connect( address );
 
@@ -214,19 +216,31 @@ public class TcpClientTransport extends Transport implements ITcpChannelListener
 		String bytesReceived = StringUtils.getSizeString( metrics.bytesReceived );
 		logger.info( "       Sent: "+bytesSent+" ("+metrics.messagesSent+" messages)" );
 		logger.info( "   Received: "+bytesReceived+" ("+metrics.messagesReceived+" messages)" );
+		logger.info( "    Bundles: "+metrics.bundlesSent+" ("+metrics.immediateFlushes+" immediate, delay="+
+		             metrics.bundleDelayMicros+"us, target="+metrics.bundleTargetSize+"b)" );
 		
 		// Annnnnnnnd, we're done
 		this.isConnected = false;
 	}
 
 
+	/**
+	 * Hand the cipher to our channel so that it can encrypt and decrypt whole bundles.
+	 */
+	@Override
+	public boolean encryptBundles( SessionCipher cipher )
+	{
+		this.channel.setSessionCipher( cipher );
+		return true;
+	}
+
 	///////////////////////////////////////////////////////////////////////////////////////
 	///  Message SENDING Methods   ////////////////////////////////////////////////////////
 	///////////////////////////////////////////////////////////////////////////////////////
 	@Override
 	public void down( Message message )
 	{
-		channel.send( message.getBuffer() );
+		channel.send( message.getRawBuffer(), message.getOffset(), message.getLength() );
 	}
 
 
@@ -234,14 +248,15 @@ public class TcpClientTransport extends Transport implements ITcpChannelListener
 	///  Message RECEIVING Methods   //////////////////////////////////////////////////////
 	///////////////////////////////////////////////////////////////////////////////////////
 	@Override
-	public void receive( TcpChannel channel, byte[] payload ) throws JRTIinternalError
+	public void receive( TcpChannel channel, byte[] buffer, int offset, int length )
+		throws JRTIinternalError
 	{
 		// TODO Put this back in
 		// Should we even process this?
 		//if( receiver.isReceivable(incoming.getTargetFederate()) == false )
 		//	return;
 
-		up( new Message(payload) );
+		up( new Message(buffer,offset,length) );
 	}
 
 	/**
@@ -18,8 +18,10 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.apache.logging.log4j.Logger;
 import org.portico.lrc.compat.JConfigurationException;
@@ -28,6 +30,8 @@ import org.portico2.common.network.Connection;
 import org.portico2.common.network.Message;
 import org.portico2.common.network.configuration.protocol.ProtocolConfiguration;
 import org.portico2.common.network.configuration.transport.TcpConfiguration;
+import org.portico2.common.network.protocol.encryption.SessionCipher;
+import org.portico2.common.network.transport.ClientRouter;
 import org.portico2.common.network.transport.Transport;
 import org.portico2.common.network.transport.TransportType;
 
@@ -53,6 +57,8 @@ public class TcpServerTransport extends Transport
 	
 	// Connected Client Properties
 	protected List<TcpClientProxy> clients;
+	private SessionCipher bundleCipher; // given to each client channel, null if not encrypting
+	private ClientRouter router;        // decides which clients get each data message
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -74,6 +80,8 @@ public class TcpServerTransport extends Transport
 		
 		// Connected Clients
 		this.clients = new LinkedList<>();
+		this.bundleCipher = null;       // set in encryptBundles()
+		this.router = null;             // set in configure()
 	}
 
 	//----------------------------------------------------------
@@ -91,6 +99,8 @@ public class TcpServerTransport extends Transport
 		
 		this.socketAddress = new InetSocketAddress( this.configuration.getAddress(),
 		                                            this.configuration.getPort() );
+
+		this.router = new ClientRouter( connection );
 	}
 
 	/**
@@ -117,8 +127,9 @@ public class TcpServerTransport extends Transport
     		this.socketAddress = new InetSocketAddress( this.configuration.getAddress(),
     		                                            this.configuration.getPort() );
     		
-    		// open the server socket
-    		this.serverSocket = new ServerSocket();
+    		// open the server socket - channel backed so accepted sockets have channels that
+    		// the bundler can use for gathering writes
+    		this.serverSocket = ServerSocketChannel.open().socket();
     		this.serverSocket.bind( this.socketAddress );
 		}
 		catch( IOException ioex )
@@ -177,10 +188,36 @@ public class TcpServerTransport extends Transport
 	@Override
 	public void down( Message message )
 	{
-		// TODO Optimize me - we should only hand off to those representing certain federate Ids
+		// Data messages only go to the clients that have a federate subscribed to them.
+		// Everything else goes to all the clients, and their LRCs sort out who it is for.
+		if( message.getHeader().isDataMessage() )
+		{
+			Predicate<ClientRouter.Client> receivers = router.getReceivers( message );
+			clients.parallelStream()
+			       .filter( client -> receivers.test(client.getRouting()) )
+			       .forEach( client -> client.send(message) );
+		}
+		else
+		{
+			clients.parallelStream().forEach( client -> client.send(message) );
+		}
+	}
 
-		// Hand off to all the clients to process
-		clients.parallelStream().forEach( client -> client.send(message) );
+	/**
+	 * Pass a data message that one client sent us on to the other clients with a federate
+	 * subscribed to it. See the notes in {@link TcpClientProxy#receive}.
+	 *
+	 * @param received The message as it was passed up, still holding the request it was inflated
+	 *                 into, which is what we route on
+	 * @param sent The message as the client sent it, which is what we pass on
+	 * @param sender The client the message came from
+	 */
+	protected void forwardToClients( Message received, Message sent, TcpClientProxy sender )
+	{
+		Predicate<ClientRouter.Client> receivers = router.getReceivers( received );
+		for( TcpClientProxy client : clients )
+			if( client != sender && receivers.test(client.getRouting()) )
+				client.send( sent );
 	}
 
 	////////////////////////////////////////////////////////////////////////////////////////
@@ -192,6 +229,23 @@ public class TcpServerTransport extends Transport
 		return this.isConnected;
 	}
 
+	/**
+	 * Each client gets its own channel, so we hold on to the cipher and give it to each of
+	 * them as they connect.
+	 */
+	@Override
+	public boolean encryptBundles( SessionCipher cipher )
+	{
+		this.bundleCipher = cipher;
+		return true;
+	}
+
+	/** @return The cipher each client channel should encrypt its bundles with (may be null) */
+	protected SessionCipher getBundleCipher()
+	{
+		return this.bundleCipher;
+	}
+
 	protected void addClient( TcpClientProxy proxy )
 	{
 		this.clients.add( proxy );
@@ -209,6 +263,16 @@ public class TcpServerTransport extends Transport
 		return super.logger;
 	}
 
+	protected TcpConfiguration getConfiguration()
+	{
+		return this.configuration;
+	}
+
+	protected ClientRouter getRouter()
+	{
+		return this.router;
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -242,7 +306,7 @@ public class TcpServerTransport extends Transport
 				}
 				catch( Exception e )
 				{
-					if( Thread.interrupted() )
+					if( Thread.interrupted() || serverSocket.isClosed() )
 						break;
 					else
 						logger.error( "Error starting host. "+e.getMessage(), e );
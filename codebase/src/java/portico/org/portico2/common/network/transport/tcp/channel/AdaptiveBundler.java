@@ -0,0 +1,476 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.network.transport.tcp.channel;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.Logger;
+import org.portico.lrc.compat.JRTIinternalError;
+import org.portico.utils.StringUtils;
+import org.portico2.common.network.CallType;
+import org.portico2.common.network.Header;
+import org.portico2.common.network.protocol.encryption.SessionCipher;
+
+/**
+ * A bundler that lets submitters queue messages without taking a lock or waiting on a flush,
+ * and that adjusts how long it holds messages for based on how fast they are arriving.
+ * <p/>
+ *
+ * <b>Submitting</b>
+ * Messages are wrapped (not copied) and put on a lock-free queue. The sender thread is only
+ * woken when it needs to act: the queue was empty, the message is time critical (not a data
+ * message), or the queue has grown past the current target size. Submitters only ever wait if
+ * the sender has fallen a long way behind (see {@link #BACKLOG_FACTOR}), so that a stalled
+ * socket can't use up all the memory.
+ * <p/>
+ *
+ * <b>Adapting</b>
+ * After each flush the sender updates a smoothed estimate of the send rate (bytes/time). From
+ * that it works out how much data it can expect within the configured time limit, which becomes
+ * the target bundle size (capped at the size limit), and how long it should wait to collect it.
+ * <ul>
+ *   <li>Light load: If fewer than two messages are expected within the time limit, there is no
+ *       point waiting. Messages are flushed as soon as they arrive.</li>
+ *   <li>Heavy load: The size limit is reached well before the time limit, so the delay shrinks
+ *       towards zero. Messages that turn up while a write is in progress go out together in the
+ *       next bundle (much like Nagle's algorithm).</li>
+ * </ul>
+ * The current delay and target size are published in {@link Metrics}.
+ * <p/>
+ *
+ * <b>Writing</b>
+ * If the socket has a channel, each bundle is written with a single gathering write of the frame
+ * header and all the message buffers. Otherwise they are copied into a reusable array and written
+ * to the stream in one call. If we are encrypting bundles, the messages are always copied into the
+ * reusable array, encrypted in place and then written from there.
+ */
+public class AdaptiveBundler implements IBundler
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	/** Max number of messages that go into one bundle */
+	private static final int MAX_MESSAGES = 256;
+
+	/** Weight given to the newest sample when updating the send rate */
+	private static final double SMOOTHING = 0.25;
+
+	/** If we'd wait less than this for a bundle to fill up, we don't bother waiting */
+	private static final long MIN_DELAY_NANOS = 50000; // 50 micros
+
+	/** Submitters wait once there is more than this many multiples of the size limit queued */
+	private static final int BACKLOG_FACTOR = 16;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Logger logger;
+
+	// configuration
+	private boolean isEnabled;      // if false, flush on every submit
+	private int sizeLimit;          // max bytes in a single bundle
+	private int timeLimit;          // max time (millis) to hold messages before release
+
+	// message queuing
+	private Queue<ByteBuffer> queue;
+	private AtomicLong queuedBytes;
+	private volatile boolean urgent;        // set when a time critical message is queued
+	private volatile long oldestMessage;    // nanoTime the oldest queued message turned up
+
+	// adaptive state - sender thread only (except for targetSize, which submitters read)
+	private double bytesPerNano;            // smoothed rate that data is being sent at
+	private long lastFlush;                 // nanoTime of the last flush
+	private long delayNanos;                // how long to wait for a bundle to fill
+	private volatile long targetSize;       // flush as soon as this many bytes are queued
+
+	// output writing
+	private SocketChannel socketChannel;    // null if the socket doesn't have one
+	private DataOutputStream outstream;
+	private ByteBuffer frameHeader;
+	private ByteBuffer[] gather;
+	private byte[] scratch;                 // used if we have to write through the stream or encrypt
+	private SessionCipher cipher;           // null if we aren't encrypting bundles
+	private Thread senderThread;
+	private volatile boolean running;
+
+	// metrics
+	private Metrics metrics;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public AdaptiveBundler( Logger logger )
+	{
+		this.logger = logger;
+
+		// configuration
+		this.isEnabled = true;
+		this.sizeLimit = 64000; // 64k
+		this.timeLimit = 20;    // 20ms
+
+		// message queuing
+		this.queue = new ConcurrentLinkedQueue<>();
+		this.queuedBytes = new AtomicLong( 0 );
+		this.urgent = false;
+		this.oldestMessage = 0;
+
+		// adaptive state
+		this.bytesPerNano = 0.0;
+		this.lastFlush = System.nanoTime();
+		this.delayNanos = 0;   // send straight away until we know better
+		this.targetSize = sizeLimit;
+
+		// output writing
+		this.socketChannel = null;  // set in startBundler()
+		this.outstream = null;      // set in startBundler()
+		this.frameHeader = ByteBuffer.allocate( 8 );
+		this.gather = new ByteBuffer[MAX_MESSAGES+1];
+		this.scratch = null;        // created the first time it is needed
+		this.cipher = null;         // set in setSessionCipher()
+		this.senderThread = null;   // set in startBundler()
+		this.running = false;
+
+		// metrics
+		this.metrics = new Metrics();
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Lifecycle Management   ////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Override
+	public void startBundler( Socket socket, DataOutputStream outstream )
+	{
+		if( logger == null )
+			throw new IllegalStateException( "You must give the bundler a logger prior to start" );
+
+		this.socketChannel = socket.getChannel();
+		this.outstream = outstream;
+
+		logger.debug( "[Bundler] Starting (adaptive). Max bundle size="+StringUtils.getSizeString(sizeLimit)+
+		              ", max bundle time="+timeLimit+"ms, gathering writes="+(socketChannel != null) );
+
+		// start the sender
+		this.running = true;
+		this.senderThread = new Thread( new Sender(), "Bundler-Sender" );
+		this.senderThread.setDaemon( true );
+		this.senderThread.start();
+	}
+
+	@Override
+	public void stopBundler()
+	{
+		this.running = false;
+		if( queuedBytes.get() > 0 )
+			logger.warn( "Shutting down bundler with %d bytes still queued", queuedBytes.get() );
+
+		try
+		{
+			logger.trace( "Shutting down bundler sending thread" );
+			LockSupport.unpark( senderThread );
+			senderThread.join( 2000 );
+		}
+		catch( InterruptedException ie )
+		{
+			logger.warn( "Bundler sending thread did not shut down cleanly (2 sec wait)" );
+		}
+
+		logger.debug( "Bundler has been shut down" );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Bundling Methods   ////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Queue the given message for sending. The array is <b>not copied</b>, so it must not be
+	 * modified after it has been submitted. This never takes a lock and will only block if the
+	 * sender has a very large backlog.
+	 */
+	@Override
+	public void submit( byte[] message, int offset, int length )
+	{
+		Header header = new Header( message, offset );
+		if( logger.isTraceEnabled() )
+		{
+			logger.trace( "(outgoing) type=%s (id=%d), ptype=%s, from=%s, to=%s, size=%d",
+			              header.getCallType(),
+			              header.getRequestId(),
+			              header.getMessageType(),
+			              StringUtils.sourceHandleToString( header.getSourceFederate() ),
+			              StringUtils.targetHandleToString( header.getTargetFederate()),
+			              length );
+		}
+
+		// queue the message
+		long before = queuedBytes.getAndAdd( length );
+		if( before == 0 )
+			this.oldestMessage = System.nanoTime();
+
+		queue.add( ByteBuffer.wrap(message,offset,length) );
+
+		// wake the sender if it has something to do
+		boolean critical = isEnabled == false || header.getCallType() != CallType.DataMessage;
+		if( critical )
+			this.urgent = true;
+
+		if( critical || before == 0 || before+length >= targetSize )
+			LockSupport.unpark( senderThread );
+
+		// if the sender has fallen a long way behind, wait for it to catch up
+		long backlogLimit = (long)sizeLimit * BACKLOG_FACTOR;
+		while( running && queuedBytes.get() > backlogLimit )
+			LockSupport.parkNanos( MIN_DELAY_NANOS );
+	}
+
+	/**
+	 * Take as many messages as will fit in a bundle off the queue and write them out.
+	 * Only called from the sender thread.
+	 */
+	private void flush()
+	{
+		long now = System.nanoTime();
+
+		// gather up the messages
+		int count = 0;
+		long bytes = 0;
+		ByteBuffer next = null;
+		while( count < MAX_MESSAGES && bytes < sizeLimit && (next = queue.poll()) != null )
+		{
+			gather[++count] = next;
+			bytes += next.remaining();
+		}
+
+		if( count == 0 )
+			return;
+
+		// if we left some behind, they're the oldest now
+		if( queuedBytes.addAndGet(-bytes) > 0 )
+			this.oldestMessage = now;
+
+		try
+		{
+			frameHeader.clear();
+			frameHeader.putInt( CODE_BUNDLE );
+			frameHeader.putInt( (int)bytes );
+			frameHeader.flip();
+			gather[0] = frameHeader;
+
+			if( cipher != null && cipher.hasSessionKey() )
+			{
+				writeEncrypted( count, (int)bytes );
+			}
+			else if( socketChannel != null )
+			{
+				// one gathering write for the frame header and all the messages
+				while( gather[count].hasRemaining() )
+					socketChannel.write( gather, 0, count+1 );
+			}
+			else
+			{
+				// no channel, copy it all into one array and write that
+				int total = (int)bytes + 8;
+				if( scratch == null || scratch.length < total )
+					scratch = new byte[Math.max(total,sizeLimit+8)];
+
+				ByteBuffer target = ByteBuffer.wrap( scratch );
+				for( int i = 0; i <= count; i++ )
+					target.put( gather[i] );
+
+				outstream.write( scratch, 0, total );
+			}
+
+			// metrics
+			metrics.messagesSent += count;
+			metrics.bytesSent += bytes;
+			metrics.bundlesSent++;
+
+			if( logger.isTraceEnabled() )
+				logger.trace( "(outgoing) {FLUSH} %d messages (%s) have been flushed", count, bytes );
+		}
+		catch( IOException | JRTIinternalError e )
+		{
+			logger.error( "Error while flushing bundler: "+e.getMessage(), e );
+		}
+		finally
+		{
+			Arrays.fill( gather, 0, count+1, null );
+		}
+
+		adapt( now, bytes, count );
+	}
+
+	/**
+	 * Copy the messages in the gather array into the scratch array after the frame header,
+	 * encrypt them there and write the lot out.
+	 */
+	private void writeEncrypted( int count, int bytes ) throws IOException
+	{
+		int total = 8 + cipher.getEncryptedSize( bytes );
+		if( scratch == null || scratch.length < total )
+			scratch = new byte[Math.max(total,sizeLimit+64)];
+
+		ByteBuffer target = ByteBuffer.wrap( scratch );
+		target.position( 8 );
+		for( int i = 1; i <= count; i++ )
+			target.put( gather[i] );
+
+		int length = cipher.encrypt( scratch, 8, bytes, scratch, 8 );
+		target.clear();
+		target.putInt( CODE_ENCRYPTED_BUNDLE );
+		target.putInt( length );
+
+		if( socketChannel != null )
+		{
+			target.position( 0 );
+			target.limit( 8+length );
+			while( target.hasRemaining() )
+				socketChannel.write( target );
+		}
+		else
+		{
+			outstream.write( scratch, 0, 8+length );
+		}
+	}
+
+	/**
+	 * Update our estimate of the send rate with the size of the last bundle, and work out the
+	 * target size and delay for the next one.
+	 */
+	private void adapt( long now, long bytes, int count )
+	{
+		long elapsed = Math.max( 1, now-lastFlush );
+		this.lastFlush = now;
+
+		double sample = (double)bytes / elapsed;
+		if( bytesPerNano == 0.0 )
+			bytesPerNano = sample;
+		else
+			bytesPerNano = (SMOOTHING*sample) + ((1.0-SMOOTHING)*bytesPerNano);
+
+		// how much can we expect to collect if we wait for the full time limit?
+		long limitNanos = timeLimit * 1000000L;
+		double averageMessage = (double)bytes / count;
+		double expected = bytesPerNano * limitNanos;
+
+		long target = (long)Math.max( averageMessage, Math.min(expected,sizeLimit) );
+		long delay = (long)Math.min( limitNanos, target/bytesPerNano );
+		if( expected < averageMessage*2 || delay < MIN_DELAY_NANOS )
+			delay = 0; // light load (no one to wait for) or heavy load (won't have to wait long)
+
+		this.targetSize = target;
+		this.delayNanos = delay;
+		metrics.bundleTargetSize = target;
+		metrics.bundleDelayMicros = delay / 1000;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Accessors and Mutators   //////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Override
+	public void setEnabled( boolean isEnabled )
+	{
+		this.isEnabled = isEnabled;
+	}
+
+	/** Max number of bytes put into a single bundle. Default is 64k. */
+	@Override
+	public void setSizeLimit( int bytes )
+	{
+		this.sizeLimit = bytes;
+		this.targetSize = bytes;
+	}
+
+	/** Upper bound on the time messages are held for (millis). Default is 20ms. */
+	@Override
+	public void setTimeLimit( int millis )
+	{
+		this.timeLimit = millis;
+	}
+
+	@Override
+	public Metrics getMetrics()
+	{
+		return this.metrics;
+	}
+
+	@Override
+	public void setMetrics( Metrics metrics )
+	{
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void setSessionCipher( SessionCipher cipher )
+	{
+		this.cipher = cipher;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	////// Private Class: Sender   ///////////////////////////////////////////////////////
+	//////////////////////////////////////////////////////////////////////////////////////
+	private class Sender implements Runnable
+	{
+		public void run()
+		{
+			logger.debug( "Sender thread has started up inside the Bundler" );
+			while( running )
+			{
+				// Nothing to do, wait for a submitter to wake us
+				if( queue.isEmpty() )
+				{
+					LockSupport.park( this );
+					continue;
+				}
+
+				// Give the bundle a chance to fill up, unless something urgent turns
+				// up or we reach the target size first
+				boolean waited = false;
+				long deadline = oldestMessage + delayNanos;
+				long now = System.nanoTime();
+				while( running && urgent == false && delayNanos > 0 &&
+				       queuedBytes.get() < targetSize && now < deadline )
+				{
+					LockSupport.parkNanos( this, deadline-now );
+					now = System.nanoTime();
+					waited = true;
+				}
+
+				if( waited == false )
+					metrics.immediateFlushes++;
+
+				urgent = false;
+				flush();
+			}
+
+			logger.debug( "Bundler Sender thread shutting down" );
+		}
+	}
+}
@@ -16,6 +16,7 @@ package org.portico2.common.network.transport.tcp.channel;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.util.TimerTask;
 import java.util.concurrent.TimeUnit;
@@ -24,9 +25,11 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.Logger;
+import org.portico.lrc.compat.JRTIinternalError;
 import org.portico.utils.StringUtils;
 import org.portico2.common.network.CallType;
 import org.portico2.common.network.Header;
+import org.portico2.common.network.protocol.encryption.SessionCipher;
 
 /**
  * The Bundler class handles the buffering and flushing of a series of bytes to a
@@ -57,9 +60,14 @@ import org.portico2.common.network.Header;
  * <p/>
  * 
  * Flushing of the <i>buffer will happen on a <b>separate thread</b></i>. As such, a bundler will
- * not accept messages or process them until after {@link #startBundler()} has been called.
+ * not accept messages or process them until after {@link #startBundler(Socket, DataOutputStream)} has been called.
+ * <p/>
+ * 
+ * <b>Encryption</b>
+ * If we have been given a {@link SessionCipher}, each bundle is encrypted as a whole when it is
+ * flushed. The cipher text is written into an array that is kept and reused for every flush.
  */
-public class Bundler
+public class Bundler implements IBundler
 {
 	//----------------------------------------------------------
 	//                    STATIC VARIABLES
@@ -86,6 +94,10 @@ public class Bundler
 	private Condition returnCondition;  // triggered when the flush is over
 	private Thread senderThread;        // thread that will do all our sending work
 
+	// encryption
+	private SessionCipher cipher;       // null if we aren't encrypting bundles
+	private byte[] encrypted;           // encrypted bundles are written here, reused each flush
+
 	// metrics
 	private Metrics metrics;
 
@@ -110,6 +122,10 @@ public class Bundler
 		this.flushCondition = this.lock.newCondition();
 		this.returnCondition = this.lock.newCondition();
 
+		// encryption
+		this.cipher = null;             // set in setSessionCipher()
+		this.encrypted = null;          // created the first time it is needed
+
 		// metrics
 		this.metrics = new Metrics();
 	}
@@ -122,7 +138,8 @@ public class Bundler
 	///  Lifecycle Management   ////////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
 	/** Conencts to the given output stream and starts the sender thread */
-	public void startBundler( DataOutputStream outstream )
+	@Override
+	public void startBundler( Socket socket, DataOutputStream outstream )
 	{
 		if( logger == null )
 			throw new IllegalStateException( "You must give the bundler a logger prior to start" );
@@ -138,6 +155,7 @@ public class Bundler
 		this.senderThread.start();
 	}
 	
+	@Override
 	public void stopBundler()
 	{
 		// NOTE: Disabling - we can't tell if the connection is open or not.
@@ -194,6 +212,21 @@ public class Bundler
 	 * @param message the body of the message to send
 	 */
 	public void submit( byte[] message )
+	{
+		submit( message, 0, message.length );
+	}
+
+	/**
+	 * Submit the message held in the given section of the array for bundling. It is copied
+	 * into the bundle, so the array does not need to be left alone after this returns.
+	 * See {@link #submit(byte[])}.
+	 * 
+	 * @param message the array containing the message to send
+	 * @param offset the index in the array that the message starts at
+	 * @param length the length of the message
+	 */
+	@Override
+	public void submit( byte[] message, int offset, int length )
 	{
 		lock.lock();
 
@@ -202,8 +235,8 @@ public class Bundler
 			//
 			// queue the message
 			//
-			growBufferIfNeeded( message.length );
-			buffer.put( message );
+			growBufferIfNeeded( length );
+			buffer.put( message, offset, length );
 			queuedMessages++; // metrics
 			
 //			growBufferIfNeeded( 9+message.length );
@@ -214,15 +247,16 @@ public class Bundler
 //			queuedMessages++; // metrics
 			
 			// log that we've queued the message
-			Header header = new Header( message, 0 );
+			Header header = new Header( message, offset );
 			if( logger.isTraceEnabled() )
-				logQueuedMessage( header, message );
+				logQueuedMessage( header, length );
 			
 			// if actual message bundling is turned off, flush right away
 			//   -OR-
 			// if the header is time critical (ControlSync, or ControlResp)
 			if( this.isEnabled == false || header.getCallType() != CallType.DataMessage )
 			{
+				metrics.immediateFlushes++;
 				flush();
 				return;
 			}
@@ -256,7 +290,7 @@ public class Bundler
 	 * Should only be called if trace is enabled. Does an obscene amount of work just to
 	 * generate some better logs.
 	 */
-	private final void logQueuedMessage( Header header, byte[] payload )
+	private final void logQueuedMessage( Header header, int length )
 	{
 		if( logger.isTraceEnabled() == false )
 			return;
@@ -283,7 +317,7 @@ public class Bundler
 			              header.getMessageType(),
 			              StringUtils.sourceHandleToString( header.getSourceFederate() ),
 			              StringUtils.targetHandleToString( header.getTargetFederate()),
-			              payload.length );
+			              length );
 //		}
 	}
 
@@ -325,20 +359,35 @@ public class Bundler
 		{
 			// down the loo!
 			int bytes = buffer.position();
-			outstream.writeInt( 0xcafe );
-			outstream.writeInt( bytes );
-			outstream.write( buffer.array(), 0, bytes );
+			if( cipher != null && cipher.hasSessionKey() )
+			{
+				int size = cipher.getEncryptedSize( bytes );
+				if( encrypted == null || encrypted.length < size )
+					encrypted = new byte[Math.max(size,buffer.capacity()+64)];
+
+				int length = cipher.encrypt( buffer.array(), 0, bytes, encrypted, 0 );
+				outstream.writeInt( CODE_ENCRYPTED_BUNDLE );
+				outstream.writeInt( length );
+				outstream.write( encrypted, 0, length );
+			}
+			else
+			{
+				outstream.writeInt( CODE_BUNDLE );
+				outstream.writeInt( bytes );
+				outstream.write( buffer.array(), 0, bytes );
+			}
 
 			// metrics
 			metrics.messagesSent += queuedMessages;
 			metrics.bytesSent += bytes;
+			metrics.bundlesSent++;
 			
 			if( logger.isTraceEnabled() )
 				logger.trace( "(outgoing) {FLUSH} %d messages (%s) have been flushed", queuedMessages, bytes );
 		}
-		catch( IOException ioex )
+		catch( IOException | JRTIinternalError e )
 		{
-			logger.error( "Error while flushing bundler: "+ioex.getMessage(), ioex );
+			logger.error( "Error while flushing bundler: "+e.getMessage(), e );
 		}
 		finally
 		{
@@ -360,6 +409,7 @@ public class Bundler
 		return this.isEnabled;
 	}
 	
+	@Override
 	public void setEnabled( boolean isEnabled )
 	{
 		this.isEnabled = isEnabled;
@@ -376,6 +426,7 @@ public class Bundler
 	 * 
 	 * @param bytes Max size in bytes
 	 */
+	@Override
 	public void setSizeLimit( int bytes )
 	{
 		this.sizeLimit = bytes;
@@ -392,11 +443,13 @@ public class Bundler
 	 * 
 	 * @param millis The max wait time in millis
 	 */
+	@Override
 	public void setTimeLimit( int millis )
 	{
 		this.timeLimit = millis;
 	}
 
+	@Override
 	public Metrics getMetrics()
 	{
 		return this.metrics;
@@ -405,11 +458,18 @@ public class Bundler
 	/**
 	 * Let someone specify a shared metrics object we should be using.
 	 */
+	@Override
 	public void setMetrics( Metrics metrics )
 	{
 		this.metrics = metrics;
 	}
 
+	@Override
+	public void setSessionCipher( SessionCipher cipher )
+	{
+		this.cipher = cipher;
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -0,0 +1,98 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.network.transport.tcp.channel;
+
+import java.io.DataOutputStream;
+import java.net.Socket;
+
+import org.portico2.common.network.configuration.transport.TcpConfiguration;
+import org.portico2.common.network.protocol.encryption.SessionCipher;
+
+/**
+ * A bundler sits between a {@link TcpChannel} and its socket, collecting up messages so they
+ * can be written in larger chunks. There are two implementations:
+ *
+ * <ul>
+ *   <li>{@link Bundler}: Fixed size and time limits. Submitters share a lock with the flush.</li>
+ *   <li>{@link AdaptiveBundler}: Lock-free submission, with size and delay that adapt to load.</li>
+ * </ul>
+ *
+ * Which is used is set by the <code>bundling.adaptive</code> option in {@link TcpConfiguration}.
+ * Whatever the implementation, each flush is written as a frame of an int frame code
+ * ({@link #CODE_BUNDLE}), an int length and then that many bytes of whole messages.
+ * <p/>
+ *
+ * If the bundler has been given a {@link SessionCipher} that has a key, the bytes of each frame
+ * are encrypted as a whole and it is written with the {@link #CODE_ENCRYPTED_BUNDLE} code. The
+ * length is then that of the cipher text and the IV that follows it.
+ */
+public interface IBundler
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	/** Frame holding a bundle of messages */
+	public static final int CODE_BUNDLE = 0xcafe;
+
+	/** Frame holding a bundle of messages that has been encrypted */
+	public static final int CODE_ENCRYPTED_BUNDLE = 0xcafd;
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * Connect to the given socket and start the sender thread.
+	 *
+	 * @param socket The socket we are writing to. If it has a channel, an implementation may
+	 *               choose to write to that directly.
+	 * @param outstream The stream to write to for the socket
+	 */
+	public void startBundler( Socket socket, DataOutputStream outstream );
+
+	/**
+	 * Stop the sender thread. Anything still queued is discarded.
+	 */
+	public void stopBundler();
+
+	/**
+	 * Submit the message held in the given section of the array for sending.
+	 *
+	 * @param message the array containing the message to send
+	 * @param offset the index in the array that the message starts at
+	 * @param length the length of the message
+	 */
+	public void submit( byte[] message, int offset, int length );
+
+	/** If disabled, every message is flushed as soon as it is submitted */
+	public void setEnabled( boolean isEnabled );
+
+	/** Max number of bytes to bundle up before flushing */
+	public void setSizeLimit( int bytes );
+
+	/** Max period of time (millis) to hold messages before flushing */
+	public void setTimeLimit( int millis );
+
+	public Metrics getMetrics();
+
+	/** Let someone specify a shared metrics object we should be using */
+	public void setMetrics( Metrics metrics );
+
+	/**
+	 * Encrypt each bundle with the given cipher once it has a key. Null to turn this off.
+	 * Must be called before the bundler is started.
+	 */
+	public void setSessionCipher( SessionCipher cipher );
+
+}
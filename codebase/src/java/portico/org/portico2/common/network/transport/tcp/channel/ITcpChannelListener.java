@@ -27,13 +27,19 @@ public interface ITcpChannelListener
 	//                    INSTANCE METHODS
 	//----------------------------------------------------------
 	/**
-	 * A message has been received on the given channel for processing.
+	 * A message has been received on the given channel for processing. Messages usually arrive
+	 * in bundles, so to avoid copying each one out into its own array, the listener is given
+	 * the array the whole bundle was read into along with where in it the message sits. The
+	 * array is shared by all the messages in the bundle and must not be modified.
 	 * 
 	 * @param channel The channel it was received on
-	 * @param payload The raw payload that was received
+	 * @param buffer The array containing the message (and possibly others)
+	 * @param offset The index in the array where the message (header) starts
+	 * @param length The length of the message, including the header
 	 * @throws JRTIinternalError Throw this if there is an error and the channel will log it
 	 */
-	public void receive( TcpChannel channel, byte[] payload ) throws JRTIinternalError;
+	public void receive( TcpChannel channel, byte[] buffer, int offset, int length )
+		throws JRTIinternalError;
 
 	/**
 	 * This method is called when the channel has disconnected for any reason
@@ -33,6 +33,12 @@ public class Metrics
 	public long bytesSent;
 	public long bytesReceived;
 
+	// Bundling
+	public long bundlesSent;       // number of flushes (each one is a single bundle)
+	public long immediateFlushes;  // bundles that were sent without waiting for more messages
+	public long bundleDelayMicros; // current delay before flushing (adaptive bundler)
+	public long bundleTargetSize;  // current size a bundle is allowed to grow to (adaptive bundler)
+
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
@@ -54,6 +60,10 @@ public class Metrics
 		this.messagesReceived = 0;
 		this.bytesSent = 0;
 		this.bytesReceived = 0;
+		this.bundlesSent = 0;
+		this.immediateFlushes = 0;
+		this.bundleDelayMicros = 0;
+		this.bundleTargetSize = 0;
 	}
 
 	//----------------------------------------------------------
@@ -21,9 +21,11 @@ import java.io.IOException;
 import java.net.Socket;
 
 import org.apache.logging.log4j.Logger;
+import org.portico.lrc.compat.JRTIinternalError;
 import org.portico.utils.StringUtils;
 import org.portico2.common.network.Header;
 import org.portico2.common.network.configuration.transport.TcpConfiguration;
+import org.portico2.common.network.protocol.encryption.SessionCipher;
 
 /**
  * This class represents a bi-directional channel over which messages can be passed and received.
@@ -46,9 +48,10 @@ public class TcpChannel
 	private DataOutputStream outstream;
 	
 	// Sending and Receiving
-	private Bundler bundler;   // sending
+	private IBundler bundler;  // sending
 	private Receiver receiver; // receiving
 	private ITcpChannelListener appListener;
+	private SessionCipher cipher; // null unless we are encrypting whole bundles
 	
 	// Metrics
 	private Metrics metrics;
@@ -70,6 +73,7 @@ public class TcpChannel
 		this.receiver = new Receiver();
 		this.bundler = new Bundler(logger);
 		this.appListener = appListener; 
+		this.cipher = null;             // set in setSessionCipher()
 
 		// Metrics
 		this.metrics = new Metrics();
@@ -83,7 +87,13 @@ public class TcpChannel
 	public void configure( TcpConfiguration configuration )
 	{
 		// Set up the bundler
-		this.bundler = new Bundler( this.logger );
+		if( configuration.isBundlingAdaptive() )
+			this.bundler = new AdaptiveBundler( this.logger );
+		else
+			this.bundler = new Bundler( this.logger );
+
+		this.bundler.setMetrics( metrics ); // share our metrics
+		this.bundler.setSessionCipher( cipher );
 		this.bundler.setEnabled( configuration.isBundlingEnabled() );
 		this.bundler.setTimeLimit( configuration.getBundleMaxTime() );
 		this.bundler.setSizeLimit( configuration.getBundleMaxSize() );
@@ -102,7 +112,7 @@ public class TcpChannel
 		this.outstream = outstream;
 		
 		// Start the bundler
-		this.bundler.startBundler( outstream );
+		this.bundler.startBundler( socket, outstream );
 		
 		// Set up the receiver and start listening
 		this.receiver = new Receiver();
@@ -170,32 +180,57 @@ public class TcpChannel
 	 */
 	public final void send( byte[] payload )
 	{
-		bundler.submit( payload );
+		bundler.submit( payload, 0, payload.length );
+	}
+
+	/**
+	 * Send the message held in the given section of the array. See {@link #send(byte[])}.
+	 * 
+	 * @param buffer The array containing the message
+	 * @param offset The index in the array that the message starts at
+	 * @param length The length of the message
+	 */
+	public final void send( byte[] buffer, int offset, int length )
+	{
+		bundler.submit( buffer, offset, length );
 	}
 
 	//////////////////////////////////////////////////////////////////////////////////////
 	///  Message RECEIVING Methods   /////////////////////////////////////////////////////
 	//////////////////////////////////////////////////////////////////////////////////////
-	private final void receiveBundle( byte[] payload ) throws IOException
+	private final void receiveBundle( byte[] payload, int length ) throws IOException
 	{
 		int bytesRead = 0;
-		while( bytesRead < payload.length )
+		while( bytesRead < length )
 			bytesRead += receiveSingle( payload, bytesRead );
 	}
+
+	/**
+	 * Decrypt an encrypted bundle in place. The plain text is shorter than what we were given
+	 * (there is no IV), so the length of it is returned.
+	 */
+	private final int decryptBundle( byte[] payload ) throws IOException
+	{
+		if( cipher == null || cipher.hasSessionKey() == false )
+			throw new IOException( "Received an encrypted bundle, but we have no key to decrypt it" );
+
+		try
+		{
+			return cipher.decrypt( payload, 0, payload.length, payload, 0 );
+		}
+		catch( JRTIinternalError rtie )
+		{
+			throw new IOException( rtie.getMessage(), rtie );
+		}
+	}
 	
 	private final int receiveSingle( byte[] payload, int offset ) throws IOException
 	{
 		Header header = new Header( payload, offset );
 		int messageLength = header.getPayloadLength() + Header.HEADER_LENGTH;
 		
-		// Extract the contents for this single message from the payload
-		// If the payload is the same length as the message, they're one and the same
-		byte[] messageOnly = payload;
-		if( payload.length != messageLength )
-		{
-			messageOnly = new byte[messageLength];
-			System.arraycopy( payload, offset, messageOnly, 0, messageLength ); // TODO Remove this wasteful copy
-		}
+		// We don't copy the message out of the bundle. The listener is given the bundle along
+		// with the offset and length of the message, so each one is just a view over the array.
 		
 		// Keep some stats
 		++metrics.messagesReceived;
@@ -217,7 +252,7 @@ public class TcpChannel
 		try
 		{
     		// Handle the message
-    		appListener.receive( this, messageOnly );
+    		appListener.receive( this, payload, offset, messageLength );
 		}
 		catch( Exception e )
 		{
@@ -237,6 +272,18 @@ public class TcpChannel
 		return this.metrics;
 	}
 
+	/**
+	 * Encrypt each bundle we send with the given cipher once it has a key, and decrypt those
+	 * we receive. Must be called before we connect.
+	 * 
+	 * @param cipher The cipher to use, or null to send bundles as they are
+	 */
+	public void setSessionCipher( SessionCipher cipher )
+	{
+		this.cipher = cipher;
+		this.bundler.setSessionCipher( cipher );
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -265,10 +312,15 @@ public class TcpChannel
 					byte[] payload = new byte[length];
 					instream.readFully( payload );
 
-					if( header == 0xcafe )
+					if( header == IBundler.CODE_BUNDLE )
 					{
 						// Bundle Received
-						receiveBundle( payload );
+						receiveBundle( payload, length );
+					}
+					else if( header == IBundler.CODE_ENCRYPTED_BUNDLE )
+					{
+						// Encrypted Bundle Received
+						receiveBundle( payload, decryptBundle(payload) );
 					}
 					else if( header == 0xbabe )
 					{
@@ -14,6 +14,8 @@
  */
 package org.portico2.common.services.ddm.data;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,6 +38,11 @@ import org.portico2.common.services.pubsub.data.OCInterest;
  * used to represent the {@link RegionInstance}. In this case, <code>null</code> is somewhat akin
  * to the "default region" mentioned in the spec. <i>Repeating:</i> <code>null</code> is the
  * default region instance and the region at which all non-DDM subscription interests are held.
+ * <p/>
+ * The associations are kept both ways (attribute to regions, and region to attributes) so that
+ * the questions asked of a group about a particular region don't have to look through the regions
+ * of every attribute. The region to attribute map isn't saved, it is rebuilt when the group is
+ * deserialized.
  */
 public class RegionGroup implements Serializable
 {
@@ -48,6 +55,7 @@ public class RegionGroup implements Serializable
 	//                   INSTANCE VARIABLES
 	//----------------------------------------------------------
 	private Map<Integer,Set<RegionInstance>> associations;
+	private transient Map<RegionInstance,Set<Integer>> attributesByRegion;
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -56,6 +64,7 @@ public class RegionGroup implements Serializable
 	public RegionGroup()
 	{
 		this.associations = new HashMap<Integer,Set<RegionInstance>>();
+		this.attributesByRegion = new HashMap<RegionInstance,Set<Integer>>();
 	}
 
 	//----------------------------------------------------------
@@ -73,35 +82,18 @@ public class RegionGroup implements Serializable
 	public void replace( RegionInstance region, Set<Integer> attributes )
 	{
 		// as we are REPLACING the existing interest, we must first remove any
-		// association with the given region that we already contain
-		// we need a new set of handles so that we can modify the original associations map
-		// without causing a ConcurrentModificationException
-		HashSet<Integer> keySetCopy = new HashSet<Integer>( associations.keySet() );
-		for( Integer existingAttribute : keySetCopy )
+		// association with the given region that we already contain. We only
+		// need to look at the attributes that are associated with the region.
+		Set<Integer> existing = attributesByRegion.remove( region );
+		if( existing != null )
 		{
-			Set<RegionInstance> regionSet = associations.get( existingAttribute );
-			regionSet.remove( region );
-			if( regionSet.isEmpty() )
-				associations.remove( existingAttribute );
+			for( Integer existingAttribute : existing )
+				unlink( existingAttribute, region );
 		}
-		
-		//for( Set<RegionInstance> existingSet : associations.values() )
-		//	existingSet.remove( region );
 
 		// now that any existing association has been removed, we make the
 		// association with the new, incoming attributes
-		for( Integer incomingAttribute : attributes )
-		{
-			Set<RegionInstance> regions = associations.get( incomingAttribute );
-			if( regions == null )
-			{
-				// only create the region instance set if it doesn't already exist
-				regions = new HashSet<RegionInstance>();
-				associations.put( incomingAttribute, regions );
-			}
-			
-			regions.add( region );
-		}
+		augment( region, attributes );
 	}
 
 	/**
@@ -110,6 +102,16 @@ public class RegionGroup implements Serializable
 	 */
 	public void augment( RegionInstance region, Set<Integer> attributes )
 	{
+		if( attributes.isEmpty() )
+			return;
+
+		Set<Integer> regionAttributes = attributesByRegion.get( region );
+		if( regionAttributes == null )
+		{
+			regionAttributes = new HashSet<Integer>();
+			attributesByRegion.put( region, regionAttributes );
+		}
+
 		for( Integer attribute : attributes )
 		{
 			Set<RegionInstance> regions = associations.get( attribute );
@@ -121,6 +123,7 @@ public class RegionGroup implements Serializable
 			}
 			
 			regions.add( region );
+			regionAttributes.add( attribute );
 		}
 	}
 
@@ -141,17 +144,19 @@ public class RegionGroup implements Serializable
 			return;
 		}
 		
+		Set<Integer> regionAttributes = attributesByRegion.get( region );
+		if( regionAttributes == null )
+			return;
+
 		// for each attribute, remove the region association
 		for( Integer attribute : attributes )
 		{
-			Set<RegionInstance> regions = associations.get( attribute );
-			if( regions == null )
-				continue;
-
-			regions.remove( region );
-			if( regions.isEmpty() )
-				associations.remove( attribute );
+			if( regionAttributes.remove(attribute) )
+				unlink( attribute, region );
 		}
+		
+		if( regionAttributes.isEmpty() )
+			attributesByRegion.remove( region );
 	}
 
 	/**
@@ -162,10 +167,35 @@ public class RegionGroup implements Serializable
 	 */
 	public void remove( RegionInstance region )
 	{
-		// we have to make a copy of the key set when removing the association for all keys
-		// because otherwise we'd get a ConcurrentModificationException when attempting to
-		// remove information from the map if there are no more region associations
-		remove( region, new HashSet<Integer>(associations.keySet()) );
+		// null region means the default region (caused by a non-ddm request), so we just
+		// have to wipe everything out
+		if( region == null )
+		{
+			empty();
+			return;
+		}
+
+		Set<Integer> regionAttributes = attributesByRegion.remove( region );
+		if( regionAttributes == null )
+			return;
+
+		for( Integer attribute : regionAttributes )
+			unlink( attribute, region );
+	}
+
+	/**
+	 * Remove the region from the set of regions for the attribute, and the attribute altogether
+	 * if that leaves it with no regions. Doesn't touch the region to attribute map.
+	 */
+	private void unlink( Integer attribute, RegionInstance region )
+	{
+		Set<RegionInstance> regions = associations.get( attribute );
+		if( regions == null )
+			return;
+
+		regions.remove( region );
+		if( regions.isEmpty() )
+			associations.remove( attribute );
 	}
 
 	/**
@@ -174,13 +204,7 @@ public class RegionGroup implements Serializable
 	 */
 	public boolean hasInterest( RegionInstance region )
 	{
-		for( Set<RegionInstance> regions : associations.values() )
-		{
-			if( regions.contains(region) )
-				return true;
-		}
-		
-		return false;
+		return attributesByRegion.containsKey( region );
 	}
 	
 	/**
@@ -198,15 +222,11 @@ public class RegionGroup implements Serializable
 	 */
 	public Set<Integer> getAttributesForRegion( RegionInstance region )
 	{
-		HashSet<Integer> returnSet = new HashSet<Integer>();
-		for( Integer attributeHandle : associations.keySet() )
-		{
-			Set<RegionInstance> regions = associations.get( attributeHandle );
-			if( regions.contains(region) )
-				returnSet.add( attributeHandle );
-		}
-		
-		return returnSet;
+		Set<Integer> attributes = attributesByRegion.get( region );
+		if( attributes == null )
+			return new HashSet<Integer>();
+		else
+			return new HashSet<Integer>( attributes );
 	}
 
 	/**
@@ -235,6 +255,7 @@ public class RegionGroup implements Serializable
 	public void empty()
 	{
 		this.associations.clear();
+		this.attributesByRegion.clear();
 	}
 
 	/**
@@ -246,6 +267,23 @@ public class RegionGroup implements Serializable
 		return this.associations.isEmpty();
 	}
 
+	/**
+	 * Rebuild the region to attribute map, which isn't serialized.
+	 */
+	private void readObject( ObjectInputStream input ) throws IOException, ClassNotFoundException
+	{
+		input.defaultReadObject();
+		this.attributesByRegion = new HashMap<RegionInstance,Set<Integer>>();
+		for( Map.Entry<Integer,Set<RegionInstance>> entry : associations.entrySet() )
+		{
+			for( RegionInstance region : entry.getValue() )
+			{
+				attributesByRegion.computeIfAbsent( region, key -> new HashSet<Integer>() )
+				                  .add( entry.getKey() );
+			}
+		}
+	}
+
 	@Override
 	public String toString()
 	{
@@ -0,0 +1,494 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.services.ddm.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.portico.lrc.model.Extent;
+import org.portico.lrc.model.RegionInstance;
+
+/**
+ * An index over the extents of a set of {@link RegionInstance}s that can quickly answer the
+ * question "which of the regions overlap this one?". Without it, the only way to answer that is
+ * to call {@link RegionInstance#overlapsWith(RegionInstance)} for every region, which compares
+ * every extent of one with every extent of the other, dimension by dimension.
+ * <p/>
+ * 
+ * There is an interval tree for each routing space. Each extent of each region is stored in the
+ * tree for its space, keyed on its range in one of the space's dimensions (the lowest dimension
+ * handle). A query pulls out the extents whose range in that dimension intersects the range of the
+ * query extent in O(log n + k), and only those candidates are checked properly with
+ * {@link Extent#overlapsWith(Extent)}. The trees are treaps, augmented with the highest upper bound
+ * in each subtree, so regions can be added, removed and re-indexed one at a time without the
+ * whole thing being rebuilt.
+ * <p/>
+ * 
+ * <b>Note:</b> The index takes a copy of the bounds of each extent when a region is added. If the
+ * extents of a region are changed afterwards, {@link #update(RegionInstance)} must be called or
+ * the region will be filed in the wrong place and queries may miss it.
+ * <p/>
+ * 
+ * This class is not thread-safe. Like the {@link RegionStore} that holds it, it expects to be
+ * used from one thread at a time.
+ */
+public class RegionIndex
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Map<Integer,SpaceTree> spaces;
+	private Map<Integer,List<Entry>> entriesByToken;
+	private Random random;
+	private long nextSequence;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public RegionIndex()
+	{
+		this.spaces = new HashMap<>();
+		this.entriesByToken = new HashMap<>();
+		this.random = new Random( 8 );
+		this.nextSequence = 0;
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * Add the given region to the index. If a region with the same token is already in the
+	 * index, it is replaced. Null regions are ignored.
+	 */
+	public void add( RegionInstance region )
+	{
+		if( region == null )
+			return;
+
+		remove( region.getToken() );
+
+		SpaceTree tree = spaces.computeIfAbsent( region.getSpaceHandle(), handle -> new SpaceTree() );
+		List<Entry> entries = new ArrayList<>( region.getSize() );
+		for( int i = 0; i < region.getSize(); i++ )
+		{
+			Entry entry = new Entry( region, region.getExtent(i), tree.getDimension(region.getExtent(i)) );
+			tree.insert( entry );
+			entries.add( entry );
+		}
+
+		entriesByToken.put( region.getToken(), entries );
+	}
+
+	/**
+	 * Re-index a region after its extents have been changed (for example, by a modify region
+	 * call). This is the same as removing it and adding it again.
+	 */
+	public void update( RegionInstance region )
+	{
+		add( region );
+	}
+
+	/**
+	 * Remove the region with the given token from the index.
+	 * 
+	 * @return True if the region was in the index, false otherwise
+	 */
+	public boolean remove( int regionToken )
+	{
+		List<Entry> entries = entriesByToken.remove( regionToken );
+		if( entries == null )
+			return false;
+
+		for( Entry entry : entries )
+		{
+			SpaceTree tree = spaces.get( entry.region.getSpaceHandle() );
+			tree.delete( entry );
+			if( tree.isEmpty() )
+				spaces.remove( entry.region.getSpaceHandle() );
+		}
+
+		return true;
+	}
+
+	/**
+	 * Remove everything from the index.
+	 */
+	public void clear()
+	{
+		this.spaces.clear();
+		this.entriesByToken.clear();
+	}
+
+	/**
+	 * Find all the indexed regions that overlap the given one. This gives the same answer as
+	 * calling {@link RegionInstance#overlapsWith(RegionInstance)} against every region in the
+	 * index, but only checks the regions that are close enough that they might. The given region
+	 * doesn't have to be in the index. If it is, it will be in the result (a region always
+	 * overlaps itself).
+	 * 
+	 * @param region The region to find the overlapping regions for
+	 * @return The set of indexed regions that overlap the given region. Empty if there are none.
+	 */
+	public Set<RegionInstance> getOverlapping( RegionInstance region )
+	{
+		Set<RegionInstance> found = new LinkedHashSet<>();
+		SpaceTree tree = spaces.get( region.getSpaceHandle() );
+		if( tree == null )
+			return found;
+
+		for( int i = 0; i < region.getSize(); i++ )
+		{
+			Extent extent = region.getExtent( i );
+			tree.search( extent, entry -> {
+				if( found.contains(entry.region) == false && entry.extent.overlapsWith(extent) )
+					found.add( entry.region );
+				return false;
+			});
+		}
+		
+		return found;
+	}
+
+	/**
+	 * Find the first indexed region that passes the given filter and overlaps the given region.
+	 * The filter is applied before the extents are compared, so it should be cheap (a set lookup,
+	 * for example). The search stops as soon as a region is found.
+	 * 
+	 * @param region The region to find an overlapping region for
+	 * @param filter Only regions this accepts are considered
+	 * @return An indexed region that passes the filter and overlaps the given one, or null if
+	 *         there aren't any
+	 */
+	public RegionInstance findFirst( RegionInstance region, Predicate<RegionInstance> filter )
+	{
+		SpaceTree tree = spaces.get( region.getSpaceHandle() );
+		if( tree == null )
+			return null;
+
+		RegionInstance[] result = new RegionInstance[1];
+		for( int i = 0; i < region.getSize(); i++ )
+		{
+			Extent extent = region.getExtent( i );
+			boolean found = tree.search( extent, entry -> {
+				if( filter.test(entry.region) && entry.extent.overlapsWith(extent) )
+				{
+					result[0] = entry.region;
+					return true;
+				}
+				return false;
+			});
+
+			if( found )
+				return result[0];
+		}
+		
+		return null;
+	}
+
+	/**
+	 * @return True if the region with the given token is in the index
+	 */
+	public boolean contains( int regionToken )
+	{
+		return entriesByToken.containsKey( regionToken );
+	}
+
+	/**
+	 * @return The number of regions in the index
+	 */
+	public int size()
+	{
+		return entriesByToken.size();
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/// Private Inner Class: Entry   //////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * One extent of a region, with a copy of its bounds in the indexed dimension taken when it
+	 * was added. The bounds are ordered so that <code>low &lt;= high</code>, and the interval is
+	 * treated as closed. That makes it a little wider than the half-open range in the extent, so
+	 * the tree can return candidates that don't really overlap, but never misses one that does.
+	 * The candidates are always checked with {@link Extent#overlapsWith(Extent)}.
+	 */
+	private class Entry
+	{
+		private final RegionInstance region;
+		private final Extent extent;
+		private final boolean indexed;   // false if the extent has no range in the tree's dimension
+		private final long low;
+		private final long high;
+		private final long sequence;     // breaks ties between entries with the same low bound
+
+		private Entry( RegionInstance region, Extent extent, int dimension )
+		{
+			this.region = region;
+			this.extent = extent;
+			this.sequence = nextSequence++;
+
+			Extent.Range range = extent.getAllRanges().get( dimension );
+			this.indexed = range != null;
+			this.low  = range == null ? 0 : Math.min( range.lowerBound, range.upperBound );
+			this.high = range == null ? 0 : Math.max( range.lowerBound, range.upperBound );
+		}
+
+		private int compareTo( Entry other )
+		{
+			if( low != other.low )
+				return low < other.low ? -1 : 1;
+			else
+				return Long.compare( sequence, other.sequence );
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/// Private Inner Class: SpaceTree   //////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * The interval tree for a single routing space. Entries for extents that don't have a range
+	 * in the indexed dimension can't be placed in the tree, so they are kept off to the side and
+	 * checked on every query. The same goes the other way: a query extent without a range in the
+	 * indexed dimension has to be checked against everything.
+	 */
+	private class SpaceTree
+	{
+		private int dimension = -1;      // set when the first extent is added
+		private Node root;
+		private int size;
+		private List<Entry> unindexed = new ArrayList<>();
+
+		/** Index on the lowest dimension handle of the first extent we see */
+		private int getDimension( Extent extent )
+		{
+			if( dimension == -1 && extent.getAllRanges().isEmpty() == false )
+			{
+				int lowest = Integer.MAX_VALUE;
+				for( Integer handle : extent.getAllRanges().keySet() )
+					lowest = Math.min( lowest, handle );
+
+				dimension = lowest;
+			}
+
+			return dimension;
+		}
+
+		private boolean isEmpty()
+		{
+			return size == 0 && unindexed.isEmpty();
+		}
+
+		private void insert( Entry entry )
+		{
+			if( entry.indexed )
+			{
+				root = insert( root, new Node(entry,random.nextInt()) );
+				size++;
+			}
+			else
+			{
+				unindexed.add( entry );
+			}
+		}
+
+		private void delete( Entry entry )
+		{
+			if( entry.indexed )
+			{
+				root = delete( root, entry );
+				size--;
+			}
+			else
+			{
+				unindexed.remove( entry );
+			}
+		}
+
+		/**
+		 * Hand each entry that might overlap the extent to the visitor, until it says to stop.
+		 * @return True if the visitor stopped the search
+		 */
+		private boolean search( Extent extent, Visitor visitor )
+		{
+			for( Entry entry : unindexed )
+			{
+				if( visitor.visit(entry) )
+					return true;
+			}
+			
+			// if the extent has no range in our dimension we can't narrow it down, check everything
+			Extent.Range range = extent.getAllRanges().get( dimension );
+			if( range == null )
+				return search( root, Long.MIN_VALUE, Long.MAX_VALUE, visitor );
+			else
+				return search( root,
+				               Math.min(range.lowerBound,range.upperBound),
+				               Math.max(range.lowerBound,range.upperBound),
+				               visitor );
+		}
+
+		////////////////////////////////////////////////////////////
+		////////////////////// Tree Operations /////////////////////
+		////////////////////////////////////////////////////////////
+		private Node insert( Node node, Node inserting )
+		{
+			if( node == null )
+				return inserting;
+
+			if( inserting.entry.compareTo(node.entry) < 0 )
+			{
+				node.left = insert( node.left, inserting );
+				if( node.left.priority > node.priority )
+					node = rotateRight( node );
+			}
+			else
+			{
+				node.right = insert( node.right, inserting );
+				if( node.right.priority > node.priority )
+					node = rotateLeft( node );
+			}
+
+			node.update();
+			return node;
+		}
+
+		private Node delete( Node node, Entry entry )
+		{
+			if( node == null )
+				return null;
+
+			int comparison = entry.compareTo( node.entry );
+			if( comparison < 0 )
+			{
+				node.left = delete( node.left, entry );
+			}
+			else if( comparison > 0 )
+			{
+				node.right = delete( node.right, entry );
+			}
+			else
+			{
+				// found it, rotate it down until it has at most one child, then drop it
+				if( node.left == null )
+					return node.right;
+				if( node.right == null )
+					return node.left;
+
+				if( node.left.priority > node.right.priority )
+				{
+					node = rotateRight( node );
+					node.right = delete( node.right, entry );
+				}
+				else
+				{
+					node = rotateLeft( node );
+					node.left = delete( node.left, entry );
+				}
+			}
+
+			node.update();
+			return node;
+		}
+
+		private boolean search( Node node, long low, long high, Visitor visitor )
+		{
+			// nothing in this subtree reaches up as far as the query
+			if( node == null || node.maxHigh < low )
+				return false;
+
+			if( search(node.left,low,high,visitor) )
+				return true;
+
+			// everything from here right starts after the query ends
+			if( node.entry.low > high )
+				return false;
+
+			if( node.entry.high >= low && visitor.visit(node.entry) )
+				return true;
+
+			return search( node.right, low, high, visitor );
+		}
+
+		private Node rotateRight( Node node )
+		{
+			Node left = node.left;
+			node.left = left.right;
+			left.right = node;
+			node.update();
+			left.update();
+			return left;
+		}
+
+		private Node rotateLeft( Node node )
+		{
+			Node right = node.right;
+			node.right = right.left;
+			right.left = node;
+			node.update();
+			right.update();
+			return right;
+		}
+	}
+
+	/** Called for each entry a search finds. Returns true to stop the search. */
+	@FunctionalInterface
+	private interface Visitor
+	{
+		public boolean visit( Entry entry );
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/// Private Inner Class: Node   ///////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	private class Node
+	{
+		private final Entry entry;
+		private final int priority;
+		private long maxHigh;            // highest upper bound of any entry in this subtree
+		private Node left;
+		private Node right;
+
+		private Node( Entry entry, int priority )
+		{
+			this.entry = entry;
+			this.priority = priority;
+			this.maxHigh = entry.high;
+		}
+
+		private void update()
+		{
+			long max = entry.high;
+			if( left != null && left.maxHigh > max )
+				max = left.maxHigh;
+			if( right != null && right.maxHigh > max )
+				max = right.maxHigh;
+
+			this.maxHigh = max;
+		}
+	}
+}
@@ -31,18 +31,25 @@ import org.portico.lrc.model.Space;
 import org.portico.lrc.services.saverestore.data.SaveRestoreTarget;
 
 /**
- * This class maintains a list of all {@link RegionInstance} instances known locally.
+ * This class maintains a list of all {@link RegionInstance} instances known locally. The regions
+ * are also kept in a {@link RegionIndex} so that {@link #getOverlappingRegions(RegionInstance)}
+ * can find the regions that overlap a given one without checking them all. Changes to the extents
+ * of a stored region must be made through {@link #modifyRegion(RegionInstance)} (or followed by a
+ * call to {@link #regionModified(RegionInstance)}) so the index stays up to date.
  */
 public class RegionStore implements SaveRestoreTarget
 {
 	//----------------------------------------------------------
 	//                    STATIC VARIABLES
 	//----------------------------------------------------------
+	/** With this few regions to look through, just check each one rather than using the index */
+	private static final int SCAN_THRESHOLD = 8;
 
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
 	//----------------------------------------------------------
 	private Map<Integer,RegionInstance> regions;
+	private RegionIndex index;
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -51,6 +58,7 @@ public class RegionStore implements SaveRestoreTarget
 	public RegionStore()
 	{
 		this.regions = new HashMap<Integer,RegionInstance>();
+		this.index = new RegionIndex();
 	}
 
 	//----------------------------------------------------------
@@ -67,9 +75,85 @@ public class RegionStore implements SaveRestoreTarget
 		if( region != null )
 		{
 			regions.put( region.getToken(), region );
+			index.add( region );
 		}
 	}
 
+	/**
+	 * Copy the extents of the given region into the stored region with the same token and
+	 * re-index it. This is what a modify region call should use. If there is no stored region
+	 * with the token, <code>null</code> is returned and nothing happens.
+	 * 
+	 * @param newValues A region holding the new extent values
+	 * @return The stored region that was modified, or null if there isn't one
+	 */
+	public RegionInstance modifyRegion( RegionInstance newValues )
+	{
+		RegionInstance existing = regions.get( newValues.getToken() );
+		if( existing == null )
+			return null;
+
+		existing.copy( newValues );
+		index.update( existing );
+		return existing;
+	}
+
+	/**
+	 * Tell the store that the extents of a stored region have been changed in place, so that it
+	 * can re-index it. If the region isn't in the store, nothing happens.
+	 */
+	public void regionModified( RegionInstance region )
+	{
+		if( region != null && regions.get(region.getToken()) == region )
+			index.update( region );
+	}
+
+	/**
+	 * Find all the stored regions that overlap the given region. This is the same as calling
+	 * {@link RegionInstance#overlapsWith(RegionInstance)} on each stored region, but uses the
+	 * {@link RegionIndex} to only check those that are close. The given region doesn't need to
+	 * be in the store.
+	 * 
+	 * @param region The region to find overlapping regions for
+	 * @return All the stored regions that overlap the given one. Empty if there are none.
+	 */
+	public Set<RegionInstance> getOverlappingRegions( RegionInstance region )
+	{
+		return index.getOverlapping( region );
+	}
+
+	/**
+	 * Find one of the given candidate regions that overlaps with the given region. This is used
+	 * to match the region an update or interaction was sent with against the regions a federate
+	 * subscribed with. If there are only a few candidates they are checked one by one. Otherwise
+	 * the index is searched for a stored region that is one of the candidates and overlaps.
+	 * <p/>
+	 * The candidates must be regions from this store (as subscription regions are, because they
+	 * are looked up by token when the subscription is made). A candidate the store doesn't know
+	 * about is never found when the index is used.
+	 * 
+	 * @param candidates The regions to check for an overlap
+	 * @param region     The region to check them against
+	 * @return One of the candidates that overlaps the region, or null if none do
+	 */
+	public RegionInstance findOverlapping( Set<RegionInstance> candidates, RegionInstance region )
+	{
+		if( candidates.size() <= SCAN_THRESHOLD )
+		{
+			for( RegionInstance candidate : candidates )
+			{
+				if( candidate.overlapsWith(region) )
+					return candidate;
+			}
+		}
+		else
+		{
+			return index.findFirst( region, candidates::contains );
+		}
+
+		return null;
+	}
+
 	/**
 	 * Fetch the contained region with the supplied region handle. If no {@link RegionInstance}
 	 * can be found with that handle, <code>null</code> is returned.
@@ -126,6 +210,7 @@ public class RegionStore implements SaveRestoreTarget
 	 */
 	public RegionInstance removeRegion( int regionHandle )
 	{
+		index.remove( regionHandle );
 		return regions.remove( regionHandle );
 	}
 
@@ -137,7 +222,7 @@ public class RegionStore implements SaveRestoreTarget
 	public RegionInstance removeRegion( RegionInstance theRegion )
 	{
 		if( theRegion != null )
-			return regions.remove( theRegion.getToken() );
+			return removeRegion( theRegion.getToken() );
 		else
 			return null;
 	}
@@ -201,6 +286,11 @@ public class RegionStore implements SaveRestoreTarget
 	public void restoreFromStream( ObjectInput input ) throws Exception
 	{
 		this.regions = (Map<Integer,RegionInstance>)input.readObject();
+
+		// the index isn't saved, build it again from what we restored
+		this.index.clear();
+		for( RegionInstance region : regions.values() )
+			this.index.add( region );
 	}
 
 	//----------------------------------------------------------
@@ -18,6 +18,8 @@ import java.security.PublicKey;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class Authenticate extends PorticoMessage
 {
@@ -34,6 +36,12 @@ public class Authenticate extends PorticoMessage
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public Authenticate()
+	{
+		super();
+	}
+
 	public Authenticate( PublicKey key )
 	{
 		this.encoded = key.getEncoded();
@@ -57,6 +65,23 @@ public class Authenticate extends PorticoMessage
 		return this.encoded;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putBytes( encoded );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.encoded = input.getBytes();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
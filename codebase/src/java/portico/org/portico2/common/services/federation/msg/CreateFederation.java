@@ -23,6 +23,8 @@ import org.portico.impl.HLAVersion;
 import org.portico.lrc.model.ObjectModel;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 import org.portico2.rti.services.mom.data.FomModule;
 
 /**
@@ -144,6 +146,30 @@ public class CreateFederation extends PorticoMessage
 		return this.hlaVersion;
 	}
 	
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putString( federationName );
+		output.putObject( objectModel );
+		output.putEnum( hlaVersion );
+		output.putObject( rawFomModules );
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.federationName = input.getString();
+		this.objectModel = input.getObject( ObjectModel.class );
+		this.hlaVersion = input.getEnum( HLAVersion.class );
+		this.rawFomModules = input.getObject( List.class );
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
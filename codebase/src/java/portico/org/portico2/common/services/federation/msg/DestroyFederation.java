@@ -16,6 +16,8 @@ package org.portico2.common.services.federation.msg;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class DestroyFederation extends PorticoMessage
 {
@@ -33,6 +35,11 @@ public class DestroyFederation extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public DestroyFederation()
+	{
+		super();
+	}
+
 	public DestroyFederation( String name )
 	{
 		super();
@@ -58,6 +65,23 @@ public class DestroyFederation extends PorticoMessage
 		this.federationName = federationName;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putString( federationName );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.federationName = input.getString();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -21,6 +21,8 @@ import java.util.List;
 import org.portico.lrc.model.ObjectModel;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 import org.portico2.rti.RtiConnection;
 import org.portico2.rti.services.mom.data.FomModule;
 
@@ -186,6 +188,32 @@ public class JoinFederation extends PorticoMessage
 		this.connection = connection;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putString( federateName );
+		output.putString( federateType );
+		output.putString( federationName );
+		output.putObject( parsedJoinObjectModels );
+		output.putObject( rawJoinObjectModels );
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.federateName = input.getString();
+		this.federateType = input.getString();
+		this.federationName = input.getString();
+		this.parsedJoinObjectModels = input.getObject( List.class );
+		this.rawJoinObjectModels = input.getObject( List.class );
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
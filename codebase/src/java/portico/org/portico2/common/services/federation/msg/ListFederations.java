@@ -14,9 +14,14 @@
  */
 package org.portico2.common.services.federation.msg;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.portico.bindings.IConnection;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * This message is used to solicit the currently registered federations available. It is generally
@@ -68,6 +73,24 @@ public class ListFederations extends PorticoMessage
 		return this.federations;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putStringCollection( federations == null ? null : Arrays.asList(federations) );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		List<String> names = input.getStringList();
+		this.federations = names == null ? null : names.toArray( new String[names.size()] );
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
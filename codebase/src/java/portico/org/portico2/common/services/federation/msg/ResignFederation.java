@@ -17,6 +17,8 @@ package org.portico2.common.services.federation.msg;
 import org.portico.lrc.compat.JResignAction;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class ResignFederation extends PorticoMessage
 {
@@ -114,6 +116,29 @@ public class ResignFederation extends PorticoMessage
 		return true;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putEnum( resignAction );
+		output.putString( federateName );
+		output.putString( federateType );
+		output.putString( federationName );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.resignAction = input.getEnum( JResignAction.class );
+		this.federateName = input.getString();
+		this.federateType = input.getString();
+		this.federationName = input.getString();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
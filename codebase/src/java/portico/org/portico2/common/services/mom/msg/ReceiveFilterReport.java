@@ -0,0 +1,167 @@
+/*
+ *   Copyright 2006 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.services.mom.msg;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.portico.utils.messaging.PorticoMessage;
+import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
+import org.portico2.lrc.ReceiveFilter;
+import org.portico2.rti.federation.FederateMetrics;
+
+/**
+ * Sent from an LRC to the RTI with the number of data messages its {@link ReceiveFilter} has
+ * thrown away without inflating them. The counts are totals since the federate joined, not the
+ * change since the last report, so a lost or late report doesn't upset anything. The RTI keeps
+ * the latest values in the federate's {@link FederateMetrics}.
+ * <p/>
+ * The LRC sends these as it ticks (but only every so often, and only if the counts have changed)
+ * and once more just before it resigns.
+ */
+public class ReceiveFilterReport extends PorticoMessage implements Externalizable
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final long serialVersionUID = 3112252018925L;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private long droppedOwn;
+	private long droppedInteractions;
+	private long droppedReflections;
+	private long droppedUnknownObjects;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public ReceiveFilterReport()
+	{
+		super();
+	}
+
+	public ReceiveFilterReport( long droppedOwn,
+	                            long droppedInteractions,
+	                            long droppedReflections,
+	                            long droppedUnknownObjects )
+	{
+		this();
+		this.droppedOwn = droppedOwn;
+		this.droppedInteractions = droppedInteractions;
+		this.droppedReflections = droppedReflections;
+		this.droppedUnknownObjects = droppedUnknownObjects;
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@Override
+	public MessageType getType()
+	{
+		return MessageType.ReceiveFilterReport;
+	}
+
+	public long getDroppedOwn()
+	{
+		return this.droppedOwn;
+	}
+
+	public long getDroppedInteractions()
+	{
+		return this.droppedInteractions;
+	}
+
+	public long getDroppedReflections()
+	{
+		return this.droppedReflections;
+	}
+
+	public long getDroppedUnknownObjects()
+	{
+		return this.droppedUnknownObjects;
+	}
+
+	public long getDroppedTotal()
+	{
+		return droppedOwn + droppedInteractions + droppedReflections + droppedUnknownObjects;
+	}
+
+	/**
+	 * Returns <code>false</code>
+	 */
+	@Override
+	public boolean isSpecDefinedMessage()
+	{
+		return false;
+	}
+
+	/////////////////////////////////////////////////////////////
+	/////////////////// Serialization Methods ///////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void readExternal( ObjectInput input ) throws IOException, ClassNotFoundException
+	{
+		super.readExternal( input );
+		this.droppedOwn = input.readLong();
+		this.droppedInteractions = input.readLong();
+		this.droppedReflections = input.readLong();
+		this.droppedUnknownObjects = input.readLong();
+	}
+
+	@Override
+	public void writeExternal( ObjectOutput output ) throws IOException
+	{
+		super.writeExternal( output );
+
+		output.writeLong( this.droppedOwn );
+		output.writeLong( this.droppedInteractions );
+		output.writeLong( this.droppedReflections );
+		output.writeLong( this.droppedUnknownObjects );
+	}
+
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putLong( droppedOwn );
+		output.putLong( droppedInteractions );
+		output.putLong( droppedReflections );
+		output.putLong( droppedUnknownObjects );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.droppedOwn = input.getLong();
+		this.droppedInteractions = input.getLong();
+		this.droppedReflections = input.getLong();
+		this.droppedUnknownObjects = input.getLong();
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+}
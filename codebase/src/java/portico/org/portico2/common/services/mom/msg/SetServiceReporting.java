@@ -21,6 +21,8 @@ import java.io.ObjectOutput;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 import org.portico2.lrc.LRC;
 import org.portico2.lrc.LRCState;
 
@@ -111,6 +113,23 @@ public class SetServiceReporting extends PorticoMessage implements Externalizabl
 		output.writeBoolean( this.reporting );
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putBoolean( reporting );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.reporting = input.getBoolean();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -21,6 +21,8 @@ import java.io.ObjectOutput;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * This message is a notification to the RTI that the object of the contained handle should be
@@ -119,6 +121,25 @@ public class DeleteObject extends PorticoMessage implements Externalizable
 		output.writeUTF( bytesToString(this.tag) ); // conver it for a string for simple read/write
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( objectHandle );
+		output.putBytes( tag );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.objectHandle = input.getInt();
+		this.tag = input.getBytes();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -22,6 +22,8 @@ import java.io.ObjectOutput;
 import org.portico.lrc.model.OCInstance;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 import org.portico2.rti.services.object.data.ROCInstance;
 
 public class DiscoverObject extends PorticoMessage implements Externalizable
@@ -131,6 +133,27 @@ public class DiscoverObject extends PorticoMessage implements Externalizable
 		output.writeUTF( this.objectName );
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( classHandle );
+		output.putInt( objectHandle );
+		output.putString( objectName );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.classHandle = input.getInt();
+		this.objectHandle = input.getInt();
+		this.objectName = input.getString();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
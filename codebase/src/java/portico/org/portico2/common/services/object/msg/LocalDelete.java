@@ -16,6 +16,8 @@ package org.portico2.common.services.object.msg;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class LocalDelete extends PorticoMessage
 {
@@ -33,6 +35,11 @@ public class LocalDelete extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public LocalDelete()
+	{
+		super();
+	}
+
 	public LocalDelete( int objectHandle )
 	{
 		this.objectHandle = objectHandle;
@@ -57,6 +64,23 @@ public class LocalDelete extends PorticoMessage
 		this.objectHandle = objectHandle;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( objectHandle );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.objectHandle = input.getInt();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
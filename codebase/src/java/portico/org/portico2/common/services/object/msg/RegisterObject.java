@@ -22,6 +22,8 @@ import java.util.ArrayList;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * This message is a notification of a request to register an object instance. The desired name for
@@ -222,6 +224,29 @@ public class RegisterObject extends PorticoMessage implements Externalizable
 		}
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( classHandle );
+		output.putString( objectName );
+		output.putIntCollection( attributes );
+		output.putIntCollection( regionTokens );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.classHandle = input.getInt();
+		this.objectName = input.getString();
+		this.attributes = input.getIntList();
+		this.regionTokens = input.getIntList();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -15,9 +15,12 @@
 package org.portico2.common.services.object.msg;
 
 import java.util.Set;
+
 import org.portico.lrc.PorticoConstants;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * Request the update of all instances for a given class (or its subclasses) by the federates that
@@ -113,6 +116,29 @@ public class RequestClassUpdate extends PorticoMessage
 		return this.regionToken != PorticoConstants.NULL_HANDLE;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( classHandle );
+		output.putIntCollection( attributeHandles );
+		output.putBytes( tag );
+		output.putInt( regionToken );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.classHandle = input.getInt();
+		this.attributeHandles = input.getIntSet();
+		this.tag = input.getBytes();
+		this.regionToken = input.getInt();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -18,6 +18,8 @@ import java.util.Set;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * Request the update of the attributes for a given object instance by the federates that own them.
@@ -98,6 +100,27 @@ public class RequestObjectUpdate extends PorticoMessage
     	this.tag = tag;
     }
 	
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( objectId );
+		output.putIntCollection( attributes );
+		output.putBytes( tag );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.objectId = input.getInt();
+		this.attributes = input.getIntSet();
+		this.tag = input.getBytes();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
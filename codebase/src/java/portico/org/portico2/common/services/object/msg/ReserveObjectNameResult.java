@@ -21,6 +21,8 @@ import java.io.ObjectOutput;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * Message that provides the result of an object name reservation request. Intended for callback.
@@ -40,6 +42,12 @@ public class ReserveObjectNameResult extends PorticoMessage implements Externali
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public ReserveObjectNameResult()
+	{
+		super();
+	}
+
 	public ReserveObjectNameResult( String objectName, boolean successful )
 	{
 		super();
@@ -99,4 +107,23 @@ public class ReserveObjectNameResult extends PorticoMessage implements Externali
 		
 		output.writeBoolean( this.successful );
 	}
+
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putString( objectName );
+		output.putBoolean( successful );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.objectName = input.getString();
+		this.successful = input.getBoolean();
+	}
 }
@@ -18,11 +18,14 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.HashMap;
+import java.util.Map;
 
 import org.portico.lrc.PorticoConstants;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
+import org.portico2.common.utils.HandleValueMap;
 
 /**
  * This message represents a request to send an interaction with the given set of parameters.
@@ -41,7 +44,7 @@ public class SendInteraction extends PorticoMessage implements Externalizable
 	//----------------------------------------------------------
 	private int interactionId;
 	private byte[] tag;
-	private HashMap<Integer,byte[]> parameters;
+	private HandleValueMap parameters;
 	private int regionToken;
 	
 	// these parameters are filled out on the receiver side as required, do not transmit!
@@ -59,17 +62,17 @@ public class SendInteraction extends PorticoMessage implements Externalizable
 		this.receivingRegionToken = PorticoConstants.NULL_HANDLE;
 	}
 	
-	public SendInteraction( int interacitonId, byte[] tag, HashMap<Integer,byte[]> parameters )
+	public SendInteraction( int interacitonId, byte[] tag, Map<Integer,byte[]> parameters )
 	{
 		this();
 		this.interactionId = interacitonId;
 		this.tag = tag;
-		this.parameters = parameters;
+		this.parameters = HandleValueMap.from( parameters );
 	}
 
 	public SendInteraction( int interactionId,
 	                        byte[] tag,
-	                        HashMap<Integer,byte[]> parameters,
+	                        Map<Integer,byte[]> parameters,
 	                        int regionToken )
 	{
 		this( interactionId, tag, parameters );
@@ -78,7 +81,7 @@ public class SendInteraction extends PorticoMessage implements Externalizable
 
 	public SendInteraction( int interactionId,
 	                        byte[] tag,
-	                        HashMap<Integer,byte[]> parameters,
+	                        Map<Integer,byte[]> parameters,
 	                        double time )
 	{
 		this( interactionId, tag, parameters );
@@ -87,7 +90,7 @@ public class SendInteraction extends PorticoMessage implements Externalizable
 	
 	public SendInteraction( int interactionId,
 	                        byte[] tag,
-	                        HashMap<Integer,byte[]> parameters,
+	                        Map<Integer,byte[]> parameters,
 	                        int regionToken,
 	                        double time )
 	{
@@ -114,14 +117,14 @@ public class SendInteraction extends PorticoMessage implements Externalizable
 		this.interactionId = interactionId;
 	}
 
-	public HashMap<Integer,byte[]> getParameters()
+	public HandleValueMap getParameters()
 	{
 		return parameters;
 	}
 
-	public void setParameters( HashMap<Integer,byte[]> parameters )
+	public void setParameters( Map<Integer,byte[]> parameters )
 	{
-		this.parameters = parameters;
+		this.parameters = HandleValueMap.from( parameters );
 	}
 
 	public byte[] getTag()
@@ -208,10 +211,10 @@ public class SendInteraction extends PorticoMessage implements Externalizable
 		// write the number of parameters we are pushing out
 		buffer.writeInt( parameters.size() );
 		// write each of the attribute values
-		for( Integer parameterHandle : parameters.keySet() )
+		for( int i = 0; i < parameters.size(); i++ )
 		{
-			buffer.writeInt( parameterHandle );
-			byte[] parameterValue = parameters.get( parameterHandle );
+			buffer.writeInt( parameters.handleAt(i) );
+			byte[] parameterValue = parameters.valueAt( i );
 			buffer.writeInt( parameterValue.length );
 			buffer.write( parameterValue );
 		}
@@ -239,10 +242,10 @@ public class SendInteraction extends PorticoMessage implements Externalizable
 
 		// read the parameter data in, formatted as int,[int,byte[]]...
 		// first int is number of parameters, next are pairs of parameterHandle/values
+		int parameterCount = buffer.readInt();
 		if( this.parameters == null )
-			this.parameters = new HashMap<Integer,byte[]>();
+			this.parameters = new HandleValueMap( parameterCount );
 
-		int parameterCount = buffer.readInt();
 		for( int i = 0; i < parameterCount; i++ )
 		{
 			int parmaterHandle = buffer.readInt();
@@ -253,6 +256,37 @@ public class SendInteraction extends PorticoMessage implements Externalizable
 		}
 	}
 
+	@Override
+	public void copyValues()
+	{
+		this.parameters = parameters.copyWithValues();
+		if( tag != null )
+			this.tag = tag.clone();
+	}
+
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( interactionId );
+		output.putBytes( tag );
+		output.putInt( regionToken );
+		output.putHandleValueMap( parameters );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.interactionId = input.getInt();
+		this.tag = input.getBytes();
+		this.regionToken = input.getInt();
+		this.parameters = input.getHandleValueMap();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -18,12 +18,16 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Map;
 
 import org.portico.lrc.PorticoConstants;
 import org.portico.lrc.model.RegionInstance;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
+import org.portico2.common.utils.HandleValueMap;
 
 /**
  * This message represents a request to update the values of a group of attributes contained in a
@@ -41,11 +45,11 @@ public class UpdateAttributes extends PorticoMessage implements Externalizable,
 	//----------------------------------------------------------
 	private int objectId;
 	private byte[] tag;
-	private HashMap<Integer,byte[]> attributes;
+	private HandleValueMap attributes;
 	
 	// these are filled out on the receiver side as required for filtering callbacks
 	// they should never be sent over the wire
-	private transient HashMap<Integer,FilteredAttribute> filtered;
+	private transient FilteredAttributes filtered;
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -56,21 +60,21 @@ public class UpdateAttributes extends PorticoMessage implements Externalizable,
 		super();
 		this.objectId = PorticoConstants.NULL_HANDLE;
 		this.tag = new byte[0];
-		this.attributes = new HashMap<Integer,byte[]>();
-		this.filtered = new HashMap<Integer,FilteredAttribute>();
+		this.attributes = new HandleValueMap();
+		this.filtered = new FilteredAttributes( this );
 	}
 	
-	public UpdateAttributes( int objectId, byte[] tag, HashMap<Integer,byte[]> attributes )
+	public UpdateAttributes( int objectId, byte[] tag, Map<Integer,byte[]> attributes )
 	{
 		this();
 		this.objectId = objectId;
 		this.tag = tag;
-		this.attributes = attributes;
+		this.attributes = HandleValueMap.from( attributes );
 	}
 	
 	public UpdateAttributes( int objectId,
 	                         byte[] tag,
-	                         HashMap<Integer,byte[]> attributes,
+	                         Map<Integer,byte[]> attributes,
 	                         double time )
 	{
 		this( objectId, tag, attributes );
@@ -95,14 +99,14 @@ public class UpdateAttributes extends PorticoMessage implements Externalizable,
 		return MessageType.UpdateAttributes;
 	}
 
-	public HashMap<Integer,byte[]> getAttributes()
+	public HandleValueMap getAttributes()
 	{
 		return attributes;
 	}
 
-	public void setAttributes( HashMap<Integer,byte[]> attributes )
+	public void setAttributes( Map<Integer,byte[]> attributes )
 	{
-		this.attributes = attributes;
+		this.attributes = HandleValueMap.from( attributes );
 	}
 
 	/**
@@ -113,10 +117,9 @@ public class UpdateAttributes extends PorticoMessage implements Externalizable,
 	 * the region value can also be <code>null</code>, which in this case is equivalent to the
 	 * "default region" that covers all values of all dimensions.
 	 */
-	public void addFilteredAttribute( int handle, byte[] value, RegionInstance region )
+	public void addFilteredAttribute( int handle, RegionInstance region )
 	{
-		FilteredAttribute attribute = new FilteredAttribute( value, region );
-		this.filtered.put( handle, attribute );
+		this.filtered.add( attributes.positionOf(handle), region );
 	}
 	
 	public void clearFilteredAttributes()
@@ -124,7 +127,11 @@ public class UpdateAttributes extends PorticoMessage implements Externalizable,
 		this.filtered.clear();
 	}
 
-	public HashMap<Integer,FilteredAttribute> getFilteredAttributes()
+	/**
+	 * @return A view over the attributes in this update that have been let through by
+	 *         {@link #addFilteredAttribute(int, RegionInstance)}. It doesn't copy the values.
+	 */
+	public FilteredAttributes getFilteredAttributes()
 	{
 		return this.filtered;
 	}
@@ -187,10 +194,10 @@ public class UpdateAttributes extends PorticoMessage implements Externalizable,
 		// write the number of attributes we are pushing out
 		buffer.writeInt( attributes.size() );
 		// write each of the attribute values
-		for( Integer attributeHandle : attributes.keySet() )
+		for( int i = 0; i < attributes.size(); i++ )
 		{
-			buffer.writeInt( attributeHandle );
-			byte[] value = attributes.get( attributeHandle );
+			buffer.writeInt( attributes.handleAt(i) );
+			byte[] value = attributes.valueAt( i );
 			buffer.writeInt( value.length );
 			buffer.write( value );
 		}
@@ -217,10 +224,10 @@ public class UpdateAttributes extends PorticoMessage implements Externalizable,
 		
 		// read the attribute data in, formatted as int,[int,byte[]]...
 		// first int is number of attributes, next are pairs of attributeHandle/values
+		int attributeCount = buffer.readInt();
 		if( this.attributes == null )
-			this.attributes = new HashMap<Integer,byte[]>();
+			this.attributes = new HandleValueMap( attributeCount );
 
-		int attributeCount = buffer.readInt();
 		for( int i = 0; i < attributeCount; i++ )
 		{
 			int attributeHandle = buffer.readInt();
@@ -240,26 +247,162 @@ public class UpdateAttributes extends PorticoMessage implements Externalizable,
 	public Object clone() throws CloneNotSupportedException
 	{
 		UpdateAttributes clone = (UpdateAttributes)super.clone();
-		//clone.attributes = new HashMap<Integer,byte[]>( this.attributes ); --read-only on incoming
-		clone.filtered = new HashMap<Integer,FilteredAttribute>();
+		//clone.attributes = this.attributes.copy(); --read-only on incoming
+		clone.filtered = new FilteredAttributes( clone );
 		return clone;
 	}
 
+	@Override
+	public void copyValues()
+	{
+		this.attributes = attributes.copyWithValues();
+		if( tag != null )
+			this.tag = tag.clone();
+	}
+
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( objectId );
+		output.putBytes( tag );
+		output.putHandleValueMap( attributes );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.objectId = input.getInt();
+		this.tag = input.getBytes();
+		this.attributes = input.getHandleValueMap();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
-	
 	////////////////////////////////////////////////////////////////////////////////////////
-	//////////////////////////////// Inner Class: Attribute ////////////////////////////////
+	/////////////////////////// Inner Class: FilteredAttributes ////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
-	public class FilteredAttribute
+	/**
+	 * The attributes of an update that the local federate is interested in, along with the
+	 * subscription region each was received through (<code>null</code> for the default region).
+	 * Rather than copying the attributes out, this just remembers where each one is in the
+	 * update's {@link HandleValueMap}. Iterate over it by position:
+	 *
+	 * <pre>
+	 * for( int i = 0; i < filtered.size(); i++ )
+	 *     doSomething( filtered.handleAt(i), filtered.valueAt(i), filtered.regionAt(i) );
+	 * </pre>
+	 */
+	public static class FilteredAttributes
 	{
-		public byte[] value;
-		public RegionInstance region;
-		public FilteredAttribute( byte[] value, RegionInstance region )
+		private final UpdateAttributes update;
+		private int[] positions;
+		private RegionInstance[] regions;
+		private int size;
+
+		private FilteredAttributes( UpdateAttributes update )
+		{
+			this.update = update;
+			this.positions = null; // most messages are never filtered, allocate on first use
+			this.regions = null;
+			this.size = 0;
+		}
+
+		private void add( int position, RegionInstance region )
+		{
+			if( position == -1 )
+				return;
+
+			if( positions == null )
+			{
+				int capacity = Math.max( 4, update.attributes.size() );
+				this.positions = new int[capacity];
+				this.regions = new RegionInstance[capacity];
+			}
+			else if( size == positions.length )
+			{
+				this.positions = Arrays.copyOf( positions, size*2 );
+				this.regions = Arrays.copyOf( regions, size*2 );
+			}
+
+			positions[size] = position;
+			regions[size++] = region;
+		}
+
+		private void clear()
 		{
-			this.value = value;
-			this.region = region;
+			if( regions != null )
+				Arrays.fill( regions, 0, size, null );
+
+			this.size = 0;
+		}
+
+		public int size()
+		{
+			return size;
+		}
+
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		public int handleAt( int index )
+		{
+			return update.attributes.handleAt( positions[index] );
+		}
+
+		public byte[] valueAt( int index )
+		{
+			return update.attributes.valueAt( positions[index] );
+		}
+
+		public RegionInstance regionAt( int index )
+		{
+			return regions[index];
+		}
+
+		/** @return The value of the attribute if it was let through, <code>null</code> otherwise */
+		public byte[] get( int handle )
+		{
+			for( int i = 0; i < size; i++ )
+			{
+				if( handleAt(i) == handle )
+					return valueAt( i );
+			}
+
+			return null;
+		}
+
+		/**
+		 * @return <code>true</code> if every attribute in the update was let through, in which
+		 *         case the update's own map can be used rather than building a new one
+		 */
+		public boolean isComplete()
+		{
+			return size == update.attributes.size();
+		}
+
+		/**
+		 * Get the filtered attributes as a {@link HandleValueMap}. If every attribute was let
+		 * through this is the update's own map (which should be treated as read-only), otherwise
+		 * a new map is built.
+		 */
+		public HandleValueMap toHandleValueMap()
+		{
+			if( isComplete() )
+				return update.attributes;
+
+			HandleValueMap map = new HandleValueMap( size );
+			for( int i = 0; i < size; i++ )
+				map.put( handleAt(i), valueAt(i) );
+
+			return map;
 		}
 	}
 
@@ -18,6 +18,8 @@ import java.util.Set;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * Message representing an attribute aquisition request. The request represents two particular
@@ -46,6 +48,11 @@ public class AttributeAcquire extends PorticoMessage
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public AttributeAcquire()
+	{
+		super();
+	}
 	/**
 	 * If <code>ifAvailable</code> is true, this represents a request to only to aquire the
 	 * attributes if they are available.
@@ -130,6 +137,29 @@ public class AttributeAcquire extends PorticoMessage
 		this.tag = tag;
 	}
 	
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( objectHandle );
+		output.putIntCollection( attributes );
+		output.putBoolean( ifAvailable );
+		output.putBytes( tag );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.objectHandle = input.getInt();
+		this.attributes = input.getIntSet();
+		this.ifAvailable = input.getBoolean();
+		this.tag = input.getBytes();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
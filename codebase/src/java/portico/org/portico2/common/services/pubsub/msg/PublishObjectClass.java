@@ -18,6 +18,8 @@ import java.util.HashSet;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class PublishObjectClass extends PorticoMessage
 {
@@ -36,6 +38,11 @@ public class PublishObjectClass extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public PublishObjectClass()
+	{
+		super();
+	}
+
 	public PublishObjectClass( int classHandle, HashSet<Integer> attributes )
 	{
 		this.classHandle = classHandle;
@@ -71,6 +78,25 @@ public class PublishObjectClass extends PorticoMessage
 		this.attributes = attributes;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( classHandle );
+		output.putIntCollection( attributes );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.classHandle = input.getInt();
+		this.attributes = input.getIntSet();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -17,6 +17,8 @@ package org.portico2.common.services.pubsub.msg;
 import org.portico.lrc.PorticoConstants;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class SubscribeInteractionClass extends PorticoMessage
 {
@@ -35,6 +37,11 @@ public class SubscribeInteractionClass extends PorticoMessage
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public SubscribeInteractionClass()
+	{
+		super();
+	}
 	
 	public SubscribeInteractionClass( int classHandle )
 	{
@@ -99,6 +106,27 @@ public class SubscribeInteractionClass extends PorticoMessage
 		return this.regionToken != PorticoConstants.NULL_HANDLE;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( classHandle );
+		output.putInt( regionToken );
+		output.putBoolean( passive );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.classHandle = input.getInt();
+		this.regionToken = input.getInt();
+		this.passive = input.getBoolean();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -19,6 +19,8 @@ import java.util.HashSet;
 import org.portico.lrc.PorticoConstants;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class SubscribeObjectClass extends PorticoMessage
 {
@@ -39,6 +41,11 @@ public class SubscribeObjectClass extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public SubscribeObjectClass()
+	{
+		super();
+	}
+
 	public SubscribeObjectClass( int classHandle, HashSet<Integer> attributes )
 	{
 		this.classHandle = classHandle;
@@ -116,6 +123,29 @@ public class SubscribeObjectClass extends PorticoMessage
 		return this.regionToken != PorticoConstants.NULL_HANDLE;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( classHandle );
+		output.putIntCollection( attributes );
+		output.putBoolean( passive );
+		output.putInt( regionToken );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.classHandle = input.getInt();
+		this.attributes = input.getIntSet();
+		this.passive = input.getBoolean();
+		this.regionToken = input.getInt();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -16,6 +16,8 @@ package org.portico2.common.services.pubsub.msg;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class UnpublishInteractionClass extends PorticoMessage
 {
@@ -32,6 +34,11 @@ public class UnpublishInteractionClass extends PorticoMessage
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public UnpublishInteractionClass()
+	{
+		super();
+	}
 	
 	public UnpublishInteractionClass( int classHandle )
 	{
@@ -57,6 +64,23 @@ public class UnpublishInteractionClass extends PorticoMessage
 		this.classHandle = classHandle;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( classHandle );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.classHandle = input.getInt();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
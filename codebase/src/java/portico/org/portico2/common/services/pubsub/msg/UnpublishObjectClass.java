@@ -18,6 +18,8 @@ import java.util.HashSet;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class UnpublishObjectClass extends PorticoMessage
 {
@@ -35,6 +37,11 @@ public class UnpublishObjectClass extends PorticoMessage
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public UnpublishObjectClass()
+	{
+		super();
+	}
 	@Override 
 	public MessageType getType()
 	{
@@ -76,6 +83,25 @@ public class UnpublishObjectClass extends PorticoMessage
 		this.attributes = attributes;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( classHandle );
+		output.putIntCollection( attributes );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.classHandle = input.getInt();
+		this.attributes = input.getIntSet();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
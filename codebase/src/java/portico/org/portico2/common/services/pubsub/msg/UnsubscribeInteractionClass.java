@@ -17,6 +17,8 @@ package org.portico2.common.services.pubsub.msg;
 import org.portico.lrc.PorticoConstants;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class UnsubscribeInteractionClass extends PorticoMessage
 {
@@ -34,6 +36,11 @@ public class UnsubscribeInteractionClass extends PorticoMessage
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public UnsubscribeInteractionClass()
+	{
+		super();
+	}
 	@Override 
 	public MessageType getType()
 	{
@@ -81,6 +88,25 @@ public class UnsubscribeInteractionClass extends PorticoMessage
 		return this.regionToken != PorticoConstants.NULL_HANDLE;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( classHandle );
+		output.putInt( regionToken );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.classHandle = input.getInt();
+		this.regionToken = input.getInt();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
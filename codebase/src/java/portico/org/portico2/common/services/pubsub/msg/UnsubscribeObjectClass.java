@@ -19,6 +19,8 @@ import java.util.HashSet;
 import org.portico.lrc.PorticoConstants;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class UnsubscribeObjectClass extends PorticoMessage
 {
@@ -37,6 +39,11 @@ public class UnsubscribeObjectClass extends PorticoMessage
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public UnsubscribeObjectClass()
+	{
+		super();
+	}
 	@Override 
 	public MessageType getType()
 	{
@@ -100,6 +107,27 @@ public class UnsubscribeObjectClass extends PorticoMessage
 		this.attributes = attributes;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putInt( classHandle );
+		output.putInt( regionToken );
+		output.putIntCollection( attributes );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.classHandle = input.getInt();
+		this.regionToken = input.getInt();
+		this.attributes = input.getIntSet();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
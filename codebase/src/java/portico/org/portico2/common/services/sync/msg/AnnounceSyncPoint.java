@@ -20,6 +20,8 @@ import java.util.Set;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 import org.portico2.rti.services.sync.data.SyncPoint;
 
 /**
@@ -43,6 +45,12 @@ public class AnnounceSyncPoint extends PorticoMessage
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public AnnounceSyncPoint()
+	{
+		super();
+	}
+
 	public AnnounceSyncPoint( SyncPoint point )
 	{
 		this.label = point.getLabel();
@@ -114,6 +122,27 @@ public class AnnounceSyncPoint extends PorticoMessage
 		return this.federates;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putString( label );
+		output.putBytes( tag );
+		output.putIntCollection( federates );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.label = input.getString();
+		this.tag = input.getBytes();
+		this.federates = input.getIntSet();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
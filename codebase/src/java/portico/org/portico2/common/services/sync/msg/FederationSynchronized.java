@@ -16,6 +16,8 @@ package org.portico2.common.services.sync.msg;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 import org.portico2.rti.services.sync.data.SyncPoint;
 
 public class FederationSynchronized extends PorticoMessage
@@ -33,6 +35,12 @@ public class FederationSynchronized extends PorticoMessage
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public FederationSynchronized()
+	{
+		super();
+	}
+
 	public FederationSynchronized( SyncPoint point )
 	{
 		this.label = point.getLabel();
@@ -57,6 +65,23 @@ public class FederationSynchronized extends PorticoMessage
 		return this.label;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putString( label );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.label = input.getString();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
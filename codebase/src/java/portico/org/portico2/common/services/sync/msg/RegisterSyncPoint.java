@@ -20,6 +20,8 @@ import java.util.Set;
 import org.portico.lrc.services.sync.data.SyncPoint;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * This message represents the request to register a sync point with the given label and federate
@@ -43,6 +45,12 @@ public class RegisterSyncPoint extends PorticoMessage
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
+
+	public RegisterSyncPoint()
+	{
+		super();
+	}
+
 	public RegisterSyncPoint( String label, byte[] tag )
 	{
 		this.label = label;
@@ -135,6 +143,27 @@ public class RegisterSyncPoint extends PorticoMessage
 		return this.federates;
 	}
 	
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putString( label );
+		output.putBytes( tag );
+		output.putIntCollection( federates );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.label = input.getString();
+		this.tag = input.getBytes();
+		this.federates = input.getIntSet();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
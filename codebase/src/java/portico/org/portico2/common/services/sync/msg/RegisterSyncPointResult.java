@@ -16,6 +16,8 @@ package org.portico2.common.services.sync.msg;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * This represents a callback message to inform a federate whether its synchronization point
@@ -43,6 +45,11 @@ public class RegisterSyncPointResult extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public RegisterSyncPointResult()
+	{
+		super();
+	}
+
 	public RegisterSyncPointResult( boolean status, String label )
 	{
 		this.label = label;
@@ -127,6 +134,27 @@ public class RegisterSyncPointResult extends PorticoMessage
 			return "Registration FAILURE: label=" + label + ", reason=" + failureReason;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putString( label );
+		output.putString( failureReason );
+		output.putBytes( tag );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.label = input.getString();
+		this.failureReason = input.getString();
+		this.tag = input.getBytes();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -16,6 +16,8 @@ package org.portico2.common.services.sync.msg;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * Signal that a federate has achieved a synchronization point.
@@ -36,6 +38,11 @@ public class SyncPointAchieved extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public SyncPointAchieved()
+	{
+		super();
+	}
+
 	public SyncPointAchieved( String label )
 	{
 		this.label = label;
@@ -61,6 +68,23 @@ public class SyncPointAchieved extends PorticoMessage
 		this.label = label;
 	}
 	
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putString( label );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.label = input.getString();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -16,6 +16,8 @@ package org.portico2.common.services.time.msg;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class EnableTimeRegulation extends PorticoMessage
 {
@@ -34,6 +36,11 @@ public class EnableTimeRegulation extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public EnableTimeRegulation()
+	{
+		super();
+	}
+
 	public EnableTimeRegulation( double federateTime, double lookahead )
 	{
 		this.federateTime = federateTime;
@@ -69,6 +76,25 @@ public class EnableTimeRegulation extends PorticoMessage
     	this.lookahead = lookahead;
     }
 	
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putDouble( federateTime );
+		output.putDouble( lookahead );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.federateTime = input.getDouble();
+		this.lookahead = input.getDouble();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
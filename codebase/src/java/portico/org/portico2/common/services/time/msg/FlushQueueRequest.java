@@ -16,6 +16,8 @@ package org.portico2.common.services.time.msg;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class FlushQueueRequest extends PorticoMessage
 {
@@ -33,6 +35,11 @@ public class FlushQueueRequest extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public FlushQueueRequest()
+	{
+		super();
+	}
+
 	public FlushQueueRequest( double time )
 	{
 		setTime( time );
@@ -72,6 +79,23 @@ public class FlushQueueRequest extends PorticoMessage
 		return true;
 	}
 	
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putDouble( time );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.time = input.getDouble();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
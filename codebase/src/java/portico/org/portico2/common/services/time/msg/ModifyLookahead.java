@@ -16,6 +16,8 @@ package org.portico2.common.services.time.msg;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class ModifyLookahead extends PorticoMessage
 {
@@ -33,6 +35,11 @@ public class ModifyLookahead extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public ModifyLookahead()
+	{
+		super();
+	}
+
 	public ModifyLookahead( double lookahead )
 	{
 		this.lookahead = lookahead;
@@ -57,6 +64,23 @@ public class ModifyLookahead extends PorticoMessage
 		this.lookahead = lookahead;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putDouble( lookahead );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.lookahead = input.getDouble();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
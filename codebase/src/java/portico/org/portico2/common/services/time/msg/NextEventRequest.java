@@ -20,6 +20,8 @@ import java.io.ObjectOutput;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class NextEventRequest extends PorticoMessage
 {
@@ -38,6 +40,11 @@ public class NextEventRequest extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public NextEventRequest()
+	{
+		super();
+	}
+
 	public NextEventRequest( double time )
 	{
 		this.time = time;
@@ -96,6 +103,25 @@ public class NextEventRequest extends PorticoMessage
 		output.writeBoolean( this.nera );
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putDouble( time );
+		output.putBoolean( nera );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.time = input.getDouble();
+		this.nera = input.getBoolean();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
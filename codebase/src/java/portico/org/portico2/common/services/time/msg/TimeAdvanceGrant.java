@@ -16,6 +16,8 @@ package org.portico2.common.services.time.msg;
 
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 /**
  * Message that represents a time advance grant. Note that this message has two separate time
@@ -41,6 +43,11 @@ public class TimeAdvanceGrant extends PorticoMessage
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 
+	public TimeAdvanceGrant()
+	{
+		super();
+	}
+
 	public TimeAdvanceGrant( double time )
 	{
 		setTime( time );
@@ -76,6 +83,23 @@ public class TimeAdvanceGrant extends PorticoMessage
 		return true;
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putDouble( time );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.time = input.getDouble();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -21,6 +21,8 @@ import java.io.ObjectOutput;
 import org.portico.lrc.PorticoConstants;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageType;
+import org.portico2.common.messaging.codec.CodecInput;
+import org.portico2.common.messaging.codec.CodecOutput;
 
 public class TimeAdvanceRequest extends PorticoMessage
 {
@@ -118,6 +120,25 @@ public class TimeAdvanceRequest extends PorticoMessage
 		output.writeBoolean( this.tara );
 	}
 
+	/////////////////////////////////////////////////////////////
+	/////////////////////// Codec Methods ///////////////////////
+	/////////////////////////////////////////////////////////////
+	@Override
+	public void encode( CodecOutput output )
+	{
+		super.encode( output );
+		output.putDouble( time );
+		output.putBoolean( tara );
+	}
+
+	@Override
+	public void decode( CodecInput input )
+	{
+		super.decode( input );
+		this.time = input.getDouble();
+		this.tara = input.getBoolean();
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
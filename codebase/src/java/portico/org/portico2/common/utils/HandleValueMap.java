@@ -0,0 +1,448 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.utils;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map of int handles to byte[] values, such as the attributes in an update or the parameters
+ * in an interaction. These are created for every update and interaction that passes through the
+ * RTI, so this is built to avoid the boxing and per-entry allocation that a
+ * <code>HashMap&lt;Integer,byte[]&gt;</code> would need.
+ * <p/>
+ *
+ * Entries are kept in two dense arrays (handles and values) in the order they were added, with an
+ * open addressing (linear probe) hash table over the top that points into them. Lookups by handle
+ * are done through the table. Iterating is done by position, which doesn't allocate anything:
+ *
+ * <pre>
+ * for( int i = 0; i < map.size(); i++ )
+ *     doSomething( map.handleAt(i), map.valueAt(i) );
+ * </pre>
+ *
+ * The class is also a {@link Map}, so it can be handed to any code that hasn't been updated to
+ * use the int methods. Going through the <code>Map</code> interface will box the keys though, so
+ * it should be avoided on any hot path. Note that <code>get(int)</code>, <code>put(int,byte[])</code>
+ * and friends are chosen over their <code>Map</code> versions whenever they are called with an int.
+ * <p/>
+ *
+ * Removing an entry moves the last entry into its place, so it changes the position of (at
+ * most) one other entry. This class is not thread-safe.
+ */
+public class HandleValueMap extends AbstractMap<Integer,byte[]> implements Serializable
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final long serialVersionUID = 98121116105109L;
+
+	private static final int[] EMPTY_HANDLES = new int[0];
+	private static final byte[][] EMPTY_VALUES = new byte[0][];
+	private static final int MIN_TABLE = 8;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private int[] handles;    // dense, in the order they were added
+	private byte[][] values;  // value for the handle at the same position
+	private int size;
+	private int[] table;      // hash table of (position+1) into the arrays above, 0 is empty
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public HandleValueMap()
+	{
+		this( 0 );
+	}
+
+	/**
+	 * @param expected The number of entries the map should be able to hold without growing
+	 */
+	public HandleValueMap( int expected )
+	{
+		this.handles = expected == 0 ? EMPTY_HANDLES : new int[expected];
+		this.values = expected == 0 ? EMPTY_VALUES : new byte[expected][];
+		this.size = 0;
+		this.table = new int[tableSizeFor(expected)];
+	}
+
+	/**
+	 * Create a new map holding all the entries of the given one. If the given map is a
+	 * <code>HandleValueMap</code> this is the same as {@link #copy()}.
+	 */
+	public HandleValueMap( Map<Integer,byte[]> other )
+	{
+		this( other.size() );
+		if( other instanceof HandleValueMap )
+		{
+			HandleValueMap map = (HandleValueMap)other;
+			System.arraycopy( map.handles, 0, this.handles, 0, map.size );
+			System.arraycopy( map.values, 0, this.values, 0, map.size );
+			this.size = map.size;
+			this.table = map.table.clone();
+		}
+		else
+		{
+			for( Map.Entry<Integer,byte[]> entry : other.entrySet() )
+				put( entry.getKey().intValue(), entry.getValue() );
+		}
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Primitive Access   ////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/** @return The value for the handle, or <code>null</code> if there isn't one */
+	public byte[] get( int handle )
+	{
+		int position = positionOf( handle );
+		return position == -1 ? null : values[position];
+	}
+
+	public boolean containsKey( int handle )
+	{
+		return positionOf( handle ) != -1;
+	}
+
+	/**
+	 * Store the value against the handle, replacing any value it already had.
+	 *
+	 * @return The previous value for the handle, or <code>null</code> if there wasn't one
+	 */
+	public byte[] put( int handle, byte[] value )
+	{
+		int slot = slotFor( handle );
+		int entry = table[slot];
+		if( entry != 0 )
+		{
+			byte[] old = values[entry-1];
+			values[entry-1] = value;
+			return old;
+		}
+
+		if( size == handles.length )
+		{
+			grow();
+			slot = slotFor( handle );
+		}
+
+		handles[size] = handle;
+		values[size] = value;
+		table[slot] = ++size;
+		return null;
+	}
+
+	/**
+	 * Remove the value for the handle. The last entry in the map is moved into its position.
+	 *
+	 * @return The value that was removed, or <code>null</code> if there wasn't one
+	 */
+	public byte[] remove( int handle )
+	{
+		int position = positionOf( handle );
+		return position == -1 ? null : removeAt( position );
+	}
+
+	/** @return The handle at the given position, which must be less than {@link #size()} */
+	public int handleAt( int position )
+	{
+		return handles[position];
+	}
+
+	/** @return The value at the given position, which must be less than {@link #size()} */
+	public byte[] valueAt( int position )
+	{
+		return values[position];
+	}
+
+	/**
+	 * @return The position the handle is stored at (for use with {@link #handleAt(int)} and
+	 *         {@link #valueAt(int)}), or -1 if it isn't in the map
+	 */
+	public int positionOf( int handle )
+	{
+		int entry = table[slotFor(handle)];
+		return entry - 1;
+	}
+
+	/** @return A new map with its own copy of the entries in this one (the values are shared) */
+	public HandleValueMap copy()
+	{
+		return new HandleValueMap( this );
+	}
+
+	/** @return A new map with its own copy of the entries in this one, and of each value */
+	public HandleValueMap copyWithValues()
+	{
+		HandleValueMap copy = new HandleValueMap( this );
+		for( int i = 0; i < copy.size; i++ )
+		{
+			if( copy.values[i] != null )
+				copy.values[i] = copy.values[i].clone();
+		}
+
+		return copy;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	@Override
+	public void clear()
+	{
+		Arrays.fill( values, 0, size, null );
+		Arrays.fill( table, 0 );
+		this.size = 0;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Map Methods   //////////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Override
+	public byte[] get( Object key )
+	{
+		return key instanceof Integer ? get( ((Integer)key).intValue() ) : null;
+	}
+
+	@Override
+	public boolean containsKey( Object key )
+	{
+		return key instanceof Integer && containsKey( ((Integer)key).intValue() );
+	}
+
+	@Override
+	public byte[] put( Integer key, byte[] value )
+	{
+		return put( key.intValue(), value );
+	}
+
+	@Override
+	public byte[] remove( Object key )
+	{
+		return key instanceof Integer ? remove( ((Integer)key).intValue() ) : null;
+	}
+
+	@Override
+	public Set<Map.Entry<Integer,byte[]>> entrySet()
+	{
+		return new EntrySet();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Hash Table Maintenance   //////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * @return The slot in the table that holds the handle, or the empty slot it would go in
+	 */
+	private int slotFor( int handle )
+	{
+		int mask = table.length - 1;
+		int slot = mix( handle ) & mask;
+		for( int entry = table[slot]; entry != 0; entry = table[slot] )
+		{
+			if( handles[entry-1] == handle )
+				return slot;
+
+			slot = (slot+1) & mask;
+		}
+
+		return slot;
+	}
+
+	private byte[] removeAt( int position )
+	{
+		byte[] removed = values[position];
+
+		// take the entry out of the table, shifting back any that probed past it
+		int mask = table.length - 1;
+		int hole = slotFor( handles[position] );
+		int slot = hole;
+		while( true )
+		{
+			slot = (slot+1) & mask;
+			int entry = table[slot];
+			if( entry == 0 )
+				break;
+
+			// can the entry in this slot move back into the hole? only if its home
+			// slot is not between the hole and where it is now
+			int home = mix( handles[entry-1] ) & mask;
+			if( ((slot-home) & mask) >= ((slot-hole) & mask) )
+			{
+				table[hole] = entry;
+				hole = slot;
+			}
+		}
+		table[hole] = 0;
+
+		// move the last entry into the gap so the arrays stay dense
+		int last = --size;
+		if( position != last )
+		{
+			table[slotFor(handles[last])] = position+1;
+			handles[position] = handles[last];
+			values[position] = values[last];
+		}
+
+		values[last] = null;
+		return removed;
+	}
+
+	private void grow()
+	{
+		int capacity = Math.max( 4, handles.length*2 );
+		this.handles = Arrays.copyOf( handles, capacity );
+		this.values = Arrays.copyOf( values, capacity );
+
+		// rebuild the table at the new size
+		this.table = new int[tableSizeFor(capacity)];
+		int mask = table.length - 1;
+		for( int i = 0; i < size; i++ )
+		{
+			int slot = mix( handles[i] ) & mask;
+			while( table[slot] != 0 )
+				slot = (slot+1) & mask;
+
+			table[slot] = i+1;
+		}
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+	/**
+	 * @return The given map if it is already a <code>HandleValueMap</code> (or is null), otherwise
+	 *         a new <code>HandleValueMap</code> holding all its entries
+	 */
+	public static HandleValueMap from( Map<Integer,byte[]> map )
+	{
+		if( map == null || map instanceof HandleValueMap )
+			return (HandleValueMap)map;
+		else
+			return new HandleValueMap( map );
+	}
+
+	/** Table is kept at no more than half full, so probes stay short */
+	private static int tableSizeFor( int capacity )
+	{
+		int size = MIN_TABLE;
+		while( size < capacity*2 )
+			size <<= 1;
+
+		return size;
+	}
+
+	/** Handles are mostly small sequential numbers, so spread them out across the table */
+	private static int mix( int handle )
+	{
+		int hash = handle * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Private Inner Class: EntrySet   ///////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	private class EntrySet extends AbstractSet<Map.Entry<Integer,byte[]>>
+	{
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public void clear()
+		{
+			HandleValueMap.this.clear();
+		}
+
+		@Override
+		public Iterator<Map.Entry<Integer,byte[]>> iterator()
+		{
+			return new Iterator<Map.Entry<Integer,byte[]>>()
+			{
+				private int next = 0;
+				private int last = -1;
+
+				public boolean hasNext()
+				{
+					return next < size;
+				}
+
+				public Map.Entry<Integer,byte[]> next()
+				{
+					if( next >= size )
+						throw new NoSuchElementException();
+
+					last = next++;
+					return new Entry( last );
+				}
+
+				public void remove()
+				{
+					if( last == -1 )
+						throw new IllegalStateException();
+
+					// the last entry moves into the removed position, so visit that one next
+					removeAt( last );
+					next = last;
+					last = -1;
+				}
+			};
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Private Inner Class: Entry   //////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	private class Entry extends AbstractMap.SimpleEntry<Integer,byte[]>
+	{
+		private static final long serialVersionUID = 98121116105109L;
+		private final int position;
+
+		private Entry( int position )
+		{
+			super( handles[position], values[position] );
+			this.position = position;
+		}
+
+		@Override
+		public byte[] setValue( byte[] value )
+		{
+			values[position] = value;
+			return super.setValue( value );
+		}
+	}
+}
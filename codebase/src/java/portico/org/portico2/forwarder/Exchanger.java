@@ -125,6 +125,10 @@ public class Exchanger
 
 		logger.info( "Stopping DOWNSTREAM connection" );
 		this.downstream.disconnect();
+
+		// Let people know what the firewall let through and what it blocked
+		if( firewall.isEnabled() )
+			logger.info( "%s", firewall.getStatistics() );
 		
 		logger.info( "Exchanger is DOWN" );
 	}
@@ -148,6 +152,11 @@ public class Exchanger
 	{
 		return this.forwarder;
 	}
+
+	public Firewall getFirewall()
+	{
+		return this.firewall;
+	}
 	
 	
 //	/*
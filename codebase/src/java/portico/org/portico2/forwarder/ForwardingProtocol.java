@@ -149,9 +149,18 @@ public class ForwardingProtocol extends Protocol
 			{
 				// Only data messages that pass our filtering rules can get through.
 				// Check the rulez and link it through to its siblings if it is cool.
+				//
+				// The rules are class based, and only updates and interactions say what
+				// class they are for (see Header#isFiltering()). Other data messages have
+				// nothing for the rules to match against, so they go straight through.
+				Header header = message.getHeader();
+				if( header.isFiltering() == false )
+				{
+					targetStack.down( message );
+					break;
+				}
 
 				// Check the rulez!
-				Header header = message.getHeader();
 				if( firewall.acceptUpdate(directionOfTravel,
 				                          header.isFilteringObjectClass(),
 				                          header.getFederation(),
@@ -81,6 +81,10 @@ public class ForwarderCli implements Runnable
 			forwarder.shutdown();
 			Thread.currentThread().interrupt();
 		}
+		else if( command.equals("firewall") )
+		{
+			this.console.printf( "%s", forwarder.getExchanger().getFirewall().getStatistics() );
+		}
 		else
 		{
 			this.console.printf( "command not known: %s\n", command );
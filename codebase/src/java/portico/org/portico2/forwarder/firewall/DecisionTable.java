@@ -0,0 +1,169 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.forwarder.firewall;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.portico2.forwarder.tracking.Federation;
+
+/**
+ * Remembers the decisions the {@link Firewall} has made for the classes of a single federation,
+ * so that once a class has been matched against the rules it never has to be again. There is
+ * one column of decisions for each of the firewall's rule sets, indexed by class handle.
+ * <p/>
+ * 
+ * Decisions are made lazily, the first time an update for a class is seen. Each records the
+ * {@link Federation#getModelVersion() model version} it was made against. If the FOM of the
+ * federation is replaced (say, because a joining federate brought new modules with it) then
+ * the versions no longer match and the decision is made again. The counter for the class is
+ * kept across this, so the totals always cover the whole life of the federation.
+ * <p/>
+ * 
+ * Lookups take no locks. Decisions are only ever added (or replaced) while holding the lock
+ * on the table, and because all the fields of a {@link Decision} are final, a reader that sees
+ * one at all sees all of it. A reader that sees a stale column just falls through to
+ * {@link #put(int, int, String, Rule)}, which checks again under the lock.
+ */
+class DecisionTable
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int INITIAL_SIZE = 64;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Federation federation;
+	private Decision[][] columns;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	protected DecisionTable( Federation federation, int ruleSets )
+	{
+		this.federation = federation;
+		this.columns = new Decision[ruleSets][INITIAL_SIZE];
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * @return The decision for the class in the given rule set, or <code>null</code> if one
+	 *         hasn't been made yet or the one that was is out of date
+	 */
+	protected Decision get( int ruleSet, int classHandle )
+	{
+		Decision[] column = columns[ruleSet];
+		if( classHandle >= column.length )
+			return null;
+
+		Decision decision = column[classHandle];
+		if( decision == null || decision.modelVersion != federation.getModelVersion() )
+			return null;
+		else
+			return decision;
+	}
+
+	/**
+	 * Record the decision for a class. If another thread got there first with a decision
+	 * against the same version of the FOM, that one is returned instead.
+	 * 
+	 * @param ruleSet       The rule set the decision was made with
+	 * @param classHandle   The handle of the class the decision is for
+	 * @param qualifiedName The qualified name of the class
+	 * @param rule          The rule that matched the class, or <code>null</code> if none did
+	 * @return The decision that is now stored for the class
+	 */
+	protected synchronized Decision put( int ruleSet, int classHandle, String qualifiedName, Rule rule )
+	{
+		int modelVersion = federation.getModelVersion();
+		Decision[] column = columns[ruleSet];
+		if( classHandle >= column.length )
+		{
+			column = Arrays.copyOf( column, Math.max(classHandle+1,column.length*2) );
+			columns[ruleSet] = column;
+		}
+
+		// keep counting against the existing decision if it is for the same class
+		Decision existing = column[classHandle];
+		if( existing != null && existing.modelVersion == modelVersion )
+			return existing;
+
+		LongAdder count = new LongAdder();
+		if( existing != null && existing.qualifiedName.equals(qualifiedName) )
+			count = existing.count;
+
+		Decision decision = new Decision( qualifiedName, rule, modelVersion, count );
+		column[classHandle] = decision;
+		return decision;
+	}
+
+	/**
+	 * @return All the decisions that have been made for the given rule set
+	 */
+	protected synchronized List<Decision> getDecisions( int ruleSet )
+	{
+		List<Decision> list = new ArrayList<>();
+		for( Decision decision : columns[ruleSet] )
+		{
+			if( decision != null )
+				list.add( decision );
+		}
+
+		return list;
+	}
+
+	protected Federation getFederation()
+	{
+		return this.federation;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/// Inner Class: Decision   ///////////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Whether updates for a class are let through the firewall, the rule that let them through
+	 * (if any did) and the number of updates for the class the firewall has seen.
+	 */
+	protected static class Decision
+	{
+		protected final String qualifiedName;
+		protected final Rule rule;
+		protected final int modelVersion;
+		protected final LongAdder count;
+
+		private Decision( String qualifiedName, Rule rule, int modelVersion, LongAdder count )
+		{
+			this.qualifiedName = qualifiedName;
+			this.rule = rule;
+			this.modelVersion = modelVersion;
+			this.count = count;
+		}
+
+		protected boolean isAccepted()
+		{
+			return rule != null;
+		}
+	}
+}
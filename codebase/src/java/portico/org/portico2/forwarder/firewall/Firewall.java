@@ -14,15 +14,19 @@
  */
 package org.portico2.forwarder.firewall;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.portico2.common.configuration.ForwarderConfiguration;
 import org.portico2.forwarder.Direction;
+import org.portico2.forwarder.firewall.DecisionTable.Decision;
+import org.portico2.forwarder.tracking.Federation;
 import org.portico2.forwarder.tracking.StateTracker;
 
 /**
@@ -32,13 +36,38 @@ import org.portico2.forwarder.tracking.StateTracker;
  * message, it then uses the {@link StateTracker} to resolve handles into a qualified name
  * and will match that against the rules from the configuration file.</p>
  * 
- * If the types overlap with a configured rule, the firewall advises of the match.
+ * If the types overlap with a configured rule, the firewall advises of the match.</p>
+ * 
+ * Matching a name against every rule is far too slow to do for every message, so the answer
+ * for each class is only worked out the first time we see it. After that it is remembered in
+ * a {@link DecisionTable} for the federation (one column per rule set, indexed by class handle)
+ * and each message costs no more than a couple of array lookups. The tables look after their
+ * own invalidation when the FOM of a federation changes. Handles we can't resolve yet are
+ * rejected without a decision being stored, so they are looked at again once we learn them.</p>
+ * 
+ * Each {@link Rule} counts the messages it has let through, and each decision counts the
+ * messages for its class, so we can see what the firewall is doing. See {@link #getStatistics()}.</p>
+ * 
+ * The handles come from the filtering id in the message header. Until the LRC started filtering
+ * on it, every data message was sent with a filtering id of 0, so with the firewall enabled
+ * nothing resolved and every update and interaction was rejected. Updates and interactions now
+ * carry their real object and interaction class handles, so the configured rules decide what
+ * gets through. Data messages without a filtering id are not given to the firewall at all.
  */
 public class Firewall
 {
 	//----------------------------------------------------------
 	//                    STATIC VARIABLES
 	//----------------------------------------------------------
+	// Rule sets. Decision tables have a column for each of these.
+	private static final int IMPORT_OBJECTS      = 0;
+	private static final int IMPORT_INTERACTIONS = 1;
+	private static final int EXPORT_OBJECTS      = 2;
+	private static final int EXPORT_INTERACTIONS = 3;
+	private static final String[] RULE_SET_NAMES = { "Import - Objects",
+	                                                 "Import - Interactions",
+	                                                 "Export - Objects",
+	                                                 "Export - Interactions" };
 
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
@@ -48,10 +77,9 @@ public class Firewall
 	private Logger logger;
 	private boolean enabled;
 	
-	private Map<String,Pattern> allowedImportObjects;
-	private Map<String,Pattern> allowedImportInteractions;
-	private Map<String,Pattern> allowedExportObjects;
-	private Map<String,Pattern> allowedExportInteractions;
+	private Rule[][] ruleSets;
+	private Map<Integer,DecisionTable> decisionTables;
+	private LongAdder unresolved;
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -66,27 +94,25 @@ public class Firewall
 		this.enabled = configuration.isFirewallEnabled();
 		
 		// extract the allows import/export class configuration
-		this.allowedImportObjects      = new HashMap<>();
-		this.allowedImportInteractions = new HashMap<>();
-		this.allowedExportObjects      = new HashMap<>();
-		this.allowedExportInteractions = new HashMap<>();
+		this.ruleSets = new Rule[4][];
+		this.ruleSets[IMPORT_OBJECTS]      = buildRules( configuration.getAllowedImportObjects() );
+		this.ruleSets[IMPORT_INTERACTIONS] = buildRules( configuration.getAllowedImportInteractions() );
+		this.ruleSets[EXPORT_OBJECTS]      = buildRules( configuration.getAllowedExportObjects() );
+		this.ruleSets[EXPORT_INTERACTIONS] = buildRules( configuration.getAllowedExportInteractions() );
 		
-		buildPatternMap( configuration.getAllowedImportObjects(), allowedImportObjects );
-		buildPatternMap( configuration.getAllowedExportObjects(), allowedExportObjects );
-		buildPatternMap( configuration.getAllowedImportInteractions(), allowedImportInteractions );
-		buildPatternMap( configuration.getAllowedExportInteractions(), allowedExportInteractions );
+		this.decisionTables = new ConcurrentHashMap<>();
+		this.unresolved = new LongAdder();
 		logConfiguration();
 	}
 	
-	private void buildPatternMap( Set<String> strings, Map<String,Pattern> store )
+	private Rule[] buildRules( Set<String> strings )
 	{
+		Rule[] rules = new Rule[strings.size()];
+		int index = 0;
 		for( String temp : strings )
-		{
-			//  Case Insensitive: (?i)
-			// Wildcard Sequence: .*?
-			String regex = "(?i)"+temp.replace( "*" , ".*?" );
-			store.put( temp, Pattern.compile(regex) );
-		}
+			rules[index++] = new Rule( temp );
+		
+		return rules;
 	}
 
 	//----------------------------------------------------------
@@ -109,8 +135,9 @@ public class Firewall
 	 * @param direction        Direction the message is travelling so we can use correct rule set
 	 * @param objectUpdate     Is this an object update (true) or an interaction (false)
 	 * @param federationHandle The handle of the federation we're in (so we can find the FOM for it)
-	 * @param classHandle      The object/interaction class handle to lookup the qualified name for
-	 *                         and then match against the rule set.
+	 * @param classHandle      The interaction class handle, or for object updates, the handle of
+	 *                         the object. We find the class and its qualified name to match against
+	 *                         the rule set.
 	 * @return True if the message should be accepted and forwarded; false otherwise
 	 */
 	public final boolean acceptUpdate( Direction direction,
@@ -122,53 +149,165 @@ public class Firewall
 		if( !enabled )
 			return true;
 
-		// find the qualified name for the class
-		String qualifiedName = objectUpdate ? stateTracker.resolveObjectHandleToClassName(federationHandle,classHandle) :
-		                                      stateTracker.resolveInteractionClass(federationHandle,classHandle) ;
-		
-		// figure out the pattern set we need to match against depending on whether the
+		// find the class handle, which for reflections means finding the class of the object
+		Federation federation = stateTracker.getFederation( federationHandle );
+		if( federation != null && objectUpdate )
+			classHandle = federation.getObjectClassHandle( classHandle );
+
+		if( federation == null || classHandle < 0 )
+			return rejectUnresolved( direction, objectUpdate, federationHandle, classHandle );
+
+		// figure out the rule set we need to match against depending on whether the
 		// flow is upstream or downstream, and whether it is an interaction of reflection
-		Map<String,Pattern> patterns = null;
-		if( direction == Direction.Upstream )
+		int ruleSet = getRuleSet( direction, objectUpdate );
+
+		// have we already made a decision for this class?
+		DecisionTable table = decisionTables.get( federationHandle );
+		if( table == null || table.getFederation() != federation )
+			table = getDecisionTable( federationHandle, federation );
+
+		Decision decision = table.get( ruleSet, classHandle );
+		if( decision == null )
 		{
-			if( objectUpdate ) patterns = allowedExportObjects;
-			else               patterns = allowedExportInteractions;
+			decision = decide( table, ruleSet, federationHandle, classHandle, objectUpdate );
+			if( decision == null )
+				return rejectUnresolved( direction, objectUpdate, federationHandle, classHandle );
+		}
+
+		// count it and let it through (or not)
+		decision.count.increment();
+		if( decision.isAccepted() )
+		{
+			decision.rule.accepted();
+			if( logger.isTraceEnabled() )
+			{
+				logger.trace( "[ACCEPT] %s (%s) Firewall has matched %s against rule %s",
+				              direction.flowDirection(),
+				              objectUpdate ? "Reflection" : "Interaction",
+				              decision.qualifiedName,
+				              decision.rule );
+			}
+			return true;
 		}
 		else
 		{
-			if( objectUpdate ) patterns = allowedImportObjects;
-			else               patterns = allowedImportInteractions;
+			if( logger.isTraceEnabled() )
+			{
+				logger.trace( "[REJECT] %s (%s) Firewall has blocked %s",
+				              direction.flowDirection(),
+				              objectUpdate ? "Reflection" : "Interaction",
+				              decision.qualifiedName );
+			}
+			return false;
 		}
-		
-		// check all the patterns to see if we have a match
-		for( String rule : patterns.keySet() )
+	}
+
+	/**
+	 * Match the qualified name of the class against the rules in the set and store the result.
+	 * Returns <code>null</code> if we can't find the name of the class.
+	 */
+	private Decision decide( DecisionTable table,
+	                         int ruleSet,
+	                         int federationHandle,
+	                         int classHandle,
+	                         boolean objectUpdate )
+	{
+		// find the qualified name for the class
+		String qualifiedName = objectUpdate ? stateTracker.resolveObjectClass(federationHandle,classHandle) :
+		                                      stateTracker.resolveInteractionClass(federationHandle,classHandle);
+		if( qualifiedName == null )
+			return null;
+
+		// check all the rules to see if we have a match
+		Rule match = null;
+		for( Rule rule : ruleSets[ruleSet] )
 		{
-			Pattern pattern = patterns.get( rule ); 
-			if( pattern.matcher(qualifiedName).matches() )
+			if( rule.matches(qualifiedName) )
 			{
-				if( logger.isTraceEnabled() )
-				{
-    				logger.trace( "[ACCEPT] %s (%s) Firewall has matched %s against rule %s",
-    				              direction.flowDirection(),
-    				              objectUpdate ? "Reflection" : "Interaction",
-    				              qualifiedName,
-    				              rule );
-				}
-				return true;
+				match = rule;
+				break;
 			}
 		}
-		
-		// if we get here, there was no match, so it's denial time
+
+		if( logger.isDebugEnabled() )
+		{
+			logger.debug( "[%s] Firewall decision for %s in federation [%s]: %s",
+			              RULE_SET_NAMES[ruleSet],
+			              qualifiedName,
+			              table.getFederation().getName(),
+			              match == null ? "REJECT" : "ACCEPT (rule "+match+")" );
+		}
+
+		return table.put( ruleSet, classHandle, qualifiedName, match );
+	}
+
+	private int getRuleSet( Direction direction, boolean objects )
+	{
+		if( direction == Direction.Upstream )
+			return objects ? EXPORT_OBJECTS : EXPORT_INTERACTIONS;
+		else
+			return objects ? IMPORT_OBJECTS : IMPORT_INTERACTIONS;
+	}
+
+	private DecisionTable getDecisionTable( int federationHandle, Federation federation )
+	{
+		// the federation we know under this handle may have been replaced
+		return decisionTables.compute( federationHandle, (handle,existing) -> {
+			if( existing != null && existing.getFederation() == federation )
+				return existing;
+			else
+				return new DecisionTable( federation, ruleSets.length );
+		});
+	}
+
+	private boolean rejectUnresolved( Direction direction,
+	                                  boolean objectUpdate,
+	                                  int federationHandle,
+	                                  int classHandle )
+	{
+		unresolved.increment();
 		if( logger.isTraceEnabled() )
 		{
-    		logger.trace( "[REJECT] %s (%s) Firewall has blocked %s",
-    		              direction.flowDirection(),
-    		              objectUpdate ? "Reflection" : "Interaction",
-    		              qualifiedName );
+			logger.trace( "[REJECT] %s (%s) Firewall has blocked unknown handle %d in federation %d",
+			              direction.flowDirection(),
+			              objectUpdate ? "Reflection" : "Interaction",
+			              classHandle,
+			              federationHandle );
 		}
 		return false;
 	}
 
+	/**
+	 * @return A printable summary of the messages each rule has let through and the messages
+	 *         seen for each class in each federation, along with what happened to them
+	 */
+	public String getStatistics()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append( "Firewall Status: "+(enabled? "ENABLED":"DISABLED")+"\n" );
+		for( int ruleSet = 0; ruleSet < ruleSets.length; ruleSet++ )
+		{
+			builder.append( "  ["+RULE_SET_NAMES[ruleSet]+"]\n" );
+			for( Rule rule : ruleSets[ruleSet] )
+				builder.append( String.format("    rule %-40s accepted=%d\n",rule,rule.getAcceptedCount()) );
+
+			for( DecisionTable table : decisionTables.values() )
+			{
+				for( Decision decision : table.getDecisions(ruleSet) )
+				{
+					builder.append( String.format("    %-6s %-40s count=%d (federation %s)\n",
+					                              decision.isAccepted() ? "ACCEPT" : "REJECT",
+					                              decision.qualifiedName,
+					                              decision.count.sum(),
+					                              table.getFederation().getName()) );
+				}
+			}
+		}
+
+		builder.append( "  Unresolved handles rejected: "+unresolved.sum()+"\n" );
+		return builder.toString();
+	}
+
 	////////////////////////////////////////////////////////////////////////////////////////
 	///  Accessors and Mutators   //////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
@@ -177,31 +316,52 @@ public class Firewall
 		return this.enabled;
 	}
 
+	/**
+	 * @param direction The direction of travel the rules apply to
+	 * @param objects   True for the object class rules, false for the interaction class rules
+	 * @return The rules that are applied to messages of the given type travelling in the given
+	 *         direction, in the order they are checked
+	 */
+	public final List<Rule> getRules( Direction direction, boolean objects )
+	{
+		List<Rule> list = new ArrayList<>();
+		for( Rule rule : ruleSets[getRuleSet(direction,objects)] )
+			list.add( rule );
+		
+		return list;
+	}
+
+	/** @return Number of messages rejected because we couldn't resolve the federation, object or class */
+	public final long getUnresolvedCount()
+	{
+		return unresolved.sum();
+	}
+
 	private void logConfiguration()
 	{
 		logger.info( "Firewall Status: "+(enabled? "ENABLED":"DISABLED") );
 		logger.debug( "Firewall Configuration" );
 		logger.debug( "  [Import - Objects]" );
-		logConfigurationDetail( allowedImportObjects.keySet() );
+		logConfigurationDetail( ruleSets[IMPORT_OBJECTS] );
 		logger.debug( "  [Export - Objects]" );
-		logConfigurationDetail( allowedExportObjects.keySet() );
+		logConfigurationDetail( ruleSets[EXPORT_OBJECTS] );
 		logger.debug( "  [Import - Interactions]" );
-		logConfigurationDetail( allowedImportInteractions.keySet() );
+		logConfigurationDetail( ruleSets[IMPORT_INTERACTIONS] );
 		logger.debug( "  [Export - Interactions]" );
-		logConfigurationDetail( allowedExportInteractions.keySet() );
+		logConfigurationDetail( ruleSets[EXPORT_INTERACTIONS] );
 		logger.debug( "" );
 	}
 
-	private void logConfigurationDetail( Set<String> list )
+	private void logConfigurationDetail( Rule[] rules )
 	{
-		if( list.isEmpty() )
+		if( rules.length == 0 )
 		{
 			logger.debug( "    - None" );
 			return;
 		}
 		
-		for( String string : list )
-			logger.debug( "    - %s", string );
+		for( Rule rule : rules )
+			logger.debug( "    - %s", rule );
 	}
 
 	//----------------------------------------------------------
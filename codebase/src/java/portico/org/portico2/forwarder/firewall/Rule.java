@@ -0,0 +1,92 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.forwarder.firewall;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * A single "allow" rule from the firewall configuration. The rule is a class name that may
+ * contain <code>*</code> wildcards, and is matched against the qualified names of classes
+ * without regard to case. Each rule keeps a count of the messages it has let through.
+ */
+public class Rule
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private String rule;
+	private Pattern pattern;
+	private LongAdder accepted;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	protected Rule( String rule )
+	{
+		this.rule = rule;
+
+		//  Case Insensitive: (?i)
+		// Wildcard Sequence: .*?
+		this.pattern = Pattern.compile( "(?i)"+rule.replace("*",".*?") );
+		this.accepted = new LongAdder();
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * @param qualifiedName The qualified name of an object or interaction class
+	 * @return True if this rule allows updates for the class
+	 */
+	public boolean matches( String qualifiedName )
+	{
+		return pattern.matcher(qualifiedName).matches();
+	}
+
+	protected void accepted()
+	{
+		accepted.increment();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Accessors and Mutators   //////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/** @return The rule as it was given in the configuration */
+	public String getRule()
+	{
+		return this.rule;
+	}
+
+	/** @return The number of messages this rule has let through the firewall */
+	public long getAcceptedCount()
+	{
+		return accepted.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.rule;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
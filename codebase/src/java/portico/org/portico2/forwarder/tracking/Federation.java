@@ -32,7 +32,8 @@ public class Federation
 	//----------------------------------------------------------
 	private String name;
 	private ObjectModel fom;
-	private Map<Integer,String> objectToClassQName;
+	private volatile int modelVersion;
+	private Map<Integer,Integer> objectToClassHandle;
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -41,7 +42,8 @@ public class Federation
 	{
 		this.name = name;
 		this.fom = model;
-		this.objectToClassQName = new HashMap<>();
+		this.modelVersion = 0;
+		this.objectToClassHandle = new HashMap<>();
 	}
 
 	//----------------------------------------------------------
@@ -54,18 +56,21 @@ public class Federation
 	/**
 	 * When a federate joins a federation, it may expand the FOM. As such, whenever we see
 	 * a federation join call we need to take the new FOM and use it in place of the old.
+	 * Doing so bumps the {@link #getModelVersion() model version} so that anything caching
+	 * decisions made against the old FOM knows to throw them away.
 	 * 
 	 * @param fom The new FOM that was part of a successful federation join
 	 */
 	protected void updateFOM( ObjectModel fom )
 	{
 		this.fom = fom;
+		this.modelVersion++;
 	}
 
 	/**
-	 * Store information about an object that was registered. We pre-cache the qualified
-	 * name of its registering class so we can quickly look it up later via the method
-	 * {@link #resolveObjectHandleToClassName(int)}.
+	 * Store information about an object that was registered. We pre-cache the handle of
+	 * its registering class so we can quickly look it up later via the method
+	 * {@link #getObjectClassHandle(int)}.
 	 * 
 	 * @param objectHandle The handle of the object that was added
 	 * @param classHandle  The class handle for the object that was added
@@ -79,14 +84,14 @@ public class Federation
 		if( qname == null )
 			return false;
 
-		// register the name against the object handle
-		objectToClassQName.put( objectHandle, qname );
+		// register the class against the object handle
+		objectToClassHandle.put( objectHandle, classHandle );
 		return true;
 	}
 	
 	protected void removeObject( int objectHandle )
 	{
-		objectToClassQName.remove( objectHandle );
+		objectToClassHandle.remove( objectHandle );
 	}
 	
 	////////////////////////////////////////////////////////////////////////////////////////
@@ -94,7 +99,11 @@ public class Federation
 	////////////////////////////////////////////////////////////////////////////////////////
 	protected final String resolveObjectHandleToClassName( int objectHandle )
 	{
-		return objectToClassQName.get( objectHandle );
+		Integer classHandle = objectToClassHandle.get( objectHandle );
+		if( classHandle != null )
+			return resolveClassHandleToName( classHandle );
+		else
+			return null;
 	}
 	
 	protected final String resolveClassHandleToName( int classHandle )
@@ -124,6 +133,26 @@ public class Federation
 		return this.name;
 	}
 
+	/**
+	 * @param objectHandle The handle of the object to find the class of
+	 * @return The handle of the class the object was registered as, or -1 if we don't know
+	 *         about the object
+	 */
+	public int getObjectClassHandle( int objectHandle )
+	{
+		Integer classHandle = objectToClassHandle.get( objectHandle );
+		return classHandle == null ? -1 : classHandle;
+	}
+
+	/**
+	 * @return A number that changes each time the FOM for this federation is replaced (for
+	 *         example, when a joining federate adds modules to it)
+	 */
+	public int getModelVersion()
+	{
+		return this.modelVersion;
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
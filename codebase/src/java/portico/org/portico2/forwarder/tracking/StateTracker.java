@@ -184,7 +184,7 @@ public class StateTracker
 			             welcome.getFederationHandle() );
 
 			federation = new Federation( welcome.getFederationName(), welcome.getFOM() );
-			federations.put( welcome.getFederateHandle(), federation );
+			federations.put( welcome.getFederationHandle(), federation );
 		}
 		else
 		{
@@ -271,6 +271,15 @@ public class StateTracker
 	////////////////////////////////////////////////////////////////////////////////////////
 	///  Accessors and Mutators   //////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * @param federationHandle The handle of the federation to find
+	 * @return The federation we are tracking with the given handle, or null if we don't know it
+	 */
+	public final Federation getFederation( int federationHandle )
+	{
+		return federations.get( federationHandle );
+	}
+
 	/**
 	 * This method will check our store of objects and look up the one with the given object handle.
 	 * We'll the return the fully qualified name of the class it is an instance of.<p/>
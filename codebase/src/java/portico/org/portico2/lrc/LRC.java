@@ -38,6 +38,7 @@ import org.portico2.common.messaging.MessageContext;
 import org.portico2.common.messaging.MessageSink;
 import org.portico2.common.messaging.ResponseMessage;
 import org.portico2.common.messaging.VetoException;
+import org.portico2.common.services.mom.msg.ReceiveFilterReport;
 import org.portico2.common.services.object.msg.SendInteraction;
 import org.portico2.rti.services.mom.data.MomEncodingHelpers;
 
@@ -72,6 +73,7 @@ public class LRC
 
 	// Callback Processing //
 	private Thread immediateCallbackDispatcher;
+	private Runnable callbackFlush; // hands over callbacks a binding is holding, may be null
 	
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -111,6 +113,7 @@ public class LRC
 		
 		// the immediate callback processing remains null until turned on explictly
 		this.immediateCallbackDispatcher = null;
+		this.callbackFlush = null;
 
 		// create the LRCState component that has most of the state-holding components inside it
 		this.state = new LRCState( this );
@@ -259,6 +262,8 @@ public class LRC
         {
         	// reset the ticking status flag, this will always execute, even in the case
         	// of an InterruptedException (which returns right away)
+        	flushCallbacks();
+        	reportReceiveFilter();
         	state.setTicking( false );
         }
 
@@ -278,6 +283,9 @@ public class LRC
 	 * <code>max</code> value. If the method starts processing a message just before the max time
 	 * would be up, that processing could take up long enough to go beyond the max time. No more
 	 * messages would be processed after it, but processing could still run beyond the max time.
+	 * The same goes for any callbacks the binding is holding on to (see
+	 * {@link #setCallbackFlush(Runnable)}). They are handed over before we return, so the time
+	 * that takes is on top of the max time.
 	 * 
 	 * @return Return true if there are more messages waiting to be processed, false otherwise
 	 */
@@ -312,6 +320,10 @@ public class LRC
 			Timestamp minimumTimestamp = new Timestamp( minTime );
 			while( System.currentTimeMillis() < minTime )
 			{
+				// don't sit on held callbacks while we wait for more to turn up
+				if( state.messageQueue.isEmpty() )
+					flushCallbacks();
+
 				PorticoMessage message = state.messageQueue.pollUntil( minimumTimestamp );
 				if( message == null )
 					break;
@@ -338,6 +350,8 @@ public class LRC
 		}
 		finally
 		{
+			flushCallbacks();
+			reportReceiveFilter();
 			state.setTicking( false );
 		}
 	}
@@ -390,6 +404,8 @@ public class LRC
 		}
 		finally
 		{
+			flushCallbacks();
+			reportReceiveFilter();
 			state.setTicking( false );
 		}
 	}
@@ -430,6 +446,8 @@ public class LRC
 		finally
 		{
 			// reset the ticking status flag
+			flushCallbacks();
+			reportReceiveFilter();
 			state.setTicking( false );
 		}
 		
@@ -477,6 +495,50 @@ public class LRC
 		}
 	}
 
+	/**
+	 * Hand over any callbacks the binding is holding on to. Called at the end of each tick while
+	 * we are still flagged as ticking, so the federate can't call back into the RTI as it gets them.
+	 */
+	private void flushCallbacks()
+	{
+		Runnable flush = this.callbackFlush;
+		if( flush == null )
+			return;
+
+		try
+		{
+			flush.run();
+		}
+		catch( Exception e )
+		{
+			logger.error( "FAILURE Exception encountered while handing over held callbacks: " +
+			              e.getMessage(), e );
+		}
+	}
+
+	/**
+	 * Every so often, let the RTI know how much our {@link ReceiveFilter} has thrown away so that
+	 * it ends up in the federate's metrics. Called at the end of each tick. We don't need anything
+	 * from the response, so we don't wait for it.
+	 */
+	private void reportReceiveFilter()
+	{
+		ReceiveFilterReport report = state.getReceiveFilter().pollReport( System.currentTimeMillis() );
+		if( report == null )
+			return;
+
+		report.setSourceFederate( state.getFederateHandle() );
+		report.setTargetFederation( state.getFederationHandle() );
+		try
+		{
+			connection2.sendControlRequestAsync( report );
+		}
+		catch( JRTIinternalError rtie )
+		{
+			logger.debug( "Could not send receive filter report to the RTI: %s", rtie.getMessage() );
+		}
+	}
+
 	/**
 	 * The IEEE-1516 and 1516e standards provide facilities to allow the immediate delivery
 	 * of callback messages rather than the usual asynchronous/tick delivery mechanism. To
@@ -568,6 +630,19 @@ public class LRC
 		return this.incoming;
 	}
 
+	/**
+	 * Some bindings (the C++ one for example) don't pass callbacks on as they are processed, but
+	 * hold on to them and hand them over in groups. The given task will be run at the end of every
+	 * tick, before the federate stops being flagged as ticking, so that everything it is holding
+	 * is delivered inside the tick call that processed it.
+	 *
+	 * @param flush Task to hand over any held callbacks, or null to remove it
+	 */
+	public void setCallbackFlush( Runnable flush )
+	{
+		this.callbackFlush = flush;
+	}
+
 	/**
 	 * Reports the invocation of a RTIambassador or FederateAmbassador service (whether successful or 
 	 * not) to the federation.
@@ -14,6 +14,8 @@
  */
 package org.portico2.lrc;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.apache.logging.log4j.Logger;
 import org.portico.lrc.compat.JConfigurationException;
 import org.portico.lrc.compat.JConnectionFailed;
@@ -22,6 +24,7 @@ import org.portico.lrc.compat.JRTIinternalError;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.PorticoConstants;
 import org.portico2.common.messaging.MessageContext;
+import org.portico2.common.messaging.ResponseMessage;
 import org.portico2.common.network.Connection;
 import org.portico2.common.network.Header;
 import org.portico2.common.network.IApplicationReceiver;
@@ -93,6 +96,17 @@ public class LRCConnection implements IApplicationReceiver
 		this.connection.sendControlRequest( context );
 	}
 	
+	/**
+	 * Send the given control request to the RTI without waiting for the response.
+	 * See {@link Connection#sendControlRequestAsync(PorticoMessage)}.
+	 */
+	public CompletableFuture<ResponseMessage> sendControlRequestAsync( PorticoMessage request )
+		throws JRTIinternalError
+	{
+		request.setTargetFederate( PorticoConstants.RTI_HANDLE );
+		return this.connection.sendControlRequestAsync( request );
+	}
+
 	public void sendDataMessage( PorticoMessage message ) throws JException
 	{
 		this.connection.sendDataMessage( message );
@@ -113,6 +127,7 @@ public class LRCConnection implements IApplicationReceiver
 			return;
 
 		// Dump the request into the queue and send back a generic success response
+		lrc.getState().getReceiveFilter().snoop( request );
 		lrc.getState().getQueue().offer( request );
 		context.success();
 	}
@@ -128,12 +143,17 @@ public class LRCConnection implements IApplicationReceiver
 	public void receiveNotification( PorticoMessage incoming ) throws JException
 	{
 		// Drop this into the LRC message queue for processing
+		lrc.getState().getReceiveFilter().snoop( incoming );
 		lrc.getState().getQueue().offer( incoming );
 	}
 	
 	@Override
 	public final boolean isReceivable( Header header )
 	{
+		// Data messages we aren't interested in can be dropped based on the header alone
+		if( header.isDataMessage() )
+			return lrc.getState().getReceiveFilter().accept( header );
+
 		// Just filter out ones targeting the RTI for now. We can filter the rest later.
 		return header.getTargetFederate() != PorticoConstants.RTI_HANDLE;
 	}
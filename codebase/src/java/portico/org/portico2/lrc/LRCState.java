@@ -42,6 +42,7 @@ public class LRCState
 	protected LRC theLRC;
 	protected LRCMessageQueue messageQueue;
 	private   boolean isQueueLogging; // debugging only
+	private   ReceiveFilter receiveFilter;
 	
 	// Basic settings //
 	private String  federateName;
@@ -125,6 +126,9 @@ public class LRCState
 		// queue holding all incoming messages for the LRC
 		this.messageQueue = new LRCMessageQueue( this );
 		
+		// drops data messages we aren't interested in before they are inflated
+		this.receiveFilter = new ReceiveFilter( this );
+		
 		// Region Store //
 		this.regionStore = new RegionStore();
 		
@@ -183,12 +187,16 @@ public class LRCState
 		this.federateType = federateType;
 		this.federationName = federationName;
 		this.fom = fom;
+		this.fom.lock(); // it won't be locked if it was sent to us
 		this.interestManager.setFOM( fom );
 		this.joined = true;
 		
 		// tell the time manager that we've joined and cache the local state
 		this.timeStatus.reset();
 		
+		// we know who we are and what the FOM is, so we can start filtering
+		this.receiveFilter.joined();
+		
 		// tell the save/restore managers that the local federate is in here
 //		saveManager.joinedFederation( federateHandle );
 //		restoreManager.joinedFederation( federateHandle );
@@ -207,6 +215,7 @@ public class LRCState
 	 */
 	public void localFederateResignedFromFederation()
 	{
+		theLRC.logger.debug( "Receive filter for federate [%s]: %s", federateName, receiveFilter );
 		this.theLRC.reinitialize();
 	}
 	
@@ -321,6 +330,11 @@ public class LRCState
 		return this.messageQueue;
 	}
 
+	public ReceiveFilter getReceiveFilter()
+	{
+		return this.receiveFilter;
+	}
+
 	public String getFederateName()
 	{
 		return federateName;
@@ -0,0 +1,463 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.lrc;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.portico.lrc.model.ICMetadata;
+import org.portico.lrc.model.OCMetadata;
+import org.portico.lrc.model.ObjectModel;
+import org.portico.utils.messaging.PorticoMessage;
+import org.portico2.common.network.Header;
+import org.portico2.common.services.mom.msg.ReceiveFilterReport;
+import org.portico2.common.services.object.msg.DiscoverObject;
+import org.portico2.common.services.pubsub.data.InterestManager;
+
+/**
+ * Lets the LRC throw away data messages it has no interest in using only their {@link Header},
+ * before any time is spent inflating them. Without this, every reflection and interaction is
+ * deserialized, queued and passed to its handler, only to be vetoed there because we aren't
+ * subscribed. When the RTI falls back to broadcasting, or when running over a shared medium,
+ * that is most of what we receive.
+ * <p/>
+ *
+ * The filtering id in the header of a data message is the interaction class handle for an
+ * interaction, and the object handle for a reflection. We keep:
+ *
+ * <ul>
+ *   <li>A bitmap of the interaction and object classes we can receive. A class is receivable if
+ *       we subscribe to it or any of its parents. It is rebuilt from the {@link InterestManager}
+ *       whenever our subscriptions change.</li>
+ *   <li>A table from object handle to class handle for every object we have been told about. We
+ *       learn these from discoveries as they come off the network (before they are processed)
+ *       and from our own registrations.</li>
+ * </ul>
+ *
+ * Only messages that their handlers would definitely veto are dropped:
+ *
+ * <ul>
+ *   <li>Any data message we sent ourselves</li>
+ *   <li>Interactions of a class that isn't receivable</li>
+ *   <li>Reflections of an object whose class isn't receivable</li>
+ *   <li>Reflections of an object we have never heard of, but only if we are not constrained.
+ *       Messages then come out of the queue in the order they arrived. A discovery that arrives
+ *       after the reflection would have been processed after it too. When we are constrained,
+ *       a TSO reflection can be held back until after a later discovery, so we keep these.</li>
+ * </ul>
+ *
+ * Anything we're not sure about (a class handle we don't know, an object handle that doesn't fit
+ * in the 16-bit filtering id) is let through. The handlers still make the final decision.
+ * <p/>
+ *
+ * The drop counts are sent to the RTI every so often in a {@link ReceiveFilterReport}, which
+ * puts them in the federate's metrics so they can be seen from the RTI.
+ * <p/>
+ *
+ * Checking a header is lock free and can be done from any thread. Everything else should be
+ * called from the threads that change our subscriptions or repository.
+ */
+public class ReceiveFilter
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int OBJECT_SLOTS = 65536; // filtering ids are uint16
+	private static final int UNKNOWN = 0;          // no object in this slot
+	private static final int AMBIGUOUS = -1;       // can't tell which object this slot is for
+	private static final long REPORT_INTERVAL = 5000; // millis, see pollReport()
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private LRCState state;
+	private volatile boolean enabled;         // only filter once we have joined
+
+	// receivable classes, replaced as a whole when subscriptions change
+	private volatile ClassSet interactionClasses;
+	private volatile ClassSet objectClasses;
+
+	// object handle -> class handle + 1 (so that 0 can mean unknown)
+	private AtomicIntegerArray objects;
+
+	// metrics
+	private LongAdder droppedOwn;
+	private LongAdder droppedInteractions;
+	private LongAdder droppedReflections;
+	private LongAdder droppedUnknownObjects;
+
+	// what we last told the RTI
+	private long lastReportTime;
+	private long lastReportTotal;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	protected ReceiveFilter( LRCState state )
+	{
+		this.state = state;
+		this.enabled = false;
+		this.interactionClasses = new ClassSet( 0 );
+		this.objectClasses = new ClassSet( 0 );
+		this.objects = new AtomicIntegerArray( OBJECT_SLOTS );
+
+		this.droppedOwn = new LongAdder();
+		this.droppedInteractions = new LongAdder();
+		this.droppedReflections = new LongAdder();
+		this.droppedUnknownObjects = new LongAdder();
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * Check the header of a data message to see whether it is worth inflating.
+	 *
+	 * @param header The header of a data message
+	 * @return <code>false</code> if the message can safely be discarded, <code>true</code> if
+	 *         it should be processed as normal
+	 */
+	public boolean accept( Header header )
+	{
+		if( enabled == false || header.isFiltering() == false )
+			return true;
+
+		// did we send this?
+		if( header.getSourceFederate() == state.getFederateHandle() )
+		{
+			droppedOwn.increment();
+			return false;
+		}
+
+		int id = header.getFilteringId();
+		if( header.isFilteringObjectClass() )
+		{
+			int entry = objects.get( id );
+			if( entry == AMBIGUOUS )
+				return true;
+
+			if( entry == UNKNOWN )
+			{
+				// see the class comments for why we care about being constrained
+				if( state.getTimeStatus().isConstrained() )
+					return true;
+
+				droppedUnknownObjects.increment();
+				return false;
+			}
+
+			if( objectClasses.contains(entry-1) )
+				return true;
+
+			droppedReflections.increment();
+			return false;
+		}
+		else
+		{
+			if( interactionClasses.contains(id) )
+				return true;
+
+			droppedInteractions.increment();
+			return false;
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Subscription Changes   ////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Start filtering. Called once we have joined and the FOM is known.
+	 */
+	public void joined()
+	{
+		refresh();
+		this.enabled = true;
+	}
+
+	/**
+	 * Rebuild the set of receivable classes from our current subscriptions. Call this after
+	 * any subscription has been added or removed.
+	 */
+	public void refresh()
+	{
+		ObjectModel fom = state.getFOM();
+		if( fom == null )
+			return;
+
+		InterestManager interests = state.getInterestManager();
+		int federateHandle = state.getFederateHandle();
+
+		// interaction classes
+		int limit = 0;
+		for( ICMetadata clazz : fom.getAllInteractionClasses() )
+			limit = Math.max( limit, clazz.getHandle()+1 );
+
+		ClassSet interactions = new ClassSet( limit );
+		for( ICMetadata clazz : fom.getAllInteractionClasses() )
+		{
+			// receivable if we subscribe to it or any of its parents
+			for( ICMetadata current = clazz; current != null; current = current.getParent() )
+			{
+				if( interests.isInteractionClassSubscribed(federateHandle,current.getHandle()) )
+				{
+					interactions.add( clazz.getHandle() );
+					break;
+				}
+			}
+		}
+
+		// object classes
+		limit = 0;
+		for( OCMetadata clazz : fom.getAllObjectClasses() )
+			limit = Math.max( limit, clazz.getHandle()+1 );
+
+		ClassSet objects = new ClassSet( limit );
+		for( OCMetadata clazz : fom.getAllObjectClasses() )
+		{
+			for( OCMetadata current = clazz; current != null; current = current.getParent() )
+			{
+				if( interests.isObjectClassSubscribed(federateHandle,current.getHandle()) )
+				{
+					objects.add( clazz.getHandle() );
+					break;
+				}
+			}
+		}
+
+		this.interactionClasses = interactions;
+		this.objectClasses = objects;
+	}
+
+	/**
+	 * We are about to ask the RTI to subscribe to the interaction class. Start accepting it now
+	 * so that nothing sent after the RTI has recorded the subscription is lost while we wait for
+	 * the response. {@link #refresh()} once the request is done to put things right if it fails.
+	 */
+	public void subscribingToInteractionClass( int classHandle )
+	{
+		ClassSet updated = interactionClasses.copy();
+		for( ICMetadata clazz : state.getFOM().getAllInteractionClasses() )
+		{
+			if( isSubclassOrSame(clazz,classHandle) )
+				updated.add( clazz.getHandle() );
+		}
+
+		this.interactionClasses = updated;
+	}
+
+	/**
+	 * Same as {@link #subscribingToInteractionClass(int)}, but for object classes.
+	 */
+	public void subscribingToObjectClass( int classHandle )
+	{
+		ClassSet updated = objectClasses.copy();
+		for( OCMetadata clazz : state.getFOM().getAllObjectClasses() )
+		{
+			if( isSubclassOrSame(clazz,classHandle) )
+				updated.add( clazz.getHandle() );
+		}
+
+		this.objectClasses = updated;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Object Tracking   /////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Take a look at a control message or notification as it comes off the network. If it is
+	 * a discovery, remember the class of the object.
+	 */
+	public void snoop( PorticoMessage message )
+	{
+		if( message instanceof DiscoverObject )
+		{
+			DiscoverObject discover = (DiscoverObject)message;
+			objectKnown( discover.getObjectHandle(), discover.getClassHandle() );
+		}
+	}
+
+	/**
+	 * Record the class of an object so that reflections for it can be filtered.
+	 */
+	public void objectKnown( int objectHandle, int classHandle )
+	{
+		int slot = objectHandle & (OBJECT_SLOTS-1);
+		if( objectHandle >= OBJECT_SLOTS || objectHandle < 0 )
+		{
+			// the filtering id is truncated, so we can't tell objects in this slot apart
+			objects.set( slot, AMBIGUOUS );
+			return;
+		}
+
+		if( objects.get(slot) != AMBIGUOUS )
+			objects.set( slot, classHandle+1 );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Metrics   /////////////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/** @return Number of data messages dropped because we sent them */
+	public long getDroppedOwn()
+	{
+		return droppedOwn.sum();
+	}
+
+	/** @return Number of interactions dropped because we don't subscribe to their class */
+	public long getDroppedInteractions()
+	{
+		return droppedInteractions.sum();
+	}
+
+	/** @return Number of reflections dropped because we don't subscribe to the object's class */
+	public long getDroppedReflections()
+	{
+		return droppedReflections.sum();
+	}
+
+	/** @return Number of reflections dropped because we have never heard of the object */
+	public long getDroppedUnknownObjects()
+	{
+		return droppedUnknownObjects.sum();
+	}
+
+	/** @return Total number of data messages dropped before being inflated */
+	public long getDroppedTotal()
+	{
+		return getDroppedOwn() + getDroppedInteractions() +
+		       getDroppedReflections() + getDroppedUnknownObjects();
+	}
+
+	/**
+	 * If the counts have changed since we last reported them and it has been a while since we
+	 * did, create a report of them for the RTI. This is called at the end of every tick, so it
+	 * doesn't do anything more than a clock check most of the time.
+	 *
+	 * @param now The current time in millis
+	 * @return A report to send to the RTI, or <code>null</code> if there's nothing to send yet
+	 */
+	public synchronized ReceiveFilterReport pollReport( long now )
+	{
+		if( enabled == false || now - lastReportTime < REPORT_INTERVAL )
+			return null;
+
+		if( getDroppedTotal() == lastReportTotal )
+			return null;
+
+		return createReport( now );
+	}
+
+	/**
+	 * Create a report of the current counts for the RTI, whether they have changed or not.
+	 * Used when we are about to resign so the RTI has the final numbers.
+	 *
+	 * @param now The current time in millis
+	 * @return A report to send to the RTI
+	 */
+	public synchronized ReceiveFilterReport createReport( long now )
+	{
+		ReceiveFilterReport report = new ReceiveFilterReport( getDroppedOwn(),
+		                                                      getDroppedInteractions(),
+		                                                      getDroppedReflections(),
+		                                                      getDroppedUnknownObjects() );
+		this.lastReportTime = now;
+		this.lastReportTotal = report.getDroppedTotal();
+		return report;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "dropped=%d (own=%d, interactions=%d, reflections=%d, unknownObjects=%d)",
+		                      getDroppedTotal(),
+		                      getDroppedOwn(),
+		                      getDroppedInteractions(),
+		                      getDroppedReflections(),
+		                      getDroppedUnknownObjects() );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Helpers   /////////////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	private boolean isSubclassOrSame( ICMetadata clazz, int handle )
+	{
+		for( ; clazz != null; clazz = clazz.getParent() )
+		{
+			if( clazz.getHandle() == handle )
+				return true;
+		}
+
+		return false;
+	}
+
+	private boolean isSubclassOrSame( OCMetadata clazz, int handle )
+	{
+		for( ; clazz != null; clazz = clazz.getParent() )
+		{
+			if( clazz.getHandle() == handle )
+				return true;
+		}
+
+		return false;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Private Inner Class: ClassSet   ///////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * A bitmap of class handles along with the range of handles it knows about. Once published
+	 * through one of the volatile fields above it is never changed, so readers don't need a lock.
+	 */
+	private static class ClassSet
+	{
+		private final long[] bits;
+		private final int limit; // handles at or above this weren't in the FOM when we were built
+
+		private ClassSet( int limit )
+		{
+			this.bits = new long[(limit+63) >>> 6];
+			this.limit = limit;
+		}
+
+		private ClassSet( ClassSet other )
+		{
+			this.bits = other.bits.clone();
+			this.limit = other.limit;
+		}
+
+		private ClassSet copy()
+		{
+			return new ClassSet( this );
+		}
+
+		private void add( int handle )
+		{
+			if( handle >= 0 && handle < limit )
+				bits[handle >>> 6] |= (1L << handle);
+		}
+
+		private boolean contains( int handle )
+		{
+			// unknown handles (new classes from a module merge?) get the benefit of the doubt
+			if( handle < 0 || handle >= limit )
+				return true;
+
+			return (bits[handle >>> 6] & (1L << handle)) != 0;
+		}
+	}
+}
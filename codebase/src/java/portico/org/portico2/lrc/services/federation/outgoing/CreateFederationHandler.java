@@ -83,7 +83,10 @@ public class CreateFederationHandler extends LRCMessageHandler
 		// Ditch the MIM if it is present and then re-insert with specific handles so that we can
 		// look up MOM handles without using names (thus support cross spec-version naming schemes).
 		ObjectModel.mommify( combinedFOM );
-		ObjectModel.resolveSymbols( combinedFOM ); 
+		ObjectModel.resolveSymbols( combinedFOM );
+
+		// it won't change from here on, lock it so lookups can use the index
+		combinedFOM.lock();
 		
 		// we have our grand unified FOM!
 		request.setModel( combinedFOM, modules );
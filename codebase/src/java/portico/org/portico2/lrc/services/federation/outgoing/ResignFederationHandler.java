@@ -20,6 +20,7 @@ import org.portico.lrc.compat.JConfigurationException;
 import org.portico.lrc.compat.JException;
 import org.portico2.common.messaging.MessageContext;
 import org.portico2.common.services.federation.msg.ResignFederation;
+import org.portico2.common.services.mom.msg.ReceiveFilterReport;
 import org.portico2.lrc.LRCMessageHandler;
 
 public class ResignFederationHandler extends LRCMessageHandler
@@ -65,6 +66,9 @@ public class ResignFederationHandler extends LRCMessageHandler
 		              "] from federation ["+federationName+
 		              "]: action="+request.getResignAction() );
 
+		// give the RTI the final receive filter counts while we're still a member
+		reportReceiveFilter();
+
 		// send the resign notification to the connection and the federation
 		connection.sendControlRequest( context );
 		if( context.isErrorResponse() )
@@ -77,7 +81,19 @@ public class ResignFederationHandler extends LRCMessageHandler
 		             "] from federation ["+federationName+
 		             "]: action="+request.getResignAction() );
 	}
-	
+
+	private void reportReceiveFilter()
+	{
+		ReceiveFilterReport report =
+			fill( lrcState.getReceiveFilter().createReport(System.currentTimeMillis()) );
+		MessageContext reportContext = new MessageContext( report );
+		connection.sendControlRequest( reportContext );
+		if( reportContext.isErrorResponse() )
+		{
+			logger.debug( "Receive filter report was rejected by the RTI: "+
+			              reportContext.getErrorResponseException().getMessage() );
+		}
+	}
 
 	//----------------------------------------------------------
 	//                     STATIC METHODS
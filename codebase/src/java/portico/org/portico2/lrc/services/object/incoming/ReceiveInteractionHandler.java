@@ -170,15 +170,13 @@ public class ReceiveInteractionHandler extends LRCMessageHandler
 			                             receivedToken );
 		}
 
-		// look at each region and consider if there is overlap
-		for( RegionInstance subscribedRegion : subscribed )
+		// look for a subscribed region that overlaps
+		RegionInstance subscribedRegion = regionStore.findOverlapping( subscribed, sentRegion );
+		if( subscribedRegion != null )
 		{
-			if( subscribedRegion.overlapsWith(sentRegion) )
-			{
-				// store the information about the region that caused the overlap in the message
-				notice.setReceivingRegionToken( subscribedRegion.getToken() );
-				return true;
-			}
+			// store the information about the region that caused the overlap in the message
+			notice.setReceivingRegionToken( subscribedRegion.getToken() );
+			return true;
 		}
 
 		// none of the provided regions overlap with the sent region, return false
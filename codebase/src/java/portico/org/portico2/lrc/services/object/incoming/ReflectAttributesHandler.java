@@ -25,6 +25,7 @@ import org.portico2.common.messaging.MessageContext;
 import org.portico2.common.services.ddm.data.RegionGroup;
 import org.portico2.common.services.object.msg.UpdateAttributes;
 import org.portico2.common.services.pubsub.data.OCInterest;
+import org.portico2.common.utils.HandleValueMap;
 import org.portico2.lrc.LRCMessageHandler;
 import org.portico2.lrc.services.object.data.LACInstance;
 import org.portico2.lrc.services.object.data.LOCInstance;
@@ -128,9 +129,11 @@ public class ReflectAttributesHandler extends LRCMessageHandler
 		if( subscriptionGroup == null )
 			return;
 		
-		Map<Integer,byte[]> raw = request.getAttributes();
-		for( Integer reflectedHandle : raw.keySet() )
+		HandleValueMap raw = request.getAttributes();
+		for( int i = 0; i < raw.size(); i++ )
 		{
+			int reflectedHandle = raw.handleAt( i );
+
 			// are we subscribed to this attribute?
 			Set<RegionInstance> subscribedRegions =
 				subscriptionGroup.getRegionsForAttribute( reflectedHandle );
@@ -142,7 +145,7 @@ public class ReflectAttributesHandler extends LRCMessageHandler
 			// of the processing as it is only ddm related
 			if( subscribedRegions.contains(null) )
 			{
-				request.addFilteredAttribute( reflectedHandle, raw.get(reflectedHandle), null );
+				request.addFilteredAttribute( reflectedHandle, null );
 				continue;
 			}
 			
@@ -150,21 +153,16 @@ public class ReflectAttributesHandler extends LRCMessageHandler
 			LACInstance reflectedAttribute = instance.getAttribute( reflectedHandle );
 			if( reflectedAttribute.getRegion() == null )
 			{
-				request.addFilteredAttribute( reflectedHandle, raw.get(reflectedHandle), null );
+				request.addFilteredAttribute( reflectedHandle, null );
 				continue;
 			}
 
 			// are we interested in this attribute with OVERLAPPING regions?
-			for( RegionInstance subscribedRegion : subscribedRegions )
-			{
-				if( subscribedRegion.overlapsWith(reflectedAttribute.getRegion()) )
-				{
-					request.addFilteredAttribute( reflectedHandle,
-					                              raw.get(reflectedHandle),
-					                              subscribedRegion );
-					break;
-				}
-			}
+			RegionInstance subscribedRegion =
+				regionStore.findOverlapping( subscribedRegions, reflectedAttribute.getRegion() );
+			
+			if( subscribedRegion != null )
+				request.addFilteredAttribute( reflectedHandle, subscribedRegion );
 		}
 	}
 
@@ -97,6 +97,7 @@ public class RegisterObjectHandler extends LRCMessageHandler
 
 		// Store the instance
 		repository.addObject( instance );
+		lrcState.getReceiveFilter().objectKnown( givenHandle, classHandle );
 		
 		// The RtiAmb implementations expect to extract the created OCInstance from the
 		// context, so replace the return information with that
@@ -14,9 +14,7 @@
  */
 package org.portico2.lrc.services.object.outgoing;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 
 import org.portico.lrc.compat.JConfigurationException;
 import org.portico.lrc.compat.JException;
@@ -30,6 +28,7 @@ import org.portico.lrc.model.RegionInstance;
 import org.portico.lrc.model.Space;
 import org.portico2.common.messaging.MessageContext;
 import org.portico2.common.services.object.msg.SendInteraction;
+import org.portico2.common.utils.HandleValueMap;
 import org.portico2.lrc.LRCMessageHandler;
 
 public class SendInteractionHandler extends LRCMessageHandler
@@ -65,7 +64,7 @@ public class SendInteractionHandler extends LRCMessageHandler
 		
 		SendInteraction request = context.getRequest( SendInteraction.class, this );
 		int classHandle = request.getInteractionId();
-		HashMap<Integer,byte[]> parameters = request.getParameters();
+		HandleValueMap parameters = request.getParameters();
 		int regionToken = request.getRegionToken(); // optional:default PorticoConstants.NULL_HANDLE
 
 		if( logger.isDebugEnabled() )
@@ -86,7 +85,7 @@ public class SendInteractionHandler extends LRCMessageHandler
 		// make sure the federate publishes the interaction class
 		ICMetadata interactionClass = validatePublication( request.getSourceFederate(),
 		                                                   classHandle,
-		                                                   parameters.keySet() );
+		                                                   parameters );
 		
 		// validate region data if required
 		if( request.usesDDM() )
@@ -115,7 +114,7 @@ public class SendInteractionHandler extends LRCMessageHandler
 	 */
 	private ICMetadata validatePublication( int federateHandle,
 	                                        int classHandle,
-	                                        Set<Integer> parameters )
+	                                        HandleValueMap parameters )
 		throws JInteractionClassNotDefined,
 		       JInteractionClassNotPublished,
 		       JInteractionParameterNotDefined
@@ -134,8 +133,9 @@ public class SendInteractionHandler extends LRCMessageHandler
 		}
 		
 		// check that all the parameters exist
-		for( int parameterHandle : parameters )
+		for( int i = 0; i < parameters.size(); i++ )
 		{
+			int parameterHandle = parameters.handleAt( i );
 			if( interactionClass.getParameter(parameterHandle) == null )
 			{
 				throw new JInteractionParameterNotDefined( "parameter ["+parameterHandle+
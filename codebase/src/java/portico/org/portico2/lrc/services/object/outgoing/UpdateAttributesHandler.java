@@ -14,7 +14,6 @@
  */
 package org.portico2.lrc.services.object.outgoing;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.portico.lrc.compat.JAttributeNotDefined;
@@ -24,6 +23,7 @@ import org.portico.lrc.compat.JException;
 import org.portico.lrc.compat.JObjectNotKnown;
 import org.portico2.common.messaging.MessageContext;
 import org.portico2.common.services.object.msg.UpdateAttributes;
+import org.portico2.common.utils.HandleValueMap;
 import org.portico2.lrc.LRCMessageHandler;
 import org.portico2.lrc.services.object.data.LACInstance;
 import org.portico2.lrc.services.object.data.LOCInstance;
@@ -61,7 +61,7 @@ public class UpdateAttributesHandler extends LRCMessageHandler
 		
 		UpdateAttributes request = context.getRequest( UpdateAttributes.class );
 		int objectHandle = request.getObjectId();
-		HashMap<Integer,byte[]> attributes = request.getAttributes();
+		HandleValueMap attributes = request.getAttributes();
 
 		if( logger.isDebugEnabled() )
 		{
@@ -83,8 +83,9 @@ public class UpdateAttributesHandler extends LRCMessageHandler
 		
 		// check each of the attributes to make sure that we own them and thus can update them
 		int federateHandle = lrcState.getFederateHandle();
-		for( Integer attributeHandle : attributes.keySet() )
+		for( int i = 0; i < attributes.size(); i++ )
 		{
+			int attributeHandle = attributes.handleAt( i );
 			LACInstance attributeInstance = instance.getAttribute( attributeHandle );
 			if( attributeInstance == null )
 			{
@@ -64,6 +64,9 @@ public class SubscribeInteractionClassHandler extends LRCMessageHandler
 			              request.usesDdm() ? "(region: "+regionToken+")" : "" );
 		}
 		
+		// let interactions of this class through now, the RTI may start sending them to us
+		// before we get its response
+		lrcState.getReceiveFilter().subscribingToInteractionClass( classHandle );
 		connection.sendControlRequest( context );
 		
 		if( context.isSuccessResponse() )
@@ -76,6 +79,7 @@ public class SubscribeInteractionClassHandler extends LRCMessageHandler
 		}
 		else
 		{
+			lrcState.getReceiveFilter().refresh();
 			throw context.getErrorResponseException();
 		}
 	}
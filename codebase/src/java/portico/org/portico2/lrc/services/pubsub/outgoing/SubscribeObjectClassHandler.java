@@ -102,7 +102,9 @@ public class SubscribeObjectClassHandler extends LRCMessageHandler
 			return;
 		}
 
-		// Send it to the RTI for handling
+		// Send it to the RTI for handling. Let reflections for this class through first, the RTI
+		// may start sending them to us before we get its response
+		lrcState.getReceiveFilter().subscribingToObjectClass( classHandle );
 		connection.sendControlRequest( context );
 		
 		// What happened!?
@@ -122,6 +124,7 @@ public class SubscribeObjectClassHandler extends LRCMessageHandler
 		}
 		else
 		{
+			lrcState.getReceiveFilter().refresh();
 			throw context.getErrorResponseException();
 		}
 	}
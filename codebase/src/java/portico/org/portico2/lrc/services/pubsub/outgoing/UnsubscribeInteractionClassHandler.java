@@ -71,6 +71,7 @@ public class UnsubscribeInteractionClassHandler extends LRCMessageHandler
 		if( context.isSuccessResponse() )
 		{
 			interests.unsubscribeInteractionClass( federateHandle, classHandle );
+			lrcState.getReceiveFilter().refresh();
 			logger.debug( "SUCCESS Unsubscribe interaction [%s] %s",
 			              ocMoniker(classHandle),
 			              request.usesDdm() ? "(region: "+regionToken+")" : "" );
@@ -73,6 +73,7 @@ public class UnsubscribeObjectClassHandler extends LRCMessageHandler
 		if( context.isSuccessResponse() )
 		{
 			interests.unsubscribeObjectClass( federateHandle(), classHandle, attributes );
+			lrcState.getReceiveFilter().refresh();
 			logger.info( "SUCCESS Unsubscribe from [%s] with attributes %s %s",
 			             ocMoniker(classHandle),
 			             acMoniker(attributes),
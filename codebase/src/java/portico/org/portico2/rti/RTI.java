@@ -20,6 +20,7 @@ import org.portico.lrc.compat.JConfigurationException;
 import org.portico2.common.configuration.RID;
 import org.portico2.common.configuration.StartupLogger;
 import org.portico2.common.logging.Log4jConfigurator;
+import org.portico2.rti.federation.DataPlane;
 import org.portico2.rti.federation.FederationManager;
 
 public class RTI
@@ -38,6 +39,7 @@ public class RTI
 	// Network Connections / Listeners
 	private RtiConnectionManager connectionManager;
 	private RtiInbox inbox; // processes messages
+	private DataPlane dataPlane; // forwards data messages for all federations
 	
 	// Active Federations
 	private FederationManager federationManager;
@@ -56,6 +58,7 @@ public class RTI
 
 		this.connectionManager = null; // set in startup()
 		this.inbox             = null; // set in startup()
+		this.dataPlane         = null; // set in startup()
 		this.federationManager = null; // set in startup()
 	}
 	
@@ -84,6 +87,7 @@ public class RTI
 		StartupLogger.logGenericStartupHeader( logger, rid );
 		
 		// prepare the RTI
+		this.dataPlane         = new DataPlane( rid.getRtiConfiguration(), logger );
 		this.federationManager = new FederationManager();
 		this.inbox             = new RtiInbox( this );
 		this.connectionManager = new RtiConnectionManager();
@@ -95,6 +99,7 @@ public class RTI
 		logger.info( "Starting the RTI" );
 		
 		// start the contained components
+		this.dataPlane.startup();
 		this.connectionManager.startup();
 		
 		// install a shutdown hook to clean up gracefully if the JVM is terminated
@@ -114,6 +119,9 @@ public class RTI
 		// kill the active connections
 		this.connectionManager.shutdown();
 		
+		// stop forwarding data messages
+		this.dataPlane.shutdown();
+		
 		this.running = false;
 	}
 
@@ -125,6 +133,11 @@ public class RTI
 		return this.inbox;
 	}
 
+	public DataPlane getDataPlane()
+	{
+		return this.dataPlane;
+	}
+
 	////////////////////////////////////////////////////////////////////////////////////////
 	///  Getters and Setters   /////////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
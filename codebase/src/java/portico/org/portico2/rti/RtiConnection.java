@@ -14,17 +14,21 @@
  */
 package org.portico2.rti;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.apache.logging.log4j.Logger;
 import org.portico.lrc.compat.JConfigurationException;
 import org.portico.lrc.compat.JException;
 import org.portico.lrc.compat.JRTIinternalError;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.messaging.MessageContext;
+import org.portico2.common.messaging.ResponseMessage;
 import org.portico2.common.network.Connection;
 import org.portico2.common.network.Connection.Host;
 import org.portico2.common.network.Connection.Status;
 import org.portico2.common.network.Header;
 import org.portico2.common.network.IApplicationReceiver;
+import org.portico2.common.network.Message;
 import org.portico2.common.network.configuration.ConnectionConfiguration;
 import org.portico2.common.network.transport.TransportType;
 import org.portico2.common.services.federation.msg.RtiProbe;
@@ -98,6 +102,16 @@ public class RtiConnection implements IApplicationReceiver
 	{
 		this.connection.sendControlRequest( context );
 	}
+
+	/**
+	 * Send the request without waiting for the response. See
+	 * {@link Connection#sendControlRequestAsync(PorticoMessage)}.
+	 */
+	public CompletableFuture<ResponseMessage> sendControlRequestAsync( PorticoMessage request )
+		throws JRTIinternalError
+	{
+		return this.connection.sendControlRequestAsync( request );
+	}
 	
 	/**
 	 * FIXME
@@ -107,6 +121,15 @@ public class RtiConnection implements IApplicationReceiver
 		this.connection.sendDataMessage( message );
 	}
 
+	/**
+	 * Send a data message that has already been deflated. The given {@link Message} must not be
+	 * passed to any other connection. See {@link Connection#sendDataMessage(Message)}.
+	 */
+	public void sendDataMessage( Message message ) throws JException
+	{
+		this.connection.sendDataMessage( message );
+	}
+
 
 	///////////////////////////////////////////////////////////////////////////////////////
 	///  Message RECEIVING methods   //////////////////////////////////////////////////////
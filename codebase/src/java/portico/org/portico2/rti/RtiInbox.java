@@ -89,7 +89,7 @@ public class RtiInbox
 					if( sourceFederate == PorticoConstants.RTI_HANDLE || 
 						targetFederation.containsFederate(sourceFederate) )
 					{
-						targetFederation.getIncomingSink().process( context );
+						targetFederation.processControlMessage( context );
 					}
 					else
 					{
@@ -254,7 +254,7 @@ public class RtiInbox
 			request.setConnection( connection ); // we need the connection when joining
     		
     		// Hand the message off to the federation's incoming sink
-    		federation.getIncomingSink().process( context );
+    		federation.processControlMessage( context );
     		
     		if( context.isSuccessResponse() )
     		{
@@ -279,7 +279,7 @@ public class RtiInbox
 			Federation federation = getFederation( request.getFederationName() );
     		
     		// Hand the message off to the federation's incoming sink
-    		federation.getIncomingSink().process( context );
+    		federation.processControlMessage( context );
 		}
 		catch( Exception e )
 		{
@@ -75,6 +75,9 @@ public class CreateFederation implements ICommand
 		ObjectModel fom = FomParser.parse( fedUrl );
 		ObjectModel.mommify( fom );
 		ObjectModel.resolveSymbols( fom );
+
+		// it won't change from here on, lock it so lookups can use the index
+		fom.lock();
 		
 		org.portico2.common.services.federation.msg.CreateFederation create = 
 			new org.portico2.common.services.federation.msg.CreateFederation();
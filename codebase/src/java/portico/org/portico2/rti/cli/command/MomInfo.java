@@ -159,6 +159,12 @@ public class MomInfo implements ICommand
 		paddedPrintln( console, "HLAtimeGrantedTime:", time.getCurrentTime() );
 		paddedPrintln( console, "HLAtimeAdvancingTime:", time.getRequestedTime() );
 		
+		// Portico specific, as last reported by the federate's LRC
+		paddedPrintln( console, "PorticoReceiveFilterDropped:", metrics.getReceiveFilterDroppedTotal() );
+		paddedPrintln( console, "PorticoReceiveFilterOwn:", metrics.getReceiveFilterDroppedOwn() );
+		paddedPrintln( console, "PorticoReceiveFilterInteractions:", metrics.getReceiveFilterDroppedInteractions() );
+		paddedPrintln( console, "PorticoReceiveFilterReflections:", metrics.getReceiveFilterDroppedReflections() );
+		paddedPrintln( console, "PorticoReceiveFilterUnknownObjects:", metrics.getReceiveFilterDroppedUnknownObjects() );
 	}
 	
 	private void paddedPrintln( TextDevice console, String key, String value )
@@ -176,6 +182,11 @@ public class MomInfo implements ICommand
 		console.printf( "%-36s%d\n", key, value );
 	}
 	
+	private void paddedPrintln( TextDevice console, String key, long value )
+	{
+		console.printf( "%-36s%d\n", key, value );
+	}
+	
 	private void paddedPrintln( TextDevice console, String key, double value )
 	{
 		console.printf( "%-36s%f\n", key, value );
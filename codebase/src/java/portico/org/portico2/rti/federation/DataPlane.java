@@ -0,0 +1,319 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.rti.federation;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+import org.portico.utils.messaging.PorticoMessage;
+import org.portico2.common.PorticoConstants;
+import org.portico2.common.configuration.RtiConfiguration;
+import org.portico2.common.configuration.RtiConfiguration.ShardBy;
+import org.portico2.common.services.object.msg.UpdateAttributes;
+import org.portico2.rti.RtiConnection;
+
+/**
+ * The data plane forwards the data messages of every federation in the RTI. It has a fixed set
+ * of worker threads, each with its own bounded queue (a shard). The connection that received a
+ * message picks a shard for it and hands it over, then goes straight back to reading. The worker
+ * does the rest: the MOM accounting, routing and sending (see
+ * {@link Federation#forwardDataMessage(PorticoMessage, RtiConnection)}).
+ * <p/>
+ *
+ * <b>Ordering</b><br/>
+ * Messages are given to a shard based on their federation and source federate, or for attribute
+ * updates when sharding by {@link ShardBy#Object}, their object. Each shard is processed in order
+ * by one thread, so messages with the same key are forwarded in the order they arrived. Control
+ * messages are processed on the receiving thread, one at a time per federation. Before one from a
+ * federate is processed, {@link #drain(Federation, int)} waits for the data messages already
+ * handed over from that federate, so a control message can't overtake data sent before it. If
+ * the shard stops making progress the drain fails, and so does the control message.
+ * <p/>
+ *
+ * <b>Back-pressure</b><br/>
+ * When a shard queue is full the receiving thread waits for room, so it stops reading from its
+ * connection. That slows the sender down instead of letting the RTI queue up without limit.
+ * <p/>
+ *
+ * Data messages created by the workers themselves are processed on the spot rather than queued,
+ * as a worker must never wait on a queue that it may have to empty. MOM service interactions are
+ * never given to the workers. The {@link Federation} handles them under its control lane, as they
+ * work with the same state as control messages.
+ */
+public class DataPlane
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	/** How long a drain will wait for a shard that isn't making any progress before failing */
+	private static final long DRAIN_STALL_MILLIS = 5000;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Logger logger;
+	private ShardBy shardBy;
+	private Worker[] workers;
+	private volatile boolean running;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	/**
+	 * @param configuration The RTI configuration to take the thread count, queue size and
+	 *                      sharding settings from
+	 * @param logger The RTI logger
+	 */
+	public DataPlane( RtiConfiguration configuration, Logger logger )
+	{
+		this.logger = logger;
+		this.shardBy = configuration.getShardBy();
+		this.workers = new Worker[configuration.getDataThreads()];
+		for( int i = 0; i < workers.length; i++ )
+			workers[i] = new Worker( i, configuration.getDataQueueSize() );
+
+		this.running = false;
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Lifecycle Management   ////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	public void startup()
+	{
+		for( Worker worker : workers )
+			worker.start();
+
+		this.running = true;
+		logger.debug( "Data plane started: threads=%d, queueSize=%d, shardBy=%s",
+		              workers.length,
+		              workers[0].queue.remainingCapacity(),
+		              shardBy );
+	}
+
+	/**
+	 * Stop all the worker threads. Any messages still queued are discarded.
+	 */
+	public void shutdown()
+	{
+		this.running = false;
+		for( Worker worker : workers )
+			worker.interrupt();
+
+		for( Worker worker : workers )
+		{
+			try
+			{
+				worker.join( 5000 );
+			}
+			catch( InterruptedException ie )
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Message Dispatch   /////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Hand the message to the shard it belongs to, waiting for room if that shard is full. If we
+	 * are not running, or this is one of our own workers, the message is forwarded right here.
+	 *
+	 * @param federation The federation the message is for
+	 * @param message The message to forward
+	 * @param sender The connection it came in on, or <code>null</code> if it came from the RTI
+	 */
+	public void dispatch( Federation federation, PorticoMessage message, RtiConnection sender )
+	{
+		if( running == false || Thread.currentThread() instanceof Worker )
+		{
+			federation.forwardDataMessage( message, sender );
+			return;
+		}
+
+		Worker worker = workers[shard(federation.getFederationHandle(),shardKey(message))];
+		worker.submit( () -> federation.forwardDataMessage(message,sender) );
+	}
+
+	/**
+	 * Wait until all the data messages that have been handed over from the given federate are
+	 * forwarded. If the shard(s) they could be in are idle this returns straight away. Called
+	 * before processing a control message from the federate.
+	 * <p/>
+	 * There is no overall time limit, a busy shard is waited on for as long as it keeps going.
+	 * If a shard goes {@value #DRAIN_STALL_MILLIS}ms without forwarding anything (or we are
+	 * interrupted) we give up and return <code>false</code>.
+	 *
+	 * @param federation The federation the federate is in
+	 * @param federateHandle The federate whose messages we have to wait for
+	 * @return True if everything has been forwarded, false if we gave up waiting
+	 */
+	public boolean drain( Federation federation, int federateHandle )
+	{
+		if( running == false ||
+			federateHandle == PorticoConstants.RTI_HANDLE ||
+			Thread.currentThread() instanceof Worker )
+			return true;
+
+		// When sharding by object the federate's updates could be in any of the shards
+		if( shardBy == ShardBy.Object )
+		{
+			for( Worker worker : workers )
+			{
+				if( worker.drain() == false )
+					return false;
+			}
+
+			return true;
+		}
+		else
+		{
+			return workers[shard(federation.getFederationHandle(),federateHandle)].drain();
+		}
+	}
+
+	private int shardKey( PorticoMessage message )
+	{
+		if( shardBy == ShardBy.Object && message instanceof UpdateAttributes )
+			return ((UpdateAttributes)message).getObjectId();
+		else
+			return message.getSourceFederate();
+	}
+
+	private int shard( int federationHandle, int key )
+	{
+		return Math.floorMod( federationHandle * 31 + key, workers.length );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  PRIVATE CLASS: Worker   //////////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * A single shard: a bounded queue and the thread that empties it. We count what has been
+	 * submitted and what has been done, so a drain can tell when there is nothing to wait for
+	 * without putting anything on the queue.
+	 */
+	private class Worker extends Thread
+	{
+		private BlockingQueue<Runnable> queue;
+		private AtomicLong submitted;
+		private AtomicLong completed;
+
+		public Worker( int index, int queueSize )
+		{
+			super( "rti-data-"+index );
+			super.setDaemon( true );
+			this.queue = new ArrayBlockingQueue<>( queueSize );
+			this.submitted = new AtomicLong( 0 );
+			this.completed = new AtomicLong( 0 );
+		}
+
+		private void submit( Runnable task )
+		{
+			submitted.incrementAndGet();
+			try
+			{
+				if( queue.offer(task) == false )
+				{
+					if( logger.isTraceEnabled() )
+						logger.trace( "Data queue for %s is full, waiting for room", getName() );
+
+					queue.put( task );
+				}
+			}
+			catch( InterruptedException ie )
+			{
+				completed.incrementAndGet();
+				Thread.currentThread().interrupt();
+				logger.warn( "Interrupted waiting for room in data queue for %s, message dropped", getName() );
+			}
+		}
+
+		private boolean drain()
+		{
+			if( completed.get() == submitted.get() )
+				return true;
+
+			CountDownLatch latch = new CountDownLatch( 1 );
+			submit( latch::countDown );
+			try
+			{
+				long lastCompleted = completed.get();
+				while( latch.await(DRAIN_STALL_MILLIS,TimeUnit.MILLISECONDS) == false )
+				{
+					long nowCompleted = completed.get();
+					if( nowCompleted == lastCompleted )
+					{
+						logger.error( "Data queue %s has not moved in %dms, giving up waiting for it to drain",
+						              getName(), DRAIN_STALL_MILLIS );
+						return false;
+					}
+
+					lastCompleted = nowCompleted;
+				}
+
+				return true;
+			}
+			catch( InterruptedException ie )
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			while( Thread.interrupted() == false )
+			{
+				Runnable task;
+				try
+				{
+					task = queue.take();
+				}
+				catch( InterruptedException ie )
+				{
+					return;
+				}
+
+				try
+				{
+					task.run();
+				}
+				catch( Exception e )
+				{
+					logger.error( "Error forwarding data message: %s", e.getMessage(), e );
+				}
+				finally
+				{
+					completed.incrementAndGet();
+				}
+			}
+		}
+	}
+}
@@ -14,17 +14,34 @@
  */
 package org.portico2.rti.federation;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.portico2.common.services.mom.msg.ReceiveFilterReport;
 import org.portico2.rti.services.mom.data.InteractionCount;
 import org.portico2.rti.services.mom.data.ObjectClassBasedCount;
 
 /**
  * This class tracks various federate metrics that are ultimately reported in the MOM class
  * <code>HLAobjectRoot.HLAmanager.HLAfederate</code>
+ * <p/>
+ *
+ * The update, reflection and interaction counts are bumped on the data path, potentially by the
+ * receiving threads of several connections at once. They are kept in {@link LongAdder}s and the
+ * per-class trackers are created through concurrent maps, so no locks are taken. The number of
+ * different instances updated or reflected is kept in an {@link InstanceBitmap} rather than a set
+ * of boxed handles. All the accessors return a snapshot built from the counters at the time of
+ * the call, never the live counters themselves.
+ * <p/>
+ *
+ * Some metrics can only be counted by the federate's LRC, such as the data messages its receive
+ * filter throws away. The LRC sends these to us every so often, and we keep the latest values.
  */
 public class FederateMetrics
 {
@@ -35,32 +52,34 @@ public class FederateMetrics
 	//----------------------------------------------------------
 	//                   INSTANCE VARIABLES
 	//----------------------------------------------------------
-	private Map<Integer,InteractionCount> interactionsReceived;
-	private Map<Integer,InteractionCount> interactionsSent;
+	private Map<Integer,LongAdder> interactionsReceived;
+	private Map<Integer,LongAdder> interactionsSent;
 	private Set<Integer> objectsOwned;
 	private Map<Integer,OCMetricTracker> reflectionsReceived;
 	private Map<Integer,OCMetricTracker> updatesSent;
-	private int objectsDeleted;
-	private int objectsRemoved;
-	private int objectsRegistered;
-	private int objectsDiscovered;
-	private int serviceInvocations;
+	private AtomicInteger objectsDeleted;
+	private AtomicInteger objectsRemoved;
+	private AtomicInteger objectsRegistered;
+	private AtomicInteger objectsDiscovered;
+	private AtomicInteger serviceInvocations;
+	private volatile ReceiveFilterReport receiveFilter; // latest from the LRC
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
 	//----------------------------------------------------------
 	public FederateMetrics()
 	{
-		this.interactionsReceived = new HashMap<Integer,InteractionCount>();
-		this.interactionsSent = new HashMap<Integer,InteractionCount>();
-		this.objectsOwned = new HashSet<Integer>();
-		this.updatesSent = new HashMap<Integer,OCMetricTracker>();
-		this.reflectionsReceived = new HashMap<Integer,OCMetricTracker>();
-		this.objectsDeleted = 0;
-		this.objectsRemoved = 0;
-		this.objectsRegistered = 0;
-		this.objectsDiscovered = 0;
-		this.serviceInvocations = 0;
+		this.interactionsReceived = new ConcurrentHashMap<>();
+		this.interactionsSent = new ConcurrentHashMap<>();
+		this.objectsOwned = ConcurrentHashMap.newKeySet();
+		this.updatesSent = new ConcurrentHashMap<>();
+		this.reflectionsReceived = new ConcurrentHashMap<>();
+		this.objectsDeleted = new AtomicInteger( 0 );
+		this.objectsRemoved = new AtomicInteger( 0 );
+		this.objectsRegistered = new AtomicInteger( 0 );
+		this.objectsDiscovered = new AtomicInteger( 0 );
+		this.serviceInvocations = new AtomicInteger( 0 );
+		this.receiveFilter = new ReceiveFilterReport();
 	}
 
 	//----------------------------------------------------------
@@ -72,55 +91,27 @@ public class FederateMetrics
 	////////////////////////////////////////////////////////////////////////////////////////
 	public void reflectionReceived( int classId, int instanceId )
 	{
-		OCMetricTracker tracker = this.reflectionsReceived.get( classId );
-		if( tracker == null )
-		{
-			tracker = new OCMetricTracker( classId );
-			this.reflectionsReceived.put( classId, tracker );
-		}
-		
-		tracker.increment( instanceId );
+		tracker( reflectionsReceived, classId ).increment( instanceId );
 	}
 	
 	public void sentUpdate( int classId, int instanceId )
 	{
-		OCMetricTracker tracker = this.updatesSent.get( classId );
-		if( tracker == null )
-		{
-			tracker = new OCMetricTracker( classId );
-			this.updatesSent.put( classId, tracker );
-		}
-		
-		tracker.increment( instanceId );
+		tracker( updatesSent, classId ).increment( instanceId );
 	}
 	
 	public void interactionReceived( int classId )
 	{
-		InteractionCount tracker = this.interactionsReceived.get( classId );
-		if( tracker == null )
-		{
-			tracker = new InteractionCount( classId, 0 );
-			this.interactionsReceived.put( classId, tracker );
-		}
-		
-		tracker.increment();
+		counter( interactionsReceived, classId ).increment();
 	}
 	
 	public void interactionSent( int classId )
 	{
-		InteractionCount tracker = this.interactionsSent.get( classId );
-		if( tracker == null )
-		{
-			tracker = new InteractionCount( classId, 0 );
-			this.interactionsSent.put( classId, tracker );
-		}
-		
-		tracker.increment();
+		counter( interactionsSent, classId ).increment();
 	}
 
 	public void objectRegistered( int instanceId )
 	{
-		++this.objectsRegistered;
+		this.objectsRegistered.incrementAndGet();
 		
 		// When a federate registers an object, they hold privilege to delete until such time as they 
 		// yield it, or remove it 
@@ -129,7 +120,7 @@ public class FederateMetrics
 	
 	public void objectDeleted( int instanceId )
 	{
-		++this.objectsDeleted;
+		this.objectsDeleted.incrementAndGet();
 		
 		// Object is no longer owned by the federate 
 		this.objectsOwned.remove( instanceId );
@@ -137,17 +128,26 @@ public class FederateMetrics
 	
 	public void objectRemoved()
 	{
-		++this.objectsRemoved;
+		this.objectsRemoved.incrementAndGet();
 	}
 	
 	public void objectDiscovered()
 	{
-		++this.objectsDiscovered;
+		this.objectsDiscovered.incrementAndGet();
 	}
 	
 	public int serviceInvoked()
 	{
-		return ++this.serviceInvocations;
+		return this.serviceInvocations.incrementAndGet();
+	}
+
+	/**
+	 * The federate's LRC has told us how many data messages it has thrown away without inflating
+	 * them. The counts in a report are totals, so the latest one replaces whatever we had.
+	 */
+	public void receiveFilterReported( ReceiveFilterReport report )
+	{
+		this.receiveFilter = report;
 	}
 	
 	////////////////////////////////////////////////////////////////////////////////////////
@@ -159,40 +159,36 @@ public class FederateMetrics
 	 */
 	public ObjectClassBasedCount[] getReflectionsReceived()
 	{
-		ObjectClassBasedCount[] results = new ObjectClassBasedCount[this.reflectionsReceived.size()];
-		int index = 0;
+		List<ObjectClassBasedCount> results = new ArrayList<>();
 		for( OCMetricTracker tracker : this.reflectionsReceived.values() )
-			results[index++] = tracker.getTotal();
+			results.add( tracker.getTotal() );
 		
-		return results;
+		return results.toArray( new ObjectClassBasedCount[results.size()] );
 	}
 	
 	public int getTotalReflectionsReceived()
 	{
-		ObjectClassBasedCount[] reflections = getReflectionsReceived();
-		int grandTotal = 0;
-		for( ObjectClassBasedCount classCount : reflections )
-			grandTotal += classCount.getCount();
+		long grandTotal = 0;
+		for( OCMetricTracker tracker : this.reflectionsReceived.values() )
+			grandTotal += tracker.total.sum();
 		
-		return grandTotal;
+		return (int)grandTotal;
 	}
 	
 	public ObjectClassBasedCount[] getObjectInstancesReflected()
 	{
-		ObjectClassBasedCount[] results = new ObjectClassBasedCount[this.reflectionsReceived.size()];
-		int index = 0;
+		List<ObjectClassBasedCount> results = new ArrayList<>();
 		for( OCMetricTracker tracker : this.reflectionsReceived.values() )
-			results[index++] = tracker.getTotalUniqueInstances();
+			results.add( tracker.getTotalUniqueInstances() );
 		
-		return results;
+		return results.toArray( new ObjectClassBasedCount[results.size()] );
 	}
 	
 	public int getTotalObjectInstancesReflected()
 	{
-		ObjectClassBasedCount[] reflected = this.getObjectInstancesReflected();
 		int grandTotal = 0;
-		for( ObjectClassBasedCount classCount : reflected )
-			grandTotal += classCount.getCount();
+		for( OCMetricTracker tracker : this.reflectionsReceived.values() )
+			grandTotal += tracker.instances.size();
 		
 		return grandTotal;
 	}
@@ -202,22 +198,20 @@ public class FederateMetrics
 	 */
 	public ObjectClassBasedCount[] getUpdatesSent()
 	{
-		ObjectClassBasedCount[] results = new ObjectClassBasedCount[this.updatesSent.size()];
-		int index = 0;
+		List<ObjectClassBasedCount> results = new ArrayList<>();
 		for( OCMetricTracker tracker : this.updatesSent.values() )
-			results[index++] = tracker.getTotal();
+			results.add( tracker.getTotal() );
 		
-		return results;
+		return results.toArray( new ObjectClassBasedCount[results.size()] );
 	}
 	
 	public int getTotalUpdatesSent()
 	{
-		ObjectClassBasedCount[] updated = this.getUpdatesSent();
-		int grandTotal = 0;
-		for( ObjectClassBasedCount classCount : updated )
-			grandTotal += classCount.getCount();
+		long grandTotal = 0;
+		for( OCMetricTracker tracker : this.updatesSent.values() )
+			grandTotal += tracker.total.sum();
 		
-		return grandTotal;
+		return (int)grandTotal;
 	}
 	
 	/**
@@ -225,20 +219,18 @@ public class FederateMetrics
 	 */
 	public ObjectClassBasedCount[] getObjectInstancesUpdated()
 	{
-		ObjectClassBasedCount[] results = new ObjectClassBasedCount[this.updatesSent.size()];
-		int index = 0;
+		List<ObjectClassBasedCount> results = new ArrayList<>();
 		for( OCMetricTracker tracker : this.updatesSent.values() )
-			results[index++] = tracker.getTotalUniqueInstances();
+			results.add( tracker.getTotalUniqueInstances() );
 		
-		return results;
+		return results.toArray( new ObjectClassBasedCount[results.size()] );
 	}
 	
 	public int getTotalObjectInstancesUpdated()
 	{
-		ObjectClassBasedCount[] updated = this.getObjectInstancesUpdated();
 		int grandTotal = 0;
-		for( ObjectClassBasedCount classCount : updated )
-			grandTotal += classCount.getCount();
+		for( OCMetricTracker tracker : this.updatesSent.values() )
+			grandTotal += tracker.instances.size();
 		
 		return grandTotal;
 	}
@@ -249,22 +241,12 @@ public class FederateMetrics
 	 */
 	public InteractionCount[] getInteractionsReceived()
 	{
-		InteractionCount[] results = new InteractionCount[this.interactionsReceived.size()];
-		int index = 0;
-		for( InteractionCount classCount : this.interactionsReceived.values() )
-			results[index++] = classCount;
-		
-		return results;
+		return snapshot( this.interactionsReceived );
 	}
 	
 	public int getTotalInteractionsReceived()
 	{
-		InteractionCount[] received = this.getInteractionsReceived();
-		int grandTotal = 0;
-		for( InteractionCount classCount : received )
-			grandTotal += classCount.getCount();
-		
-		return grandTotal;
+		return total( this.interactionsReceived );
 	}
 	
 	/**
@@ -273,22 +255,12 @@ public class FederateMetrics
 	 */
 	public InteractionCount[] getInteractionsSent()
 	{
-		InteractionCount[] results = new InteractionCount[this.interactionsSent.size()];
-		int index = 0;
-		for( InteractionCount classCount : this.interactionsSent.values() )
-			results[index++] = classCount;
-		
-		return results;
+		return snapshot( this.interactionsSent );
 	}
 	
 	public int getTotalInteractionsSent()
 	{
-		InteractionCount[] received = this.getInteractionsSent();
-		int grandTotal = 0;
-		for( InteractionCount classCount : received )
-			grandTotal += classCount.getCount();
-		
-		return grandTotal;
+		return total( this.interactionsSent );
 	}
 	
 	/**
@@ -305,7 +277,7 @@ public class FederateMetrics
 	 */
 	public int getObjectsDeleted()
 	{
-		return this.objectsDeleted;
+		return this.objectsDeleted.get();
 	}
 	
 	/**
@@ -313,7 +285,7 @@ public class FederateMetrics
 	 */
 	public int getObjectsRemoved()
 	{
-		return this.objectsRemoved;
+		return this.objectsRemoved.get();
 	}
 	
 	/**
@@ -321,7 +293,7 @@ public class FederateMetrics
 	 */
 	public int getObjectsRegistered()
 	{
-		return this.objectsRegistered;
+		return this.objectsRegistered.get();
 	}
 	
 	/**
@@ -329,34 +301,115 @@ public class FederateMetrics
 	 */
 	public int getObjectsDiscovered()
 	{
-		return this.objectsDiscovered;
+		return this.objectsDiscovered.get();
+	}
+
+	/**
+	 * @return the number of data messages the federate's LRC threw away because the federate
+	 *         sent them itself, as of its last report
+	 */
+	public long getReceiveFilterDroppedOwn()
+	{
+		return this.receiveFilter.getDroppedOwn();
+	}
+
+	/**
+	 * @return the number of interactions the federate's LRC threw away because it doesn't
+	 *         subscribe to their class, as of its last report
+	 */
+	public long getReceiveFilterDroppedInteractions()
+	{
+		return this.receiveFilter.getDroppedInteractions();
+	}
+
+	/**
+	 * @return the number of reflections the federate's LRC threw away because it doesn't
+	 *         subscribe to the class of the object, as of its last report
+	 */
+	public long getReceiveFilterDroppedReflections()
+	{
+		return this.receiveFilter.getDroppedReflections();
+	}
+
+	/**
+	 * @return the number of reflections the federate's LRC threw away because it had never heard
+	 *         of the object, as of its last report
+	 */
+	public long getReceiveFilterDroppedUnknownObjects()
+	{
+		return this.receiveFilter.getDroppedUnknownObjects();
+	}
+
+	/**
+	 * @return the total number of data messages the federate's LRC threw away without inflating
+	 *         them, as of its last report
+	 */
+	public long getReceiveFilterDroppedTotal()
+	{
+		return this.receiveFilter.getDroppedTotal();
 	}
 
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
-	private class OCMetricTracker
+	private static OCMetricTracker tracker( Map<Integer,OCMetricTracker> trackers, int classId )
+	{
+		OCMetricTracker tracker = trackers.get( classId );
+		if( tracker == null )
+			tracker = trackers.computeIfAbsent( classId, OCMetricTracker::new );
+		
+		return tracker;
+	}
+
+	private static LongAdder counter( Map<Integer,LongAdder> counters, int classId )
+	{
+		LongAdder counter = counters.get( classId );
+		if( counter == null )
+			counter = counters.computeIfAbsent( classId, key -> new LongAdder() );
+		
+		return counter;
+	}
+
+	private static InteractionCount[] snapshot( Map<Integer,LongAdder> counters )
+	{
+		List<InteractionCount> results = new ArrayList<>();
+		for( Map.Entry<Integer,LongAdder> entry : counters.entrySet() )
+			results.add( new InteractionCount(entry.getKey(),entry.getValue().intValue()) );
+		
+		return results.toArray( new InteractionCount[results.size()] );
+	}
+
+	private static int total( Map<Integer,LongAdder> counters )
+	{
+		long grandTotal = 0;
+		for( LongAdder counter : counters.values() )
+			grandTotal += counter.sum();
+		
+		return (int)grandTotal;
+	}
+
+	private static class OCMetricTracker
 	{
 		private int classHandle;
-		private int total;
-		private Set<Integer> instances;
+		private LongAdder total;
+		private InstanceBitmap instances;
 		
 		public OCMetricTracker( int classHandle )
 		{
 			this.classHandle = classHandle;
-			this.total = 0;
-			this.instances = new HashSet<>();
+			this.total = new LongAdder();
+			this.instances = new InstanceBitmap();
 		}
 		
 		public void increment( int instanceId )
 		{
-			++total;
+			this.total.increment();
 			this.instances.add( instanceId );
 		}
 		
 		public ObjectClassBasedCount getTotal()
 		{
-			return new ObjectClassBasedCount( classHandle, total );
+			return new ObjectClassBasedCount( classHandle, total.intValue() );
 		}
 		
 		public ObjectClassBasedCount getTotalUniqueInstances()
@@ -14,14 +14,19 @@
  */
 package org.portico2.rti.federation;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.SecretKey;
@@ -32,13 +37,18 @@ import org.portico.impl.HLAVersion;
 import org.portico.lrc.compat.JConfigurationException;
 import org.portico.lrc.compat.JFederateNameAlreadyInUse;
 import org.portico.lrc.compat.JFederateNotExecutionMember;
+import org.portico.lrc.compat.JRTIinternalError;
 import org.portico.lrc.model.ObjectModel;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.PorticoConstants;
 import org.portico2.common.configuration.RID;
 import org.portico2.common.messaging.MessageContext;
 import org.portico2.common.messaging.MessageSink;
+import org.portico2.common.messaging.ResponseMessage;
+import org.portico2.common.network.CallType;
+import org.portico2.common.network.Message;
 import org.portico2.common.services.ddm.data.RegionStore;
+import org.portico2.common.services.object.msg.SendInteraction;
 import org.portico2.common.services.ownership.data.OwnershipManager;
 import org.portico2.common.services.pubsub.data.InterestManager;
 import org.portico2.rti.RTI;
@@ -85,12 +95,15 @@ public class Federation
 	
 	// Message Processing //
 	private MessageSink incomingSink;
-//	private Queue<PorticoMessage> incomingControlQueue;
+	private Object controlLane; // held while processing a control message
+	private DataPlane dataPlane;
 	private BlockingQueue<PorticoMessage> outgoingQueue;
+	private Queue<PorticoMessage> outgoingOverflow; // waiting for room in outgoingQueue, locked on itself
 	private Thread outgoingProcessor;
 
 	// Pub & Sub Settings //
 	private InterestManager interestManager;
+	private RoutingTable routingTable;
 
 	// Sync Point Settings //
 	private SyncPointManager syncManager;
@@ -143,20 +156,25 @@ public class Federation
 		this.federationHandle  = FEDERATION_HANDLE_COUNTER.incrementAndGet();
 		this.federationVersion = hlaVersion;
 		this.fom               = fom;
+		this.fom.lock(); // locked by the creator, but the lock doesn't survive being sent to us
 		
 		this.logger = LogManager.getFormatterLogger( rti.getLogger().getName()+".{"+name+"}" );
 		
 		// Federation Management //
 		this.federateHandleCounter = new AtomicInteger(0);
-		this.federates = new HashMap<>();
-		this.federateConnections = new HashSet<>();
+		this.federates = new ConcurrentHashMap<>();
+		this.federateConnections = ConcurrentHashMap.newKeySet();
 		
 		// Auth Settings //
 		this.federationKey = null; // must be manually set
 		
 		// Message Processing //
 		this.incomingSink = new MessageSink( name+"-incoming", logger );
-		this.outgoingQueue = new LinkedBlockingQueue<>();
+		this.controlLane = new Object();
+		this.dataPlane = rti.getDataPlane();
+		int controlQueueSize = rti.getRid().getRtiConfiguration().getControlQueueSize();
+		this.outgoingQueue = new ArrayBlockingQueue<>( controlQueueSize );
+		this.outgoingOverflow = new ArrayDeque<>();
 		this.outgoingProcessor = new OutgoingMessageProcessor();
 
 		// Sync Point Settings //
@@ -169,6 +187,7 @@ public class Federation
 		
 		// Pub & Sub Settings //
 		this.interestManager = new InterestManager( fom, regionStore );
+		this.routingTable = new RoutingTable( this );
 		
 		// Instance Repository //
 		this.repository = new Repository( regionStore );
@@ -208,11 +227,45 @@ public class Federation
 		return this.incomingSink;
 	}
 
+	/**
+	 * Process a control message received for this federation. Control messages for a federation
+	 * are processed one at a time, in the order they get here, no matter which connection they
+	 * arrived on. Before a federate's control message is processed, any data messages it sent
+	 * earlier that are still queued in the {@link DataPlane} are forwarded first. If they can't
+	 * be (the {@link DataPlane} has stopped making progress) the request fails rather than being
+	 * processed out of order.
+	 *
+	 * @param context The context of the control message to process
+	 */
+	public void processControlMessage( MessageContext context )
+	{
+		int sourceFederate = context.getRequest().getSourceFederate();
+		if( dataPlane != null && dataPlane.drain(this,sourceFederate) == false )
+		{
+			context.error( new JRTIinternalError("Data sent before this request by federate ["+
+			                                     sourceFederate+"] could not be forwarded") );
+			return;
+		}
+
+		synchronized( controlLane )
+		{
+			incomingSink.process( context );
+		}
+
+		// anything the handlers couldn't fit on the outgoing queue, wait for it now the lane is free
+		awaitOutgoingRoom();
+	}
+
 	public InterestManager getInterestManager()
 	{
 		return this.interestManager;
 	}
 
+	public RoutingTable getRoutingTable()
+	{
+		return this.routingTable;
+	}
+
 	public SyncPointManager getSyncPointManager()
 	{
 		return this.syncManager;
@@ -296,6 +349,9 @@ public class Federation
 		}
 		catch( InterruptedException ie )
 		{}
+
+		// Stop any periodic MOM reporting
+		this.momManager.destroyedFederation();
 	}
 
 	/**
@@ -356,6 +412,23 @@ public class Federation
 		                                      .isPresent();
 		if( stillUsed == false )
 			federateConnections.remove( connection );
+		
+		// Drop the connection from any data routes it was only part of because of this federate
+		routingTable.federateResigned( federate );
+
+		// Let people know how much its LRC threw away without having to look at it
+		FederateMetrics metrics = federate.getMetrics();
+		if( metrics.getReceiveFilterDroppedTotal() > 0 )
+		{
+			logger.debug( "Federate [%s] resigned: LRC dropped %d data messages from their headers "+
+			              "(own=%d, interactions=%d, reflections=%d, unknownObjects=%d)",
+			              federate.getFederateName(),
+			              metrics.getReceiveFilterDroppedTotal(),
+			              metrics.getReceiveFilterDroppedOwn(),
+			              metrics.getReceiveFilterDroppedInteractions(),
+			              metrics.getReceiveFilterDroppedReflections(),
+			              metrics.getReceiveFilterDroppedUnknownObjects() );
+		}
 	}
 
 	public Set<Federate> getFederates()
@@ -432,7 +505,11 @@ public class Federation
 	///////////////////////////////////////////////////////////////////////////////////////
 	/**
 	 * Queue the given control message for sending to its target federate. This will happen later
-	 * once the {@link OutgoingMessageProcessor} has had a chance to get to it.
+	 * once the {@link OutgoingMessageProcessor} has had a chance to get to it. The queue is
+	 * bounded. If it is full the message goes on an overflow list and the caller waits until that
+	 * list has been moved onto the queue, rather than dropping the message. Callers holding the
+	 * control lane don't wait here, {@link #processControlMessage(MessageContext)} waits for them
+	 * after it lets go of the lane.
 	 *  
 	 * @param message The message to queue
 	 */
@@ -441,15 +518,141 @@ public class Federation
 		message.setIsFromRti( true );
 		message.setSourceFederateIfNull( PorticoConstants.RTI_HANDLE );
 		message.setTargetFederation( federationHandle );
-		if( this.outgoingQueue.offer(message) == false )
-			logger.warn( "Message could not be added to outgoing queue (overflow): "+message.getType() );
+		synchronized( outgoingOverflow )
+		{
+			// once something has overflowed, everything after it has to queue up behind it
+			if( outgoingOverflow.isEmpty() && outgoingQueue.offer(message) )
+				return;
+
+			outgoingOverflow.add( message );
+		}
+
+		if( Thread.holdsLock(controlLane) == false )
+			awaitOutgoingRoom();
+	}
+
+	/**
+	 * Wait until everything on the outgoing overflow list has been moved onto the outgoing queue.
+	 * Returns straight away if there is nothing there, or if called by the outgoing processor (it
+	 * is the one that empties the list).
+	 */
+	private void awaitOutgoingRoom()
+	{
+		if( Thread.currentThread() == outgoingProcessor )
+			return;
+
+		synchronized( outgoingOverflow )
+		{
+			if( outgoingOverflow.isEmpty() )
+				return;
+
+			logger.warn( "Outgoing queue is full, waiting for room to queue %d message(s)",
+			             outgoingOverflow.size() );
+			try
+			{
+				while( outgoingOverflow.isEmpty() == false && outgoingProcessor.isAlive() )
+					outgoingOverflow.wait( 500 );
+			}
+			catch( InterruptedException ie )
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	/**
-	 * Broadcast the given message to all the connections that are linked to this federation except for
-	 * the connection that sent it. Note that we keep one instance of each connection, even if multiple
-	 * federates are using it. As such, if we have 10 federates spread across 3 connections, this will
-	 * cause two broadcast requests to be sent.
+	 * Move as much of the overflow list onto the outgoing queue as will fit, in order, and wake
+	 * up anyone waiting if it is now empty. Called by the outgoing processor.
+	 */
+	private void refillOutgoingQueue()
+	{
+		synchronized( outgoingOverflow )
+		{
+			while( outgoingOverflow.isEmpty() == false && outgoingQueue.offer(outgoingOverflow.peek()) )
+				outgoingOverflow.poll();
+
+			if( outgoingOverflow.isEmpty() )
+				outgoingOverflow.notifyAll();
+		}
+	}
+
+	/**
+	 * Queue the given data message to be forwarded to the federates that want it. The message is
+	 * handed to the RTI's {@link DataPlane}, which calls back into
+	 * {@link #forwardDataMessage(PorticoMessage, RtiConnection)} from one of its workers. Data
+	 * messages from the same federate are always forwarded in the order they are queued.
+	 * <p/>
+	 * MOM service interactions are the exception. They are handled right here, under the control
+	 * lane, as their handlers work with the same state the control message handlers do.
+	 *
+	 * @param message The message to forward
+	 * @param sender  The connection we received the message from (<code>null</code> for the RTI)
+	 */
+	public final void queueDataMessage( PorticoMessage message, RtiConnection sender )
+	{
+		if( isMomRequest(message) )
+		{
+			// MOM requests read and change federation state, so treat them as control messages
+			processMomRequest( message, sender );
+		}
+		else if( dataPlane != null )
+		{
+			dataPlane.dispatch( this, message, sender );
+		}
+		else
+		{
+			forwardDataMessage( message, sender );
+		}
+	}
+
+	/**
+	 * @return True if the message is a MOM service interaction sent by a federate
+	 */
+	private boolean isMomRequest( PorticoMessage message )
+	{
+		return message instanceof SendInteraction &&
+		       ((SendInteraction)message).getInteractionId() < ObjectModel.MAX_MOM_HANDLE &&
+		       message.getSourceFederate() != PorticoConstants.RTI_HANDLE;
+	}
+
+	/**
+	 * Process a MOM service interaction on the calling thread, under the control lane, the same
+	 * way {@link #processControlMessage(MessageContext)} does for a control message. It is still
+	 * forwarded to any subscribers as normal. If data sent before it can't be forwarded, it is
+	 * dropped rather than handled out of order.
+	 */
+	private void processMomRequest( PorticoMessage message, RtiConnection sender )
+	{
+		int sourceFederate = message.getSourceFederate();
+		if( dataPlane != null && dataPlane.drain(this,sourceFederate) == false )
+		{
+			logger.error( "MOM request from federate [%d] dropped: data sent before it could not be forwarded",
+			              sourceFederate );
+			return;
+		}
+
+		synchronized( controlLane )
+		{
+			forwardDataMessage( message, sender );
+		}
+
+		awaitOutgoingRoom();
+	}
+
+	/**
+	 * Forward the given message to all the connections linked to this federation that have a
+	 * federate with a subscription interest in it, except for the connection that sent it. The
+	 * set of interested connections is taken from the {@link RoutingTable}. If the table can't
+	 * determine who is interested (for example, the object being updated isn't known), the
+	 * message is broadcast to all connections. Note that we keep one instance of each connection,
+	 * even if multiple federates are using it. As such, if we have 10 federates spread across 3
+	 * connections, this will cause at most two send requests.
+	 * <p/>
+	 * The message is only serialized once, regardless of how many connections it goes to. Each
+	 * connection is given its own {@link Message} that shares the deflated buffer. If the message
+	 * came in over the network, the buffer it arrived in is used and it isn't serialized at all
+	 * (see {@link PorticoMessage#getReceivedMessage()}). If it arrived encrypted, connections
+	 * using the same key will send the encrypted bytes as they were received.
 	 * <p/>
 	 * Also note, MESSAGES ARE NOT LOOPED BACK TO THE SENDER CONNECTION. If one connection is
 	 * multiplexing many, it must handle broadcast to those connections internally.
@@ -457,17 +660,28 @@ public class Federation
 	 * @param message The message to broadcast
 	 * @param sender  The connection we received the message from
 	 */
-	public final void queueDataMessage( PorticoMessage message, RtiConnection sender )
+	final void forwardDataMessage( PorticoMessage message, RtiConnection sender )
 	{
 		// Reflect data message into the message sink so that the Mom Handlers can get a go at it
 		this.incomingSink.process( new MessageContext(message) );
 		
-		for( RtiConnection connection : federateConnections )
+		// Find out who is interested in the message -- null means we couldn't tell
+		Set<RtiConnection> targets = routingTable.getRoutes( message );
+		if( targets == null )
+			targets = federateConnections;
+		
+		// Deflate once (lazily, in case there is nobody to send to) and share the buffer
+		Message deflated = message.getReceivedMessage();
+		message.setReceivedMessage( null );
+		for( RtiConnection connection : targets )
 		{
 			if( connection == sender )
 				continue;
-			else
-				connection.sendDataMessage( message );
+
+			if( deflated == null )
+				deflated = new Message( message, CallType.DataMessage, 0 );
+
+			connection.sendDataMessage( new Message(deflated) );
 		}
 	}
 
@@ -499,6 +713,7 @@ public class Federation
 				{
 					// Get the next message
 					PorticoMessage message = outgoingQueue.take();
+					refillOutgoingQueue();
 					sendMessage( message );
 				}
 				catch( InterruptedException ie )
@@ -509,27 +724,90 @@ public class Federation
 			}
 		}
 
-		private void sendMessage( PorticoMessage message )
+		/**
+		 * Send the message to every connection, then collect all the responses. The requests
+		 * are all outstanding at once, so this takes as long as the slowest connection rather
+		 * than the sum of them all. Each connection times its own request out. We still wait
+		 * for every response before moving on, so the next message can't overtake this one.
+		 * <p/>
+		 * All the clients of a tcp-server or nio-server connection share a single connection,
+		 * so in the usual deployment there is only one. There is nothing to overlap then, so the
+		 * request is just sent and waited on directly.
+		 */
+		private void sendMessage( PorticoMessage message ) throws InterruptedException
 		{
 			// FIXME - Do something smarter about only routing control messages to the connection
 			//         that a target federate resides in
-			MessageContext ctx = new MessageContext( message );
+			if( federateConnections.size() <= 1 )
+			{
+				for( RtiConnection connection : federateConnections )
+					sendMessage( message, connection );
+
+				return;
+			}
+
+			Map<RtiConnection,CompletableFuture<ResponseMessage>> responses = new LinkedHashMap<>();
 			for( RtiConnection connection : federateConnections )
 			{
 				try
 				{
-					connection.sendControlRequest( ctx );
-					if( ctx.isErrorResponse() && ctx.hasResponse() )
+					responses.put( connection, connection.sendControlRequestAsync(message) );
+				}
+				catch( Exception e )
+				{
+					logger.warn( "Error sending message [%s] via connection [%s]",
+					             message.getType(), connection.getName(), e );
+				}
+			}
+
+			for( RtiConnection connection : responses.keySet() )
+			{
+				try
+				{
+					MessageContext ctx = new MessageContext( message );
+					ctx.setResponse( responses.get(connection).get() );
+					if( ctx.isErrorResponse() )
 						throw ctx.getErrorResponseException();
 					
 					if( logger.isTraceEnabled() )
 						logger.trace( "Passed message [%s] to connection [%s]", message.getType(), connection.getName() );
 				}
+				catch( ExecutionException ee )
+				{
+					logger.warn( "No response to message [%s] from connection [%s]: %s",
+					             message.getType(), connection.getName(), ee.getCause().getMessage() );
+				}
+				catch( InterruptedException ie )
+				{
+					throw ie;
+				}
 				catch( Exception e )
 				{
 					logger.warn( "Error sending message [%s] via connection [%s]",
 					             message.getType(), connection.getName(), e );
-				}				
+				}
+			}
+		}
+
+		/**
+		 * Send the message to a single connection and wait for its response.
+		 */
+		private void sendMessage( PorticoMessage message, RtiConnection connection )
+		{
+			try
+			{
+				MessageContext ctx = new MessageContext( message );
+				connection.sendControlRequest( ctx );
+				if( ctx.isErrorResponse() && ctx.hasResponse() )
+					throw ctx.getErrorResponseException();
+
+				if( logger.isTraceEnabled() )
+					logger.trace( "Passed message [%s] to connection [%s]", message.getType(), connection.getName() );
+			}
+			catch( Exception e )
+			{
+				logger.warn( "Error sending message [%s] via connection [%s]",
+				             message.getType(), connection.getName(), e );
 			}
 		}
 	} // end of OutgoingMessageProcessor
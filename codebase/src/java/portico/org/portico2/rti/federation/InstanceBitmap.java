@@ -0,0 +1,111 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.rti.federation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A set of object instance handles, used by the {@link FederateMetrics} to count how many
+ * <i>different</i> instances have been updated or reflected. Instance handles are handed out
+ * in sequence by the repository, so rather than boxing each one into a hash set we keep a
+ * bitmap, one bit per handle. The bitmap is split into pages of {@link #PAGE_SIZE} handles that
+ * are only created when a handle in their range is first seen.
+ * <p/>
+ *
+ * Adding is lock-free. Once a page exists, adding a handle that is already in the set is just a
+ * read. The number of handles in the set is kept as they are added, so {@link #size()} doesn't
+ * have to count bits.
+ */
+public class InstanceBitmap
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;  // handles per page
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Map<Integer,AtomicLongArray> pages;
+	private LongAdder size;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public InstanceBitmap()
+	{
+		this.pages = new ConcurrentHashMap<>();
+		this.size = new LongAdder();
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * Add the given handle to the set.
+	 *
+	 * @return <code>true</code> if it wasn't already in the set, <code>false</code> if it was
+	 */
+	public boolean add( int handle )
+	{
+		AtomicLongArray page = pages.get( handle >>> PAGE_BITS );
+		if( page == null )
+			page = pages.computeIfAbsent( handle >>> PAGE_BITS, key -> new AtomicLongArray(PAGE_SIZE/64) );
+
+		int word = (handle & PAGE_MASK) >>> 6;
+		long mask = 1L << handle; // shift is mod 64, so this is the bit within the word
+		long current = page.get( word );
+		while( (current & mask) == 0 )
+		{
+			long witness = page.compareAndExchange( word, current, current|mask );
+			if( witness == current )
+			{
+				size.increment();
+				return true;
+			}
+
+			// someone else changed the word, try again with what they left
+			current = witness;
+		}
+
+		return false;
+	}
+
+	public boolean contains( int handle )
+	{
+		AtomicLongArray page = pages.get( handle >>> PAGE_BITS );
+		if( page == null )
+			return false;
+		else
+			return (page.get((handle & PAGE_MASK) >>> 6) & (1L << handle)) != 0;
+	}
+
+	/**
+	 * @return The number of different handles that have been added
+	 */
+	public int size()
+	{
+		return size.intValue();
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -0,0 +1,317 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.rti.federation;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.portico.lrc.model.ICMetadata;
+import org.portico.lrc.model.OCMetadata;
+import org.portico.lrc.model.ObjectModel;
+import org.portico.utils.messaging.PorticoMessage;
+import org.portico2.common.services.object.msg.SendInteraction;
+import org.portico2.common.services.object.msg.UpdateAttributes;
+import org.portico2.common.services.pubsub.data.InterestManager;
+import org.portico2.rti.RtiConnection;
+import org.portico2.rti.services.object.data.ROCInstance;
+
+/**
+ * The routing table records which {@link RtiConnection}s have at least one federate with a
+ * subscription interest in each object and interaction class. It is consulted when data
+ * messages are forwarded so that an update or interaction is only passed to the connections
+ * that will actually deliver it, rather than being flooded to every connection and thrown
+ * away by the LRCs on the other end.
+ * <p/>
+ *
+ * Routes are stored against the concrete class handle and contain the connections of all
+ * federates subscribed to that class <i>or any of its parents</i>. They are filled lazily the
+ * first time a class is seen and then maintained incrementally: when a subscription changes,
+ * only the affected class and its children are recalculated. Lookups on the data path are
+ * lock-free. Route sets are immutable once published, so they can be iterated while they are
+ * being replaced.
+ * <p/>
+ *
+ * Alongside the connections, each route also holds the handles of the subscribed federates.
+ * The tcp-server and nio-server transports have every client behind the one connection, so
+ * the table on its own can only decide whether the server gets the message at all. Those
+ * transports use {@link #getSubscribers(PorticoMessage)} to pick which of their clients to pass
+ * it on to (see <code>ClientRouter</code>).
+ */
+public class RoutingTable
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Federation federation;
+	private Map<Integer,Route> objectRoutes;
+	private Map<Integer,Route> interactionRoutes;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	protected RoutingTable( Federation federation )
+	{
+		this.federation = federation;
+		this.objectRoutes = new ConcurrentHashMap<>();
+		this.interactionRoutes = new ConcurrentHashMap<>();
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  Route Lookup Methods   ///////////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Find the set of connections the given data message should be forwarded to. If we can't
+	 * tell who is interested in the message (it isn't an update or interaction, or the object
+	 * it refers to isn't known to us) <code>null</code> is returned, and the caller should fall
+	 * back to sending it to all connections.
+	 *
+	 * @param message The data message we want to route
+	 * @return The connections with an interest in the message, or <code>null</code> if unknown
+	 */
+	public Set<RtiConnection> getRoutes( PorticoMessage message )
+	{
+		Route route = findRoute( message );
+		return route == null ? null : route.connections;
+	}
+
+	/**
+	 * Find the handles of the federates that are subscribed to the given data message. This
+	 * is the same lookup as {@link #getRoutes(PorticoMessage)}, but gives the federates rather
+	 * than their connections, for use where many federates share one connection. If we can't
+	 * tell who is interested in the message <code>null</code> is returned, and the caller
+	 * should fall back to sending it to everyone.
+	 *
+	 * @param message The data message we want to route
+	 * @return The handles of the federates subscribed to the message, or <code>null</code> if
+	 *         unknown
+	 */
+	public Set<Integer> getSubscribers( PorticoMessage message )
+	{
+		Route route = findRoute( message );
+		return route == null ? null : route.federates;
+	}
+
+	private Route findRoute( PorticoMessage message )
+	{
+		switch( message.getType() )
+		{
+			case UpdateAttributes:
+				int objectId = ((UpdateAttributes)message).getObjectId();
+				ROCInstance instance = federation.getRepository().getObject( objectId );
+				if( instance == null )
+					return null;
+				else
+					return getObjectRoute( instance.getRegisteredType() );
+			case SendInteraction:
+				int classHandle = ((SendInteraction)message).getInteractionId();
+				ICMetadata interactionClass = federation.getFOM().getInteractionClass( classHandle );
+				if( interactionClass == null )
+					return null;
+				else
+					return getInteractionRoute( interactionClass );
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @return The set of connections that have a federate subscribed to the given object class
+	 *         or one of its parents. Computed and cached on the first request for the class.
+	 */
+	public Set<RtiConnection> getObjectRoutes( OCMetadata objectClass )
+	{
+		return getObjectRoute( objectClass ).connections;
+	}
+
+	/**
+	 * @return The set of connections that have a federate subscribed to the given interaction
+	 *         class or one of its parents. Computed and cached on the first request for the class.
+	 */
+	public Set<RtiConnection> getInteractionRoutes( ICMetadata interactionClass )
+	{
+		return getInteractionRoute( interactionClass ).connections;
+	}
+
+	private Route getObjectRoute( OCMetadata objectClass )
+	{
+		Route route = objectRoutes.get( objectClass.getHandle() );
+		if( route != null )
+			return route;
+
+		synchronized( this )
+		{
+			return objectRoutes.computeIfAbsent( objectClass.getHandle(),
+			                                     handle -> calculateRoute(objectClass) );
+		}
+	}
+
+	private Route getInteractionRoute( ICMetadata interactionClass )
+	{
+		Route route = interactionRoutes.get( interactionClass.getHandle() );
+		if( route != null )
+			return route;
+
+		synchronized( this )
+		{
+			return interactionRoutes.computeIfAbsent( interactionClass.getHandle(),
+			                                          handle -> calculateRoute(interactionClass) );
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  Route Maintenance Methods   //////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * A federate has subscribed to, or unsubscribed from, the object class with the given handle.
+	 * Recalculate the routes for the class and all its children (which inherit the interest).
+	 * This must be called <i>after</i> the {@link InterestManager} has been updated.
+	 *
+	 * @param classHandle The handle of the object class whose subscription changed
+	 */
+	public synchronized void objectClassSubscriptionChanged( int classHandle )
+	{
+		OCMetadata objectClass = federation.getFOM().getObjectClass( classHandle );
+		if( objectClass != null )
+			recalculateSubtree( objectClass );
+	}
+
+	/**
+	 * A federate has subscribed to, or unsubscribed from, the interaction class with the given
+	 * handle. Recalculate the routes for the class and all its children (which inherit the
+	 * interest). This must be called <i>after</i> the {@link InterestManager} has been updated.
+	 *
+	 * @param classHandle The handle of the interaction class whose subscription changed
+	 */
+	public synchronized void interactionClassSubscriptionChanged( int classHandle )
+	{
+		ICMetadata interactionClass = federation.getFOM().getInteractionClass( classHandle );
+		if( interactionClass != null )
+			recalculateSubtree( interactionClass );
+	}
+
+	/**
+	 * The given federate has left the federation. Its subscriptions are left in place by the
+	 * resign process, so recalculate any route that it is part of. If its connection is still
+	 * used by another interested federate it will stay, otherwise it will be dropped.
+	 * This must be called <i>after</i> the federate has been removed from the {@link Federation}.
+	 *
+	 * @param federate The federate that has resigned
+	 */
+	public synchronized void federateResigned( Federate federate )
+	{
+		Integer federateHandle = federate.getFederateHandle();
+		ObjectModel fom = federation.getFOM();
+		for( Map.Entry<Integer,Route> entry : objectRoutes.entrySet() )
+		{
+			if( entry.getValue().federates.contains(federateHandle) )
+				entry.setValue( calculateRoute(fom.getObjectClass(entry.getKey())) );
+		}
+
+		for( Map.Entry<Integer,Route> entry : interactionRoutes.entrySet() )
+		{
+			if( entry.getValue().federates.contains(federateHandle) )
+				entry.setValue( calculateRoute(fom.getInteractionClass(entry.getKey())) );
+		}
+	}
+
+	private void recalculateSubtree( OCMetadata objectClass )
+	{
+		// only recalculate entries that have been cached - anything else is done lazily
+		if( objectRoutes.containsKey(objectClass.getHandle()) )
+			objectRoutes.put( objectClass.getHandle(), calculateRoute(objectClass) );
+
+		for( OCMetadata child : objectClass.getChildTypes() )
+			recalculateSubtree( child );
+	}
+
+	private void recalculateSubtree( ICMetadata interactionClass )
+	{
+		// only recalculate entries that have been cached - anything else is done lazily
+		if( interactionRoutes.containsKey(interactionClass.getHandle()) )
+			interactionRoutes.put( interactionClass.getHandle(), calculateRoute(interactionClass) );
+
+		for( ICMetadata child : interactionClass.getChildTypes() )
+			recalculateSubtree( child );
+	}
+
+	private Route calculateRoute( OCMetadata objectClass )
+	{
+		return toRoute( federation.getInterestManager().getAllSubscribers(objectClass) );
+	}
+
+	private Route calculateRoute( ICMetadata interactionClass )
+	{
+		return toRoute( federation.getInterestManager().getAllSubscribers(interactionClass) );
+	}
+
+	/**
+	 * Convert the given set of federate handles into a route holding those federates and the
+	 * connections they are using. Handles for federates that are no longer in the federation
+	 * are skipped.
+	 */
+	private Route toRoute( Set<Integer> federateHandles )
+	{
+		if( federateHandles.isEmpty() )
+			return Route.EMPTY;
+
+		Set<Integer> federates = new HashSet<>();
+		Set<RtiConnection> connections = new HashSet<>();
+		for( Integer federateHandle : federateHandles )
+		{
+			Federate federate = federation.getFederate( federateHandle );
+			if( federate != null )
+			{
+				federates.add( federateHandle );
+				connections.add( federate.getConnection() );
+			}
+		}
+
+		return new Route( Collections.unmodifiableSet(connections),
+		                  Collections.unmodifiableSet(federates) );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  PRIVATE CLASS: Route   ///////////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/** The connections and federates subscribed to a class. Never changed once created. */
+	private static class Route
+	{
+		private static final Route EMPTY = new Route( Collections.emptySet(), Collections.emptySet() );
+
+		private final Set<RtiConnection> connections;
+		private final Set<Integer> federates;
+
+		private Route( Set<RtiConnection> connections, Set<Integer> federates )
+		{
+			this.connections = connections;
+			this.federates = federates;
+		}
+	}
+}
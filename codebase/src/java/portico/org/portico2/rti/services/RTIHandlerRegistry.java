@@ -27,6 +27,7 @@ import org.portico2.rti.services.federation.incoming.JoinFederationHandler;
 import org.portico2.rti.services.federation.incoming.ResignFederationHandler;
 import org.portico2.rti.services.mom.incoming.MomSendInteractionHandler;
 import org.portico2.rti.services.mom.incoming.MomUpdateAttributesHandler;
+import org.portico2.rti.services.mom.incoming.ReceiveFilterReportHandler;
 import org.portico2.rti.services.object.incoming.DeleteObjectHandler;
 import org.portico2.rti.services.object.incoming.RegisterObjectHandler;
 import org.portico2.rti.services.object.incoming.RequestClassUpdateHandler;
@@ -129,6 +130,7 @@ public class RTIHandlerRegistry
 		in.register( MessageType.ModifyLookahead,        new ModifyLookaheadHandler() );
 		
 		// MOM Interaction Handling and Metric Collection
+		in.register( MessageType.ReceiveFilterReport, new ReceiveFilterReportHandler() );
 		if( PorticoConstants.isMomEnabled() )
 		{
 			in.register( MessageType.SendInteraction, new MomSendInteractionHandler() );
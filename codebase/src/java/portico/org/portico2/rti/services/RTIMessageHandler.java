@@ -38,6 +38,7 @@ import org.portico2.common.services.time.msg.TimeAdvanceRequest;
 import org.portico2.rti.federation.Federate;
 import org.portico2.rti.federation.Federation;
 import org.portico2.rti.federation.FederationManager;
+import org.portico2.rti.federation.RoutingTable;
 import org.portico2.rti.services.mom.data.MomManager;
 import org.portico2.rti.services.object.data.Repository;
 import org.portico2.rti.services.sync.data.SyncPointManager;
@@ -58,6 +59,7 @@ public abstract class RTIMessageHandler implements IMessageHandler
 	
 	protected SyncPointManager syncManager;
 	protected InterestManager  interests;
+	protected RoutingTable     routingTable;
 	protected Repository       repository;
 	protected RegionStore      regionStore2;
 	protected TimeManager      timeManager;
@@ -96,6 +98,7 @@ public abstract class RTIMessageHandler implements IMessageHandler
 		this.logger        = federation.getLogger();
 		this.syncManager   = federation.getSyncPointManager();
 		this.interests     = federation.getInterestManager();
+		this.routingTable  = federation.getRoutingTable();
 		this.repository    = federation.getRepository();
 		this.regionStore2  = federation.getRegionStore();
 		this.timeManager   = federation.getTimeManager();
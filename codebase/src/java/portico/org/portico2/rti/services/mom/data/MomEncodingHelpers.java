@@ -102,6 +102,7 @@ public class MomEncodingHelpers
 		this.decoders.put( "HLAboolean", this::decodeBoolean );
 		this.decoders.put( "HLAhandle", this::decodeHandle );
 		this.decoders.put( "HLAindex", this::decodeInt32BE );
+		this.decoders.put( "HLAseconds", this::decodeInt32BE );
 		this.decoders.put( "HLAunicodeString", this::decodeUnicodeString );
 	}
 
@@ -19,6 +19,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import org.apache.logging.log4j.Logger;
@@ -65,7 +66,7 @@ public class MomFederation
 	public MomFederation( Federation federation, ROCInstance federationObject, Logger lrcLogger )
 	{
 		this.federation = federation;
-		this.federates = new HashMap<Integer,MomFederate>();
+		this.federates = new ConcurrentHashMap<>();  // read by the MomReporter thread
 		this.federationObject = federationObject;
 		this.momLogger = lrcLogger;
 		
@@ -74,6 +74,7 @@ public class MomManager implements SaveRestoreTarget
 	private Federation federation;
 	private HLAVersion version;
 	private MomFederation momFederation;
+	private MomReporter reporter;
 	private Logger logger;
 
 	// this flag is used to stop discovery notifications being sent during a federation restore
@@ -94,7 +95,10 @@ public class MomManager implements SaveRestoreTarget
 		
 		// Create the object for this Federation
 		if( this.enabled )
+		{
 			this.createFederationObjectInstance();
+			this.reporter = new MomReporter( federation, momFederation, logger );
+		}
 	}
 
 	//----------------------------------------------------------
@@ -228,6 +232,7 @@ public class MomManager implements SaveRestoreTarget
 		// Remove federate object from our internal mom federation
 		int federateHandle = federate.getFederateHandle();
 		MomFederate removed = this.momFederation.removeFederate( federateHandle );
+		this.reporter.federateResigned( federateHandle );
 
 		// Remove the federate object instance from the repository
 		Repository repository = this.federation.getRepository();
@@ -378,6 +383,33 @@ public class MomManager implements SaveRestoreTarget
 		this.resignedFederation( lostFederate );
 	}
 	
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Periodic Reporting Methods   //////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Set the period (in seconds) at which the RTI should send MOM reports for the given federate,
+	 * as requested by <code>HLAmanager.HLAfederate.HLAadjust.HLAsetTiming</code>. Zero turns the
+	 * reports off. See {@link MomReporter}.
+	 */
+	public void setReportPeriod( int federateHandle, int seconds )
+	{
+		if( !this.enabled )
+			return;
+
+		this.reporter.setReportPeriod( federateHandle, seconds );
+	}
+
+	/**
+	 * The federation has been destroyed, stop sending any periodic reports.
+	 */
+	public void destroyedFederation()
+	{
+		if( !this.enabled )
+			return;
+
+		this.reporter.stop();
+	}
+
 	////////////////////////////////////////////////////////////////////////////////////////
 	///  Save/Restore Methods   ////////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,334 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.rti.services.mom.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.Logger;
+import org.portico.impl.HLAVersion;
+import org.portico.lrc.model.ACMetadata;
+import org.portico.lrc.model.ICMetadata;
+import org.portico.lrc.model.Mom;
+import org.portico.lrc.model.OCMetadata;
+import org.portico.lrc.model.ObjectModel;
+import org.portico2.common.services.object.msg.SendInteraction;
+import org.portico2.common.services.object.msg.UpdateAttributes;
+import org.portico2.common.services.pubsub.data.InterestManager;
+import org.portico2.rti.federation.Federate;
+import org.portico2.rti.federation.FederateMetrics;
+import org.portico2.rti.federation.Federation;
+
+/**
+ * Sends the periodic MOM updates that are turned on with the
+ * <code>HLAmanager.HLAfederate.HLAadjust.HLAsetTiming</code> interaction. Each federate can be
+ * given its own report period (in seconds). When it comes due, the RTI updates the attributes of
+ * the federate's <code>HLAmanager.HLAfederate</code> object whose update condition is
+ * <code>HLAsetTiming.HLAreportPeriod</code>, and sends the count based <code>HLAreport*</code>
+ * interactions (updates sent, reflections received and so on) for it. Setting the period to zero
+ * turns the reports off again.
+ * <p/>
+ *
+ * This means monitoring federates can just subscribe and listen, rather than sending a request
+ * for each federate over and over. All reporting is done from a single scheduler thread that
+ * wakes once a second and reports on every federate that has come due in one pass. The
+ * subscribers to each report are looked up once per pass, and anything nobody subscribes to is
+ * skipped. None of this happens on the federation's message sink, so a slow report never holds
+ * up the processing of federate requests. The scheduler thread isn't started until a report
+ * period is first set.
+ */
+public class MomReporter
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final HLAVersion CANONICAL_VERSION = HLAVersion.IEEE1516e;
+	private static final long TICK_MILLIS = 1000;  // report periods are in whole seconds
+
+	/** Attributes of HLAmanager.HLAfederate with an update condition of HLAsetTiming.HLAreportPeriod */
+	private static final Set<String> PERIODIC_ATTRIBUTES = Set.of( "HLAlogicalTime",
+	                                                               "HLAlookahead",
+	                                                               "HLAGALT",
+	                                                               "HLALITS",
+	                                                               "HLAROlength",
+	                                                               "HLATSOlength",
+	                                                               "HLAreflectionsReceived",
+	                                                               "HLAupdatesSent",
+	                                                               "HLAinteractionsReceived",
+	                                                               "HLAinteractionsSent",
+	                                                               "HLAobjectInstancesThatCanBeDeleted",
+	                                                               "HLAobjectInstancesUpdated",
+	                                                               "HLAobjectInstancesReflected",
+	                                                               "HLAobjectInstancesDeleted",
+	                                                               "HLAobjectInstancesRemoved",
+	                                                               "HLAobjectInstancesRegistered",
+	                                                               "HLAobjectInstancesDiscovered",
+	                                                               "HLAtimeGrantedTime",
+	                                                               "HLAtimeAdvancingTime" );
+
+	/** The HLAreport interactions sent for each federate as it comes due */
+	private static final Report[] REPORTS = new Report[]
+	{
+		new Report( "HLAreportUpdatesSent", "HLAupdateCounts", true, FederateMetrics::getUpdatesSent ),
+		new Report( "HLAreportReflectionsReceived", "HLAreflectCounts", true, FederateMetrics::getReflectionsReceived ),
+		new Report( "HLAreportInteractionsSent", "HLAinteractionCounts", true, FederateMetrics::getInteractionsSent ),
+		new Report( "HLAreportInteractionsReceived", "HLAinteractionCounts", true, FederateMetrics::getInteractionsReceived ),
+		new Report( "HLAreportObjectInstancesUpdated", "HLAobjectInstanceCounts", false, FederateMetrics::getObjectInstancesUpdated ),
+		new Report( "HLAreportObjectInstancesReflected", "HLAobjectInstanceCounts", false, FederateMetrics::getObjectInstancesReflected )
+	};
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Federation federation;
+	private MomFederation momFederation;
+	private Logger logger;
+	private Map<Integer,Timing> timings;       // federate handle to its report timing
+	private ScheduledExecutorService scheduler; // null until a report period is first set
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public MomReporter( Federation federation, MomFederation momFederation, Logger logger )
+	{
+		this.federation = federation;
+		this.momFederation = momFederation;
+		this.logger = logger;
+		this.timings = new ConcurrentHashMap<>();
+		this.scheduler = null;
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * Set how often (in seconds) the reports for the given federate are sent. Zero (or less) turns
+	 * them off. The first report is sent one period from now.
+	 */
+	public synchronized void setReportPeriod( int federateHandle, int seconds )
+	{
+		if( seconds <= 0 )
+		{
+			timings.remove( federateHandle );
+			logger.debug( "Periodic MOM reporting for federate [%d] turned off", federateHandle );
+			return;
+		}
+
+		long period = TimeUnit.SECONDS.toNanos( seconds );
+		timings.put( federateHandle, new Timing(period,System.nanoTime()+period) );
+		logger.debug( "Periodic MOM reporting for federate [%d] set to every %ds", federateHandle, seconds );
+
+		if( scheduler == null )
+		{
+			this.scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+				Thread thread = new Thread( runnable, federation.getFederationName()+"-mom-reporter" );
+				thread.setDaemon( true );
+				return thread;
+			});
+
+			scheduler.scheduleAtFixedRate( this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS );
+		}
+	}
+
+	/**
+	 * @return The report period for the federate in seconds, or 0 if it isn't being reported on
+	 */
+	public int getReportPeriod( int federateHandle )
+	{
+		Timing timing = timings.get( federateHandle );
+		return timing == null ? 0 : (int)TimeUnit.NANOSECONDS.toSeconds( timing.period );
+	}
+
+	/**
+	 * The federate has left the federation, stop reporting on it.
+	 */
+	public void federateResigned( int federateHandle )
+	{
+		timings.remove( federateHandle );
+	}
+
+	/**
+	 * Stop the scheduler thread. Called when the federation is destroyed.
+	 */
+	public synchronized void stop()
+	{
+		if( scheduler != null )
+		{
+			scheduler.shutdownNow();
+			this.scheduler = null;
+		}
+
+		timings.clear();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Reporting Methods   ///////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Called by the scheduler once a second. Find all the federates that have come due and send
+	 * their reports. An exception in here would cancel the scheduled task, so we log and carry on.
+	 */
+	private void tick()
+	{
+		try
+		{
+			List<MomFederate> due = new ArrayList<>();
+			long now = System.nanoTime();
+			for( Map.Entry<Integer,Timing> entry : timings.entrySet() )
+			{
+				Timing timing = entry.getValue();
+				if( now - timing.next < 0 )
+					continue;
+
+				// if we have fallen more than a period behind, don't try to catch up
+				timing.next += timing.period;
+				if( now - timing.next >= 0 )
+					timing.next = now + timing.period;
+
+				MomFederate federate = momFederation.getFederate( entry.getKey() );
+				if( federate != null )
+					due.add( federate );
+			}
+
+			if( due.isEmpty() == false )
+				report( due );
+		}
+		catch( Exception e )
+		{
+			logger.error( "Error while sending periodic MOM reports: "+e.getMessage(), e );
+		}
+	}
+
+	private void report( List<MomFederate> due ) throws Exception
+	{
+		ObjectModel fom = federation.getFOM();
+		InterestManager interests = federation.getInterestManager();
+
+		// Update the HLAfederate objects, as long as someone is listening
+		int federateClassHandle = Mom.getMomObjectClassHandle( CANONICAL_VERSION, "HLAmanager.HLAfederate" );
+		OCMetadata federateClass = fom.getObjectClass( federateClassHandle );
+		if( interests.getAllSubscribers(federateClass).isEmpty() == false )
+		{
+			Set<Integer> attributes = getPeriodicAttributes( federateClass );
+			for( MomFederate federate : due )
+			{
+				UpdateAttributes update = federate.generateUpdate( attributes );
+				federation.queueDataMessage( update, null );
+			}
+		}
+
+		// Send each of the HLAreport interactions that someone is subscribed to
+		for( Report report : REPORTS )
+		{
+			int handle = Mom.getMomInteractionHandle( CANONICAL_VERSION,
+			                                          "HLAmanager.HLAfederate.HLAreport."+report.name );
+			ICMetadata reportClass = fom.getInteractionClass( handle );
+			Set<Integer> subscribers = reportClass == null ? null : interests.getAllSubscribers( reportClass );
+			if( subscribers == null || subscribers.isEmpty() )
+				continue;
+
+			for( MomFederate momFederate : due )
+			{
+				Federate federate = federation.getFederate( momFederate.getFederateHandle() );
+				if( federate == null )
+					continue;
+
+				Map<String,Object> params = new HashMap<>();
+				params.put( "HLAfederate", federate.getFederateHandle() );
+				if( report.hasTransportation )
+					params.put( "HLAtransportation", "HLAreliable" );
+				params.put( report.countsParameter, report.counts.apply(federate.getMetrics()) );
+
+				SendInteraction interaction = 
+					new SendInteraction( handle,
+					                     null,
+					                     MomEncodingHelpers.encodeInteractionParameters(CANONICAL_VERSION,
+					                                                                    reportClass,
+					                                                                    params) );
+				interaction.setIsFromRti( true );
+				interaction.setTargetFederates( subscribers );
+				federation.queueDataMessage( interaction, null );
+			}
+		}
+
+		if( logger.isTraceEnabled() )
+			logger.trace( "Sent periodic MOM reports for %d federate(s)", due.size() );
+	}
+
+	private Set<Integer> getPeriodicAttributes( OCMetadata federateClass )
+	{
+		Set<Integer> handles = new HashSet<>();
+		for( ACMetadata attribute : federateClass.getAllAttributes() )
+		{
+			String name = Mom.getMomAttributeName( CANONICAL_VERSION, attribute.getHandle() );
+			if( name != null && PERIODIC_ATTRIBUTES.contains(name) )
+				handles.add( attribute.getHandle() );
+		}
+
+		return handles;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  PRIVATE CLASS: Timing   ///////////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/** When a federate's next report is due, and how long between them (both in nanos) */
+	private static class Timing
+	{
+		private final long period;
+		private long next;  // only touched by the scheduler thread once created
+
+		private Timing( long period, long next )
+		{
+			this.period = period;
+			this.next = next;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	///  PRIVATE CLASS: Report   ///////////////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/** One of the count based HLAreport interactions, and where to get its counts from */
+	private static class Report
+	{
+		private final String name;
+		private final String countsParameter;
+		private final boolean hasTransportation;
+		private final Function<FederateMetrics,Object> counts;
+
+		private Report( String name,
+		                String countsParameter,
+		                boolean hasTransportation,
+		                Function<FederateMetrics,Object> counts )
+		{
+			this.name = name;
+			this.countsParameter = countsParameter;
+			this.hasTransportation = hasTransportation;
+			this.counts = counts;
+		}
+	}
+}
@@ -103,6 +103,8 @@ public class MomSendInteractionHandler extends RTIMessageHandler
 		//
 		// HLAfederate
 		//
+		this.registerMomInteractionHandler( "HLAmanager.HLAfederate.HLAadjust.HLAsetTiming", 
+		                                    this::handleFederateSetTiming );
 		this.registerMomInteractionHandler( "HLAmanager.HLAfederate.HLAadjust.HLAsetServiceReporting", 
 		                                    this::handleFederateSetServiceReporting );
 		this.registerMomInteractionHandler( "HLAmanager.HLAfederate.HLAadjust.HLAsetExceptionReporting", 
@@ -186,6 +188,22 @@ public class MomSendInteractionHandler extends RTIMessageHandler
 	////////////////////////////////////////////////////////////////////////////////////////
 	///  MOM Interaction Handlers   ////////////////////////////////////////////////////////
 	////////////////////////////////////////////////////////////////////////////////////////
+	private void handleFederateSetTiming( Map<String,Object> requestParams )
+		throws MomException
+	{
+		int reportPeriod = (int)requestParams.get( "HLAreportPeriod" );
+		if( reportPeriod < 0 )
+			throw new MomException( "report period cannot be negative: "+reportPeriod, true );
+		
+		// Hand off to the MOM manager, the reports are sent from its own thread
+		Federate federate = getRequestFederate( requestParams );
+		momManager.setReportPeriod( federate.getFederateHandle(), reportPeriod );
+		
+		logger.debug( "Periodic MOM reports for " +
+		              federate.getFederateName()+" ["+federate.getFederateHandle()+"]" +
+		              (reportPeriod == 0 ? " have been DISABLED" : " will be sent every "+reportPeriod+"s") );
+	}
+	
 	private void handleFederateSetServiceReporting( Map<String,Object> requestParams )
 		throws MomException
 	{
@@ -0,0 +1,81 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.rti.services.mom.incoming;
+
+import java.util.Map;
+
+import org.portico.lrc.compat.JConfigurationException;
+import org.portico.lrc.compat.JException;
+import org.portico.lrc.compat.JFederateNotExecutionMember;
+import org.portico2.common.messaging.MessageContext;
+import org.portico2.common.services.mom.msg.ReceiveFilterReport;
+import org.portico2.rti.federation.Federate;
+import org.portico2.rti.federation.FederateMetrics;
+import org.portico2.rti.services.RTIMessageHandler;
+
+/**
+ * Records the receive filter counts an LRC sends us in the {@link FederateMetrics} of its
+ * federate, so they can be seen alongside the rest of the federate's metrics.
+ */
+public class ReceiveFilterReportHandler extends RTIMessageHandler
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@Override
+	public void configure( Map<String,Object> properties ) throws JConfigurationException
+	{
+		super.configure( properties );
+	}
+
+	@Override
+	public void process( MessageContext context ) throws JException
+	{
+		ReceiveFilterReport request = context.getRequest( ReceiveFilterReport.class, this );
+		int federateHandle = request.getSourceFederate();
+
+		Federate federate = federation.getFederate( federateHandle );
+		if( federate == null )
+		{
+			throw new JFederateNotExecutionMember( "Federate [%d] not a member of federation [%s]",
+			                                       federateHandle, federationName() );
+		}
+
+		federate.getMetrics().receiveFilterReported( request );
+		context.success();
+
+		if( logger.isTraceEnabled() )
+		{
+			logger.trace( "Receive filter report from federate [%s]: dropped=%d",
+			              moniker(federateHandle), request.getDroppedTotal() );
+		}
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -14,12 +14,16 @@
  */
 package org.portico2.rti.services.object.data;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.portico.lrc.PorticoConstants;
 import org.portico.lrc.compat.JObjectAlreadyRegistered;
@@ -28,7 +32,16 @@ import org.portico.lrc.model.OCMetadata;
 import org.portico2.common.services.ddm.data.RegionStore;
 
 /**
+ * Stores all the object instances registered in a federation. As well as by handle and name,
+ * instances are indexed by the handle of the class they were registered as, so that finding
+ * the instances of a class (or of a class and all its subclasses) only touches the instances
+ * that are relevant rather than everything in the federation.
+ * <p/>
  * 
+ * All the maps are concurrent, so lookups and iteration never take a lock. Methods that change
+ * the contents of the repository are <code>synchronized</code> so that the indexes are always
+ * updated together. Iteration is weakly consistent: it won't fail if objects are added or removed
+ * while it is in progress, but it may or may not see those objects.
  */
 public class Repository
 {
@@ -42,6 +55,7 @@ public class Repository
 	private AtomicInteger nextObjectHandle;
 	private Map<Integer,ROCInstance> objectsByHandle;
 	private Map<String,ROCInstance>  objectsByName;
+	private Map<Integer,Map<Integer,ROCInstance>> objectsByClass;
 	private Map<String,Integer>      reservedNames;
 	
 	private RegionStore regionStore;
@@ -52,9 +66,10 @@ public class Repository
 	public Repository( RegionStore regionStore )
 	{
 		this.nextObjectHandle = new AtomicInteger( 0 );
-		this.objectsByHandle = new HashMap<>();
-		this.objectsByName = new HashMap<>();
-		this.reservedNames = new HashMap<>();
+		this.objectsByHandle = new ConcurrentHashMap<>();
+		this.objectsByName = new ConcurrentHashMap<>();
+		this.objectsByClass = new ConcurrentHashMap<>();
+		this.reservedNames = new ConcurrentHashMap<>();
 		
 		this.regionStore = regionStore;
 	}
@@ -119,7 +134,12 @@ public class Repository
 	{
 		ROCInstance removed = objectsByHandle.remove( instanceHandle );
 		if( removed != null )
+		{
 			objectsByName.remove( removed.getName() );
+			Map<Integer,ROCInstance> classObjects = objectsByClass.get( removed.getRegisteredClassHandle() );
+			if( classObjects != null )
+				classObjects.remove( instanceHandle );
+		}
 		
 		return removed;
 	}
@@ -131,6 +151,10 @@ public class Repository
 
 	public ROCInstance getObject( String name )
 	{
+		// concurrent maps don't take null keys
+		if( name == null )
+			return null;
+
 		return objectsByName.get( name );
 	}
 
@@ -143,19 +167,17 @@ public class Repository
 	}
 
 	/**
-	 * @return A set of all the {@link ROCInstance} types in the repository that are explicitly
-	 *         registered with the given class handle (_NOT_ any parent of the type).
+	 * @return A collection of all the {@link ROCInstance} types in the repository that are explicitly
+	 *         registered with the given class handle (_NOT_ any parent of the type). This is a live,
+	 *         read-only view straight out of the class index, not a copy.
 	 */
-	public Set<ROCInstance> getAllInstances( int classHandle )
+	public Collection<ROCInstance> getAllInstances( int classHandle )
 	{
-		HashSet<ROCInstance> objects = new HashSet<>();
-		for( ROCInstance instance : objectsByHandle.values() )
-		{
-			if( instance.getRegisteredClassHandle() == classHandle )
-				objects.add( instance );
-		}
-		
-		return objects;
+		Map<Integer,ROCInstance> classObjects = objectsByClass.get( classHandle );
+		if( classObjects == null )
+			return Collections.emptySet();
+		else
+			return Collections.unmodifiableCollection( classObjects.values() );
 	}
 
 	/**
@@ -167,14 +189,33 @@ public class Repository
 	 */
 	public Set<ROCInstance> getAllInstancesAssignableFrom( OCMetadata initialClass )
 	{
-		HashSet<ROCInstance> objects = new HashSet<>();
-		for( ROCInstance instance : objectsByHandle.values() )
-		{
-			if( instance.getRegisteredType().isAssignableTo(initialClass) )
-				objects.add( instance );
-		}
+		return streamAllInstancesAssignableFrom(initialClass).collect( Collectors.toSet() );
+	}
+
+	/**
+	 * The same as {@link #getAllInstancesAssignableFrom(OCMetadata)}, except that the instances
+	 * are not gathered up into a set first. They are pulled out of the class index for each class
+	 * in the hierarchy as the stream is consumed, so callers can start acting on the first ones
+	 * straight away, and nothing is built up in memory for large federations.
+	 * 
+	 * @param initialClass Find all instances that are types (or subtypes) of this class
+	 * @return A stream of all instances that are types (or subtypes) of the given class
+	 */
+	public Stream<ROCInstance> streamAllInstancesAssignableFrom( OCMetadata initialClass )
+	{
+		List<Map<Integer,ROCInstance>> classes = new ArrayList<>();
+		collectClassIndexes( initialClass, classes );
+		return classes.stream().flatMap( classObjects -> classObjects.values().stream() );
+	}
+
+	private void collectClassIndexes( OCMetadata type, List<Map<Integer,ROCInstance>> store )
+	{
+		Map<Integer,ROCInstance> classObjects = objectsByClass.get( type.getHandle() );
+		if( classObjects != null && classObjects.isEmpty() == false )
+			store.add( classObjects );
 		
-		return objects;
+		for( OCMetadata child : type.getChildTypes() )
+			collectClassIndexes( child, store );
 	}
 	
 	public boolean containsObject( int handle )
@@ -184,7 +225,7 @@ public class Repository
 	
 	public boolean containsObject( String name )
 	{
-		return objectsByName.containsKey( name );
+		return name != null && objectsByName.containsKey( name );
 	}
 	
 	//////////////////////////////////////////////////////////////////////////////////////////
@@ -193,7 +234,7 @@ public class Repository
 	public int getReserverOfName( String name )
 	{
 		// check to see if anyone has registered the name yet
-		Integer currentHolder = reservedNames.get( name );
+		Integer currentHolder = name == null ? null : reservedNames.get( name );
 		if( currentHolder != null )
 			return currentHolder;
 		else
@@ -208,6 +249,9 @@ public class Repository
 	 */
 	public boolean isNameReservedOrInUse( String name )
 	{
+		if( name == null )
+			return false;
+
 		return reservedNames.containsKey(name) || objectsByName.containsKey(name);
 	}
 
@@ -230,6 +274,9 @@ public class Repository
 	{
 		this.objectsByHandle.put( instance.getHandle(), instance );
 		this.objectsByName.put( instance.getName(), instance );
+		this.objectsByClass.computeIfAbsent( instance.getRegisteredClassHandle(),
+		                                     handle -> new ConcurrentHashMap<>() )
+		                   .put( instance.getHandle(), instance );
 	}
 
 	//----------------------------------------------------------
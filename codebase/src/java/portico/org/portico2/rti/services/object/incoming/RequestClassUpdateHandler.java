@@ -14,6 +14,7 @@
  */
 package org.portico2.rti.services.object.incoming;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -97,7 +98,7 @@ public class RequestClassUpdateHandler extends RTIMessageHandler
 	private void processClass( int classHandle, Set<Integer> requested, RegionInstance region )
 	{
 		// Find all the objects of this class
-		Set<ROCInstance> objects = repository.getAllInstances( classHandle );
+		Collection<ROCInstance> objects = repository.getAllInstances( classHandle );
 
 		// For each object, find the set of attributes that are owned by independent federates
 		for( ROCInstance object : objects )
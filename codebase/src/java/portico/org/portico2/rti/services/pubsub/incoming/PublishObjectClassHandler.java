@@ -127,15 +127,12 @@ public class PublishObjectClassHandler extends RTIMessageHandler
 			return;
 		
 		// check to see if there is any outstanding acquisition request for any of those atts
-		for( ROCInstance instance : repository.getAllInstances() )
+		// FIXME I just changed this from getDiscoveredClassHandle() to get*REGISTERED*...
+		//       as part of the split of OCInstance into ROCInstance and LOCInstance.
+		//       Need to revisit this particular ownership edge case to ensure it still
+		//       makes sense.
+		for( ROCInstance instance : repository.getAllInstances(classHandle) )
 		{
-			// FIXME I just changed this from getDiscoveredClassHandle() to get*REGISTERED*...
-			//       as part of the split of OCInstance into ROCInstance and LOCInstance.
-			//       Need to revisit this particular ownership edge case to ensure it still
-			//       makes sense.
-			if( instance.getRegisteredClassHandle() != classHandle )
-				continue;
-			
 			Set<Integer> set = ownership.getAttributesUnderAcquisitionRequest( instance.getHandle(),
 			                                                                   federateHandle );
 			if( set.isEmpty() == false )
@@ -61,6 +61,7 @@ public class SubscribeInteractionClassHandler extends RTIMessageHandler
 		
 		// store the interest information
 		interests.subscribeInteractionClass( federateHandle, classHandle );
+		routingTable.interactionClassSubscriptionChanged( classHandle );
 
 		if( logger.isInfoEnabled() )
 		{
@@ -14,9 +14,9 @@
  */
 package org.portico2.rti.services.pubsub.incoming;
 
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.portico.lrc.compat.JConfigurationException;
 import org.portico.lrc.compat.JException;
@@ -26,7 +26,6 @@ import org.portico.lrc.model.OCMetadata;
 import org.portico2.common.messaging.MessageContext;
 import org.portico2.common.services.object.msg.DiscoverObject;
 import org.portico2.common.services.pubsub.msg.SubscribeObjectClass;
-import org.portico2.rti.federation.Federate;
 import org.portico2.rti.services.RTIMessageHandler;
 import org.portico2.rti.services.object.data.ROCInstance;
 
@@ -80,6 +79,7 @@ public class SubscribeObjectClassHandler extends RTIMessageHandler
 
 		// Store the interest information -- regionToken is NULL_HANDLE for non-ddm requests
 		interests.subscribeObjectClass( federateHandle, classHandle, attributes, regionToken );
+		routingTable.objectClassSubscriptionChanged( classHandle );
 
 		context.success();
 		if( logger.isInfoEnabled() )
@@ -96,17 +96,17 @@ public class SubscribeObjectClassHandler extends RTIMessageHandler
 		//////////////////////////////////////////////////
 		// After a federate newly subscribes to a class, there may be existing objects that
 		// they can now also discover. Loop through and find any, generating DiscoverObject
-		// callbacks as appropriate
-		Set<ROCInstance> instances = repository.getAllInstancesAssignableFrom( classType );
-		instances = instances.stream()
-		                     .filter( instance -> instance.hasDiscovered(federateHandle) == false )
-		                     .collect( Collectors.toSet() );
-		
-		Federate federate = federation.getFederate( federateHandle );
-		
-		for( ROCInstance instance : instances )
+		// callbacks as appropriate.
+		//
+		// The instances are streamed straight out of the repository's class index, so each
+		// discovery is queued as soon as it is found (and the outgoing queue can start sending
+		// them) rather than all the instances being gathered up first.
+		Iterator<ROCInstance> instances = repository.streamAllInstancesAssignableFrom(classType)
+		                                            .iterator();
+		while( instances.hasNext() )
 		{
 			// have we already discovered this one?
+			ROCInstance instance = instances.next();
 			if( instance.hasDiscovered(federateHandle) )
 				continue;
 			
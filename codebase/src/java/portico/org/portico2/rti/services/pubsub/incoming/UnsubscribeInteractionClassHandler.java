@@ -62,6 +62,7 @@ public class UnsubscribeInteractionClassHandler extends RTIMessageHandler
 
 		// store the interest information
 		interests.unsubscribeInteractionClass( federateHandle, classHandle, regionToken  );
+		routingTable.interactionClassSubscriptionChanged( classHandle );
 
 		context.success();
 
@@ -64,6 +64,7 @@ public class UnsubscribeObjectClassHandler extends RTIMessageHandler
 
 		// store the interest information -- regionToken is NULL_HANDLE for non-ddm requests
 		interests.unsubscribeObjectClass( request.getSourceFederate(), classHandle, regionToken );
+		routingTable.objectClassSubscriptionChanged( classHandle );
 		context.success();
 		
 		if( logger.isInfoEnabled() )
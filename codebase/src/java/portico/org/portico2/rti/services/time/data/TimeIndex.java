@@ -0,0 +1,237 @@
+/*
+ *   Copyright 2006 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.rti.services.time.data;
+
+import java.util.Arrays;
+
+/**
+ * An indexed binary min-heap of federate handles, each keyed on a time. The {@link TimeManager}
+ * uses these to keep regulating federates ordered by their LBTS and waiting constrained
+ * federates ordered by their requested time, so that it doesn't have to scan every federate
+ * each time something changes.
+ * <p/>
+ *
+ * Alongside the heap we keep the position of each federate in it (indexed by handle, as
+ * federate handles are small sequential integers). This lets us find a federate in O(1), so
+ * changing or removing a key is O(log n), as is taking the lowest. Looking at the lowest is O(1).
+ * <p/>
+ *
+ * This class is <b>not</b> thread-safe. The time manager is only ever used from the
+ * federation's message processing thread.
+ */
+public class TimeIndex
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int NOT_PRESENT = -1;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private int[] handles;    // heap of federate handles
+	private double[] keys;    // key for the handle at the same position in the heap
+	private int size;
+	private int[] positions;  // position in the heap of each handle, NOT_PRESENT if not there
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public TimeIndex()
+	{
+		this.handles = new int[16];
+		this.keys = new double[16];
+		this.size = 0;
+		this.positions = new int[16];
+		Arrays.fill( this.positions, NOT_PRESENT );
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/**
+	 * Add the federate to the index with the given key, or update its key if it is already
+	 * in there.
+	 */
+	public void put( int federate, double key )
+	{
+		int position = position( federate );
+		if( position == NOT_PRESENT )
+		{
+			// add it to the bottom of the heap and let it rise
+			if( size == handles.length )
+			{
+				handles = Arrays.copyOf( handles, size*2 );
+				keys = Arrays.copyOf( keys, size*2 );
+			}
+
+			ensurePositionCapacity( federate );
+			set( size, federate, key );
+			siftUp( size++ );
+		}
+		else
+		{
+			double old = keys[position];
+			keys[position] = key;
+			if( key < old )
+				siftUp( position );
+			else if( key > old )
+				siftDown( position );
+		}
+	}
+
+	/**
+	 * Remove the federate from the index.
+	 *
+	 * @return true if it was in the index, false otherwise
+	 */
+	public boolean remove( int federate )
+	{
+		int position = position( federate );
+		if( position == NOT_PRESENT )
+			return false;
+
+		positions[federate] = NOT_PRESENT;
+		if( --size == position )
+			return true; // it was the last one, nothing to fix up
+
+		// move the last one into the hole and put it where it belongs
+		set( position, handles[size], keys[size] );
+		siftDown( position );
+		siftUp( position );
+		return true;
+	}
+
+	/**
+	 * Remove and return the federate with the lowest key.
+	 *
+	 * @return The federate with the lowest key, or -1 if the index is empty
+	 */
+	public int poll()
+	{
+		if( size == 0 )
+			return NOT_PRESENT;
+
+		int federate = handles[0];
+		remove( federate );
+		return federate;
+	}
+
+	/** @return The federate with the lowest key, or -1 if the index is empty */
+	public int peek()
+	{
+		return size == 0 ? NOT_PRESENT : handles[0];
+	}
+
+	/** @return The lowest key in the index, or {@link Double#MAX_VALUE} if it is empty */
+	public double peekKey()
+	{
+		return size == 0 ? Double.MAX_VALUE : keys[0];
+	}
+
+	public boolean contains( int federate )
+	{
+		return position(federate) != NOT_PRESENT;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public void clear()
+	{
+		for( int i = 0; i < size; i++ )
+			positions[handles[i]] = NOT_PRESENT;
+
+		this.size = 0;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Heap Maintenance   ////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	private void siftUp( int position )
+	{
+		int federate = handles[position];
+		double key = keys[position];
+		while( position > 0 )
+		{
+			int parent = (position-1) >>> 1;
+			if( keys[parent] <= key )
+				break;
+
+			set( position, handles[parent], keys[parent] );
+			position = parent;
+		}
+
+		set( position, federate, key );
+	}
+
+	private void siftDown( int position )
+	{
+		int federate = handles[position];
+		double key = keys[position];
+		int half = size >>> 1;
+		while( position < half )
+		{
+			int child = (position*2) + 1;
+			int right = child + 1;
+			if( right < size && keys[right] < keys[child] )
+				child = right;
+
+			if( key <= keys[child] )
+				break;
+
+			set( position, handles[child], keys[child] );
+			position = child;
+		}
+
+		set( position, federate, key );
+	}
+
+	private void set( int position, int federate, double key )
+	{
+		handles[position] = federate;
+		keys[position] = key;
+		positions[federate] = position;
+	}
+
+	private int position( int federate )
+	{
+		if( federate < 0 || federate >= positions.length )
+			return NOT_PRESENT;
+		else
+			return positions[federate];
+	}
+
+	private void ensurePositionCapacity( int federate )
+	{
+		if( federate < positions.length )
+			return;
+
+		int oldLength = positions.length;
+		positions = Arrays.copyOf( positions, Math.max(federate+1,oldLength*2) );
+		Arrays.fill( positions, oldLength, positions.length, NOT_PRESENT );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -48,6 +48,14 @@ import org.portico2.common.services.time.data.TimeStatus;
  * the federation (or null, or any other invalid key), you will get a NullPointerException. It
  * is expected that the various handlers will have taken care to ensure that a federate exists
  * before calling these methods. To be fair, this should never really be a problem.
+ * <p/>
+ * <b>INDEXING NOTE:</b> Regulating federates are kept in a {@link TimeIndex} keyed on their LBTS,
+ * so the federation LBTS is always just the lowest key and {@link #getLBTS()} is O(1). Constrained
+ * federates with an outstanding advance request are kept in another, keyed on the time they have
+ * requested, so {@link #pollGrantable(double)} can hand out just those that can now be granted. Both
+ * are kept up to date by the methods in here, so any change to the time, lookahead or advancing
+ * state of a federate <b>must</b> go through the manager rather than straight to its
+ * {@link TimeStatus}. Otherwise the indexes will be out of date.
  */
 public class TimeManager implements SaveRestoreTarget
 {
@@ -62,6 +70,9 @@ public class TimeManager implements SaveRestoreTarget
 	private Set<Integer>            regulating;
 	private Set<Integer>            constrained;
 	private double                  lbts;
+	
+	private TimeIndex               regulatingIndex; // regulating federates by lbts
+	private TimeIndex               waitingIndex;    // constrained+advancing federates by requested time
 
 	//----------------------------------------------------------
 	//                      CONSTRUCTORS
@@ -72,6 +83,9 @@ public class TimeManager implements SaveRestoreTarget
 		this.regulating  = new HashSet<Integer>();
 		this.constrained = new HashSet<Integer>();
 		this.lbts        = Double.MAX_VALUE;
+		
+		this.regulatingIndex = new TimeIndex();
+		this.waitingIndex    = new TimeIndex();
 	}
 	
 	//----------------------------------------------------------
@@ -81,36 +95,59 @@ public class TimeManager implements SaveRestoreTarget
 	////////////////////// Helper Methods //////////////////////
 	////////////////////////////////////////////////////////////
 	/**
-	 * This method will interrogate the current time status of each of the recorded federates and
-	 * will determine the LBTS for *the federation* (that is, the lowest relevant LBTS of any
-	 * federate). Once it is been determined, the <code>lbts</code> property of the manager will
-	 * be set to the value. The new federation-lbts will be returned.
+	 * This method will determine the LBTS for *the federation* (that is, the lowest relevant LBTS
+	 * of any regulating federate). Once it is been determined, the <code>lbts</code> property of
+	 * the manager will be set to the value. The new federation-lbts will be returned.
+	 * <p/>
+	 * The regulating federates are kept ordered by LBTS, so this is O(1). It is called whenever
+	 * the manager changes anything that could affect the LBTS, so there is generally no need to
+	 * call it from outside.
 	 */
 	public double recalculateLBTS()
 	{
-		// if there are no regulating federates, reset the LBTS
-		if( this.regulating.size() == 0 )
+		// if there are no regulating federates this will be Double.MAX_VALUE
+		this.lbts = regulatingIndex.peekKey();
+		return this.lbts;
+	}
+	
+	/**
+	 * Update the indexes to reflect the current status of the given federate, and then update
+	 * the federation LBTS in case it has changed. O(log n).
+	 */
+	private void reindex( int federate )
+	{
+		TimeStatus status = timeStatus.get( federate );
+		if( status == null )
 		{
-			this.lbts = Double.MAX_VALUE;
-			// the removal of all regulating federates might mean advances are possible for
-			// constrained federates, thus we should return true
-			return this.lbts;
+			regulatingIndex.remove( federate );
+			waitingIndex.remove( federate );
 		}
-			
-		// there are regulating federates, process them for a possible change
-		double lowestLBTS = Double.MAX_VALUE;
-		for( Integer federateHandle : regulating )
+		else
 		{
-			TimeStatus status = timeStatus.get( federateHandle );
-			if( status.lbts < lowestLBTS )
-				lowestLBTS = status.lbts;
+			if( status.regulating == TimeStatus.TriState.ON )
+				regulatingIndex.put( federate, status.lbts );
+			else
+				regulatingIndex.remove( federate );
+			
+			if( status.constrained == TimeStatus.TriState.ON && status.isInAdvancingState() )
+				waitingIndex.put( federate, status.requestedTime );
+			else
+				waitingIndex.remove( federate );
 		}
 		
-		// reset the current federation LBTS
-		if( this.lbts != lowestLBTS )
-			this.lbts = lowestLBTS;
-		
-		return this.lbts;
+		recalculateLBTS();
+	}
+	
+	/**
+	 * Rebuild the indexes from scratch. Only needed when all the time status information has
+	 * been replaced (such as after a restore).
+	 */
+	private void rebuildIndexes()
+	{
+		regulatingIndex.clear();
+		waitingIndex.clear();
+		for( Integer federate : timeStatus.keySet() )
+			reindex( federate );
 	}
 	
 	/**
@@ -121,6 +158,39 @@ public class TimeManager implements SaveRestoreTarget
 	{
 		TimeStatus status = timeStatus.get( federateHandle );
 		status.advanceFederate( status.requestedTime );
+		reindex( federateHandle );
+	}
+	
+	/**
+	 * Record that the given federate has requested an advance to the given time using
+	 * {@link TimeStatus#timeAdvanceRequested(double)}. This will update its LBTS, so the
+	 * federation LBTS will be recalculated.
+	 */
+	public void timeAdvanceRequested( int federateHandle, double requestedTime )
+	{
+		timeStatus.get(federateHandle).timeAdvanceRequested( requestedTime );
+		reindex( federateHandle );
+	}
+	
+	/**
+	 * Finds a constrained federate with an outstanding advance request that can be granted
+	 * given the federation LBTS (that is, its requested time is below the LBTS) and takes it
+	 * off the list of those waiting. The federate should then be advanced via
+	 * {@link #advanceFederate(int)}. Keep calling this until it returns -1 to find all the
+	 * federates that can be advanced. Each call is O(log n), so only the federates that can
+	 * actually advance are ever looked at.
+	 * 
+	 * @param federationLbts The LBTS to check against. Pass the same value for each call in
+	 *                       a round, as advancing federates may change the current LBTS.
+	 * @return The handle of the next constrained federate that can advance, or -1 if there
+	 *         are none
+	 */
+	public int pollGrantable( double federationLbts )
+	{
+		if( waitingIndex.isEmpty() || waitingIndex.peekKey() >= federationLbts )
+			return -1;
+		else
+			return waitingIndex.poll();
 	}
 	
 	/**
@@ -156,9 +226,8 @@ public class TimeManager implements SaveRestoreTarget
 		ts.currentTime = time;
 		ts.lbts = ts.currentTime + ts.lookahead;
 		
-		// if this federate is regulating, recalculate the federation-wide LBTS
-		if( ts.regulating == TimeStatus.TriState.ON )
-			recalculateLBTS();
+		// if this federate is regulating, this will update the federation-wide LBTS
+		reindex( federate );
 	}
 	
 	/**
@@ -176,6 +245,7 @@ public class TimeManager implements SaveRestoreTarget
 	public void setRequestedTime( int federate, double time )
 	{
 		timeStatus.get(federate).requestedTime = time;
+		reindex( federate );
 	}
 	
 	public double getLookahead( int federate )
@@ -188,7 +258,7 @@ public class TimeManager implements SaveRestoreTarget
 		TimeStatus ts = timeStatus.get( federate );
 		ts.lookahead = newLookahead;
 		ts.lbts = ts.currentTime + ts.lookahead;
-		recalculateLBTS();
+		reindex( federate );
 	}
 	
 	/**
@@ -224,6 +294,7 @@ public class TimeManager implements SaveRestoreTarget
 	public void setAdvancing( int federate, TAR advancing )
 	{
 		timeStatus.get(federate).advancing = advancing;
+		reindex( federate );
 	}
 	
 	////////////////////////////////////////////////////////////
@@ -252,7 +323,7 @@ public class TimeManager implements SaveRestoreTarget
 		regulating.add( federate );
 		
 		// this could affect the LBTS, recalculate it
-		recalculateLBTS();
+		reindex( federate );
 	}
 	
 	/**
@@ -269,7 +340,7 @@ public class TimeManager implements SaveRestoreTarget
 		regulating.remove( federate );
 
 		// this could affect the LBTS, recalculate it
-		recalculateLBTS();
+		reindex( federate );
 	}
 	
 	public boolean isRegulating( int federate )
@@ -316,7 +387,7 @@ public class TimeManager implements SaveRestoreTarget
 		constrained.add( federate );
 
 		// this could affect the LBTS, recalculate it
-		recalculateLBTS();
+		reindex( federate );
 	}
 	
 	/**
@@ -333,7 +404,7 @@ public class TimeManager implements SaveRestoreTarget
 		constrained.remove( federate );
 		
 		// this could affect the LBTS, recalculate it
-		recalculateLBTS();
+		reindex( federate );
 	}
 	
 	public boolean isConstrained( int federate )
@@ -389,8 +460,9 @@ public class TimeManager implements SaveRestoreTarget
 		if( existingStatus.regulating == TimeStatus.TriState.ON )
 		{
 			regulating.add( federate );
-			recalculateLBTS();
 		}
+		
+		reindex( federate );
 	}
 	
 	/**
@@ -405,7 +477,7 @@ public class TimeManager implements SaveRestoreTarget
 		constrained.remove( federate );
 
 		// this could affect the LBTS, recalculate it
-		recalculateLBTS();
+		reindex( federate );
 	}
 
 	public String toString()
@@ -460,6 +532,7 @@ public class TimeManager implements SaveRestoreTarget
 		this.regulating = (Set<Integer>)input.readObject();
 		this.constrained = (Set<Integer>)input.readObject();
 		this.lbts = input.readDouble();
+		rebuildIndexes();
 	}
 
 	//----------------------------------------------------------
@@ -69,8 +69,8 @@ public class TimeAdvanceRequestHandler extends RTIMessageHandler
 
 		// record the time advance request in the time manager
 		TimeStatus status = timeManager.getTimeStatus( federate );
-		status.timeAdvanceRequested( newTime );
-		double federationLbts = timeManager.recalculateLBTS();
+		timeManager.timeAdvanceRequested( federate, newTime );
+		double federationLbts = timeManager.getLBTS();
 		
 		//////////////////////////////////
 		// Is the federate CONSTRAINED? //
@@ -137,14 +137,12 @@ public class TimeAdvanceRequestHandler extends RTIMessageHandler
 
 	private void issueAllPossibleAdvances()
 	{
-		// process a potential advance for all the constrained federates //
+		// process a potential advance for all the constrained federates that are waiting on
+		// one. the time manager only gives us those whose requested time is below the LBTS.
 		double federationLbts = timeManager.getLBTS();
-		for( Integer constrainedHandle : timeManager.getConstrainedFederates() )
-		{
-			TimeStatus constrainedStatus = timeManager.getTimeStatus( constrainedHandle );
-			if( constrainedStatus.canAdvance(federationLbts) )
-				advanceFederate( constrainedHandle, constrainedStatus );
-		}
+		int constrainedHandle = -1;
+		while( (constrainedHandle = timeManager.pollGrantable(federationLbts)) != -1 )
+			advanceFederate( constrainedHandle, timeManager.getTimeStatus(constrainedHandle) );
 	}
 
 	/**
@@ -162,7 +160,7 @@ public class TimeAdvanceRequestHandler extends RTIMessageHandler
 	private void advanceFederate( int federateHandle, TimeStatus status )
 	{
 		// mark the federate as being able to advance
-		status.advanceFederate();
+		timeManager.advanceFederate( federateHandle );
 
 		// queue a callback
 		TimeAdvanceGrant grant = new TimeAdvanceGrant( status.getRequestedTime() );
@@ -0,0 +1,163 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package hlaunit.ieee1516e.mom;
+
+import java.util.HashMap;
+
+import org.portico.impl.hla1516e.Rti1516eAmbassador;
+import org.portico2.common.network.CallType;
+import org.portico2.common.network.Header;
+import org.portico2.common.services.object.msg.SendInteraction;
+import org.portico2.lrc.LRC;
+import org.portico2.lrc.ReceiveFilter;
+import org.portico2.rti.federation.FederateMetrics;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import hlaunit.ieee1516e.common.Abstract1516eTest;
+import hlaunit.ieee1516e.common.TestFederate;
+
+/**
+ * Checks that the number of data messages an LRC drops from their headers alone makes it into
+ * the RTI's metrics for the federate, both as it ticks and when it resigns.
+ */
+@Test(singleThreaded=true, groups={"MomReceiveFilterMetricsTest","mom"})
+public class MomReceiveFilterMetricsTest extends Abstract1516eTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private TestFederate secondFederate;
+	private FederateMetrics metrics;     // RTI side metrics for the second federate
+	private ReceiveFilter filter;        // second federate's filter
+	private int xHandle;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@Override
+	@BeforeClass(alwaysRun=true)
+	public void beforeClass()
+	{
+		super.beforeClass();
+		this.secondFederate = new TestFederate( "secondFederate", this );
+	}
+
+	@BeforeMethod(alwaysRun=true)
+	public void beforeMethod()
+	{
+		defaultFederate.quickCreate();
+		defaultFederate.quickJoin();
+		secondFederate.quickJoin();
+
+		this.xHandle = defaultFederate.quickICHandle( "InteractionRoot.X" );
+		this.metrics = rti.getFederationManager()
+		                  .getFederation( defaultFederate.simpleName )
+		                  .getFederate( secondFederate.federateName )
+		                  .getMetrics();
+
+		LRC lrc = ((Rti1516eAmbassador)secondFederate.rtiamb).getHelper().getLrc();
+		this.filter = lrc.getState().getReceiveFilter();
+	}
+
+	@Override
+	@AfterClass(alwaysRun=true)
+	public void afterClass()
+	{
+		super.afterClass();
+	}
+
+	@AfterMethod(alwaysRun=true)
+	public void afterMethod()
+	{
+		secondFederate.quickResignTolerant();
+		defaultFederate.quickResign();
+		defaultFederate.quickDestroy();
+	}
+
+	/**
+	 * Give the second federate's filter the header of an interaction of class X from the default
+	 * federate. The second federate doesn't subscribe to X, so it should be dropped.
+	 */
+	private void dropInteraction()
+	{
+		SendInteraction interaction = new SendInteraction( xHandle, null, new HashMap<>() );
+		interaction.setSourceFederate( defaultFederate.federateHandle );
+
+		byte[] buffer = new byte[Header.HEADER_LENGTH];
+		Header.writeHeader( buffer, 0, interaction, CallType.DataMessage, 0, 0 );
+		Assert.assertFalse( filter.accept(new Header(buffer,0)), "Unsubscribed interaction accepted" );
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////////
+	////////////////////////////////////// Test Methods //////////////////////////////////////
+	//////////////////////////////////////////////////////////////////////////////////////////
+
+	///////////////////////////////////////////////
+	// TEST: testDropCountsReportedWhenTicking() //
+	///////////////////////////////////////////////
+	@Test
+	public void testDropCountsReportedWhenTicking()
+	{
+		dropInteraction();
+		dropInteraction();
+		Assert.assertEquals( filter.getDroppedInteractions(), 2 );
+
+		// the report goes out at the end of a tick, but we don't wait for the RTI to get it
+		long deadline = System.currentTimeMillis() + 5000;
+		while( metrics.getReceiveFilterDroppedTotal() == 0 && System.currentTimeMillis() < deadline )
+			secondFederate.quickTick();
+
+		Assert.assertEquals( metrics.getReceiveFilterDroppedInteractions(), 2 );
+		Assert.assertEquals( metrics.getReceiveFilterDroppedTotal(), 2 );
+
+		// we just reported, so the next tick shouldn't report again straight away
+		dropInteraction();
+		Assert.assertNull( filter.pollReport(System.currentTimeMillis()) );
+	}
+
+	////////////////////////////////////////////
+	// TEST: testDropCountsReportedOnResign() //
+	////////////////////////////////////////////
+	@Test
+	public void testDropCountsReportedOnResign()
+	{
+		dropInteraction();
+		Assert.assertEquals( metrics.getReceiveFilterDroppedTotal(), 0 );
+
+		// no ticking, the final numbers are sent as part of resigning
+		secondFederate.quickResign();
+		Assert.assertEquals( metrics.getReceiveFilterDroppedInteractions(), 1 );
+		Assert.assertEquals( metrics.getReceiveFilterDroppedOwn(), 0 );
+		Assert.assertEquals( metrics.getReceiveFilterDroppedReflections(), 0 );
+		Assert.assertEquals( metrics.getReceiveFilterDroppedUnknownObjects(), 0 );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
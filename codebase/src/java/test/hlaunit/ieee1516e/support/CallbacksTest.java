@@ -17,6 +17,12 @@ package hlaunit.ieee1516e.support;
 import hlaunit.ieee1516e.common.Abstract1516eTest;
 import hlaunit.ieee1516e.common.TestFederate;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.portico.impl.hla1516e.Rti1516eAmbassador;
+import org.portico2.lrc.LRC;
+import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeClass;
@@ -110,6 +116,41 @@ public class CallbacksTest extends Abstract1516eTest
 		secondFederate.fedamb.waitForROUpdate( objectHandle );
 	}
 
+	/////////////////////////////////////////////////////////
+	// TEST: testHeldCallbacksHandedOverInsideTick() //
+	/////////////////////////////////////////////////////////
+	/**
+	 * Bindings that hold on to callbacks (the C++ one) are asked to hand them over at the end of
+	 * every tick. That has to happen before the federate stops being flagged as in a callback.
+	 */
+	@Test
+	public void testHeldCallbacksHandedOverInsideTick() throws Exception
+	{
+		LRC lrc = ((Rti1516eAmbassador)secondFederate.rtiamb).getHelper().getLrc();
+		AtomicInteger flushes = new AtomicInteger( 0 );
+		AtomicBoolean outsideTick = new AtomicBoolean( false );
+		lrc.setCallbackFlush( () -> {
+			flushes.incrementAndGet();
+			if( lrc.getState().isTicking() == false )
+				outsideTick.set( true );
+		});
+
+		try
+		{
+			defaultFederate.quickPublish( "InteractionRoot.X" );
+			secondFederate.quickSubscribe( "InteractionRoot.X" );
+			defaultFederate.quickSend( "InteractionRoot.X", "xa" );
+			secondFederate.fedamb.waitForROInteraction( "InteractionRoot.X" );
+
+			Assert.assertTrue( flushes.get() > 0, "Held callbacks were never handed over" );
+			Assert.assertFalse( outsideTick.get(), "Held callbacks handed over outside the tick" );
+		}
+		finally
+		{
+			lrc.setCallbackFlush( null );
+		}
+	}
+
 	//----------------------------------------------------------
 	//                     STATIC METHODS
 	//----------------------------------------------------------
@@ -0,0 +1,341 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL)
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.forwarder;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.portico.impl.hla1516e.fomparser.FOM;
+import org.portico.lrc.model.ICMetadata;
+import org.portico.lrc.model.OCMetadata;
+import org.portico.lrc.model.ObjectModel;
+import org.portico.utils.messaging.PorticoMessage;
+import org.portico2.common.configuration.ForwarderConfiguration;
+import org.portico2.common.configuration.RID;
+import org.portico2.common.messaging.MessageContext;
+import org.portico2.common.network.CallType;
+import org.portico2.common.network.Message;
+import org.portico2.common.services.federation.msg.CreateFederation;
+import org.portico2.common.services.federation.msg.JoinFederation;
+import org.portico2.common.services.federation.msg.WelcomePack;
+import org.portico2.common.services.object.msg.DiscoverObject;
+import org.portico2.forwarder.Direction;
+import org.portico2.forwarder.firewall.Firewall;
+import org.portico2.forwarder.firewall.Rule;
+import org.portico2.forwarder.tracking.StateTracker;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the decisions the forwarder {@link Firewall} remembers for each class are the same as
+ * matching the qualified name against the configured rules every time, the way it used to, and
+ * that they are thrown away when the FOM of the federation changes.
+ */
+@Test(groups={"FirewallTest","forwarder"})
+public class FirewallTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int FEDERATION = 1;
+	private static final int OBJECT_OFFSET = 10000; // object handle is this plus the class handle
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Logger logger;
+	private ForwarderConfiguration configuration;
+	private ObjectModel restaurant;
+	private ObjectModel testfom;
+
+	private StateTracker tracker;
+	private Firewall firewall;
+	private int nextRequestId;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@BeforeClass(alwaysRun=true)
+	public void beforeClass() throws Exception
+	{
+		this.logger = LogManager.getFormatterLogger( "portico.forwarder" );
+		File ridfile = new File( ClassLoader.getSystemResource("rid/firewall.rid").toURI() );
+		this.configuration = RID.loadRid( "--rid", ridfile.getPath() ).getForwarderConfiguration();
+		Assert.assertTrue( configuration.isFirewallEnabled() );
+
+		this.restaurant = parse( "fom/ieee1516e/restaurant/RestaurantProcesses.xml" );
+		this.testfom = parse( "fom/ieee1516e/testfom.xml" );
+	}
+
+	@BeforeMethod(alwaysRun=true)
+	public void beforeMethod()
+	{
+		this.tracker = new StateTracker( configuration, logger );
+		this.firewall = new Firewall( configuration, tracker, logger );
+		this.nextRequestId = 1;
+	}
+
+	private ObjectModel parse( String path ) throws Exception
+	{
+		URL model = ClassLoader.getSystemResource( path );
+		ObjectModel fom = FOM.parseFOM( model );
+		ObjectModel.mommify( fom );
+		return fom;
+	}
+
+	/** Pass a request and its successful response through the state tracker */
+	private void requestAndRespond( PorticoMessage request, MessageContext context )
+	{
+		request.setTargetFederation( FEDERATION );
+		Message message = new Message( request, CallType.ControlRequest, nextRequestId++ );
+		tracker.receiveControlRequest( message );
+
+		Message response = new Message( message );
+		response.deflateAndStoreResponse( context.getResponse() );
+		tracker.receiveControlResponse( response );
+	}
+
+	private void createFederation( ObjectModel fom )
+	{
+		CreateFederation request = new CreateFederation( "firewall", fom );
+		MessageContext context = new MessageContext( request );
+		context.success( CreateFederation.KEY_FEDERATION_HANDLE, FEDERATION );
+		context.success( CreateFederation.KEY_FEDERATION_NAME, "firewall" );
+		context.success( CreateFederation.KEY_FOM, fom );
+		requestAndRespond( request, context );
+	}
+
+	/** A federate joins and brings a new FOM with it, replacing the one the federation had */
+	private void joinWithNewFom( ObjectModel fom )
+	{
+		JoinFederation request = new JoinFederation( "firewall", "joiner" );
+		WelcomePack welcome = new WelcomePack();
+		welcome.setFederationHandle( FEDERATION );
+		welcome.setFederationName( "firewall" );
+		welcome.setFederateHandle( 2 );
+		welcome.setFederateName( "joiner" );
+		welcome.setFOM( fom );
+
+		MessageContext context = new MessageContext( request );
+		context.success( welcome );
+		requestAndRespond( request, context );
+	}
+
+	/** Tell the tracker about an object of each class in the FOM */
+	private void discoverObjects( ObjectModel fom )
+	{
+		for( OCMetadata objectClass : fom.getAllObjectClasses() )
+		{
+			DiscoverObject discover = new DiscoverObject( objectClass.getHandle(),
+			                                              OBJECT_OFFSET+objectClass.getHandle(),
+			                                              "object"+objectClass.getHandle() );
+			discover.setTargetFederation( FEDERATION );
+			tracker.receiveNotification( new Message(discover,CallType.Notification,0) );
+		}
+	}
+
+	/** The rules in the configuration for the given direction and type of message */
+	private Set<String> rulesFor( Direction direction, boolean objects )
+	{
+		if( direction == Direction.Upstream )
+			return objects ? configuration.getAllowedExportObjects() : configuration.getAllowedExportInteractions();
+		else
+			return objects ? configuration.getAllowedImportObjects() : configuration.getAllowedImportInteractions();
+	}
+
+	/**
+	 * The decision as the firewall used to make it for every message: build a regex from each
+	 * rule and try them all against the qualified name. Names we can't resolve are rejected.
+	 */
+	private boolean regexDecision( Direction direction, boolean objects, String qualifiedName )
+	{
+		if( qualifiedName == null )
+			return false;
+
+		for( String rule : rulesFor(direction,objects) )
+		{
+			Pattern pattern = Pattern.compile( "(?i)"+rule.replace("*",".*?") );
+			if( pattern.matcher(qualifiedName).matches() )
+				return true;
+		}
+
+		return false;
+	}
+
+	private String objectClassName( ObjectModel fom, int classHandle )
+	{
+		OCMetadata objectClass = fom.getObjectClass( classHandle );
+		return objectClass == null ? null : objectClass.getQualifiedName();
+	}
+
+	private String interactionClassName( ObjectModel fom, int classHandle )
+	{
+		ICMetadata interactionClass = fom.getInteractionClass( classHandle );
+		return interactionClass == null ? null : interactionClass.getQualifiedName();
+	}
+
+	/**
+	 * Ask the firewall about every class handle given, in both directions, a few times over so
+	 * later answers come from the decision tables. Check each answer matches the regex decision
+	 * for the name of the class in the given FOM.
+	 *
+	 * @return The number of messages that were accepted
+	 */
+	private int verifyAgainstRegex( ObjectModel fom,
+	                                Set<Integer> objectClasses,
+	                                Set<Integer> interactionClasses )
+	{
+		int accepted = 0;
+		for( int pass = 0; pass < 3; pass++ )
+		{
+			for( Direction direction : Direction.values() )
+			{
+				for( int classHandle : objectClasses )
+				{
+					boolean expected = regexDecision( direction, true, objectClassName(fom,classHandle) );
+					boolean actual = firewall.acceptUpdate( direction, true, FEDERATION, OBJECT_OFFSET+classHandle );
+					Assert.assertEquals( actual, expected, direction+" object of class "+
+					                     objectClassName(fom,classHandle)+" (pass "+pass+")" );
+					if( actual )
+						accepted++;
+				}
+
+				for( int classHandle : interactionClasses )
+				{
+					boolean expected = regexDecision( direction, false, interactionClassName(fom,classHandle) );
+					boolean actual = firewall.acceptUpdate( direction, false, FEDERATION, classHandle );
+					Assert.assertEquals( actual, expected, direction+" interaction "+
+					                     interactionClassName(fom,classHandle)+" (pass "+pass+")" );
+					if( actual )
+						accepted++;
+				}
+			}
+		}
+
+		return accepted;
+	}
+
+	private Set<Integer> objectHandles( ObjectModel... foms )
+	{
+		Set<Integer> handles = new TreeSet<>();
+		for( ObjectModel fom : foms )
+			fom.getAllObjectClasses().forEach( objectClass -> handles.add(objectClass.getHandle()) );
+		return handles;
+	}
+
+	private Set<Integer> interactionHandles( ObjectModel... foms )
+	{
+		Set<Integer> handles = new TreeSet<>();
+		for( ObjectModel fom : foms )
+			fom.getAllInteractionClasses().forEach( interaction -> handles.add(interaction.getHandle()) );
+		return handles;
+	}
+
+	private long acceptedByRules()
+	{
+		long total = 0;
+		for( Direction direction : Direction.values() )
+		{
+			for( boolean objects : new boolean[]{ true, false } )
+			{
+				for( Rule rule : firewall.getRules(direction,objects) )
+					total += rule.getAcceptedCount();
+			}
+		}
+
+		return total;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Decision Tests   //////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testCachedDecisionsMatchRegex()
+	{
+		createFederation( restaurant );
+		discoverObjects( restaurant );
+
+		int accepted = verifyAgainstRegex( restaurant, objectHandles(restaurant), interactionHandles(restaurant) );
+
+		// make sure the rules let some things through and kept others out
+		Assert.assertTrue( accepted > 0, "Nothing was accepted" );
+		Assert.assertEquals( acceptedByRules(), accepted );
+		Assert.assertEquals( firewall.getUnresolvedCount(), 0 );
+	}
+
+	@Test
+	public void testUnresolvedHandlesAreRejectedAndNotRemembered()
+	{
+		// nothing is known about the federation yet
+		ICMetadata served = restaurant.getInteractionClass( "HLAinteractionRoot.CustomerTransactions.FoodServed" );
+		Assert.assertFalse( firewall.acceptUpdate(Direction.Downstream,false,FEDERATION,served.getHandle()) );
+		Assert.assertFalse( firewall.acceptUpdate(Direction.Downstream,true,FEDERATION,OBJECT_OFFSET+1) );
+		Assert.assertEquals( firewall.getUnresolvedCount(), 2 );
+
+		// once it is, the same handles resolve and get the right decision
+		createFederation( restaurant );
+		discoverObjects( restaurant );
+		Assert.assertTrue( firewall.acceptUpdate(Direction.Downstream,false,FEDERATION,served.getHandle()) );
+		Assert.assertEquals( firewall.getUnresolvedCount(), 2 );
+		verifyAgainstRegex( restaurant, objectHandles(restaurant), interactionHandles(restaurant) );
+	}
+
+	@Test
+	public void testFomChangeInvalidatesDecisions()
+	{
+		createFederation( restaurant );
+		discoverObjects( restaurant );
+
+		// every handle used by either FOM, so that some of them change name (or disappear)
+		Set<Integer> objectClasses = objectHandles( restaurant, testfom );
+		Set<Integer> interactionClasses = interactionHandles( restaurant, testfom );
+		verifyAgainstRegex( restaurant, objectClasses, interactionClasses );
+
+		// the test is only worth anything if the new FOM changes some of the answers
+		List<String> changed = new ArrayList<>();
+		for( Direction direction : Direction.values() )
+		{
+			for( int classHandle : interactionClasses )
+			{
+				if( regexDecision(direction,false,interactionClassName(restaurant,classHandle)) !=
+				    regexDecision(direction,false,interactionClassName(testfom,classHandle)) )
+					changed.add( direction+" "+classHandle );
+			}
+		}
+		Assert.assertFalse( changed.isEmpty(), "The FOM change doesn't change any decisions" );
+
+		// a federate joins with a different FOM, every decision has to be made again against it
+		joinWithNewFom( testfom );
+		discoverObjects( testfom );
+		verifyAgainstRegex( testfom, objectClasses, interactionClasses );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
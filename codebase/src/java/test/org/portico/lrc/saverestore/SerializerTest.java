@@ -0,0 +1,313 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.lrc.saverestore;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.portico.lrc.services.saverestore.data.Manifest;
+import org.portico.lrc.services.saverestore.data.SaveRestoreFailed;
+import org.portico.lrc.services.saverestore.data.SaveRestoreTarget;
+import org.portico.lrc.services.saverestore.data.Serializer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups={"SerializerTest","saverestore"})
+public class SerializerTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Path directory;
+	private Serializer serializer;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@BeforeClass(alwaysRun=true)
+	public void beforeClass() throws Exception
+	{
+		this.directory = Files.createTempDirectory( "portico-save" );
+		this.serializer = new Serializer( LogManager.getFormatterLogger("portico.test") );
+	}
+
+	@AfterClass(alwaysRun=true)
+	public void afterClass() throws Exception
+	{
+		try( Stream<Path> paths = Files.walk(directory) )
+		{
+			paths.sorted( Comparator.reverseOrder() ).map( Path::toFile ).forEach( File::delete );
+		}
+	}
+
+	private Manifest manifest( SaveRestoreTarget... targets )
+	{
+		Manifest manifest = new Manifest();
+		for( SaveRestoreTarget target : targets )
+			manifest.addTarget( target );
+		return manifest;
+	}
+
+	/** Save two targets with the given values to a new file and wait for it to be written */
+	private String save( String name, String one, String two ) throws Exception
+	{
+		String location = directory.resolve(name).toString();
+		serializer.save( manifest(new TargetOne(one),new TargetTwo(two)), location ).get();
+		return location;
+	}
+
+	private void assertRestoreFails( String location, Manifest manifest, String expected )
+	{
+		try
+		{
+			serializer.restore( manifest, location );
+			Assert.fail( "Expected restore from ["+location+"] to fail" );
+		}
+		catch( SaveRestoreFailed srf )
+		{
+			Assert.assertTrue( srf.getMessage().contains(expected),
+			                   "Unexpected failure: "+srf.getMessage() );
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  File Format Tests   ///////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testFileFormat() throws Exception
+	{
+		String location = save( "format.save", "abc", "a longer value than the first one" );
+		Assert.assertFalse( new File(location+".tmp").exists(), "Temp file left behind" );
+
+		byte[] bytes = Files.readAllBytes( Path.of(location) );
+		DataInputStream input = new DataInputStream( new ByteArrayInputStream(bytes) );
+		Assert.assertEquals( input.readInt(), 0x50525356 );
+		Assert.assertEquals( input.readInt(), 1 );
+		Assert.assertEquals( input.readInt(), 2 );
+
+		long total = 0;
+		for( Class<?> expected : new Class<?>[]{ TargetOne.class, TargetTwo.class } )
+		{
+			byte[] name = new byte[input.readShort()];
+			input.readFully( name );
+			Assert.assertEquals( new String(name,"UTF-8"), expected.getName() );
+			int size = input.readInt();
+			Assert.assertTrue( size > 0 );
+			total += size;
+		}
+
+		long checksum = input.readLong();
+		int length = input.readInt();
+		Assert.assertEquals( input.available(), length );
+		Assert.assertEquals( total, length-4, "Target sizes should cover all but the stream header" );
+
+		CRC32 crc = new CRC32();
+		crc.update( ByteBuffer.wrap(bytes,bytes.length-length,length) );
+		Assert.assertEquals( crc.getValue(), checksum );
+	}
+
+	@Test
+	public void testRestore() throws Exception
+	{
+		String location = save( "restore.save", "first", "second" );
+
+		TargetOne one = new TargetOne( null );
+		TargetTwo two = new TargetTwo( null );
+		serializer.restore( manifest(one,two), location );
+		Assert.assertEquals( one.value, "first" );
+		Assert.assertEquals( two.value, "second" );
+	}
+
+	@Test
+	public void testRestoreLegacyFile() throws Exception
+	{
+		File file = directory.resolve("legacy.save").toFile();
+		try( ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(file)) )
+		{
+			new TargetOne("old").saveToStream( output );
+			new TargetTwo("format").saveToStream( output );
+		}
+
+		TargetOne one = new TargetOne( null );
+		TargetTwo two = new TargetTwo( null );
+		serializer.restore( manifest(one,two), file.toString() );
+		Assert.assertEquals( one.value, "old" );
+		Assert.assertEquals( two.value, "format" );
+	}
+
+	@Test
+	public void testRestoreRejectsDifferentTargets() throws Exception
+	{
+		String location = save( "targets.save", "first", "second" );
+		assertRestoreFails( location, manifest(new TargetTwo(null),new TargetOne(null)), "do not match" );
+		assertRestoreFails( location, manifest(new TargetOne(null)), "has 2 targets" );
+	}
+
+	@Test
+	public void testRestoreRejectsCorruptSnapshot() throws Exception
+	{
+		String location = save( "corrupt.save", "first", "second" );
+		byte[] bytes = Files.readAllBytes( Path.of(location) );
+		bytes[bytes.length-1] ^= 0xff;
+		Files.write( Path.of(location), bytes );
+
+		assertRestoreFails( location, manifest(new TargetOne(null),new TargetTwo(null)), "checksum" );
+	}
+
+	@Test
+	public void testRestoreRejectsBadTargetSizes() throws Exception
+	{
+		String location = save( "sizes.save", "first", "second" );
+
+		// the size of the first target comes straight after its name
+		byte[] bytes = Files.readAllBytes( Path.of(location) );
+		int offset = 12 + 2 + TargetOne.class.getName().length();
+		ByteBuffer.wrap( bytes ).putInt( offset, ByteBuffer.wrap(bytes).getInt(offset)+1 );
+		Files.write( Path.of(location), bytes );
+
+		assertRestoreFails( location, manifest(new TargetOne(null),new TargetTwo(null)), "target sizes" );
+	}
+
+	@Test
+	public void testRestoreRejectsTruncatedFile() throws Exception
+	{
+		String location = save( "truncated.save", "first", "second" );
+		byte[] bytes = Files.readAllBytes( Path.of(location) );
+		Files.write( Path.of(location), Arrays.copyOf(bytes,bytes.length-10) );
+
+		assertRestoreFails( location, manifest(new TargetOne(null),new TargetTwo(null)), "truncated" );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Write Tests   /////////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testOverwriteReplacesFile() throws Exception
+	{
+		String location = save( "overwrite.save", "first", "second" );
+		save( "overwrite.save", "third", "fourth" );
+		Assert.assertFalse( new File(location+".tmp").exists(), "Temp file left behind" );
+
+		TargetOne one = new TargetOne( null );
+		TargetTwo two = new TargetTwo( null );
+		serializer.restore( manifest(one,two), location );
+		Assert.assertEquals( one.value, "third" );
+		Assert.assertEquals( two.value, "fourth" );
+	}
+
+	@Test
+	public void testRestoreWaitsForWrite() throws Exception
+	{
+		// don't wait for the write, the restore has to
+		String location = directory.resolve("pending.save").toString();
+		serializer.save( manifest(new TargetOne("first"),new TargetTwo("second")), location );
+
+		TargetOne one = new TargetOne( null );
+		TargetTwo two = new TargetTwo( null );
+		serializer.restore( manifest(one,two), location );
+		Assert.assertEquals( one.value, "first" );
+		Assert.assertEquals( two.value, "second" );
+	}
+
+	@Test
+	public void testFailedWriteLeavesPreviousFile() throws Exception
+	{
+		String location = save( "failed.save", "first", "second" );
+
+		// put a directory where the temp file needs to go so the write fails
+		File temp = new File( location+".tmp" );
+		Assert.assertTrue( temp.mkdir() );
+		try
+		{
+			serializer.save( manifest(new TargetOne("third"),new TargetTwo("fourth")), location ).get();
+			Assert.fail( "Expected the write to fail" );
+		}
+		catch( ExecutionException ee )
+		{
+			// expected
+			Assert.assertTrue( ee.getCause() instanceof SaveRestoreFailed );
+		}
+		finally
+		{
+			temp.delete();
+		}
+
+		// the file from the first save should still be there, untouched
+		TargetOne one = new TargetOne( null );
+		TargetTwo two = new TargetTwo( null );
+		serializer.restore( manifest(one,two), location );
+		Assert.assertEquals( one.value, "first" );
+		Assert.assertEquals( two.value, "second" );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/// Private Inner Classes: Targets   //////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	private static class TargetOne implements SaveRestoreTarget
+	{
+		protected String value;
+
+		public TargetOne( String value )
+		{
+			this.value = value;
+		}
+
+		public void saveToStream( ObjectOutput output ) throws Exception
+		{
+			output.writeObject( value );
+		}
+
+		public void restoreFromStream( ObjectInput input ) throws Exception
+		{
+			this.value = (String)input.readObject();
+		}
+	}
+
+	private static class TargetTwo extends TargetOne
+	{
+		public TargetTwo( String value )
+		{
+			super( value );
+		}
+	}
+}
@@ -15,6 +15,9 @@
 package org.portico.lrc.utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
@@ -22,6 +25,7 @@ import org.apache.logging.log4j.Logger;
 import org.portico.utils.messaging.PorticoMessage;
 import org.portico2.common.logging.Log4jConfiguration;
 import org.portico2.common.logging.Log4jConfigurator;
+import org.portico2.common.messaging.ExtendedSuccessResponse;
 import org.portico2.common.messaging.MessageContext;
 import org.portico2.common.messaging.MessageType;
 import org.portico2.common.messaging.ResponseMessage;
@@ -29,9 +33,15 @@ import org.portico2.common.network.CallType;
 import org.portico2.common.network.Connection;
 import org.portico2.common.network.Header;
 import org.portico2.common.network.IApplicationReceiver;
+import org.portico2.common.network.Message;
 import org.portico2.common.network.configuration.ConnectionConfiguration;
 import org.portico2.common.network.configuration.transport.JvmConfiguration;
 import org.portico2.common.services.federation.msg.RtiProbe;
+import org.portico2.common.services.object.msg.UpdateAttributes;
+import org.portico2.common.services.pubsub.msg.SubscribeObjectClass;
+import org.portico2.common.services.time.msg.TimeAdvanceGrant;
+import org.portico2.common.services.time.msg.TimeAdvanceRequest;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 @Test(groups={"MessageHelpersTest","messaging","utils"})
@@ -124,7 +134,121 @@ public class MessageHelpersTest
 	@Test
 	public void testDeflateInflateResponseMessage()
 	{
-		
+		// plain responses are sent as a header with no payload
+		RtiProbe request = new RtiProbe();
+		byte[] buffer = MessageHelpers.deflate2( new ResponseMessage(), 1, request );
+		Assert.assertEquals( buffer.length, Header.HEADER_LENGTH );
+		Assert.assertTrue( MessageHelpers.inflate2(buffer,ResponseMessage.class).isSuccess() );
+
+		buffer = MessageHelpers.deflate2( new ResponseMessage(true), 1, request );
+		Assert.assertTrue( MessageHelpers.inflate2(buffer,ResponseMessage.class).isError() );
+
+		// anything with content still goes through serialization
+		ExtendedSuccessResponse extended = new ExtendedSuccessResponse();
+		extended.setResult( "resultValue" );
+		buffer = MessageHelpers.deflate2( extended, 1, request );
+		ResponseMessage inflated = MessageHelpers.inflate2( buffer, ResponseMessage.class );
+		Assert.assertEquals( inflated.getResult(), "resultValue" );
+	}
+
+	@Test
+	public void testDeflateInflateTimeAdvance()
+	{
+		TimeAdvanceRequest request = new TimeAdvanceRequest( 12.5, true );
+		request.setSourceFederate( 3 );
+		request.setTargetFederation( 2 );
+		byte[] buffer = MessageHelpers.deflate2( request, CallType.ControlRequest, 99 );
+		Assert.assertTrue( new Header(buffer,0).isManualMarshal() );
+
+		TimeAdvanceRequest after = MessageHelpers.inflate2( buffer, TimeAdvanceRequest.class );
+		Assert.assertEquals( after.getTime(), 12.5 );
+		Assert.assertTrue( after.isTara() );
+		Assert.assertEquals( after.getSourceFederate(), 3 );
+		Assert.assertEquals( after.getTargetFederation(), 2 );
+
+		TimeAdvanceGrant grant = new TimeAdvanceGrant( 15.0 );
+		buffer = MessageHelpers.deflate2( grant, CallType.Notification, 0 );
+		Assert.assertEquals( MessageHelpers.inflate2(buffer,TimeAdvanceGrant.class).getTime(), 15.0 );
+	}
+
+	@Test
+	public void testInflateFromBundleSlice()
+	{
+		// pack two messages into the one array, as they would arrive in a bundle
+		byte[] first = MessageHelpers.deflate2( new TimeAdvanceGrant(5.0), CallType.DataMessage, 0 );
+		byte[] second = MessageHelpers.deflate2( new TimeAdvanceGrant(7.0), CallType.DataMessage, 0 );
+		byte[] bundle = new byte[first.length+second.length];
+		System.arraycopy( first, 0, bundle, 0, first.length );
+		System.arraycopy( second, 0, bundle, first.length, second.length );
+
+		// read the second one in place
+		Message message = new Message( bundle, first.length, second.length );
+		Assert.assertEquals( message.getMessageType(), MessageType.TimeAdvanceGrant );
+		Assert.assertSame( message.getRawBuffer(), bundle );
+		TimeAdvanceGrant grant = message.inflateAsPorticoMessage( TimeAdvanceGrant.class );
+		Assert.assertEquals( grant.getTime(), 7.0 );
+
+		// asking for the buffer should give us just the message
+		Assert.assertEquals( message.getBuffer(), second );
+		Assert.assertEquals( message.getOffset(), 0 );
+		Assert.assertEquals( message.getHeader().getMessageType(), MessageType.TimeAdvanceGrant );
+	}
+
+	@Test
+	public void testDeflateInflateUpdateAttributes()
+	{
+		HashMap<Integer,byte[]> attributes = new HashMap<>();
+		attributes.put( 1, new byte[]{ 1, 2, 3 } );
+		attributes.put( 2, new byte[0] );
+		byte[] tag = new byte[]{ (byte)0xff, 0, (byte)0x80 }; // not valid UTF-8
+		UpdateAttributes update = new UpdateAttributes( 42, tag, attributes, 7.0 );
+		byte[] buffer = MessageHelpers.deflate2( update, CallType.DataMessage, 0 );
+
+		UpdateAttributes after = MessageHelpers.inflate2( buffer, UpdateAttributes.class );
+		Assert.assertEquals( after.getObjectId(), 42 );
+		Assert.assertEquals( after.getTag(), tag );
+		Assert.assertEquals( after.getTimestamp(), 7.0 );
+		Assert.assertEquals( after.getAttributes().size(), 2 );
+		Assert.assertEquals( after.getAttributes().get(1), new byte[]{ 1, 2, 3 } );
+		Assert.assertEquals( after.getAttributes().get(2), new byte[0] );
+	}
+
+	@Test
+	public void testByReferenceCopyHasOwnValues()
+	{
+		HashMap<Integer,byte[]> attributes = new HashMap<>();
+		attributes.put( 1, new byte[]{ 1, 2, 3 } );
+		byte[] tag = new byte[]{ 4, 5 };
+		UpdateAttributes update = new UpdateAttributes( 42, tag, attributes, 7.0 );
+		Message message = Message.byReference( update, CallType.DataMessage, 0 );
+
+		UpdateAttributes first = message.copyForReceiver().inflateAsPorticoMessage( UpdateAttributes.class );
+		UpdateAttributes second = message.copyForReceiver().inflateAsPorticoMessage( UpdateAttributes.class );
+		Assert.assertNotSame( first, update );
+		Assert.assertNotSame( first.getAttributes().get(1), second.getAttributes().get(1) );
+
+		// the sender reusing its arrays, or one receiver changing them, must not be seen by others
+		attributes.get(1)[0] = 9;
+		tag[0] = 9;
+		first.getAttributes().get(1)[1] = 9;
+		Assert.assertEquals( first.getAttributes().get(1), new byte[]{ 1, 9, 3 } );
+		Assert.assertEquals( second.getAttributes().get(1), new byte[]{ 1, 2, 3 } );
+		Assert.assertEquals( first.getTag(), new byte[]{ 4, 5 } );
+		Assert.assertEquals( second.getTag(), new byte[]{ 4, 5 } );
+	}
+
+	@Test
+	public void testDeflateInflateSubscribeObjectClass()
+	{
+		HashSet<Integer> attributes = new HashSet<>( Arrays.asList(1,2,3) );
+		SubscribeObjectClass subscribe = new SubscribeObjectClass( 5, attributes, true, 11 );
+		byte[] buffer = MessageHelpers.deflate2( subscribe, CallType.ControlRequest, 1 );
+
+		SubscribeObjectClass after = MessageHelpers.inflate2( buffer, SubscribeObjectClass.class );
+		Assert.assertEquals( after.getClassHandle(), 5 );
+		Assert.assertEquals( after.getAttributes(), attributes );
+		Assert.assertTrue( after.isPassive() );
+		Assert.assertEquals( after.getRegionToken(), 11 );
 	}
 
 	//----------------------------------------------------------
@@ -0,0 +1,226 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.rti;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.portico.impl.HLAVersion;
+import org.portico.impl.hla1516e.fomparser.FOM;
+import org.portico.lrc.model.ICMetadata;
+import org.portico.lrc.model.ObjectModel;
+import org.portico.rti.TestRTI.RecordingConnection;
+import org.portico2.common.configuration.RID;
+import org.portico2.common.configuration.RtiConfiguration;
+import org.portico2.common.services.object.msg.SendInteraction;
+import org.portico2.rti.RtiConnection;
+import org.portico2.rti.federation.Federate;
+import org.portico2.rti.federation.Federation;
+import org.portico2.rti.federation.FederationManager;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups={"DataPlaneTest","rti"})
+public class DataPlaneTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int MESSAGES = 2000;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private TestRTI rti;
+	private ObjectModel fom;
+	private ICMetadata served;
+	private ExecutorService executor;
+
+	private Federation federation;
+	private RecordingConnection connectionOne;
+	private RecordingConnection connectionTwo;
+	private RecordingConnection connectionThree;
+	private Federate alpha;   // on connection one, sends
+	private Federate bravo;   // on connection two, subscribes
+	private Federate charlie; // on connection three, sends
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@BeforeClass(alwaysRun=true)
+	public void beforeClass() throws Exception
+	{
+		// several threads and small queues, so the senders have to wait for room
+		RID rid = RID.loadDefaultRid();
+		RtiConfiguration configuration = rid.getRtiConfiguration();
+		configuration.setDataThreads( 4 );
+		configuration.setDataQueueSize( 16 );
+
+		this.rti = new TestRTI( rid );
+		URL model = ClassLoader.getSystemResource( "fom/ieee1516e/restaurant/RestaurantProcesses.xml" );
+		this.fom = FOM.parseFOM( model );
+		ObjectModel.mommify( fom );
+		this.served = fom.getInteractionClass( "HLAinteractionRoot.CustomerTransactions.FoodServed" );
+		this.executor = Executors.newCachedThreadPool();
+	}
+
+	@AfterClass(alwaysRun=true)
+	public void afterClass()
+	{
+		executor.shutdownNow();
+		rti.shutdown();
+	}
+
+	@BeforeMethod(alwaysRun=true)
+	public void beforeMethod() throws Exception
+	{
+		this.connectionOne = rti.newConnection( "one" );
+		this.connectionTwo = rti.newConnection( "two" );
+		this.connectionThree = rti.newConnection( "three" );
+
+		this.federation = new FederationManager().createFederation( rti, "dataplane", fom, HLAVersion.IEEE1516e );
+		this.alpha = new Federate( "alpha", connectionOne );
+		this.bravo = new Federate( "bravo", connectionTwo );
+		this.charlie = new Federate( "charlie", connectionThree );
+		federation.joinFederate( alpha );
+		federation.joinFederate( bravo );
+		federation.joinFederate( charlie );
+
+		federation.getInterestManager().subscribeInteractionClass( bravo.getFederateHandle(), served.getHandle() );
+		federation.getRoutingTable().interactionClassSubscriptionChanged( served.getHandle() );
+	}
+
+	@AfterMethod(alwaysRun=true)
+	public void afterMethod()
+	{
+		// let anything that is still stuck go
+		connectionTwo.open();
+	}
+
+	private SendInteraction interaction( Federate sender, int sequence )
+	{
+		SendInteraction interaction = new SendInteraction( served.getHandle(),
+		                                                   Integer.toString(sequence).getBytes(),
+		                                                   new HashMap<>() );
+		interaction.setSourceFederate( sender.getFederateHandle() );
+		interaction.setTargetFederation( federation.getFederationHandle() );
+		return interaction;
+	}
+
+	/** Send the interactions from the given federate on another thread */
+	private Future<?> send( Federate sender, RtiConnection connection, int count )
+	{
+		return executor.submit( () -> {
+			for( int i = 0; i < count; i++ )
+				federation.queueDataMessage( interaction(sender,i), connection );
+		});
+	}
+
+	private void waitForReceived( RecordingConnection connection, int count ) throws Exception
+	{
+		long deadline = System.currentTimeMillis() + 10000;
+		while( connection.received().size() < count )
+		{
+			if( System.currentTimeMillis() > deadline )
+				Assert.fail( "Timed out waiting for "+count+" messages, got "+connection.received().size() );
+
+			Thread.sleep( 10 );
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Ordering Tests   //////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testMessagesFromEachFederateStayInOrder() throws Exception
+	{
+		Future<?> fromAlpha = send( alpha, connectionOne, MESSAGES );
+		Future<?> fromCharlie = send( charlie, connectionThree, MESSAGES );
+		fromAlpha.get( 10, TimeUnit.SECONDS );
+		fromCharlie.get( 10, TimeUnit.SECONDS );
+		waitForReceived( connectionTwo, MESSAGES*2 );
+
+		// the two senders can be mixed together, but each one's messages must be in order
+		int nextFromAlpha = 0;
+		int nextFromCharlie = 0;
+		for( SendInteraction received : connectionTwo.received() )
+		{
+			int sequence = Integer.parseInt( new String(received.getTag()) );
+			if( received.getSourceFederate() == alpha.getFederateHandle() )
+				Assert.assertEquals( sequence, nextFromAlpha++, "Message from alpha out of order" );
+			else
+				Assert.assertEquals( sequence, nextFromCharlie++, "Message from charlie out of order" );
+		}
+
+		Assert.assertEquals( nextFromAlpha, MESSAGES );
+		Assert.assertEquals( nextFromCharlie, MESSAGES );
+
+		// nothing goes back to the connection it came in on
+		Assert.assertTrue( connectionOne.received().isEmpty() );
+		Assert.assertTrue( connectionThree.received().isEmpty() );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Drain Tests   /////////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testDrainWhenIdle()
+	{
+		Assert.assertTrue( rti.getDataPlane().drain(federation,alpha.getFederateHandle()) );
+	}
+
+	@Test
+	public void testDrainWaitsForEarlierData() throws Exception
+	{
+		// hold the worker up on the first message, with more queued behind it
+		connectionTwo.close();
+		send( alpha, connectionOne, 10 ).get( 5, TimeUnit.SECONDS );
+
+		Future<Boolean> drain = executor.submit( () -> {
+			return rti.getDataPlane().drain( federation, alpha.getFederateHandle() );
+		});
+
+		try
+		{
+			drain.get( 250, TimeUnit.MILLISECONDS );
+			Assert.fail( "Drain returned while data from the federate was still queued" );
+		}
+		catch( TimeoutException te )
+		{
+			// expected
+		}
+
+		connectionTwo.open();
+		Assert.assertTrue( drain.get(5,TimeUnit.SECONDS) );
+		Assert.assertEquals( connectionTwo.received().size(), 10 );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
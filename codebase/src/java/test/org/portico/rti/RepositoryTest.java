@@ -0,0 +1,209 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL)
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.rti;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.portico.impl.hla1516e.fomparser.FOM;
+import org.portico.lrc.model.OCMetadata;
+import org.portico.lrc.model.ObjectModel;
+import org.portico2.common.services.ddm.data.RegionStore;
+import org.portico2.rti.services.object.data.ROCInstance;
+import org.portico2.rti.services.object.data.Repository;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the per-class index in the RTI's object {@link Repository} stays consistent with the
+ * main store as objects come and go, and that streaming a class subtree returns the same objects
+ * as scanning every instance.
+ */
+@Test(groups={"RepositoryTest","rti"})
+public class RepositoryTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int OWNER = 1;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private ObjectModel fom;
+	private List<OCMetadata> classes;
+	private Repository repository;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@BeforeClass(alwaysRun=true)
+	public void beforeClass() throws Exception
+	{
+		URL model = ClassLoader.getSystemResource( "fom/ieee1516e/restaurant/RestaurantProcesses.xml" );
+		this.fom = FOM.parseFOM( model );
+		ObjectModel.mommify( fom );
+		this.classes = new ArrayList<>( fom.getAllObjectClasses() );
+	}
+
+	@BeforeMethod(alwaysRun=true)
+	public void beforeMethod()
+	{
+		this.repository = new Repository( new RegionStore() );
+	}
+
+	private ROCInstance register( OCMetadata objectClass )
+	{
+		ROCInstance object = repository.createObject( objectClass, null, OWNER, new HashSet<>() );
+		repository.addObject( object );
+		return object;
+	}
+
+	/** Every object whose registered class is the given one, found by scanning everything */
+	private Set<ROCInstance> scanRegisteredAs( OCMetadata objectClass )
+	{
+		return repository.getAllInstances().stream()
+		                 .filter( object -> object.getRegisteredClassHandle() == objectClass.getHandle() )
+		                 .collect( Collectors.toSet() );
+	}
+
+	/** Every object of the given class or any class below it, found by scanning everything */
+	private Set<ROCInstance> scanAssignableFrom( OCMetadata objectClass )
+	{
+		Set<ROCInstance> found = new HashSet<>();
+		for( ROCInstance object : repository.getAllInstances() )
+		{
+			for( OCMetadata type = object.getRegisteredType(); type != null; type = type.getParent() )
+			{
+				if( type.getHandle() == objectClass.getHandle() )
+				{
+					found.add( object );
+					break;
+				}
+			}
+		}
+
+		return found;
+	}
+
+	/** Check the class index and subtree lookups against a full scan, for every class */
+	private void verify()
+	{
+		int indexed = 0;
+		for( OCMetadata objectClass : classes )
+		{
+			Set<ROCInstance> registered = new HashSet<>( repository.getAllInstances(objectClass.getHandle()) );
+			Assert.assertEquals( registered, scanRegisteredAs(objectClass),
+			                     "Class index out of step for "+objectClass.getQualifiedName() );
+			indexed += registered.size();
+
+			// the stream must not return anything twice, so count as well as compare
+			List<ROCInstance> streamed = repository.streamAllInstancesAssignableFrom( objectClass )
+			                                       .collect( Collectors.toList() );
+			Set<ROCInstance> expected = scanAssignableFrom( objectClass );
+			Assert.assertEquals( streamed.size(), expected.size(),
+			                     "Wrong number streamed for "+objectClass.getQualifiedName() );
+			Assert.assertEquals( new HashSet<>(streamed), expected,
+			                     "Wrong objects streamed for "+objectClass.getQualifiedName() );
+			Assert.assertEquals( repository.getAllInstancesAssignableFrom(objectClass), expected );
+		}
+
+		// every object is in exactly one class index
+		Assert.assertEquals( indexed, repository.getAllInstances().size() );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Class Index Tests   ///////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testEmptyRepository()
+	{
+		verify();
+		Assert.assertTrue( repository.getAllInstances(fom.getObjectRoot().getHandle()).isEmpty() );
+		Assert.assertEquals( repository.streamAllInstancesAssignableFrom(fom.getObjectRoot()).count(), 0 );
+	}
+
+	@Test
+	public void testAddAndDeleteKeepIndexConsistent()
+	{
+		OCMetadata employee = fom.getObjectClass( "HLAobjectRoot.Employee" );
+		OCMetadata waiter = fom.getObjectClass( "HLAobjectRoot.Employee.Waiter" );
+
+		ROCInstance boss = register( employee );
+		ROCInstance first = register( waiter );
+		ROCInstance second = register( waiter );
+		verify();
+		Assert.assertEquals( repository.getAllInstances(waiter.getHandle()).size(), 2 );
+		Assert.assertEquals( repository.getAllInstancesAssignableFrom(employee).size(), 3 );
+
+		Assert.assertSame( repository.deleteObject(first.getHandle()), first );
+		verify();
+		Assert.assertEquals( repository.getAllInstances(waiter.getHandle()).size(), 1 );
+		Assert.assertFalse( repository.getAllInstancesAssignableFrom(employee).contains(first) );
+
+		// deleting something that isn't there changes nothing
+		Assert.assertNull( repository.deleteObject(first.getHandle()) );
+		verify();
+
+		repository.deleteObject( second.getHandle() );
+		repository.deleteObject( boss.getHandle() );
+		verify();
+		Assert.assertTrue( repository.getAllInstances(waiter.getHandle()).isEmpty() );
+		Assert.assertTrue( repository.getAllInstancesAssignableFrom(employee).isEmpty() );
+	}
+
+	@Test
+	public void testRandomAddAndDeleteMatchesScan()
+	{
+		Random random = new Random( 1516 );
+		List<ROCInstance> live = new ArrayList<>();
+		for( int i = 0; i < 3000; i++ )
+		{
+			// add a bit more often than we delete, so the repository fills up over time
+			if( live.isEmpty() || random.nextInt(5) < 3 )
+			{
+				live.add( register(classes.get(random.nextInt(classes.size()))) );
+			}
+			else
+			{
+				ROCInstance victim = live.remove( random.nextInt(live.size()) );
+				Assert.assertSame( repository.deleteObject(victim.getHandle()), victim );
+			}
+
+			if( i % 250 == 0 )
+				verify();
+		}
+
+		verify();
+		Assert.assertEquals( new HashSet<>(repository.getAllInstances()), new HashSet<>(live) );
+		Assert.assertEquals( repository.streamAllInstancesAssignableFrom(fom.getObjectRoot()).count(),
+		                     live.size() );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -0,0 +1,313 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.rti;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.portico.impl.HLAVersion;
+import org.portico.impl.hla1516e.fomparser.FOM;
+import org.portico.lrc.model.ICMetadata;
+import org.portico.lrc.model.OCMetadata;
+import org.portico.lrc.model.ObjectModel;
+import org.portico2.common.configuration.RID;
+import org.portico2.common.services.object.msg.DeleteObject;
+import org.portico2.common.services.object.msg.SendInteraction;
+import org.portico2.common.services.object.msg.UpdateAttributes;
+import org.portico2.common.services.pubsub.data.InterestManager;
+import org.portico2.rti.RtiConnection;
+import org.portico2.rti.federation.Federate;
+import org.portico2.rti.federation.Federation;
+import org.portico2.rti.federation.FederationManager;
+import org.portico2.rti.federation.RoutingTable;
+import org.portico2.rti.services.object.data.ROCInstance;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups={"RoutingTableTest","rti"})
+public class RoutingTableTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private TestRTI rti;
+	private ObjectModel fom;
+	private Federation federation;
+	private RoutingTable routes;
+	private InterestManager interests;
+
+	private RtiConnection connectionOne;
+	private RtiConnection connectionTwo;
+	private Federate alpha;   // on connection one
+	private Federate bravo;   // on connection two
+	private Federate charlie; // on connection two
+
+	private OCMetadata employee;
+	private OCMetadata waiter;  // child of employee
+	private OCMetadata cook;    // child of employee
+	private ICMetadata served;
+	private ICMetadata drinkServed;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@BeforeMethod(alwaysRun=true)
+	public void beforeMethod() throws Exception
+	{
+		if( this.rti == null )
+		{
+			this.rti = new TestRTI( RID.loadDefaultRid() );
+			URL model = ClassLoader.getSystemResource( "fom/ieee1516e/restaurant/RestaurantProcesses.xml" );
+			this.fom = FOM.parseFOM( model );
+			ObjectModel.mommify( fom );
+			this.connectionOne = rti.newConnection( "one" );
+			this.connectionTwo = rti.newConnection( "two" );
+		}
+
+		// a new federation for each test, so there are no subscriptions or cached routes
+		this.federation = new FederationManager().createFederation( rti, "routing", fom, HLAVersion.IEEE1516e );
+		this.routes = federation.getRoutingTable();
+		this.interests = federation.getInterestManager();
+
+		this.alpha = new Federate( "alpha", connectionOne );
+		this.bravo = new Federate( "bravo", connectionTwo );
+		this.charlie = new Federate( "charlie", connectionTwo );
+		federation.joinFederate( alpha );
+		federation.joinFederate( bravo );
+		federation.joinFederate( charlie );
+
+		this.employee = fom.getObjectClass( "HLAobjectRoot.Employee" );
+		this.waiter = fom.getObjectClass( "HLAobjectRoot.Employee.Waiter" );
+		this.cook = fom.getObjectClass( "HLAobjectRoot.Employee.Cook" );
+		this.served = fom.getInteractionClass( "HLAinteractionRoot.CustomerTransactions.FoodServed" );
+		this.drinkServed = fom.getInteractionClass( "HLAinteractionRoot.CustomerTransactions.FoodServed.DrinkServed" );
+	}
+
+	@AfterClass(alwaysRun=true)
+	public void afterClass()
+	{
+		if( this.rti != null )
+			rti.shutdown();
+	}
+
+	private void subscribe( Federate federate, OCMetadata objectClass )
+	{
+		interests.subscribeObjectClass( federate.getFederateHandle(),
+		                                objectClass.getHandle(),
+		                                objectClass.getAllAttributeHandles() );
+		routes.objectClassSubscriptionChanged( objectClass.getHandle() );
+	}
+
+	private void unsubscribe( Federate federate, OCMetadata objectClass )
+	{
+		interests.unsubscribeObjectClass( federate.getFederateHandle(), objectClass.getHandle() );
+		routes.objectClassSubscriptionChanged( objectClass.getHandle() );
+	}
+
+	private void subscribe( Federate federate, ICMetadata interactionClass )
+	{
+		interests.subscribeInteractionClass( federate.getFederateHandle(), interactionClass.getHandle() );
+		routes.interactionClassSubscriptionChanged( interactionClass.getHandle() );
+	}
+
+	private Set<RtiConnection> set( RtiConnection... connections )
+	{
+		Set<RtiConnection> set = new HashSet<>();
+		for( RtiConnection connection : connections )
+			set.add( connection );
+		return set;
+	}
+
+	private Set<Integer> handles( Federate... federates )
+	{
+		Set<Integer> set = new HashSet<>();
+		for( Federate federate : federates )
+			set.add( federate.getFederateHandle() );
+		return set;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Object Class Tests   //////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testNoSubscribers()
+	{
+		Assert.assertTrue( routes.getObjectRoutes(employee).isEmpty() );
+		Assert.assertTrue( routes.getInteractionRoutes(served).isEmpty() );
+	}
+
+	@Test
+	public void testSubscriptionCoversChildren()
+	{
+		// cache the child routes first, so they have to be recalculated rather than filled lazily
+		Assert.assertTrue( routes.getObjectRoutes(waiter).isEmpty() );
+		Assert.assertTrue( routes.getObjectRoutes(cook).isEmpty() );
+
+		subscribe( alpha, employee );
+		Assert.assertEquals( routes.getObjectRoutes(employee), set(connectionOne) );
+		Assert.assertEquals( routes.getObjectRoutes(waiter), set(connectionOne) );
+		Assert.assertEquals( routes.getObjectRoutes(cook), set(connectionOne) );
+
+		// a subscription further down doesn't affect the parent or siblings
+		subscribe( bravo, waiter );
+		Assert.assertEquals( routes.getObjectRoutes(employee), set(connectionOne) );
+		Assert.assertEquals( routes.getObjectRoutes(waiter), set(connectionOne,connectionTwo) );
+		Assert.assertEquals( routes.getObjectRoutes(cook), set(connectionOne) );
+	}
+
+	@Test
+	public void testUnsubscribe()
+	{
+		subscribe( alpha, employee );
+		subscribe( bravo, waiter );
+		Assert.assertEquals( routes.getObjectRoutes(waiter), set(connectionOne,connectionTwo) );
+
+		unsubscribe( alpha, employee );
+		Assert.assertTrue( routes.getObjectRoutes(employee).isEmpty() );
+		Assert.assertTrue( routes.getObjectRoutes(cook).isEmpty() );
+		Assert.assertEquals( routes.getObjectRoutes(waiter), set(connectionTwo) );
+
+		unsubscribe( bravo, waiter );
+		Assert.assertTrue( routes.getObjectRoutes(waiter).isEmpty() );
+	}
+
+	@Test
+	public void testResignKeepsSharedConnection()
+	{
+		subscribe( bravo, waiter );
+		subscribe( charlie, waiter );
+		Assert.assertEquals( routes.getObjectRoutes(waiter), set(connectionTwo) );
+
+		// charlie is still on connection two and still subscribed
+		federation.resignFederate( bravo );
+		Assert.assertEquals( routes.getObjectRoutes(waiter), set(connectionTwo) );
+
+		federation.resignFederate( charlie );
+		Assert.assertTrue( routes.getObjectRoutes(waiter).isEmpty() );
+	}
+
+	@Test
+	public void testResignDropsFederateFromSubscribers()
+	{
+		subscribe( bravo, waiter );
+		subscribe( charlie, waiter );
+		Assert.assertEquals( routes.getObjectRoutes(waiter), set(connectionTwo) );
+
+		ROCInstance object = federation.getRepository().createObject( waiter, null, alpha.getFederateHandle(),
+		                                                              new HashSet<>() );
+		federation.getRepository().addObject( object );
+		UpdateAttributes update = new UpdateAttributes( object.getHandle(), null, new HashMap<>() );
+		Assert.assertEquals( routes.getSubscribers(update), handles(bravo,charlie) );
+
+		// the connection stays, but bravo must no longer be given anything
+		federation.resignFederate( bravo );
+		Assert.assertEquals( routes.getObjectRoutes(waiter), set(connectionTwo) );
+		Assert.assertEquals( routes.getSubscribers(update), handles(charlie) );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Interaction Class Tests   /////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testInteractionRoutes()
+	{
+		Assert.assertTrue( routes.getInteractionRoutes(drinkServed).isEmpty() );
+
+		subscribe( bravo, served );
+		Assert.assertEquals( routes.getInteractionRoutes(served), set(connectionTwo) );
+		Assert.assertEquals( routes.getInteractionRoutes(drinkServed), set(connectionTwo) );
+
+		subscribe( alpha, drinkServed );
+		Assert.assertEquals( routes.getInteractionRoutes(served), set(connectionTwo) );
+		Assert.assertEquals( routes.getInteractionRoutes(drinkServed), set(connectionOne,connectionTwo) );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Message Routing Tests   ///////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testRoutesForMessages()
+	{
+		subscribe( alpha, employee );
+		subscribe( bravo, drinkServed );
+
+		ROCInstance object = federation.getRepository().createObject( waiter, null, alpha.getFederateHandle(),
+		                                                              new HashSet<>() );
+		federation.getRepository().addObject( object );
+
+		UpdateAttributes update = new UpdateAttributes( object.getHandle(), null, new HashMap<>() );
+		Assert.assertEquals( routes.getRoutes(update), set(connectionOne) );
+
+		SendInteraction interaction = new SendInteraction( drinkServed.getHandle(), null, new HashMap<>() );
+		Assert.assertEquals( routes.getRoutes(interaction), set(connectionTwo) );
+	}
+
+	@Test
+	public void testSubscribersForMessages()
+	{
+		// bravo and charlie share a connection, so only the federate level tells them apart
+		subscribe( bravo, employee );
+		subscribe( charlie, drinkServed );
+
+		ROCInstance object = federation.getRepository().createObject( cook, null, alpha.getFederateHandle(),
+		                                                              new HashSet<>() );
+		federation.getRepository().addObject( object );
+
+		UpdateAttributes update = new UpdateAttributes( object.getHandle(), null, new HashMap<>() );
+		Assert.assertEquals( routes.getRoutes(update), set(connectionTwo) );
+		Assert.assertEquals( routes.getSubscribers(update), handles(bravo) );
+
+		SendInteraction interaction = new SendInteraction( drinkServed.getHandle(), null, new HashMap<>() );
+		Assert.assertEquals( routes.getRoutes(interaction), set(connectionTwo) );
+		Assert.assertEquals( routes.getSubscribers(interaction), handles(charlie) );
+
+		// nobody subscribed to the parent interaction
+		SendInteraction parent = new SendInteraction( served.getHandle(), null, new HashMap<>() );
+		Assert.assertTrue( routes.getSubscribers(parent).isEmpty() );
+
+		subscribe( alpha, served );
+		Assert.assertEquals( routes.getSubscribers(parent), handles(alpha) );
+		Assert.assertEquals( routes.getSubscribers(interaction), handles(alpha,charlie) );
+	}
+
+	@Test
+	public void testUnroutableMessages()
+	{
+		// unknown object, unknown interaction class and a message that isn't an update or interaction
+		Assert.assertNull( routes.getRoutes(new UpdateAttributes(9999,null,new HashMap<>())) );
+		Assert.assertNull( routes.getRoutes(new SendInteraction(9999,null,new HashMap<>())) );
+		Assert.assertNull( routes.getRoutes(new DeleteObject()) );
+
+		Assert.assertNull( routes.getSubscribers(new UpdateAttributes(9999,null,new HashMap<>())) );
+		Assert.assertNull( routes.getSubscribers(new SendInteraction(9999,null,new HashMap<>())) );
+		Assert.assertNull( routes.getSubscribers(new DeleteObject()) );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -0,0 +1,159 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL)
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.rti;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.portico.utils.messaging.PorticoMessage;
+import org.portico2.common.configuration.RID;
+import org.portico2.common.network.Message;
+import org.portico2.common.network.configuration.ConnectionConfiguration;
+import org.portico2.common.services.object.msg.SendInteraction;
+import org.portico2.rti.RTI;
+import org.portico2.rti.RtiConnection;
+import org.portico2.rti.federation.DataPlane;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+/**
+ * An RTI for the tests in this package. It is never started apart from its data plane, so
+ * federations can be created on it and data messages pushed through them without any network.
+ * Connections made with {@link #newConnection(String)} are never connected, they just record
+ * what they are asked to send.
+ * <p/>
+ * Call {@link #shutdown()} when finished with it to stop the data plane threads.
+ */
+public class TestRTI extends RTI
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Logger logger;
+	private DataPlane dataPlane;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public TestRTI( RID rid )
+	{
+		super( rid );
+		this.logger = LogManager.getFormatterLogger( "portico.rti" );
+		this.dataPlane = new DataPlane( rid.getRtiConfiguration(), logger );
+		this.dataPlane.startup();
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/** A JVM connection on this RTI that is never connected, only used as a route */
+	public RecordingConnection newConnection( String name ) throws Exception
+	{
+		String xml = "<connection name=\""+name+"\" transport=\"jvm\"><jvm/><protocols/></connection>";
+		Element element = DocumentBuilderFactory.newInstance()
+		                                        .newDocumentBuilder()
+		                                        .parse( new InputSource(new StringReader(xml)) )
+		                                        .getDocumentElement();
+
+		ConnectionConfiguration configuration = new ConnectionConfiguration( name );
+		configuration.parseConfiguration( getRid(), element );
+		return new RecordingConnection( this, configuration );
+	}
+
+	public void shutdown()
+	{
+		this.dataPlane.shutdown();
+	}
+
+	@Override
+	public Logger getLogger()
+	{
+		return this.logger;
+	}
+
+	@Override
+	public DataPlane getDataPlane()
+	{
+		return this.dataPlane;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/// Public Inner Class: RecordingConnection   /////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/** Records the interactions it is asked to send. Can be closed to hold the sender up. */
+	public static class RecordingConnection extends RtiConnection
+	{
+		private List<SendInteraction> received = Collections.synchronizedList( new ArrayList<>() );
+		private volatile CountDownLatch gate = new CountDownLatch( 0 );
+
+		public RecordingConnection( RTI rti, ConnectionConfiguration configuration )
+		{
+			super( rti, configuration );
+		}
+
+		@Override
+		public void sendDataMessage( Message message )
+		{
+			try
+			{
+				gate.await();
+			}
+			catch( InterruptedException ie )
+			{
+				return;
+			}
+
+			PorticoMessage request = message.getOriginalRequest();
+			if( request == null )
+				request = message.inflateAsPorticoMessage();
+
+			received.add( (SendInteraction)request );
+		}
+
+		public List<SendInteraction> received()
+		{
+			synchronized( received )
+			{
+				return new ArrayList<>( received );
+			}
+		}
+
+		/** Hold up anything that tries to send through this connection until it is opened */
+		public void close()
+		{
+			this.gate = new CountDownLatch( 1 );
+		}
+
+		public void open()
+		{
+			this.gate.countDown();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.rti;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.portico2.common.services.time.data.TAR;
+import org.portico2.common.services.time.data.TimeStatus;
+import org.portico2.rti.services.time.data.TimeManager;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Runs random sequences of time operations against the {@link TimeManager} and checks its
+ * indexed LBTS and grant lookups against the linear scans it replaced.
+ */
+@Test(groups={"TimeManagerTest","time"})
+public class TimeManagerTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int FEDERATES = 20;
+	private static final int STEPS = 20000;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@Test
+	public void testIndexesMatchLinearScan()
+	{
+		for( long seed = 1; seed <= 5; seed++ )
+			runRandomSequence( new Random(seed), seed );
+	}
+
+	private void runRandomSequence( Random random, long seed )
+	{
+		TimeManager manager = new TimeManager();
+		List<Integer> joined = new ArrayList<>();
+		for( int step = 0; step < STEPS; step++ )
+		{
+			int federate = 1 + random.nextInt( FEDERATES );
+			boolean isJoined = joined.contains( federate );
+			int operation = random.nextInt( 10 );
+			if( isJoined == false )
+			{
+				manager.joinedFederation( federate, null );
+				joined.add( federate );
+			}
+			else if( operation == 0 )
+			{
+				manager.resignedFederation( federate );
+				joined.remove( (Integer)federate );
+			}
+			else if( operation == 1 )
+			{
+				if( manager.isRegulating(federate) )
+					manager.disableRegulating( federate );
+				else
+					manager.enableRegulating( federate, manager.getLBTS() == Double.MAX_VALUE ? 0.0 : manager.getLBTS(), 1+random.nextInt(5) );
+			}
+			else if( operation == 2 )
+			{
+				if( manager.isConstrained(federate) )
+					manager.disableConstrained( federate );
+				else
+					manager.enableConstrained( federate );
+			}
+			else if( operation == 3 )
+			{
+				manager.setLookahead( federate, 1+random.nextInt(5) );
+			}
+			else if( operation == 4 )
+			{
+				// the grant callback has been delivered
+				if( manager.getTimeStatus(federate).getAdvancing() == TAR.PROVISIONAL )
+					manager.setAdvancing( federate, TAR.NONE );
+			}
+			else
+			{
+				// request an advance, as long as one isn't already outstanding
+				if( manager.getTimeStatus(federate).isAdvanceRequestOutstanding() == false )
+				{
+					double requested = manager.getCurrentTime(federate) + 1 + random.nextInt(10);
+					manager.timeAdvanceRequested( federate, requested );
+				}
+			}
+
+			// the federation LBTS must be the lowest LBTS of the regulating federates
+			String where = "seed="+seed+", step="+step;
+			Assert.assertEquals( manager.getLBTS(), scanLbts(manager,joined), where );
+
+			// the grantable federates must be those the old scan would have advanced
+			double lbts = manager.getLBTS();
+			Set<Integer> expected = scanGrantable( manager, joined, lbts );
+			Set<Integer> actual = new HashSet<>();
+			int handle = -1;
+			while( (handle = manager.pollGrantable(lbts)) != -1 )
+				Assert.assertTrue( actual.add(handle), "Granted twice: "+handle+" ("+where+")" );
+
+			Assert.assertEquals( actual, expected, where );
+			for( int granted : actual )
+				manager.advanceFederate( granted );
+		}
+	}
+
+	/** The LBTS calculation as it was before the index: a scan of all regulating federates */
+	private double scanLbts( TimeManager manager, List<Integer> joined )
+	{
+		double lowest = Double.MAX_VALUE;
+		for( int federate : joined )
+		{
+			TimeStatus status = manager.getTimeStatus( federate );
+			if( status.isRegulating() && status.getLbts() < lowest )
+				lowest = status.getLbts();
+		}
+
+		return lowest;
+	}
+
+	/** The grant check as it was before the index: a scan of all constrained federates */
+	private Set<Integer> scanGrantable( TimeManager manager, List<Integer> joined, double lbts )
+	{
+		Set<Integer> grantable = new HashSet<>();
+		for( int federate : joined )
+		{
+			TimeStatus status = manager.getTimeStatus( federate );
+			if( status.isConstrained() && status.canAdvance(lbts) )
+				grantable.add( federate );
+		}
+
+		return grantable;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
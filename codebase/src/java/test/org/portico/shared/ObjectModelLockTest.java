@@ -0,0 +1,143 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL)
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.portico.impl.hla1516e.fomparser.FOM;
+import org.portico.lrc.model.ACMetadata;
+import org.portico.lrc.model.ModelMerger;
+import org.portico.lrc.model.OCMetadata;
+import org.portico.lrc.model.ObjectModel;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that a locked {@link ObjectModel} can still be extended by the merger, that copies of it
+ * can be merged into, and that its index follows changes made to its classes.
+ */
+@Test(groups={"ObjectModelLockTest","fom"})
+public class ObjectModelLockTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final String SODA = "HLAobjectRoot.Food.Drink.Soda";
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private ObjectModel food;
+	private ObjectModel drinks;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@BeforeMethod(alwaysRun=true)
+	public void beforeMethod() throws Exception
+	{
+		this.food = parse( "RestaurantFood.xml" );
+		this.drinks = parse( "RestaurantDrinks.xml" );
+		food.lock();
+	}
+
+	private ObjectModel parse( String module ) throws Exception
+	{
+		return FOM.parseFOM( ClassLoader.getSystemResource("fom/ieee1516e/restaurant/"+module) );
+	}
+
+	private ObjectModel copy( ObjectModel model ) throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream( bytes );
+		output.writeObject( model );
+		output.close();
+
+		ObjectInputStream input = new ObjectInputStream( new ByteArrayInputStream(bytes.toByteArray()) );
+		return (ObjectModel)input.readObject();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Merge Tests   /////////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testMergeIntoLockedModel() throws Exception
+	{
+		Assert.assertNull( food.getObjectClass(SODA) );
+
+		ObjectModel merged = ModelMerger.merge( food, Arrays.asList(drinks) );
+
+		// the classes must be there, the model locked again and the index must know about them
+		Assert.assertSame( merged, food );
+		Assert.assertTrue( merged.isLocked() );
+		OCMetadata soda = merged.getObjectClass( SODA );
+		Assert.assertNotNull( soda, "Classes merged into a locked model were dropped" );
+		Assert.assertEquals( merged.getObjectClass("Soda"), soda );
+		Assert.assertTrue( soda.isAssignableTo(merged.getObjectClass("HLAobjectRoot.Food.Drink")) );
+	}
+
+	@Test
+	public void testCopyOfLockedModelIsUnlocked() throws Exception
+	{
+		ObjectModel copy = copy( food );
+		Assert.assertFalse( copy.isLocked() );
+
+		// so it can be merged into without the original being touched
+		ModelMerger.mergeDryRun( food, Arrays.asList(drinks) );
+		Assert.assertNull( food.getObjectClass(SODA) );
+		ModelMerger.merge( copy, Arrays.asList(drinks) );
+		Assert.assertNotNull( copy.getObjectClass(SODA) );
+
+		// and once locked it behaves the same as the original
+		copy.lock();
+		Assert.assertTrue( copy.isLocked() );
+		Assert.assertNotNull( copy.getObjectClass(SODA) );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Index Tests   /////////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testIndexFollowsAddedAttribute()
+	{
+		OCMetadata entree = food.getObjectClass( "HLAobjectRoot.Food.Entree" );
+		OCMetadata beef = food.getObjectClass( "HLAobjectRoot.Food.Entree.Beef" );
+		Assert.assertEquals( beef.getAttributeHandle("Spiciness"), ObjectModel.INVALID_HANDLE );
+
+		// add to the parent, the child should see it through the index
+		ACMetadata spiciness = food.newAttribute( "Spiciness", null );
+		Assert.assertTrue( entree.addAttribute(spiciness) );
+		Assert.assertEquals( beef.getAttributeHandle("Spiciness"), spiciness.getHandle() );
+		Assert.assertTrue( beef.hasAttribute(spiciness.getHandle()) );
+		Assert.assertEquals( food.findAttributeName(spiciness.getHandle()), "Spiciness" );
+
+		// and stop seeing it when it goes
+		entree.removeAttribute( spiciness.getHandle() );
+		Assert.assertFalse( beef.hasAttribute(spiciness.getHandle()) );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -0,0 +1,166 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.shared;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.portico.lrc.model.Dimension;
+import org.portico.lrc.model.RegionInstance;
+import org.portico.lrc.model.Space;
+import org.portico2.common.services.ddm.data.RegionIndex;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the {@link RegionIndex} against a brute force comparison of every region while regions
+ * are randomly added, modified and removed.
+ */
+@Test(groups={"RegionIndexTest","ddm"})
+public class RegionIndexTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int REGIONS = 500;
+	private static final int ROUNDS = 2000;
+	private static final int DOMAIN = 200;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Random random;
+	private Space[] spaces;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	@Test
+	public void testMatchesBruteForce()
+	{
+		this.random = new Random( 21 );
+		this.spaces = new Space[]{ createSpace(1,2), createSpace(2,3) };
+
+		RegionIndex index = new RegionIndex();
+		Map<Integer,RegionInstance> regions = new HashMap<>();
+		int nextToken = 1;
+		for( ; nextToken <= REGIONS; nextToken++ )
+		{
+			RegionInstance region = createRegion( nextToken );
+			regions.put( nextToken, region );
+			index.add( region );
+		}
+
+		for( int round = 0; round < ROUNDS; round++ )
+		{
+			// change something
+			List<Integer> tokens = new ArrayList<>( regions.keySet() );
+			int token = tokens.get( random.nextInt(tokens.size()) );
+			switch( random.nextInt(3) )
+			{
+				case 0:
+					// modify the extents in place, then tell the index
+					randomizeExtents( regions.get(token) );
+					index.update( regions.get(token) );
+					break;
+				case 1:
+					regions.remove( token );
+					Assert.assertTrue( index.remove(token) );
+					Assert.assertFalse( index.contains(token) );
+					break;
+				default:
+					RegionInstance region = createRegion( nextToken );
+					regions.put( nextToken++, region );
+					index.add( region );
+					break;
+			}
+
+			Assert.assertEquals( index.size(), regions.size() );
+
+			// ask about a region that may or may not be in the index
+			RegionInstance query = random.nextBoolean() ? createRegion(-1)
+			                                            : regions.get( tokens.get(random.nextInt(tokens.size())) );
+			if( query == null )
+				continue;
+
+			Set<RegionInstance> expected = new HashSet<>();
+			for( RegionInstance candidate : regions.values() )
+			{
+				if( candidate.overlapsWith(query) )
+					expected.add( candidate );
+			}
+
+			Assert.assertEquals( new HashSet<>(index.getOverlapping(query)), expected, "round "+round );
+
+			// findFirst must only return something that passes the filter and overlaps
+			RegionInstance first = index.findFirst( query, candidate -> candidate.getToken() % 2 == 0 );
+			boolean anyEven = expected.stream().anyMatch( candidate -> candidate.getToken() % 2 == 0 );
+			if( anyEven )
+			{
+				Assert.assertNotNull( first, "round "+round );
+				Assert.assertTrue( expected.contains(first) && first.getToken() % 2 == 0, "round "+round );
+			}
+			else
+			{
+				Assert.assertNull( first, "round "+round );
+			}
+		}
+	}
+
+	private Space createSpace( int handle, int dimensions )
+	{
+		Space space = new Space( "space"+handle, handle );
+		for( int i = 1; i <= dimensions; i++ )
+			space.addDimension( new Dimension("dimension"+i,handle*10+i) );
+
+		return space;
+	}
+
+	private RegionInstance createRegion( int token )
+	{
+		Space space = spaces[random.nextInt(spaces.length)];
+		RegionInstance region = new RegionInstance( 1, token, space, 1+random.nextInt(3) );
+		randomizeExtents( region );
+		return region;
+	}
+
+	private void randomizeExtents( RegionInstance region )
+	{
+		for( int i = 0; i < region.getSize(); i++ )
+		{
+			for( int dimension : region.getExtent(i).getAllRanges().keySet() )
+			{
+				// small domain so there are plenty of shared and empty ranges
+				long lower = random.nextInt( DOMAIN );
+				long upper = lower + random.nextInt( DOMAIN/4 );
+				region.setRangeLowerBound( i, dimension, lower );
+				region.setRangeUpperBound( i, dimension, upper );
+			}
+		}
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -0,0 +1,249 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.portico.utils.messaging.CallbackQueue;
+import org.portico.utils.messaging.PorticoMessage;
+import org.portico2.common.messaging.MessageType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups={"CallbackQueueTest","utils"})
+public class CallbackQueueTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	/** Move everything from incoming into the right store, the way the LRC queues do */
+	private void sort( CallbackQueue queue )
+	{
+		PorticoMessage message = null;
+		while( (message = queue.takeIncoming()) != null )
+		{
+			if( message.isTimestamped() )
+				queue.putTimestamped( message );
+			else
+				queue.putReceiveOrder( message );
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Receive Order Tests   /////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testReceiveOrderKeepsArrivalOrderAcrossLanes()
+	{
+		CallbackQueue queue = new CallbackQueue();
+		List<PorticoMessage> sent = new ArrayList<>();
+		for( int i = 0; i < 20; i++ )
+		{
+			PorticoMessage message = new TestMessage( i % 3 == 0, false );
+			sent.add( message );
+			queue.add( message );
+		}
+
+		Assert.assertEquals( queue.size(), 20 );
+		sort( queue );
+		Assert.assertEquals( queue.getReceiveOrder(), sent );
+
+		List<PorticoMessage> received = new ArrayList<>();
+		queue.drainReceiveOrder( received );
+		Assert.assertEquals( received, sent );
+		Assert.assertTrue( queue.isEmpty() );
+	}
+
+	@Test
+	public void testReceiveOrderCallbackSkipsMessages()
+	{
+		CallbackQueue queue = new CallbackQueue();
+		PorticoMessage reflection = new TestMessage( true, false );
+		PorticoMessage callback1 = new TestMessage( false, false );
+		PorticoMessage callback2 = new TestMessage( false, false );
+		queue.add( reflection );
+		queue.add( callback1 );
+		queue.add( callback2 );
+		sort( queue );
+
+		// a constrained federate that isn't advancing only gets the non-"messages"
+		Assert.assertSame( queue.pollReceiveOrderCallback(), callback1 );
+		Assert.assertSame( queue.pollReceiveOrderCallback(), callback2 );
+		Assert.assertNull( queue.pollReceiveOrderCallback() );
+		Assert.assertTrue( queue.hasReceiveOrder() );
+		Assert.assertSame( queue.pollReceiveOrder(), reflection );
+		Assert.assertEquals( queue.size(), 0 );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Timestamp Order Tests   ///////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testTimestampOrder()
+	{
+		CallbackQueue queue = new CallbackQueue();
+		PorticoMessage grant5 = timed( new TestMessage(false,true), 5.0 );
+		PorticoMessage first5 = timed( new TestMessage(true,false), 5.0 );
+		PorticoMessage at1 = timed( new TestMessage(true,false), 1.0 );
+		PorticoMessage second5 = timed( new TestMessage(true,false), 5.0 );
+		PorticoMessage at3 = timed( new TestMessage(true,false), 3.0 );
+		queue.add( grant5 );
+		queue.add( first5 );
+		queue.add( at1 );
+		queue.add( second5 );
+		queue.add( at3 );
+		sort( queue );
+
+		// lowest time first, arrival order within a time, grants behind everything at their time
+		List<PorticoMessage> expected = List.of( at1, at3, first5, second5, grant5 );
+		Assert.assertEquals( queue.getTimestamped(), expected );
+
+		List<PorticoMessage> received = new ArrayList<>();
+		while( queue.peekTimestamped() != null )
+		{
+			PorticoMessage head = queue.peekTimestamped();
+			Assert.assertSame( queue.pollTimestamped(), head );
+			received.add( head );
+		}
+
+		Assert.assertEquals( received, expected );
+		Assert.assertFalse( queue.hasTimestamped() );
+		Assert.assertTrue( queue.isEmpty() );
+	}
+
+	@Test
+	public void testMoveTimestampedToReceiveOrder()
+	{
+		CallbackQueue queue = new CallbackQueue();
+		PorticoMessage ro = new TestMessage( true, false );
+		PorticoMessage at2 = timed( new TestMessage(true,false), 2.0 );
+		PorticoMessage at1 = timed( new TestMessage(true,false), 1.0 );
+		queue.add( ro );
+		queue.add( at2 );
+		queue.add( at1 );
+		sort( queue );
+
+		queue.moveTimestampedToReceiveOrder( -1.0 );
+		Assert.assertFalse( queue.hasTimestamped() );
+		Assert.assertEquals( queue.getReceiveOrder(), List.of(ro,at1,at2) );
+		Assert.assertEquals( at1.getTimestamp(), -1.0 );
+		Assert.assertEquals( queue.size(), 3 );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Waiting Tests   ///////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testAwaitReturnsIfIncomingNotEmpty() throws Exception
+	{
+		CallbackQueue queue = new CallbackQueue();
+		queue.add( new TestMessage(true,false) );
+
+		long start = System.nanoTime();
+		queue.awaitIncoming( TimeUnit.SECONDS.toNanos(10) );
+		Assert.assertTrue( System.nanoTime()-start < TimeUnit.SECONDS.toNanos(5) );
+	}
+
+	@Test
+	public void testAddWakesAllWaiters() throws Exception
+	{
+		CallbackQueue queue = new CallbackQueue();
+		CountDownLatch waiting = new CountDownLatch( 2 );
+		CountDownLatch woken = new CountDownLatch( 2 );
+		for( int i = 0; i < 2; i++ )
+		{
+			Thread thread = new Thread( () -> {
+				try
+				{
+					waiting.countDown();
+					queue.awaitIncoming( TimeUnit.SECONDS.toNanos(30) );
+					woken.countDown();
+				}
+				catch( InterruptedException ie )
+				{
+					// test will fail on the latch
+				}
+			});
+			thread.setDaemon( true );
+			thread.start();
+		}
+
+		// give the threads a chance to actually park before we add
+		Assert.assertTrue( waiting.await(5,TimeUnit.SECONDS) );
+		Thread.sleep( 200 );
+		queue.add( new TestMessage(true,false) );
+		Assert.assertTrue( woken.await(5,TimeUnit.SECONDS), "Not every waiter was woken by add()" );
+	}
+
+	private PorticoMessage timed( PorticoMessage message, double time )
+	{
+		message.setTimestamp( time );
+		return message;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/// Private Inner Class: TestMessage   ////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	private static class TestMessage extends PorticoMessage
+	{
+		private static final long serialVersionUID = 98121116120L;
+
+		private boolean specDefined;
+		private boolean timeAdvance;
+
+		public TestMessage( boolean specDefined, boolean timeAdvance )
+		{
+			this.specDefined = specDefined;
+			this.timeAdvance = timeAdvance;
+		}
+
+		@Override
+		public MessageType getType()
+		{
+			return MessageType.UpdateAttributes;
+		}
+
+		@Override
+		public boolean isSpecDefinedMessage()
+		{
+			return specDefined;
+		}
+
+		@Override
+		public boolean isTimeAdvance()
+		{
+			return timeAdvance;
+		}
+	}
+}
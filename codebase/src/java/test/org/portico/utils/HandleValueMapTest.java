@@ -0,0 +1,288 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL)
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.portico2.common.utils.HandleValueMap;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Runs random sequences of operations against a {@link HandleValueMap} and a {@link HashMap}
+ * side by side, checking after each one that the two hold exactly the same entries.
+ */
+@Test(groups={"HandleValueMapTest","utils"})
+public class HandleValueMapTest
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+	private static final int OPERATIONS = 20000;
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private Random random;
+	private HandleValueMap map;
+	private Map<Integer,byte[]> expected;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	private void reset( long seed, int capacity )
+	{
+		this.random = new Random( seed );
+		this.map = new HandleValueMap( capacity );
+		this.expected = new HashMap<>();
+	}
+
+	/**
+	 * Mostly small handles so there are plenty of replacements and removals, with the odd one
+	 * from anywhere in the int range to make sure those hash and probe properly too
+	 */
+	private int randomHandle()
+	{
+		return random.nextInt(10) == 0 ? random.nextInt() : random.nextInt( 300 );
+	}
+
+	private byte[] randomValue()
+	{
+		// null is a valid value, and has to be told apart from a missing handle
+		if( random.nextInt(20) == 0 )
+			return null;
+
+		byte[] value = new byte[random.nextInt(4)];
+		random.nextBytes( value );
+		return value;
+	}
+
+	private void put()
+	{
+		int handle = randomHandle();
+		byte[] value = randomValue();
+		Assert.assertSame( map.put(handle,value), expected.put(handle,value), "put("+handle+")" );
+	}
+
+	private void remove()
+	{
+		int handle = randomHandle();
+		Assert.assertSame( map.remove(handle), expected.remove(handle), "remove("+handle+")" );
+	}
+
+	/** Remove roughly a third of the entries through the entry set iterator */
+	private void iteratorRemove()
+	{
+		Iterator<Map.Entry<Integer,byte[]>> iterator = map.entrySet().iterator();
+		while( iterator.hasNext() )
+		{
+			Map.Entry<Integer,byte[]> entry = iterator.next();
+			if( random.nextInt(3) == 0 )
+			{
+				iterator.remove();
+				Assert.assertTrue( expected.containsKey(entry.getKey()) );
+				expected.remove( entry.getKey() );
+			}
+		}
+	}
+
+	/** Check the map holds exactly the expected entries, through every way of reading it */
+	private void verify()
+	{
+		Assert.assertEquals( map.size(), expected.size() );
+		Assert.assertEquals( map.isEmpty(), expected.isEmpty() );
+
+		for( Map.Entry<Integer,byte[]> entry : expected.entrySet() )
+		{
+			int handle = entry.getKey();
+			Assert.assertTrue( map.containsKey(handle), "Missing handle "+handle );
+			Assert.assertSame( map.get(handle), entry.getValue(), "Wrong value for "+handle );
+
+			int position = map.positionOf( handle );
+			Assert.assertEquals( map.handleAt(position), handle );
+			Assert.assertSame( map.valueAt(position), entry.getValue() );
+		}
+
+		// iteration visits every entry once and nothing else
+		Map<Integer,byte[]> visited = new HashMap<>();
+		for( Map.Entry<Integer,byte[]> entry : map.entrySet() )
+		{
+			Assert.assertFalse( visited.containsKey(entry.getKey()), "Visited twice: "+entry.getKey() );
+			visited.put( entry.getKey(), entry.getValue() );
+		}
+
+		Assert.assertEquals( visited.keySet(), expected.keySet() );
+		for( Integer handle : expected.keySet() )
+			Assert.assertSame( visited.get(handle), expected.get(handle) );
+	}
+
+	private void runRandomOperations( long seed, int capacity )
+	{
+		reset( seed, capacity );
+		for( int i = 0; i < OPERATIONS; i++ )
+		{
+			int operation = random.nextInt( 1000 );
+			if( operation < 550 )
+				put();
+			else if( operation < 950 )
+				remove();
+			else if( operation < 995 )
+				iteratorRemove();
+			else
+			{
+				map.clear();
+				expected.clear();
+			}
+
+			// handles that were never added must still read as missing
+			int missing = randomHandle();
+			if( expected.containsKey(missing) == false )
+			{
+				Assert.assertFalse( map.containsKey(missing) );
+				Assert.assertEquals( map.positionOf(missing), -1 );
+				Assert.assertNull( map.get(missing) );
+			}
+
+			if( i % 50 == 0 )
+				verify();
+		}
+
+		verify();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Random Operation Tests   //////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	@Test
+	public void testRandomOperationsFromEmpty()
+	{
+		for( long seed = 1; seed <= 5; seed++ )
+			runRandomOperations( seed, 0 );
+	}
+
+	@Test
+	public void testRandomOperationsPresized()
+	{
+		for( long seed = 1; seed <= 5; seed++ )
+			runRandomOperations( seed, 64 );
+	}
+
+	@Test
+	public void testGrowFromEmpty()
+	{
+		reset( 42, 0 );
+		for( int handle = 0; handle < 5000; handle++ )
+		{
+			byte[] value = randomValue();
+			map.put( handle, value );
+			expected.put( handle, value );
+		}
+
+		verify();
+
+		// the arrays stay in insertion order until something is removed
+		for( int position = 0; position < map.size(); position++ )
+			Assert.assertEquals( map.handleAt(position), position );
+	}
+
+	@Test
+	public void testClearThenReuse()
+	{
+		reset( 7, 0 );
+		for( int i = 0; i < 500; i++ )
+			put();
+
+		map.clear();
+		expected.clear();
+		verify();
+
+		for( int i = 0; i < 500; i++ )
+			put();
+
+		verify();
+	}
+
+	@Test
+	public void testIteratorRemoveEverything()
+	{
+		reset( 11, 0 );
+		for( int i = 0; i < 1000; i++ )
+			put();
+
+		Iterator<Map.Entry<Integer,byte[]>> iterator = map.entrySet().iterator();
+		int removed = 0;
+		while( iterator.hasNext() )
+		{
+			iterator.next();
+			iterator.remove();
+			removed++;
+		}
+
+		Assert.assertEquals( removed, expected.size() );
+		Assert.assertTrue( map.isEmpty() );
+
+		expected.clear();
+		verify();
+	}
+
+	@Test
+	public void testCopiesAreIndependent()
+	{
+		reset( 13, 0 );
+		for( int i = 0; i < 1000; i++ )
+			put();
+
+		HandleValueMap copy = map.copy();
+		Map<Integer,byte[]> copyExpected = new HashMap<>( expected );
+		for( int i = 0; i < 1000; i++ )
+			remove();
+
+		// the copy is still exactly what the map held when it was taken
+		this.map = copy;
+		this.expected = copyExpected;
+		verify();
+	}
+
+	@Test
+	public void testMapInterfaceMatchesPrimitiveAccess()
+	{
+		reset( 17, 0 );
+		for( int i = 0; i < 1000; i++ )
+		{
+			Integer handle = randomHandle();
+			byte[] value = randomValue();
+			if( random.nextBoolean() )
+				Assert.assertSame( map.put(handle,value), expected.put(handle,value) );
+			else
+				Assert.assertSame( map.remove((Object)handle), expected.remove(handle) );
+		}
+
+		verify();
+		Assert.assertEquals( new HashMap<>(map).keySet(), expected.keySet() );
+		Assert.assertNull( map.get("not a handle") );
+		Assert.assertFalse( map.containsKey("not a handle") );
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+}
@@ -0,0 +1,385 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico.utils.messaging;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.portico2.common.messaging.MessageType;
+
+/**
+ * Compares the {@link CallbackQueue} against the way the LRC message queues used to store
+ * messages (one lock, <code>signalAll</code> on every offer, a scan to find callbacks and a
+ * priority queue for timestamped messages). Each scenario is run against both, in these modes:
+ *
+ * <ul>
+ *   <li><b>ro</b>: Several producer threads offering receive-order messages while one consumer
+ *                  blocks waiting for them and takes them as they come.</li>
+ *   <li><b>callbacks</b>: A constrained federate that isn't advancing pulling non-"message"
+ *                         callbacks from behind a backlog of receive-order "messages".</li>
+ *   <li><b>tso</b>: Timestamped messages spread over a number of timestamps, offered and then
+ *                   drained in time order.</li>
+ * </ul>
+ *
+ * Usage: <code>CallbackQueueBenchmark [messages] [producers] [backlog] [timestamps]</code>
+ */
+public class CallbackQueueBenchmark
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private int messages;
+	private int producers;
+	private int backlog;
+	private int timestamps;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public CallbackQueueBenchmark( int messages, int producers, int backlog, int timestamps )
+	{
+		this.messages = messages;
+		this.producers = producers;
+		this.backlog = backlog;
+		this.timestamps = timestamps;
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	public void run() throws Exception
+	{
+		System.out.println( "================================================" );
+		System.out.println( "Benchmark: messages="+messages+", producers="+producers+
+		                    ", backlog="+backlog+", timestamps="+timestamps );
+
+		// warm up, then run for real
+		for( int pass = 0; pass < 2; pass++ )
+		{
+			boolean report = pass == 1;
+			time( "ro        (old)", report, messages, () -> roOld() );
+			time( "ro        (new)", report, messages, () -> roNew() );
+			time( "callbacks (old)", report, backlog, () -> callbacksOld() );
+			time( "callbacks (new)", report, backlog, () -> callbacksNew() );
+			time( "tso       (old)", report, messages, () -> tsoOld() );
+			time( "tso       (new)", report, messages, () -> tsoNew() );
+		}
+	}
+
+	private void time( String name, boolean report, int count, Task task ) throws Exception
+	{
+		long start = System.nanoTime();
+		task.run();
+		if( report )
+		{
+			double seconds = (System.nanoTime()-start) / 1000000000.0;
+			System.out.println( String.format("  %s: %10.0f msg/s  (%.2fs)",
+			                                  name, count / seconds, seconds) );
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Receive Order: producers and a blocking consumer   ////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	private void roOld() throws Exception
+	{
+		OldQueue queue = new OldQueue();
+		startProducers( message -> queue.offer(message) );
+		for( int received = 0; received < messages; )
+		{
+			if( queue.pollReceiveOrder(100) != null )
+				received++;
+		}
+	}
+
+	private void roNew() throws Exception
+	{
+		CallbackQueue queue = new CallbackQueue();
+		startProducers( message -> queue.add(message) );
+		for( int received = 0; received < messages; )
+		{
+			PorticoMessage message = null;
+			while( (message = queue.takeIncoming()) != null )
+				queue.putReceiveOrder( message );
+
+			if( queue.pollReceiveOrder() != null )
+				received++;
+			else
+				queue.awaitIncoming( TimeUnit.MILLISECONDS.toNanos(100) );
+		}
+	}
+
+	private void startProducers( Producer producer ) throws Exception
+	{
+		CountDownLatch ready = new CountDownLatch( producers );
+		int each = messages / producers;
+		for( int i = 0; i < producers; i++ )
+		{
+			// the last producer picks up any remainder so the consumer gets them all
+			int count = i == producers-1 ? messages-(each*i) : each;
+			Thread thread = new Thread( () -> {
+				ready.countDown();
+				PorticoMessage message = new BenchmarkMessage( true, false );
+				for( int j = 0; j < count; j++ )
+					producer.offer( message );
+			});
+			thread.setDaemon( true );
+			thread.start();
+		}
+
+		ready.await();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Receive Order: callbacks behind a backlog of "messages"   /////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	private void callbacksOld() throws Exception
+	{
+		OldQueue queue = new OldQueue();
+		fillBacklog( message -> queue.offer(message) );
+		for( int i = 0; i < backlog; i++ )
+			queue.pollReceiveOrderCallback();
+	}
+
+	private void callbacksNew() throws Exception
+	{
+		CallbackQueue queue = new CallbackQueue();
+		fillBacklog( message -> queue.add(message) );
+		PorticoMessage message = null;
+		while( (message = queue.takeIncoming()) != null )
+			queue.putReceiveOrder( message );
+
+		for( int i = 0; i < backlog; i++ )
+			queue.pollReceiveOrderCallback();
+	}
+
+	/** A backlog of "messages", then the same number of callbacks behind them */
+	private void fillBacklog( Producer producer )
+	{
+		for( int i = 0; i < backlog; i++ )
+			producer.offer( new BenchmarkMessage(true,false) );
+		for( int i = 0; i < backlog; i++ )
+			producer.offer( new BenchmarkMessage(false,false) );
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////
+	///  Timestamp Order   /////////////////////////////////////////////////////////////////
+	////////////////////////////////////////////////////////////////////////////////////////
+	private void tsoOld() throws Exception
+	{
+		OldQueue queue = new OldQueue();
+		for( int i = 0; i < messages; i++ )
+			queue.offer( timestamped(i) );
+
+		while( queue.pollTimestamped() != null );
+	}
+
+	private void tsoNew() throws Exception
+	{
+		CallbackQueue queue = new CallbackQueue();
+		for( int i = 0; i < messages; i++ )
+			queue.add( timestamped(i) );
+
+		PorticoMessage message = null;
+		while( (message = queue.takeIncoming()) != null )
+			queue.putTimestamped( message );
+
+		while( queue.pollTimestamped() != null );
+	}
+
+	private PorticoMessage timestamped( int index )
+	{
+		PorticoMessage message = new BenchmarkMessage( true, false );
+		// spread the messages out so later timestamps arrive before earlier ones
+		message.setTimestamp( (index*7919) % timestamps );
+		return message;
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+	public static void main( String[] args ) throws Exception
+	{
+		int messages   = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int producers  = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int backlog    = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+		int timestamps = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+		new CallbackQueueBenchmark( messages, producers, backlog, timestamps ).run();
+	}
+
+	@FunctionalInterface
+	private interface Task
+	{
+		public void run() throws Exception;
+	}
+
+	@FunctionalInterface
+	private interface Producer
+	{
+		public void offer( PorticoMessage message );
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/// Private Inner Class: OldQueue   ///////////////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * The storage the LRC message queues used before {@link CallbackQueue}: everything behind
+	 * one lock, a <code>signalAll</code> per offer, a scan and remove to find the first callback
+	 * and a priority queue for timestamped messages.
+	 */
+	private static class OldQueue
+	{
+		private ReentrantLock lock = new ReentrantLock();
+		private Condition condition = lock.newCondition();
+		private BlockingQueue<PorticoMessage> roQueue = new LinkedBlockingQueue<>();
+		private PriorityBlockingQueue<PorticoMessage> tsoQueue =
+			new PriorityBlockingQueue<>( 13, OldQueue::compare );
+
+		public void offer( PorticoMessage message )
+		{
+			lock.lock();
+			try
+			{
+				if( message.isTimestamped() )
+					tsoQueue.offer( message );
+				else
+					roQueue.offer( message );
+
+				condition.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		public PorticoMessage pollReceiveOrder( long timeoutMillis ) throws InterruptedException
+		{
+			lock.lock();
+			try
+			{
+				if( roQueue.isEmpty() )
+					condition.await( timeoutMillis, TimeUnit.MILLISECONDS );
+
+				return roQueue.poll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		public PorticoMessage pollReceiveOrderCallback()
+		{
+			lock.lock();
+			try
+			{
+				PorticoMessage winner = null;
+				Iterator<PorticoMessage> iterator = roQueue.iterator();
+				while( iterator.hasNext() )
+				{
+					PorticoMessage message = iterator.next();
+					if( message.isSpecDefinedMessage() == false )
+					{
+						winner = message;
+						break;
+					}
+				}
+
+				if( winner != null )
+					roQueue.remove( winner );
+
+				return winner;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		public PorticoMessage pollTimestamped()
+		{
+			lock.lock();
+			try
+			{
+				return tsoQueue.poll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		/** Lowest time first, with time advance grants behind everything else at their time */
+		private static int compare( PorticoMessage one, PorticoMessage two )
+		{
+			int result = Double.compare( one.getTimestamp(), two.getTimestamp() );
+			if( result != 0 )
+				return result;
+			else if( one.isTimeAdvance() )
+				return 1;
+			else if( two.isTimeAdvance() )
+				return -1;
+			else
+				return 0;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/// Private Inner Class: BenchmarkMessage   ///////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+	private static class BenchmarkMessage extends PorticoMessage
+	{
+		private static final long serialVersionUID = 98121116120L;
+
+		private boolean specDefined;
+		private boolean timeAdvance;
+
+		public BenchmarkMessage( boolean specDefined, boolean timeAdvance )
+		{
+			this.specDefined = specDefined;
+			this.timeAdvance = timeAdvance;
+		}
+
+		@Override
+		public MessageType getType()
+		{
+			return MessageType.UpdateAttributes;
+		}
+
+		@Override
+		public boolean isSpecDefinedMessage()
+		{
+			return specDefined;
+		}
+
+		@Override
+		public boolean isTimeAdvance()
+		{
+			return timeAdvance;
+		}
+	}
+}
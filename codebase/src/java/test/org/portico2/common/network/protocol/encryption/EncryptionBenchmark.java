@@ -0,0 +1,220 @@
+/*
+ *   Copyright 2018 The Portico Project
+ *
+ *   This file is part of portico.
+ *
+ *   portico is free software; you can redistribute it and/or modify
+ *   it under the terms of the Common Developer and Distribution License (CDDL) 
+ *   as published by Sun Microsystems. For more information see the LICENSE file.
+ *   
+ *   Use of this software is strictly AT YOUR OWN RISK!!!
+ *   If something bad happens you do not have permission to come crying to me.
+ *   (that goes for your lawyer as well)
+ *
+ */
+package org.portico2.common.network.protocol.encryption;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Compares the throughput of the ways the {@link EncryptionProtocol} can encrypt messages.
+ * Each thread encrypts and then decrypts the same number of messages, in each of these modes:
+ *
+ * <ul>
+ *   <li><b>shared</b>: How it used to be done. One pair of ciphers shared by all threads behind
+ *                      a lock, with a new array allocated for each message.</li>
+ *   <li><b>message</b>: Each message encrypted on its own (message scope), with a
+ *                       {@link SessionCipher} so each thread has its own ciphers.</li>
+ *   <li><b>bundle</b>: Messages are copied into a bundle, and each full bundle is encrypted
+ *                      (bundle scope) into a reused array and decrypted in place.</li>
+ * </ul>
+ *
+ * Usage: <code>EncryptionBenchmark [messageSize] [messagesPerThread] [threads] [bundleSize]</code>
+ */
+public class EncryptionBenchmark
+{
+	//----------------------------------------------------------
+	//                    STATIC VARIABLES
+	//----------------------------------------------------------
+
+	//----------------------------------------------------------
+	//                   INSTANCE VARIABLES
+	//----------------------------------------------------------
+	private CipherMode mode;
+	private int messageSize;
+	private int messages;
+	private int threads;
+	private int bundleSize;
+	private byte[] key;
+	private byte[] payload;
+	private SessionCipher cipher;
+
+	// shared mode
+	private SecretKey sharedKey;
+	private Cipher sharedEncrypter;
+	private Cipher sharedDecrypter;
+
+	//----------------------------------------------------------
+	//                      CONSTRUCTORS
+	//----------------------------------------------------------
+	public EncryptionBenchmark( CipherMode mode, int messageSize, int messages, int threads, int bundleSize )
+		throws Exception
+	{
+		this.mode = mode;
+		this.messageSize = messageSize;
+		this.messages = messages;
+		this.threads = threads;
+		this.bundleSize = bundleSize;
+		this.key = String.format( "%16s", "evelyn" ).getBytes();
+		this.payload = new byte[messageSize];
+		new Random().nextBytes( payload );
+
+		this.cipher = new SessionCipher( mode );
+		this.cipher.setSessionKey( key );
+
+		this.sharedKey = new SecretKeySpec( key, "AES" );
+		this.sharedEncrypter = Cipher.getInstance( mode.getConfigString(), "BCFIPS" );
+		this.sharedDecrypter = Cipher.getInstance( mode.getConfigString(), "BCFIPS" );
+	}
+
+	//----------------------------------------------------------
+	//                    INSTANCE METHODS
+	//----------------------------------------------------------
+	public void run() throws Exception
+	{
+		System.out.println( "================================================" );
+		System.out.println( "Benchmark: cipher="+mode.getConfigString()+", payload="+messageSize+
+		                    ", messages/thread="+messages+", threads="+threads+", bundle="+bundleSize );
+
+		// warm up, then run for real
+		for( int pass = 0; pass < 2; pass++ )
+		{
+			boolean report = pass == 1;
+			time( "shared ", report, () -> shared() );
+			time( "message", report, () -> message() );
+			time( "bundle ", report, () -> bundle() );
+		}
+	}
+
+	private void time( String name, boolean report, Task task ) throws Exception
+	{
+		CountDownLatch done = new CountDownLatch( threads );
+		Exception[] failure = new Exception[1];
+		long start = System.nanoTime();
+		for( int i = 0; i < threads; i++ )
+		{
+			new Thread( () -> {
+				try
+				{
+					task.run();
+				}
+				catch( Exception e )
+				{
+					failure[0] = e;
+				}
+				finally
+				{
+					done.countDown();
+				}
+			}).start();
+		}
+
+		done.await();
+		if( failure[0] != null )
+			throw failure[0];
+
+		if( report )
+		{
+			double seconds = (System.nanoTime()-start) / 1000000000.0;
+			double total = (double)messages * threads;
+			System.out.println( String.format("  %s: %10.0f msg/s  %8.2f MB/s  (%.2fs)",
+			                                  name,
+			                                  total / seconds,
+			                                  (total*messageSize) / seconds / (1024*1024),
+			                                  seconds) );
+		}
+	}
+
+	/** One pair of ciphers for everyone, new arrays for every message */
+	private void shared() throws Exception
+	{
+		int ivSize = mode.getIvSize();
+		for( int i = 0; i < messages; i++ )
+		{
+			byte[] encrypted;
+			synchronized( sharedEncrypter )
+			{
+				encrypted = new byte[messageSize+ivSize];
+				sharedEncrypter.init( Cipher.ENCRYPT_MODE, sharedKey );
+				sharedEncrypter.doFinal( payload, 0, messageSize, encrypted, 0 );
+				System.arraycopy( sharedEncrypter.getIV(), 0, encrypted, messageSize, ivSize );
+			}
+
+			synchronized( sharedDecrypter )
+			{
+				byte[] decrypted = new byte[messageSize];
+				IvParameterSpec iv = new IvParameterSpec( encrypted, messageSize, ivSize );
+				sharedDecrypter.init( Cipher.DECRYPT_MODE, sharedKey, iv );
+				sharedDecrypter.doFinal( encrypted, 0, messageSize, decrypted, 0 );
+			}
+		}
+	}
+
+	/** Each message on its own, with the calling thread's ciphers */
+	private void message() throws Exception
+	{
+		for( int i = 0; i < messages; i++ )
+		{
+			byte[] encrypted = new byte[cipher.getEncryptedSize(messageSize)];
+			cipher.encrypt( payload, 0, messageSize, encrypted, 0 );
+
+			byte[] decrypted = new byte[messageSize];
+			cipher.decrypt( encrypted, 0, encrypted.length, decrypted, 0 );
+		}
+	}
+
+	/** Fill a bundle with messages, encrypt it as a whole into a reused array */
+	private void bundle() throws Exception
+	{
+		byte[] bundle = new byte[bundleSize+messageSize];
+		byte[] encrypted = new byte[cipher.getEncryptedSize(bundle.length)];
+		int position = 0;
+		for( int i = 0; i < messages; i++ )
+		{
+			System.arraycopy( payload, 0, bundle, position, messageSize );
+			position += messageSize;
+			if( position >= bundleSize || i == messages-1 )
+			{
+				int length = cipher.encrypt( bundle, 0, position, encrypted, 0 );
+				cipher.decrypt( encrypted, 0, length, encrypted, 0 );
+				position = 0;
+			}
+		}
+	}
+
+	//----------------------------------------------------------
+	//                     STATIC METHODS
+	//----------------------------------------------------------
+	public static void main( String[] args ) throws Exception
+	{
+		int messageSize = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		int messages    = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		int threads     = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int bundleSize  = args.length > 3 ? Integer.parseInt(args[3]) : 64000;
+
+		for( CipherMode mode : CipherMode.values() )
+			new EncryptionBenchmark( mode, messageSize, messages, threads, bundleSize ).run();
+	}
+
+	@FunctionalInterface
+	private interface Task
+	{
+		public void run() throws Exception;
+	}
+}